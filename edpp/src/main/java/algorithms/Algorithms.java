@@ -42,6 +42,61 @@ public class Algorithms {
 		return KungsRealizationAlgorithm.systemMatrixAToArray(impulseResponses);
 	}
 
+	/**
+	 * Computes the order of the system, i.e. the numerical rank of the Hankel
+	 * matrix of the impulse responses used by Kung's realization algorithm
+	 * 
+	 * @param impulseResponses
+	 *            an array of the collected impulse responses
+	 * @param tolerance
+	 *            the ratio to the largest singular value below which a
+	 *            singular value is considered noise
+	 * @return the order of the system
+	 */
+	public static int computeRealizationOrder(double[] impulseResponses,
+			double tolerance) {
+		return KungsRealizationAlgorithm.computeOrder(impulseResponses,
+				tolerance);
+	}
+
+	/**
+	 * Checks whether a sequence of impulse responses has settled, i.e.
+	 * whether the changes between its most recent values are negligible
+	 * compared to the largest response
+	 * 
+	 * @param impulseResponses
+	 *            an array of the collected impulse responses
+	 * @param window
+	 *            the number of most recent changes that are examined
+	 * @param tolerance
+	 *            the ratio to the largest response below which a change is
+	 *            considered negligible
+	 * @return true if the last window changes are all negligible, false
+	 *         otherwise or if there are not enough responses
+	 */
+	public static boolean hasSettled(double[] impulseResponses, int window,
+			double tolerance) {
+		int n = impulseResponses.length;
+		if (n < window + 1) {
+			return false;
+		}
+		double peak = 0;
+		for (double response : impulseResponses) {
+			peak = Math.max(peak, Math.abs(response));
+		}
+		if (peak == 0) {
+			return true;
+		}
+		for (int i = n - window; i < n; i++) {
+			double change = Math.abs(impulseResponses[i]
+					- impulseResponses[i - 1]);
+			if (change > tolerance * peak) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Computes the eigenvalues of a matrix
 	 * 
@@ -188,6 +243,41 @@ public class Algorithms {
 			return m.toArray2();
 		}
 
+		/**
+		 * Computes the order of the system as the number of singular values
+		 * of the Hankel matrix that are not negligible
+		 * 
+		 * @param impulseResponses
+		 *            an array of the collected impulse responses
+		 * @param tolerance
+		 *            the ratio to the largest singular value below which a
+		 *            singular value is considered noise
+		 * @return the order of the system
+		 */
+		public static int computeOrder(double[] impulseResponses,
+				double tolerance) {
+			DoubleMatrix H = convertToHankelMatrix(impulseResponses);
+			DoubleMatrix S = Singular.SVDValues(H);
+			double largest = S.max();
+			int order = 0;
+			for (int i = 0; i < S.length; i++) {
+				if (S.get(i) > tolerance * largest)
+					order++;
+			}
+			return order;
+		}
+
+		/**
+		 * 
+		 * @param impulseResponses
+		 *            an array of the collected impulse responses
+		 * @return the dimension of the square Hankel matrix built from the
+		 *         impulse responses
+		 */
+		public static int hankelDimension(double[] impulseResponses) {
+			return (impulseResponses.length + 1) / 2;
+		}
+
 		private static DoubleMatrix convertToHankelMatrix(
 				double[] impulseResponsesArray) {
 			int dim = impulseResponsesArray.length;
@@ -0,0 +1,184 @@
+package comm;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import comm.ProtocolMessage.Message.MessageType;
+
+/**
+ * Queue of TransferableMessages with a fixed capacity. As with any other
+ * BlockingQueue, when the queue is full add() fails, offer() returns false and
+ * put() waits until there is room. Under the DROP_OLDEST overflow policy
+ * offer() and put() first try to make room for a best-effort NEXT value, by
+ * dropping the oldest one queued. Best-effort NEXT values are the only messages
+ * that may be dropped, since the protocol already copes with their loss. The
+ * producers that must never block, like the transports delivering the
+ * messages of remote nodes, should use offer() and hold on to a reliable
+ * message that does not fit until there is room, while the local producers
+ * use put(), so that they slow down whenever the consumer falls behind
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class BoundedMessageQueue extends
+		LinkedBlockingQueue<TransferableMessage> {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The default maximum number of messages a queue can hold
+	 */
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	/**
+	 * The maximum number of messages at the head of a full queue that are
+	 * examined for finding a best-effort NEXT value to drop
+	 */
+	public static final int DROP_SCAN_LIMIT = 64;
+
+	/**
+	 * The action taken when a message is added to a full queue
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * No message is dropped to make room for another one
+		 */
+		BLOCK,
+		/**
+		 * The oldest best-effort NEXT value in the queue is dropped to make
+		 * room for a newer one. There is no room made for any other message
+		 */
+		DROP_OLDEST
+	}
+
+	private final OverflowPolicy policy;
+	private final AtomicLong droppedCount;
+	private final AtomicLong blockedCount;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param capacity
+	 *            the maximum number of messages the queue can hold
+	 * @param policy
+	 *            the OverflowPolicy applied when the queue is full
+	 */
+	public BoundedMessageQueue(int capacity, OverflowPolicy policy) {
+		super(capacity);
+		this.policy = policy;
+		this.droppedCount = new AtomicLong();
+		this.blockedCount = new AtomicLong();
+	}
+
+	/**
+	 * Places a message in the queue without blocking. If the queue is full the
+	 * overflow policy of the queue is applied
+	 *
+	 * @param tm
+	 *            the message to be placed in the queue
+	 * @return true if the message was placed in the queue, false if it was
+	 *         dropped
+	 */
+	@Override
+	public boolean offer(TransferableMessage tm) {
+		if (insert(tm)) {
+			return true;
+		}
+		droppedCount.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Places a message in the queue. If the queue is full the overflow policy
+	 * of the queue is applied, and if there is still no room the producer
+	 * blocks until there is
+	 *
+	 * @param tm
+	 *            the message to be placed in the queue
+	 * @throws InterruptedException
+	 *             if the producer is interrupted while waiting
+	 */
+	@Override
+	public void put(TransferableMessage tm) throws InterruptedException {
+		if (insert(tm)) {
+			return;
+		}
+		blockedCount.incrementAndGet();
+		super.put(tm);
+	}
+
+	/**
+	 *
+	 * @return the number of messages currently in the queue
+	 */
+	public int getDepth() {
+		return size();
+	}
+
+	/**
+	 *
+	 * @return the number of messages dropped because the queue was full
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 *
+	 * @return the number of times a producer had to block because the queue
+	 *         was full
+	 */
+	public long getBlockedCount() {
+		return blockedCount.get();
+	}
+
+	/**
+	 *
+	 * @return the OverflowPolicy applied when the queue is full
+	 */
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	private boolean insert(TransferableMessage tm) {
+		if (super.offer(tm)) {
+			return true;
+		}
+		// the newest value is worth more than the oldest one, so make room
+		// for it
+		return policy == OverflowPolicy.DROP_OLDEST && isDroppable(tm)
+				&& dropOldest() && super.offer(tm);
+	}
+
+	/**
+	 * Drops the oldest best-effort NEXT value among the first messages of the
+	 * queue. Only a bounded number of messages is examined, so that a queue
+	 * full of messages that cannot be dropped is not scanned as a whole
+	 */
+	private boolean dropOldest() {
+		int examined = 0;
+		for (TransferableMessage queued : this) {
+			if (isDroppable(queued)) {
+				// the consumer might have taken the message in the meantime
+				if (remove(queued)) {
+					droppedCount.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+			if (++examined >= DROP_SCAN_LIMIT) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isDroppable(TransferableMessage tm) {
+		if (tm.getSendReliably()) {
+			return false;
+		}
+		MessageType type = tm.getMessage().getType();
+		return type == MessageType.NEXT || type == MessageType.BATCH;
+	}
+
+}
@@ -0,0 +1,478 @@
+package comm;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of persistent TCP connections to remote nodes. At most one connection
+ * is kept open per destination address and it is reused for writing any number
+ * of length-delimited protocol messages. Connections that remain unused for
+ * longer than the idle timeout are closed, so that the pool does not hold
+ * sockets to nodes that are no longer contacted. Connections can also be
+ * established without blocking, so that the thread writing the messages is
+ * not held for the whole connect timeout by a remote node that does not reply.
+ * The connections being established are watched by a single thread of the
+ * pool through a Selector, which notifies the caller once each of them is
+ * ready, has failed or has timed out
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class ConnectionPool {
+
+	/**
+	 * The default time in milliseconds to wait for a connection to be
+	 * established
+	 */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+	/**
+	 * The default time in milliseconds after which an unused connection is
+	 * closed. It is kept shorter than the idle timeout of the receiving side,
+	 * so that the sender never writes to a connection the remote node has
+	 * already dropped
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+	private final int port;
+	private final int connectTimeout;
+	private final long idleTimeout;
+	private Map<InetAddress, PooledConnection> connections;
+	// the connections that are being established without blocking
+	private ConcurrentMap<InetAddress, PendingConnection> pending;
+	// guarded by the pool itself
+	private Connector connector;
+
+	/**
+	 * Class constructor. Connections are made to the given port using the
+	 * default connect and idle timeouts
+	 *
+	 * @param port
+	 *            the port of the remote nodes the connections are made to
+	 */
+	public ConnectionPool(int port) {
+		this(port, DEFAULT_CONNECT_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param port
+	 *            the port of the remote nodes the connections are made to
+	 * @param connectTimeout
+	 *            the time in milliseconds to wait for a new connection to be
+	 *            established
+	 * @param idleTimeout
+	 *            the time in milliseconds after which an unused connection is
+	 *            closed
+	 */
+	public ConnectionPool(int port, int connectTimeout, long idleTimeout) {
+		this.port = port;
+		this.connectTimeout = connectTimeout;
+		this.idleTimeout = idleTimeout;
+		connections = new ConcurrentHashMap<InetAddress, PooledConnection>();
+		pending = new ConcurrentHashMap<InetAddress, PendingConnection>();
+	}
+
+	/**
+	 * Makes sure there is a connection to a remote node without blocking. If no
+	 * usable connection exists one is started and the callback is run once it
+	 * is ready, has failed or has timed out, at which point connect should be
+	 * called again to find out which one happened. Each remote node should
+	 * only be connected to by one thread at a time
+	 *
+	 * @param address
+	 *            the InetAddress of the remote node
+	 * @param onReady
+	 *            the callback run when a connection that is still being
+	 *            established needs to be checked again. It is run by the
+	 *            thread of the pool, so it should only hand the work over to
+	 *            some other thread
+	 * @return true if a connection is ready for writing, false if it is still
+	 *         being established
+	 * @throws IOException
+	 *             if the connection could not be established or it was not
+	 *             established before the connect timeout
+	 */
+	public boolean connect(InetAddress address, Runnable onReady)
+			throws IOException {
+		PooledConnection pc = connections.get(address);
+		if (pc != null && isUsable(pc)) {
+			return true;
+		}
+		PendingConnection c = pending.get(address);
+		boolean connected;
+		try {
+			if (c == null) {
+				c = new PendingConnection(SocketChannel.open());
+				pending.put(address, c);
+				c.channel.configureBlocking(false);
+				connected = c.channel.connect(new InetSocketAddress(address,
+						port));
+			} else {
+				connected = c.channel.finishConnect();
+			}
+			if (!connected) {
+				if (System.currentTimeMillis() - c.started < connectTimeout) {
+					watch(c, onReady);
+					return false;
+				}
+				throw new SocketTimeoutException("connect timed out");
+			}
+			pending.remove(address);
+			// writes use the stream of the socket, which requires blocking mode
+			c.channel.configureBlocking(true);
+			add(address, c.channel.socket());
+			return true;
+		} catch (IOException e) {
+			if (c != null) {
+				pending.remove(address, c);
+				c.close();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes a protocol message to a remote node, using the pooled connection
+	 * to that node or opening a new one if none exists. If the write fails the
+	 * connection is discarded and the exception is propagated to the caller
+	 *
+	 * @param tm
+	 *            the message to be written along with the address of the
+	 *            remote node
+	 * @throws IOException
+	 *             if the connection could not be established or the message
+	 *             could not be written
+	 */
+	public void write(TransferableMessage tm) throws IOException {
+		InetAddress address = tm.getAddress();
+		PooledConnection pc = getConnection(address);
+		try {
+			synchronized (pc) {
+				if (tm.isEncoded()) {
+					// reuse the bytes shared by all the copies of the message
+					pc.output.write(tm.getEncodedMessage());
+				} else {
+					tm.getMessage().writeDelimitedTo(pc.output);
+				}
+				pc.output.flush();
+				pc.lastUsed = System.currentTimeMillis();
+			}
+		} catch (IOException e) {
+			invalidate(address);
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes and removes from the pool the connection to a remote node
+	 *
+	 * @param address
+	 *            the InetAddress of the remote node
+	 */
+	public void invalidate(InetAddress address) {
+		PooledConnection pc = connections.remove(address);
+		if (pc != null) {
+			pc.close();
+		}
+		PendingConnection c = pending.remove(address);
+		if (c != null) {
+			c.close();
+		}
+	}
+
+	/**
+	 * Closes all the connections that have not been used for longer than the
+	 * idle timeout
+	 */
+	public void closeIdleConnections() {
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<InetAddress, PooledConnection>> iter = connections
+				.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<InetAddress, PooledConnection> entry = iter.next();
+			if (now - entry.getValue().lastUsed > idleTimeout) {
+				iter.remove();
+				entry.getValue().close();
+			}
+		}
+	}
+
+	/**
+	 * Closes all the pooled connections
+	 */
+	public void closeAll() {
+		synchronized (this) {
+			if (connector != null) {
+				connector.close();
+				connector = null;
+			}
+		}
+		Iterator<PooledConnection> iter = connections.values().iterator();
+		while (iter.hasNext()) {
+			PooledConnection pc = iter.next();
+			iter.remove();
+			pc.close();
+		}
+		Iterator<PendingConnection> pendingIter = pending.values().iterator();
+		while (pendingIter.hasNext()) {
+			PendingConnection c = pendingIter.next();
+			pendingIter.remove();
+			c.close();
+		}
+	}
+
+	/**
+	 *
+	 * @return the number of currently open connections
+	 */
+	public int getSize() {
+		return connections.size();
+	}
+
+	private PooledConnection getConnection(InetAddress address)
+			throws IOException {
+		PooledConnection pc = connections.get(address);
+		if (pc != null) {
+			if (isUsable(pc)) {
+				return pc;
+			}
+			// the connection has been idle for too long and the remote node
+			// might have already closed it. Open a new one instead
+			invalidate(address);
+		}
+		Socket s = new Socket();
+		// set a timeout to the socket, because the remote node might take to
+		// long to reply
+		s.connect(new InetSocketAddress(address, port), connectTimeout);
+		return add(address, s);
+	}
+
+	private PooledConnection add(InetAddress address, Socket s)
+			throws IOException {
+		s.setTcpNoDelay(true);
+		PooledConnection pc = new PooledConnection(s);
+		PooledConnection previous = connections.put(address, pc);
+		if (previous != null) {
+			previous.close();
+		}
+		return pc;
+	}
+
+	/**
+	 * Hands a connection that is still being established to the thread of the
+	 * pool, starting it if it is not already running
+	 */
+	private synchronized void watch(PendingConnection c, Runnable onReady)
+			throws IOException {
+		if (connector == null || connector.closed) {
+			connector = new Connector();
+			Thread t = new Thread(connector, "ConnectionPool-" + port);
+			t.setDaemon(true);
+			t.start();
+		}
+		c.onReady = onReady;
+		connector.registrations.add(c);
+		connector.selector.wakeup();
+	}
+
+	private boolean isUsable(PooledConnection pc) {
+		return !pc.socket.isClosed()
+				&& System.currentTimeMillis() - pc.lastUsed <= idleTimeout;
+	}
+
+	/**
+	 * Waits for the connections being established to become ready, without
+	 * polling them, and runs the callback of each one once it is ready, has
+	 * failed or has timed out
+	 */
+	private class Connector implements Runnable {
+
+		final Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+		final Selector selector;
+		final Queue<PendingConnection> registrations = new ConcurrentLinkedQueue<PendingConnection>();
+		// guarded by the pool
+		boolean closed;
+		// only accessed by the thread of the Connector
+		final List<PendingConnection> watched = new ArrayList<PendingConnection>();
+
+		Connector() throws IOException {
+			this.selector = Selector.open();
+		}
+
+		@Override
+		public void run() {
+			List<PendingConnection> done = new ArrayList<PendingConnection>();
+			try {
+				while (!isClosed()) {
+					PendingConnection c;
+					while ((c = registrations.poll()) != null) {
+						try {
+							c.channel.register(selector,
+									SelectionKey.OP_CONNECT, c);
+							if (!watched.contains(c)) {
+								watched.add(c);
+							}
+						} catch (ClosedChannelException e) {
+							// the connection was discarded in the meantime
+							done.add(c);
+						}
+					}
+					selector.select(timeToFirstExpiry());
+					long now = System.currentTimeMillis();
+					for (Iterator<PendingConnection> iter = watched.iterator(); iter
+							.hasNext();) {
+						PendingConnection w = iter.next();
+						SelectionKey key = w.channel.keyFor(selector);
+						if (key == null || !key.isValid()
+								|| key.isConnectable()
+								|| now - w.started >= connectTimeout) {
+							if (key != null) {
+								key.cancel();
+							}
+							iter.remove();
+							done.add(w);
+						}
+					}
+					selector.selectedKeys().clear();
+					if (!done.isEmpty()) {
+						// the cancelled keys are deregistered, since a channel
+						// must not be registered with a Selector to be switched
+						// back to blocking mode once it is connected
+						selector.selectNow();
+						selector.selectedKeys().clear();
+						resumeAll(done);
+					}
+				}
+			} catch (IOException e) {
+				logger.log(Level.SEVERE,
+						"Stopped watching the connections being established",
+						e);
+			} finally {
+				synchronized (ConnectionPool.this) {
+					closed = true;
+					// the callers try again and a new thread watches their
+					// connections, unless the pool was closed
+					done.addAll(watched);
+					PendingConnection c;
+					while ((c = registrations.poll()) != null) {
+						done.add(c);
+					}
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+
+				}
+				resumeAll(done);
+			}
+		}
+
+		void close() {
+			closed = true;
+			selector.wakeup();
+		}
+
+		private boolean isClosed() {
+			synchronized (ConnectionPool.this) {
+				return closed;
+			}
+		}
+
+		/**
+		 * The time in milliseconds until the first of the watched connections
+		 * times out, or 0 if no connection is watched
+		 */
+		private long timeToFirstExpiry() {
+			if (watched.isEmpty()) {
+				return 0;
+			}
+			long first = Long.MAX_VALUE;
+			for (PendingConnection w : watched) {
+				first = Math.min(first, w.started + connectTimeout);
+			}
+			return Math.max(1, first - System.currentTimeMillis());
+		}
+
+		private void resumeAll(List<PendingConnection> done) {
+			for (PendingConnection c : done) {
+				Runnable onReady = c.onReady;
+				c.onReady = null;
+				if (onReady == null) {
+					continue;
+				}
+				try {
+					onReady.run();
+				} catch (RuntimeException e) {
+					logger.log(Level.WARNING,
+							"Could not resume a connection being established",
+							e);
+				}
+			}
+			done.clear();
+		}
+	}
+
+	private static class PendingConnection {
+
+		final SocketChannel channel;
+		final long started;
+		// the callback run once the connection needs to be checked again
+		volatile Runnable onReady;
+
+		PendingConnection(SocketChannel channel) {
+			this.channel = channel;
+			this.started = System.currentTimeMillis();
+		}
+
+		void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// the connection is discarded anyway
+			}
+		}
+	}
+
+	private static class PooledConnection {
+
+		final Socket socket;
+		final OutputStream output;
+		volatile long lastUsed;
+
+		PooledConnection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.output = new BufferedOutputStream(socket.getOutputStream());
+			this.lastUsed = System.currentTimeMillis();
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// the connection is discarded anyway
+			}
+		}
+	}
+
+}
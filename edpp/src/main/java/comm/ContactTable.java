@@ -0,0 +1,233 @@
+package comm;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node-wide table keeping the last time any message was received from each
+ * remote node. Every message received from a node proves that the node is
+ * alive, so a node heard from recently does not need to be checked for
+ * liveness, whichever Session or Execution the message belonged to. The
+ * intervals between the messages of each node are kept as well, so that the
+ * suspicion level of a silent node can be computed with the phi accrual
+ * method of Hayashibara et al.
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class ContactTable {
+
+	/**
+	 * The default time in milliseconds during which a node that sent a message
+	 * is considered to be alive
+	 */
+	public static final long DEFAULT_WINDOW = 2000;
+	/**
+	 * The number of recent intervals between messages kept for each node
+	 */
+	public static final int HISTORY_SIZE = 100;
+	/**
+	 * The minimum standard deviation in milliseconds of the intervals between
+	 * messages, so that a node sending messages at a steady rate is not
+	 * suspected as soon as one of them is late
+	 */
+	public static final double MIN_STD_DEVIATION = 100;
+
+	private final long window;
+	private final ConcurrentMap<InetAddress, ArrivalWindow> lastHeard;
+
+	/**
+	 * Class constructor. Nodes are considered alive for DEFAULT_WINDOW
+	 * milliseconds after their last message
+	 */
+	public ContactTable() {
+		this(DEFAULT_WINDOW);
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param window
+	 *            the time in milliseconds during which a node that sent a
+	 *            message is considered to be alive
+	 */
+	public ContactTable(long window) {
+		this.window = window;
+		this.lastHeard = new ConcurrentHashMap<InetAddress, ArrivalWindow>();
+	}
+
+	/**
+	 * Records that a message was just received from a remote node
+	 *
+	 * @param address
+	 *            the InetAddress of the remote node
+	 */
+	public void heardFrom(InetAddress address) {
+		ArrivalWindow arrivals = lastHeard.get(address);
+		if (arrivals == null) {
+			ArrivalWindow created = new ArrivalWindow();
+			arrivals = lastHeard.putIfAbsent(address, created);
+			if (arrivals == null) {
+				arrivals = created;
+			}
+		}
+		arrivals.arrived(System.nanoTime());
+	}
+
+	/**
+	 *
+	 * @param address
+	 *            the InetAddress of a remote node
+	 * @return true if a message was received from the remote node within the
+	 *         window of the table, false otherwise
+	 */
+	public boolean isRecentlyHeard(InetAddress address) {
+		ArrivalWindow arrivals = lastHeard.get(address);
+		if (arrivals == null) {
+			return false;
+		}
+		return arrivals.elapsed(System.nanoTime()) < window;
+	}
+
+	/**
+	 *
+	 * @param address
+	 *            the InetAddress of a remote node
+	 * @param time
+	 *            a System.nanoTime() value
+	 * @return true if a message was received from the remote node after the
+	 *         given time, false otherwise
+	 */
+	public boolean isHeardSince(InetAddress address, long time) {
+		ArrivalWindow arrivals = lastHeard.get(address);
+		return arrivals != null && arrivals.lastArrival() - time > 0;
+	}
+
+	/**
+	 * Computes the suspicion level of a remote node, given the time elapsed
+	 * since its last message and the intervals between its recent messages.
+	 * The window of the table is the pause tolerated on top of the usual
+	 * interval, since the messages of the protocol come in bursts, one per
+	 * round
+	 *
+	 * @param address
+	 *            the InetAddress of a remote node
+	 * @return the phi value of the node, i.e. minus the logarithm in base 10
+	 *         of the probability that a message of the node is still to
+	 *         arrive. A phi of 1 means a 10% chance of a wrong suspicion, a phi
+	 *         of 2 a 1% chance etc. A node never heard from has an infinite
+	 *         phi
+	 */
+	public double getPhi(InetAddress address) {
+		ArrivalWindow arrivals = lastHeard.get(address);
+		if (arrivals == null) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return arrivals.phi(System.nanoTime(), window);
+	}
+
+	/**
+	 * Removes a remote node from the table, e.g. once it is known to have
+	 * failed
+	 *
+	 * @param address
+	 *            the InetAddress of the remote node
+	 */
+	public void forget(InetAddress address) {
+		lastHeard.remove(address);
+	}
+
+	/**
+	 * Removes the remote nodes that have not sent any message for a long
+	 * time, e.g. because they left the network, so that they do not hold
+	 * memory forever. A removed node is treated as never heard from
+	 *
+	 * @param maxSilence
+	 *            the time in milliseconds after the last message of a node
+	 *            for which it is kept in the table
+	 * @return the number of nodes removed
+	 */
+	public int prune(long maxSilence) {
+		long now = System.nanoTime();
+		int removed = 0;
+		for (Map.Entry<InetAddress, ArrivalWindow> entry : lastHeard
+				.entrySet()) {
+			if (entry.getValue().elapsed(now) >= maxSilence
+					&& lastHeard.remove(entry.getKey(), entry.getValue())) {
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 *
+	 * @return the time in milliseconds during which a node that sent a message
+	 *         is considered to be alive
+	 */
+	public long getWindow() {
+		return window;
+	}
+
+	/**
+	 * The last arrival and the recent intervals between the messages of a
+	 * remote node
+	 */
+	private static class ArrivalWindow {
+
+		private final double[] intervals = new double[HISTORY_SIZE];
+		private int next;
+		private int count;
+		private double sum;
+		private double squares;
+		private boolean heard;
+		private volatile long last;
+
+		synchronized void arrived(long now) {
+			if (heard) {
+				double interval = TimeUnit.NANOSECONDS.toMicros(now - last) / 1000.0;
+				if (count == intervals.length) {
+					double oldest = intervals[next];
+					sum -= oldest;
+					squares -= oldest * oldest;
+				} else {
+					count++;
+				}
+				intervals[next] = interval;
+				next = (next + 1) % intervals.length;
+				sum += interval;
+				squares += interval * interval;
+			}
+			last = now;
+			heard = true;
+		}
+
+		long lastArrival() {
+			return last;
+		}
+
+		long elapsed(long now) {
+			return TimeUnit.NANOSECONDS.toMillis(now - last);
+		}
+
+		synchronized double phi(long now, long pause) {
+			double mean = (count > 0) ? sum / count : 0;
+			double variance = (count > 0) ? squares / count - mean * mean : 0;
+			double deviation = Math.max(MIN_STD_DEVIATION,
+					Math.sqrt(Math.max(0, variance)));
+			double elapsed = TimeUnit.NANOSECONDS.toMicros(now - last) / 1000.0;
+			// logistic approximation of the cumulative distribution function
+			// of the normal distribution
+			double y = (elapsed - (mean + pause)) / deviation;
+			double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+			if (elapsed > mean + pause) {
+				return -Math.log10(e / (1.0 + e));
+			}
+			return -Math.log10(1.0 - 1.0 / (1.0 + e));
+		}
+	}
+
+}
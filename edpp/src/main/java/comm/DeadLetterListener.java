@@ -0,0 +1,23 @@
+package comm;
+
+/**
+ * Interface for being notified about the messages that the MessageSender
+ * abandoned, because they could not be delivered within the allowed number of
+ * attempts or before their deadline expired
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public interface DeadLetterListener {
+
+	/**
+	 * Event called when a message is abandoned
+	 *
+	 * @param tm
+	 *            the message that was abandoned along with the address of the
+	 *            remote node it was intended for
+	 * @param attempts
+	 *            the number of failed attempts made to send the message
+	 */
+	public void messageAbandoned(TransferableMessage tm, int attempts);
+}
@@ -0,0 +1,217 @@
+package comm;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node-wide phi accrual failure detector, shared by all the Sessions and
+ * Executions of the local node. A remote node is suspected once its phi, as
+ * computed by the ContactTable fed by all the incoming messages, exceeds a
+ * threshold. A suspected node is then checked for liveness only once, however
+ * many Executions are waiting on it, and a node found unreachable is
+ * considered failed by all of them until it is heard from again
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class FailureDetector {
+
+	/**
+	 * The default phi above which a remote node is suspected of failure
+	 */
+	public static final double DEFAULT_THRESHOLD = 8;
+
+	private final ContactTable contacts;
+	private final Transport transport;
+	private final double threshold;
+	// the System.nanoTime() value at which each failed node was found
+	// unreachable
+	private final ConcurrentMap<InetAddress, Long> failed;
+	// the callbacks waiting for the outcome of each liveness check in progress
+	private final Map<InetAddress, List<LivenessCallback>> probes;
+
+	/**
+	 * Class constructor. Remote nodes are suspected once their phi exceeds
+	 * DEFAULT_THRESHOLD
+	 *
+	 * @param contacts
+	 *            the ContactTable in which every message received from a
+	 *            remote node is recorded
+	 * @param transport
+	 *            the Transport used for checking whether suspected nodes are
+	 *            alive
+	 */
+	public FailureDetector(ContactTable contacts, Transport transport) {
+		this(contacts, transport, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param contacts
+	 *            the ContactTable in which every message received from a
+	 *            remote node is recorded
+	 * @param transport
+	 *            the Transport used for checking whether suspected nodes are
+	 *            alive
+	 * @param threshold
+	 *            the phi above which a remote node is suspected of failure
+	 */
+	public FailureDetector(ContactTable contacts, Transport transport,
+			double threshold) {
+		this.contacts = contacts;
+		this.transport = transport;
+		this.threshold = threshold;
+		this.failed = new ConcurrentHashMap<InetAddress, Long>();
+		this.probes = new HashMap<InetAddress, List<LivenessCallback>>();
+	}
+
+	/**
+	 *
+	 * @param address
+	 *            the InetAddress of a remote node
+	 * @return the phi of the remote node
+	 */
+	public double getPhi(InetAddress address) {
+		return contacts.getPhi(address);
+	}
+
+	/**
+	 *
+	 * @param address
+	 *            the InetAddress of a remote node
+	 * @return true if the remote node has not failed and its phi is below the
+	 *         threshold, so it does not need to be checked for liveness
+	 */
+	public boolean isAvailable(InetAddress address) {
+		return !hasFailed(address) && getPhi(address) < threshold;
+	}
+
+	/**
+	 *
+	 * @param address
+	 *            the InetAddress of a remote node
+	 * @return true if the remote node was found unreachable and has not been
+	 *         heard from since
+	 */
+	public boolean hasFailed(InetAddress address) {
+		Long failure = failed.get(address);
+		if (failure == null) {
+			return false;
+		}
+		if (contacts.isHeardSince(address, failure)) {
+			// the node has recovered, or it was wrongly found unreachable
+			failed.remove(address, failure);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @param address
+	 *            the InetAddress of a remote node
+	 * @return true if a liveness check of the remote node is in progress
+	 */
+	public boolean isProbing(InetAddress address) {
+		synchronized (probes) {
+			return probes.containsKey(address);
+		}
+	}
+
+	/**
+	 * Checks asynchronously whether a remote node is alive. If a check of the
+	 * node is already in progress, no new check is made and the callback is
+	 * notified about the outcome of the existing one
+	 *
+	 * @param address
+	 *            the InetAddress of the remote node
+	 * @param callback
+	 *            the LivenessCallback to be notified about the outcome
+	 * @return true if a new check was made, false if the callback joined a
+	 *         check in progress
+	 */
+	public boolean probe(InetAddress address, LivenessCallback callback) {
+		synchronized (probes) {
+			List<LivenessCallback> waiting = probes.get(address);
+			if (waiting != null) {
+				waiting.add(callback);
+				return false;
+			}
+			waiting = new ArrayList<LivenessCallback>();
+			waiting.add(callback);
+			probes.put(address, waiting);
+		}
+		transport.probeLiveness(address, new LivenessCallback() {
+			@Override
+			public void nodeAlive(InetAddress address) {
+				// the reply is a message of the node like any other
+				contacts.heardFrom(address);
+				for (LivenessCallback waiting : complete(address)) {
+					waiting.nodeAlive(address);
+				}
+			}
+
+			@Override
+			public void nodeUnreachable(InetAddress address) {
+				failed.put(address, System.nanoTime());
+				for (LivenessCallback waiting : complete(address)) {
+					waiting.nodeUnreachable(address);
+				}
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Forgets the remote nodes that have not been heard from for a long time,
+	 * both in the ContactTable and among the failed nodes, so that the nodes
+	 * that left the network do not hold memory forever. A forgotten node is
+	 * suspected at once and checked again if it is ever waited for
+	 *
+	 * @param maxSilence
+	 *            the time in milliseconds after the last message of a node,
+	 *            or after it was found unreachable, for which it is kept
+	 */
+	public void prune(long maxSilence) {
+		long now = System.nanoTime();
+		for (Map.Entry<InetAddress, Long> entry : failed.entrySet()) {
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(now
+					- entry.getValue());
+			if (elapsed >= maxSilence) {
+				failed.remove(entry.getKey(), entry.getValue());
+			}
+		}
+		contacts.prune(maxSilence);
+	}
+
+	/**
+	 *
+	 * @return the maximum time in milliseconds a liveness check can take
+	 *         before the remote node is considered unreachable
+	 */
+	public long getProbeDuration() {
+		return transport.getProbeDuration();
+	}
+
+	/**
+	 *
+	 * @return the phi above which a remote node is suspected of failure
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+
+	private List<LivenessCallback> complete(InetAddress address) {
+		synchronized (probes) {
+			return probes.remove(address);
+		}
+	}
+
+}
@@ -1,74 +1,272 @@
 package comm;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.protobuf.CodedInputStream;
 
 import comm.ProtocolMessage.Message;
 import comm.ProtocolMessage.Message.MessageType;
 import core.ProtocolController;
 
 /**
- * 
+ *
  * Class for receiving protocol messages through UDP. An object of this class
- * should be created in a thread running as a daemon service
- * 
+ * should be created in a thread running as a daemon service. Datagrams are
+ * received through a single bound DatagramChannel by one or more receiver
+ * threads, each of which decodes them using its own reusable buffers. A
+ * datagram that cannot be handled is dropped, without affecting the thread that
+ * received it
+ *
  * @author Xenofon Foukas
- * 
+ *
  */
 public class LightMessageReceiver implements Runnable {
 
+	/**
+	 * The default number of threads receiving datagrams
+	 */
+	public static final int DEFAULT_THREADS = 1;
+
+	private Logger logger;
 	private BlockingQueue<TransferableMessage> incomingQueue;
-	private DatagramSocket ss;
+	private LivenessProber prober;
+	private ContactTable contacts;
+	private final int nThreads;
+	private final int port;
+	private volatile DatagramChannel channel;
 
 	/**
 	 * Constructor class
-	 * 
+	 *
 	 * @param incomingQueue
 	 *            BlockingQueue in which any message received should be placed
 	 *            and which communicates with the ProtocolController
 	 */
 	public LightMessageReceiver(BlockingQueue<TransferableMessage> incomingQueue) {
+		this(incomingQueue, null);
+	}
+
+	/**
+	 * Constructor class
+	 *
+	 * @param incomingQueue
+	 *            BlockingQueue in which any message received should be placed
+	 *            and which communicates with the ProtocolController
+	 * @param prober
+	 *            the LivenessProber to which the replies to liveness checks
+	 *            will be forwarded
+	 */
+	public LightMessageReceiver(
+			BlockingQueue<TransferableMessage> incomingQueue,
+			LivenessProber prober) {
+		this(incomingQueue, prober, DEFAULT_THREADS);
+	}
+
+	/**
+	 * Constructor class
+	 *
+	 * @param incomingQueue
+	 *            BlockingQueue in which any message received should be placed
+	 *            and which communicates with the ProtocolController
+	 * @param prober
+	 *            the LivenessProber to which the replies to liveness checks
+	 *            will be forwarded
+	 * @param nThreads
+	 *            the number of threads receiving datagrams. The thread running
+	 *            the receiver is one of them
+	 */
+	public LightMessageReceiver(
+			BlockingQueue<TransferableMessage> incomingQueue,
+			LivenessProber prober, int nThreads) {
+		this(incomingQueue, prober, nThreads, ProtocolController.PROTOCOL_PORT);
+	}
+
+	/**
+	 * Constructor class
+	 *
+	 * @param incomingQueue
+	 *            BlockingQueue in which any message received should be placed
+	 *            and which communicates with the ProtocolController
+	 * @param prober
+	 *            the LivenessProber to which the replies to liveness checks
+	 *            will be forwarded
+	 * @param nThreads
+	 *            the number of threads receiving datagrams. The thread running
+	 *            the receiver is one of them
+	 * @param port
+	 *            the port on which the receiver listens for datagrams. The
+	 *            replies to liveness checks are sent to the same port of the
+	 *            remote nodes
+	 */
+	public LightMessageReceiver(
+			BlockingQueue<TransferableMessage> incomingQueue,
+			LivenessProber prober, int nThreads, int port) {
+		this(incomingQueue, prober, nThreads, port, null);
+	}
+
+	/**
+	 * Constructor class
+	 *
+	 * @param incomingQueue
+	 *            BlockingQueue in which any message received should be placed
+	 *            and which communicates with the ProtocolController
+	 * @param prober
+	 *            the LivenessProber to which the replies to liveness checks
+	 *            will be forwarded
+	 * @param nThreads
+	 *            the number of threads receiving datagrams. The thread running
+	 *            the receiver is one of them
+	 * @param port
+	 *            the port on which the receiver listens for datagrams. The
+	 *            replies to liveness checks are sent to the same port of the
+	 *            remote nodes
+	 * @param contacts
+	 *            the ContactTable in which the remote nodes are recorded
+	 *            whenever they send a datagram, or null
+	 */
+	public LightMessageReceiver(
+			BlockingQueue<TransferableMessage> incomingQueue,
+			LivenessProber prober, int nThreads, int port,
+			ContactTable contacts) {
+		logger = Logger.getLogger(LightMessageReceiver.class.getName());
 		this.incomingQueue = incomingQueue;
+		this.prober = prober;
+		this.nThreads = Math.max(1, nThreads);
+		this.port = port;
+		this.contacts = contacts;
 	}
 
 	@Override
 	public void run() {
 		try {
-			ss = new DatagramSocket(ProtocolController.PROTOCOL_PORT);
-			// Listen to the PROTOCOL_PORT for any incoming datagrams
-			while (true) {
-				byte[] buf = new byte[2048];
-				DatagramPacket packet = new DatagramPacket(buf, buf.length);
-				ss.receive(packet);
-				ByteArrayInputStream input = new ByteArrayInputStream(buf);
-				Message m = Message.parseDelimitedFrom(input);
-
-				// If the message is a LIVENESS_CHECK just reply with an empty
-				// datagram to prove liveness
-				if (m.getType() == MessageType.LIVENESS_CHECK) {
-					byte[] rep = new byte[64];
-					DatagramPacket pack = new DatagramPacket(rep, rep.length,
-							packet.getAddress(), packet.getPort());
-					ss.send(pack);
-				} else { // Otherwise just put it in the blocking queue to
-							// forward it to the ProtocolController
-					incomingQueue.add(new TransferableMessage(m, packet
-							.getAddress(), false));
-				}
-			}
+			channel = DatagramChannel.open();
+			channel.socket().bind(new InetSocketAddress(port));
 		} catch (IOException e) {
 			// TODO Must fix this to locate the exact case of the exception
+			return;
+		}
+		// start the additional receiver threads. They share the channel, so
+		// they all stop once it is closed
+		for (int i = 1; i < nThreads; i++) {
+			Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					receive();
+				}
+			});
+			t.setDaemon(true);
+			t.start();
 		}
+		receive();
 	}
-	
+
 	/**
-	 * Stops the message receiving service, by closing the datagram socket
+	 * Stops the message receiving service, by closing the datagram channel
 	 */
 	public void stopService() {
-		ss.close();
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+		} catch (IOException e) {
+
+		}
+	}
+
+	/**
+	 * Listens to the port of the receiver for any incoming datagrams until the
+	 * channel is closed
+	 */
+	private void receive() {
+		byte[] array = new byte[MessageSender.MAX_DATAGRAM_SIZE];
+		ByteBuffer buffer = ByteBuffer
+				.allocateDirect(MessageSender.MAX_DATAGRAM_SIZE);
+		byte[] replyArray = new byte[MessageSender.MAX_DATAGRAM_SIZE];
+		ByteBuffer replyBuffer = ByteBuffer
+				.allocateDirect(MessageSender.MAX_DATAGRAM_SIZE);
+
+		while (channel.isOpen()) {
+			InetSocketAddress source;
+			Message m;
+			try {
+				buffer.clear();
+				source = (InetSocketAddress) channel.receive(buffer);
+				buffer.flip();
+				int length = buffer.remaining();
+				buffer.get(array, 0, length);
+				// decode the length-delimited message straight from the
+				// reusable array
+				CodedInputStream input = CodedInputStream.newInstance(array, 0,
+						length);
+				int size = input.readRawVarint32();
+				int offset = input.getTotalBytesRead();
+				if (size < 0 || offset + size > length) {
+					continue;
+				}
+				m = Message.PARSER.parseFrom(array, offset, size);
+			} catch (IOException e) {
+				// either the channel was closed or the datagram was malformed.
+				// Malformed datagrams are dropped
+				continue;
+			} catch (RuntimeException e) {
+				logger.log(Level.WARNING, "Dropping a datagram that could not "
+						+ "be decoded", e);
+				continue;
+			}
+
+			try {
+				dispatch(m, source, replyArray, replyBuffer);
+			} catch (RuntimeException e) {
+				// only this datagram is lost, the thread keeps receiving
+				logger.log(Level.WARNING, "Dropping a datagram from "
+						+ source.getAddress() + " that could not be handled", e);
+			}
+		}
+	}
+
+	/**
+	 * Handles a well-formed datagram, replying to liveness checks and placing
+	 * any other protocol message in the incoming queue
+	 */
+	private void dispatch(Message m, InetSocketAddress source,
+			byte[] replyArray, ByteBuffer replyBuffer) {
+		// any well-formed datagram proves that its sender is alive
+		if (contacts != null) {
+			contacts.heardFrom(source.getAddress());
+		}
+
+		// If the message is a LIVENESS_CHECK reply with the id of the
+		// check to the protocol port of the remote node to prove liveness
+		if (m.getType() == MessageType.LIVENESS_CHECK) {
+			try {
+				Message reply = MessageBuilder.buildLivenessReplyMessage(m
+						.getProbeId());
+				MessageSender.encode(reply, replyArray, replyBuffer);
+				SocketAddress target = new InetSocketAddress(
+						source.getAddress(), port);
+				channel.send(replyBuffer, target);
+			} catch (IOException e) {
+				// the remote node will retry the check
+			}
+		} else if (m.getType() == MessageType.LIVENESS_REPLY) {
+			// replies to the liveness checks of the local node are
+			// matched by the prober
+			if (prober != null) {
+				prober.replyReceived(m, source.getAddress());
+			}
+		} else { // Otherwise just put it in the blocking queue to
+					// forward it to the ProtocolController. If the queue is
+					// full the datagram is dropped, as if it was lost
+			incomingQueue.offer(new TransferableMessage(m, source
+					.getAddress(), false));
+		}
 	}
 
 }
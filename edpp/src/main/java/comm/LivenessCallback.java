@@ -0,0 +1,31 @@
+package comm;
+
+import java.net.InetAddress;
+
+/**
+ * Interface for receiving the outcome of a liveness check made by a
+ * LivenessProber. The methods are called by a thread of the prober, so they
+ * should return quickly
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public interface LivenessCallback {
+
+	/**
+	 * Called when a remote node replied to a liveness check
+	 *
+	 * @param address
+	 *            the InetAddress of the remote node
+	 */
+	public void nodeAlive(InetAddress address);
+
+	/**
+	 * Called when a remote node did not reply to any of the attempts of a
+	 * liveness check
+	 *
+	 * @param address
+	 *            the InetAddress of the remote node
+	 */
+	public void nodeUnreachable(InetAddress address);
+}
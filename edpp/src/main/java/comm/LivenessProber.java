@@ -0,0 +1,273 @@
+package comm;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import comm.ProtocolMessage.Message;
+
+/**
+ * Class that checks asynchronously whether remote nodes are alive. Each
+ * liveness check is sent as a LIVENESS_CHECK datagram carrying a unique probe
+ * id and the remote node replies with a LIVENESS_REPLY carrying the same id,
+ * which arrives through the LightMessageReceiver. The check is retransmitted
+ * if no reply arrives in time and the caller is notified through a
+ * LivenessCallback once the remote node replies or all the attempts expire.
+ * Concurrent checks of the same node share a single probe
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class LivenessProber {
+
+	/**
+	 * The default time in milliseconds to wait for the reply to a single
+	 * attempt of a liveness check
+	 */
+	public static final long DEFAULT_PROBE_TIMEOUT = 3000;
+
+	/**
+	 * The default number of attempts made before a remote node is considered
+	 * unreachable
+	 */
+	public static final int DEFAULT_MAX_TRIES = 4;
+
+	private final MessageSender sender;
+	private final long probeTimeout;
+	private final int maxTries;
+	private final AtomicLong nextProbeId;
+	private final ConcurrentMap<Long, Probe> probes;
+	private final ConcurrentMap<InetAddress, Probe> probesByAddress;
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * Class constructor. The prober will use the default timeout and number of
+	 * attempts
+	 *
+	 * @param sender
+	 *            the MessageSender through which the liveness checks are sent
+	 */
+	public LivenessProber(MessageSender sender) {
+		this(sender, DEFAULT_PROBE_TIMEOUT, DEFAULT_MAX_TRIES);
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param sender
+	 *            the MessageSender through which the liveness checks are sent
+	 * @param probeTimeout
+	 *            the time in milliseconds to wait for the reply to a single
+	 *            attempt
+	 * @param maxTries
+	 *            the number of attempts made before a remote node is
+	 *            considered unreachable
+	 */
+	public LivenessProber(MessageSender sender, long probeTimeout, int maxTries) {
+		this.sender = sender;
+		this.probeTimeout = probeTimeout;
+		this.maxTries = maxTries;
+		this.nextProbeId = new AtomicLong();
+		this.probes = new ConcurrentHashMap<Long, Probe>();
+		this.probesByAddress = new ConcurrentHashMap<InetAddress, Probe>();
+		this.scheduler = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r);
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * Starts checking whether a remote node is alive. The method returns
+	 * immediately and the outcome is reported to the callback. If the node is
+	 * already being checked, the callback is attached to the pending probe
+	 *
+	 * @param address
+	 *            the InetAddress of the remote node
+	 * @param callback
+	 *            the LivenessCallback to be notified about the outcome
+	 * @return true if a new probe was started, or false if the callback was
+	 *         attached to a pending probe of the same node
+	 */
+	public boolean probe(InetAddress address, LivenessCallback callback) {
+		while (true) {
+			Probe p = probesByAddress.get(address);
+			if (p != null) {
+				if (p.addCallback(callback)) {
+					return false;
+				}
+				// the pending probe has just completed, so start a new one
+				probesByAddress.remove(address, p);
+				continue;
+			}
+			p = new Probe(nextProbeId.incrementAndGet(), address, callback);
+			if (probesByAddress.putIfAbsent(address, p) == null) {
+				probes.put(p.id, p);
+				attempt(p);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Handles the reply of a remote node to a liveness check. Replies that do
+	 * not match a pending probe, or that come from some address other than the
+	 * one probed, are ignored
+	 *
+	 * @param reply
+	 *            the received LIVENESS_REPLY message
+	 * @param address
+	 *            the InetAddress from which the reply was received
+	 */
+	public void replyReceived(Message reply, InetAddress address) {
+		Probe p = probes.get(reply.getProbeId());
+		if (p != null && p.address.equals(address)) {
+			// notify the callbacks from the thread of the prober, so that the
+			// receiver can keep handling datagrams
+			final Probe alive = p;
+			scheduler.execute(new Runnable() {
+				@Override
+				public void run() {
+					complete(alive, true);
+				}
+			});
+		}
+	}
+
+	/**
+	 *
+	 * @param address
+	 *            the InetAddress of a remote node
+	 * @return true if the remote node is currently being checked
+	 */
+	public boolean isProbing(InetAddress address) {
+		return probesByAddress.containsKey(address);
+	}
+
+	/**
+	 *
+	 * @return the maximum time in milliseconds a liveness check can take
+	 *         before the remote node is considered unreachable
+	 */
+	public long getProbeDuration() {
+		return probeTimeout * maxTries;
+	}
+
+	/**
+	 * Stops the prober. Pending probes are discarded without notifying their
+	 * callbacks
+	 */
+	public void stopService() {
+		scheduler.shutdownNow();
+		probes.clear();
+		probesByAddress.clear();
+	}
+
+	private void attempt(final Probe p) {
+		synchronized (p) {
+			if (p.completed) {
+				return;
+			}
+			p.tries++;
+		}
+		try {
+			Message m = MessageBuilder.buildLivenessMessage(p.id);
+			sender.sendDatagram(new TransferableMessage(m, p.address, false));
+		} catch (IOException e) {
+			// the attempt failed. It is handled as if the reply never arrived
+		}
+		ScheduledFuture<?> timeout = scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				expire(p);
+			}
+		}, probeTimeout, TimeUnit.MILLISECONDS);
+		synchronized (p) {
+			p.timeout = timeout;
+		}
+	}
+
+	private void expire(Probe p) {
+		boolean retry;
+		synchronized (p) {
+			retry = p.tries < maxTries;
+		}
+		if (retry) {
+			attempt(p);
+		} else {
+			complete(p, false);
+		}
+	}
+
+	private void complete(Probe p, boolean alive) {
+		List<LivenessCallback> callbacks = p.complete();
+		if (callbacks == null) {
+			// the probe has already completed
+			return;
+		}
+		probes.remove(p.id);
+		probesByAddress.remove(p.address, p);
+		for (LivenessCallback callback : callbacks) {
+			if (alive) {
+				callback.nodeAlive(p.address);
+			} else {
+				callback.nodeUnreachable(p.address);
+			}
+		}
+	}
+
+	private static class Probe {
+
+		final long id;
+		final InetAddress address;
+		final List<LivenessCallback> callbacks;
+		int tries;
+		boolean completed;
+		ScheduledFuture<?> timeout;
+
+		Probe(long id, InetAddress address, LivenessCallback callback) {
+			this.id = id;
+			this.address = address;
+			this.callbacks = new ArrayList<LivenessCallback>();
+			this.callbacks.add(callback);
+		}
+
+		synchronized boolean addCallback(LivenessCallback callback) {
+			if (completed) {
+				return false;
+			}
+			callbacks.add(callback);
+			return true;
+		}
+
+		/**
+		 * Marks the probe as completed and cancels its pending timeout
+		 *
+		 * @return the callbacks to be notified, or null if the probe had
+		 *         already completed
+		 */
+		synchronized List<LivenessCallback> complete() {
+			if (completed) {
+				return null;
+			}
+			completed = true;
+			if (timeout != null) {
+				timeout.cancel(false);
+			}
+			return callbacks;
+		}
+	}
+
+}
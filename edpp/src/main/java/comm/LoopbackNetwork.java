@@ -0,0 +1,189 @@
+package comm;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import comm.ProtocolMessage.Message;
+
+/**
+ * Simulated network connecting LoopbackTransports that run in the same
+ * process. Every message is delivered after a fixed latency, while best-effort
+ * messages are additionally dropped with a configurable probability. Reliable
+ * messages are never lost, since they wait for room whenever the incoming
+ * queue of their destination is full, and the messages between two nodes are
+ * delivered in the order they were sent
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class LoopbackNetwork {
+
+	/**
+	 * The time in milliseconds after which a liveness check of a node that is
+	 * not part of the network is considered to have failed, on top of the
+	 * round-trip latency
+	 */
+	public static final long PROBE_TIMEOUT = 100;
+
+	private final long latency;
+	private final double lossRate;
+	private final Random random;
+	private final ConcurrentMap<InetAddress, LoopbackTransport> transports;
+	private final AtomicInteger lastAddress;
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * Class constructor. Creates a network without any latency or loss
+	 */
+	public LoopbackNetwork() {
+		this(0, 0);
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param latency
+	 *            the time in milliseconds it takes for a message to be
+	 *            delivered
+	 * @param lossRate
+	 *            the probability that a best-effort message is lost
+	 */
+	public LoopbackNetwork(long latency, double lossRate) {
+		this.latency = latency;
+		this.lossRate = lossRate;
+		this.random = new Random();
+		this.transports = new ConcurrentHashMap<InetAddress, LoopbackTransport>();
+		this.lastAddress = new AtomicInteger();
+		this.scheduler = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r);
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * Generates a new address in the 10.0.0.0/8 range, which is not used by
+	 * any other node of the network
+	 *
+	 * @return the generated InetAddress
+	 */
+	public InetAddress nextAddress() {
+		int n = lastAddress.incrementAndGet();
+		byte[] address = { 10, (byte) (n >>> 16), (byte) (n >>> 8), (byte) n };
+		try {
+			return InetAddress.getByAddress(address);
+		} catch (UnknownHostException e) {
+			// cannot happen for an address of the proper length
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 *
+	 * @param address
+	 *            an InetAddress
+	 * @return true if a started transport is using the address
+	 */
+	public boolean isReachable(InetAddress address) {
+		return transports.containsKey(address);
+	}
+
+	/**
+	 *
+	 * @return the time in milliseconds it takes for a message to be delivered
+	 */
+	public long getLatency() {
+		return latency;
+	}
+
+	/**
+	 *
+	 * @return the maximum time in milliseconds a liveness check can take
+	 */
+	public long getProbeDuration() {
+		return 2 * latency + PROBE_TIMEOUT;
+	}
+
+	/**
+	 * Stops delivering any messages
+	 */
+	public void shutdown() {
+		scheduler.shutdownNow();
+		transports.clear();
+	}
+
+	void schedule(Runnable task, long delay) {
+		try {
+			scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// the network was shut down, so nothing is delivered any more
+		}
+	}
+
+	void register(LoopbackTransport transport) {
+		transports.put(transport.getAddress(), transport);
+	}
+
+	void unregister(LoopbackTransport transport) {
+		transports.remove(transport.getAddress(), transport);
+	}
+
+	void send(final Message m, final InetAddress source,
+			final InetAddress destination, final boolean reliable) {
+		if (!reliable && lossRate > 0 && random.nextDouble() < lossRate) {
+			return;
+		}
+		if (latency <= 0) {
+			deliver(m, source, destination, reliable);
+			return;
+		}
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				deliver(m, source, destination, reliable);
+			}
+		}, latency, TimeUnit.MILLISECONDS);
+	}
+
+	void probe(final InetAddress address, final LivenessCallback callback) {
+		// the callback is never called by the thread making the check, which
+		// might be iterating over the neighbors the callback modifies
+		if (isReachable(address)) {
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					callback.nodeAlive(address);
+				}
+			}, 2 * latency, TimeUnit.MILLISECONDS);
+		} else {
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					callback.nodeUnreachable(address);
+				}
+			}, getProbeDuration(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void deliver(Message m, InetAddress source,
+			InetAddress destination, boolean reliable) {
+		// messages to nodes that are not part of the network are lost
+		LoopbackTransport target = transports.get(destination);
+		if (target != null) {
+			target.receive(m, source, reliable);
+		}
+	}
+
+}
@@ -0,0 +1,224 @@
+package comm;
+
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import comm.ProtocolMessage.Message;
+
+/**
+ * Transport exchanging messages with other LoopbackTransports of the same
+ * process through a LoopbackNetwork, without using any sockets. It allows many
+ * protocol engines to run in a single process
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class LoopbackTransport implements Transport {
+
+	/**
+	 * The time in milliseconds after which the delivery of the reliable
+	 * messages that did not fit in the incoming queue is retried
+	 */
+	public static final long RETRY_INTERVAL = 10;
+
+	private Logger logger;
+	private final LoopbackNetwork network;
+	private final InetAddress address;
+	private volatile BlockingQueue<TransferableMessage> incomingQueue;
+	private volatile ContactTable contacts;
+	// the messages of each remote node waiting for room in the incoming queue
+	private final ConcurrentMap<InetAddress, Queue<TransferableMessage>> pending;
+	private final AtomicBoolean retryScheduled;
+	private final AtomicLong deferredCount;
+	private final AtomicLong droppedCount;
+
+	/**
+	 * Class constructor. The transport is assigned a new address of the
+	 * network
+	 *
+	 * @param network
+	 *            the LoopbackNetwork the transport is connected to
+	 */
+	public LoopbackTransport(LoopbackNetwork network) {
+		this(network, network.nextAddress());
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param network
+	 *            the LoopbackNetwork the transport is connected to
+	 * @param address
+	 *            the InetAddress of the transport in the network
+	 */
+	public LoopbackTransport(LoopbackNetwork network, InetAddress address) {
+		logger = Logger.getLogger(LoopbackTransport.class.getName());
+		this.network = network;
+		this.address = address;
+		this.pending = new ConcurrentHashMap<InetAddress, Queue<TransferableMessage>>();
+		this.retryScheduled = new AtomicBoolean();
+		this.deferredCount = new AtomicLong();
+		this.droppedCount = new AtomicLong();
+	}
+
+	@Override
+	public void start(BlockingQueue<TransferableMessage> incomingQueue,
+			ContactTable contacts) {
+		this.incomingQueue = incomingQueue;
+		this.contacts = contacts;
+		network.register(this);
+	}
+
+	@Override
+	public void sendReliably(Message m, InetAddress address) {
+		network.send(m, this.address, address, true);
+	}
+
+	@Override
+	public void sendBestEffort(Message m, InetAddress address) {
+		network.send(m, this.address, address, false);
+	}
+
+	@Override
+	public void sendReliably(Message m, Collection<InetAddress> addresses) {
+		for (InetAddress address : addresses) {
+			sendReliably(m, address);
+		}
+	}
+
+	@Override
+	public void sendBestEffort(Message m, Collection<InetAddress> addresses) {
+		for (InetAddress address : addresses) {
+			sendBestEffort(m, address);
+		}
+	}
+
+	@Override
+	public void probeLiveness(InetAddress address, LivenessCallback callback) {
+		network.probe(address, callback);
+	}
+
+	@Override
+	public long getProbeDuration() {
+		return network.getProbeDuration();
+	}
+
+	@Override
+	public void stop() {
+		network.unregister(this);
+	}
+
+	/**
+	 *
+	 * @return the InetAddress of the transport in the network
+	 */
+	public InetAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 *
+	 * @return the number of reliable messages that had to wait for room in the
+	 *         incoming queue
+	 */
+	public long getDeferredCount() {
+		return deferredCount.get();
+	}
+
+	/**
+	 *
+	 * @return the number of best-effort messages dropped because the incoming
+	 *         queue was full
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	void receive(Message m, InetAddress source, boolean reliable) {
+		if (contacts != null) {
+			contacts.heardFrom(source);
+		}
+		TransferableMessage tm = new TransferableMessage(m, source, reliable);
+		Queue<TransferableMessage> link = getLink(source);
+		// the message is delivered by the thread of the sending node, which
+		// must never wait for the queue of another node. A reliable message
+		// that does not fit is parked on its link until there is room, while
+		// a best-effort one is dropped
+		synchronized (link) {
+			if (link.isEmpty() && incomingQueue.offer(tm)) {
+				return;
+			}
+			if (!reliable) {
+				// it cannot overtake the parked messages of the same link
+				droppedCount.incrementAndGet();
+				return;
+			}
+			if (link.isEmpty()) {
+				logger.warning("The incoming queue is full. Parking the "
+						+ "reliable messages of " + source);
+			}
+			link.add(tm);
+			deferredCount.incrementAndGet();
+		}
+		scheduleRetry();
+	}
+
+	private Queue<TransferableMessage> getLink(InetAddress source) {
+		Queue<TransferableMessage> link = pending.get(source);
+		if (link == null) {
+			Queue<TransferableMessage> created = new ArrayDeque<TransferableMessage>();
+			link = pending.putIfAbsent(source, created);
+			if (link == null) {
+				link = created;
+			}
+		}
+		return link;
+	}
+
+	private void scheduleRetry() {
+		if (!retryScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		network.schedule(new Runnable() {
+			@Override
+			public void run() {
+				retryScheduled.set(false);
+				if (!deliverParked()) {
+					scheduleRetry();
+				}
+			}
+		}, RETRY_INTERVAL);
+	}
+
+	/**
+	 * Moves the parked messages of every link to the incoming queue, in the
+	 * order they arrived, for as long as there is room
+	 *
+	 * @return true if no message is left parked
+	 */
+	private boolean deliverParked() {
+		boolean delivered = true;
+		for (Queue<TransferableMessage> link : pending.values()) {
+			synchronized (link) {
+				TransferableMessage tm;
+				while ((tm = link.peek()) != null) {
+					if (!incomingQueue.offer(tm)) {
+						delivered = false;
+						break;
+					}
+					link.poll();
+				}
+			}
+		}
+		return delivered;
+	}
+
+}
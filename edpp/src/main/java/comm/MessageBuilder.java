@@ -1,13 +1,21 @@
 package comm;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 
+import com.google.protobuf.ByteString;
+
+import comm.ProtocolMessage.BatchedValue;
 import comm.ProtocolMessage.Message;
 import comm.ProtocolMessage.Message.Builder;
 import comm.ProtocolMessage.Message.MessageType;
 import comm.ProtocolMessage.SessionEvent;
 import comm.ProtocolMessage.SessionEvent.EventType;
+import domain.Id;
 import domain.Neighbor;
 import domain.Session;
 import domain.network.Node;
@@ -20,6 +28,15 @@ import domain.network.Node;
  */
 public class MessageBuilder {
 
+	/**
+	 * The length in bytes of a session id carried in its binary form
+	 */
+	public static final int SESSION_ID_LENGTH = 16;
+	/**
+	 * The maximum length in bytes of a node id carried in its binary form
+	 */
+	public static final int MAX_NODE_ID_LENGTH = 32;
+
 	/**
 	 * Builds a new message of type NEW
 	 * 
@@ -38,6 +55,30 @@ public class MessageBuilder {
 		return m;
 	}
 
+	/**
+	 * Builds a new message of type NEW, carrying the id that the Session
+	 * initiated by it should have, so that the requester can recognize the
+	 * Session once it is stored
+	 * 
+	 * @param sessionId
+	 *            the UUID of the Session to be initiated
+	 * @param numOfExecutions
+	 *            the total number of executions in the protocol run
+	 * @param numOfRounds
+	 *            the number of rounds in each protocol execution
+	 * @return the constructed NEW message
+	 * @see Message
+	 */
+	public static Message buildNewMessage(UUID sessionId, int numOfExecutions,
+			int numOfRounds) {
+		Message m = Message.newBuilder().setType(MessageType.NEW)
+				.setRawSession(toByteString(sessionId))
+				.setTotalNumberOfExecutions(numOfExecutions)
+				.setRound(numOfRounds).build();
+
+		return m;
+	}
+
 	/**
 	 * Builds a new message of type INIT
 	 * 
@@ -69,6 +110,39 @@ public class MessageBuilder {
 		return m;
 	}
 
+	/**
+	 * Builds a new message of type INIT, carrying the ids of the local node and
+	 * the session in their compact binary form
+	 * 
+	 * @param nodeId
+	 *            the id of the local node
+	 * @param sessionId
+	 *            the UUID of the session
+	 * @param currentExecution
+	 *            the number of the execution for which this INIT message is
+	 *            sent
+	 * @param totalNumOfExecutions
+	 *            the total number of execution in the current session
+	 * @param numOfRounds
+	 *            the total number of rounds in each execution of the session
+	 * @param value
+	 *            the computed value that will be sent along with the message
+	 * @return the constructed INIT message
+	 * @see Message
+	 */
+	public static Message buildInitMessage(Id nodeId, UUID sessionId,
+			int currentExecution, int totalNumOfExecutions, int numOfRounds,
+			double value) {
+		Message m = Message.newBuilder().setRawNodeId(toByteString(nodeId))
+				.setType(MessageType.INIT)
+				.setRawSession(toByteString(sessionId))
+				.setExecution(currentExecution)
+				.setTotalNumberOfExecutions(totalNumOfExecutions)
+				.setRound(numOfRounds).setVal(value).build();
+
+		return m;
+	}
+
 	/**
 	 * Builds a new message of type NEXT
 	 * 
@@ -95,6 +169,169 @@ public class MessageBuilder {
 		return m;
 	}
 
+	/**
+	 * Builds a new message of type NEXT, carrying the ids of the local node and
+	 * the session in their compact binary form
+	 * 
+	 * @param nodeId
+	 *            the id of the local node
+	 * @param sessionId
+	 *            the UUID of the session
+	 * @param numOfExecution
+	 *            the number of the execution this message belongs to
+	 * @param round
+	 *            the current round
+	 * @param val
+	 *            the computed value that will be sent along with the message
+	 * @return the constructed NEXT message
+	 * @see Message
+	 */
+	public static Message buildNextMessage(Id nodeId, UUID sessionId,
+			int numOfExecution, int round, double val) {
+		Message m = Message.newBuilder().setRawNodeId(toByteString(nodeId))
+				.setType(MessageType.NEXT)
+				.setRawSession(toByteString(sessionId))
+				.setExecution(numOfExecution).setRound(round).setVal(val)
+				.build();
+
+		return m;
+	}
+
+	/**
+	 * Builds a new message of type TERMINATE, signaling that an execution has
+	 * converged and that no more rounds will be exchanged
+	 * 
+	 * @param nodeId
+	 *            the string representation of the local node id
+	 * @param sessionId
+	 *            the string representation of the session id
+	 * @param numOfExecution
+	 *            the number of the execution this message belongs to
+	 * @param round
+	 *            the final round of the execution
+	 * @return the constructed TERMINATE message
+	 * @see Message
+	 */
+	public static Message buildTerminateMessage(String nodeId,
+			String sessionId, int numOfExecution, int round) {
+		Message m = Message.newBuilder().setNodeId(nodeId)
+				.setType(MessageType.TERMINATE).setSession(sessionId)
+				.setExecution(numOfExecution).setRound(round).build();
+
+		return m;
+	}
+
+	/**
+	 * Builds a new message of type TERMINATE, carrying the ids of the local
+	 * node and the session in their compact binary form
+	 * 
+	 * @param nodeId
+	 *            the id of the local node
+	 * @param sessionId
+	 *            the UUID of the session
+	 * @param numOfExecution
+	 *            the number of the execution this message belongs to
+	 * @param round
+	 *            the final round of the execution
+	 * @return the constructed TERMINATE message
+	 * @see Message
+	 */
+	public static Message buildTerminateMessage(Id nodeId, UUID sessionId,
+			int numOfExecution, int round) {
+		Message m = Message.newBuilder().setRawNodeId(toByteString(nodeId))
+				.setType(MessageType.TERMINATE)
+				.setRawSession(toByteString(sessionId))
+				.setExecution(numOfExecution).setRound(round).build();
+
+		return m;
+	}
+
+	/**
+	 * Builds a new message of type BATCH, carrying the values of several NEXT
+	 * messages sent by the local node to the same remote node
+	 * 
+	 * @param nodeId
+	 *            the string representation of the local node id
+	 * @param nextMessages
+	 *            the NEXT messages whose values will be carried by the batch
+	 * @return the constructed BATCH message
+	 * @see Message
+	 */
+	public static Message buildBatchMessage(String nodeId,
+			List<Message> nextMessages) {
+		return batchBuilder(nextMessages).setNodeId(nodeId).build();
+	}
+
+	/**
+	 * Builds a new message of type BATCH, carrying the values of several NEXT
+	 * messages sent by the local node to the same remote node. The id of the
+	 * local node is taken from the first NEXT message, in the same form it
+	 * was encoded there
+	 * 
+	 * @param nextMessages
+	 *            the NEXT messages whose values will be carried by the batch
+	 * @return the constructed BATCH message
+	 * @see Message
+	 */
+	public static Message buildBatchMessage(List<Message> nextMessages) {
+		Message first = nextMessages.get(0);
+		Builder builder = batchBuilder(nextMessages);
+		if (first.hasRawNodeId()) {
+			builder.setRawNodeId(first.getRawNodeId());
+		} else {
+			builder.setNodeId(first.getNodeId());
+		}
+		return builder.build();
+	}
+
+	private static Builder batchBuilder(List<Message> nextMessages) {
+		Builder builder = Message.newBuilder().setType(MessageType.BATCH);
+
+		for (Message m : nextMessages) {
+			BatchedValue.Builder bv = BatchedValue.newBuilder()
+					.setExecution(m.getExecution()).setRound(m.getRound())
+					.setVal(m.getVal());
+			if (m.hasRawSession()) {
+				bv.setRawSession(m.getRawSession());
+			} else {
+				bv.setSession(m.getSession());
+			}
+			builder.addBatchedValues(bv);
+		}
+
+		return builder;
+	}
+
+	/**
+	 * Extracts the NEXT messages carried by a message of type BATCH
+	 * 
+	 * @param batch
+	 *            the BATCH message
+	 * @return a list with a NEXT message for every value carried by the batch
+	 */
+	public static List<Message> unpackBatchMessage(Message batch) {
+		List<Message> nextMessages = new ArrayList<Message>(
+				batch.getBatchedValuesCount());
+		for (BatchedValue bv : batch.getBatchedValuesList()) {
+			Builder builder = Message.newBuilder().setType(MessageType.NEXT)
+					.setExecution(bv.getExecution()).setRound(bv.getRound())
+					.setVal(bv.getVal());
+			// keep the ids in the form the remote node encoded them
+			if (batch.hasRawNodeId()) {
+				builder.setRawNodeId(batch.getRawNodeId());
+			} else {
+				builder.setNodeId(batch.getNodeId());
+			}
+			if (bv.hasRawSession()) {
+				builder.setRawSession(bv.getRawSession());
+			} else {
+				builder.setSession(bv.getSession());
+			}
+			nextMessages.add(builder.build());
+		}
+		return nextMessages;
+	}
+
 	/**
 	 * Builds a new message of type GOSSIP
 	 * 
@@ -123,6 +360,37 @@ public class MessageBuilder {
 		return builder.build();
 	}
 
+	/**
+	 * Builds a new message of type GOSSIP, carrying the ids of the local node
+	 * and the session in their compact binary form
+	 * 
+	 * @param nodeId
+	 *            the id of the local node
+	 * @param sessionId
+	 *            the UUID of the session
+	 * @param numOfExecution
+	 *            the number of the execution this message belongs to
+	 * @param eigenvalues
+	 *            the computed eigenvalues that the local node wants to share
+	 *            with its neighbors
+	 * @return the constructed GOSSIP message
+	 * @see Message
+	 */
+	public static Message buildGossipMessage(Id nodeId, UUID sessionId,
+			int numOfExecution, double[] eigenvalues) {
+		Builder builder = Message.newBuilder()
+				.setRawNodeId(toByteString(nodeId))
+				.setType(MessageType.GOSSIP)
+				.setRawSession(toByteString(sessionId))
+				.setExecution(numOfExecution);
+
+		for (int i = 0; i < eigenvalues.length; i++) {
+			builder = builder.addEigenvals(eigenvalues[i]);
+		}
+
+		return builder.build();
+	}
+
 	/**
 	 * Builds a new message to check that a remote node is alive
 	 * 
@@ -135,6 +403,35 @@ public class MessageBuilder {
 		return m;
 	}
 
+	/**
+	 * Builds a new message to check that a remote node is alive, carrying an
+	 * id that the reply of the remote node must contain
+	 *
+	 * @param probeId
+	 *            the id used for matching the reply to this liveness check
+	 * @return the constructed liveness check message
+	 * @see Message
+	 */
+	public static Message buildLivenessMessage(long probeId) {
+		Message m = Message.newBuilder().setType(MessageType.LIVENESS_CHECK)
+				.setProbeId(probeId).build();
+		return m;
+	}
+
+	/**
+	 * Builds a new message to reply to a liveness check
+	 *
+	 * @param probeId
+	 *            the id of the liveness check to which the message replies
+	 * @return the constructed liveness reply message
+	 * @see Message
+	 */
+	public static Message buildLivenessReplyMessage(long probeId) {
+		Message m = Message.newBuilder().setType(MessageType.LIVENESS_REPLY)
+				.setProbeId(probeId).build();
+		return m;
+	}
+
 	/**
 	 * Builds a new message to request for a previous value
 	 * 
@@ -157,6 +454,147 @@ public class MessageBuilder {
 		return m;
 	}
 
+	/**
+	 * Builds a new message to request for a previous value, carrying the ids
+	 * of the local node and the session in their compact binary form
+	 * 
+	 * @param nodeId
+	 *            the id of the local node
+	 * @param sessionId
+	 *            the UUID of the session
+	 * @param execNum
+	 *            the number of the execution for which the request is being
+	 *            made
+	 * @param round
+	 *            the round for which the value is requested
+	 * @return the constructed Message for requesting a previous value
+	 */
+	public static Message requestPreviousValMessage(Id nodeId,
+			UUID sessionId, int execNum, int round) {
+		Message m = Message.newBuilder().setType(MessageType.REQUEST_VAL)
+				.setRawNodeId(toByteString(nodeId))
+				.setRawSession(toByteString(sessionId)).setExecution(execNum)
+				.setRound(round).build();
+		return m;
+	}
+
+	/**
+	 * Checks whether the ids a received message carries can be decoded.
+	 * Messages failing the check must be dropped before any of their ids is
+	 * extracted
+	 * 
+	 * @param m
+	 *            a received message
+	 * @return true if the binary session id, if any, is SESSION_ID_LENGTH
+	 *         bytes long, the string session id, if any, is a UUID and the
+	 *         binary node id, if any, is not empty and at most
+	 *         MAX_NODE_ID_LENGTH bytes long, otherwise false
+	 */
+	public static boolean hasWellFormedIds(Message m) {
+		if (m.hasRawSession() && m.getRawSession().size() != SESSION_ID_LENGTH) {
+			return false;
+		}
+		if (!m.hasRawSession() && m.hasSession() && !isUuid(m.getSession())) {
+			return false;
+		}
+		if (m.hasRawNodeId()) {
+			int length = m.getRawNodeId().size();
+			if (length == 0 || length > MAX_NODE_ID_LENGTH) {
+				return false;
+			}
+		}
+		for (BatchedValue bv : m.getBatchedValuesList()) {
+			if (bv.hasRawSession()
+					&& bv.getRawSession().size() != SESSION_ID_LENGTH) {
+				return false;
+			}
+			if (!bv.hasRawSession() && bv.hasSession()
+					&& !isUuid(bv.getSession())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isUuid(String s) {
+		try {
+			UUID.fromString(s);
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Extracts the id of the node that sent a message, whether it was encoded
+	 * in its binary or in its string form
+	 * 
+	 * @param m
+	 *            a received message
+	 * @return the Id of the node that sent the message
+	 */
+	public static Id getNodeId(Message m) {
+		if (m.hasRawNodeId()) {
+			return new Id(m.getRawNodeId().toByteArray());
+		}
+		return new Id(m.getNodeId());
+	}
+
+	/**
+	 * Extracts the id of the session a message refers to, whether it was
+	 * encoded in its binary or in its string form
+	 * 
+	 * @param m
+	 *            a received message
+	 * @return the String representation of the session id
+	 */
+	public static String getSessionId(Message m) {
+		if (m.hasRawSession()) {
+			return toUuid(m.getRawSession()).toString();
+		}
+		return m.getSession();
+	}
+
+	/**
+	 * Extracts the id of the session a message refers to, whether it was
+	 * encoded in its binary or in its string form
+	 * 
+	 * @param m
+	 *            a received message
+	 * @return the UUID of the session, or null if the message does not refer
+	 *         to a session
+	 * @throws IllegalArgumentException
+	 *             if the session id of the message is malformed
+	 */
+	public static UUID getSessionUuid(Message m) {
+		if (m.hasRawSession()) {
+			return toUuid(m.getRawSession());
+		}
+		if (!m.hasSession()) {
+			return null;
+		}
+		return UUID.fromString(m.getSession());
+	}
+
+	private static ByteString toByteString(Id id) {
+		return ByteString.copyFrom(id.getByteRepresentation());
+	}
+
+	private static ByteString toByteString(UUID uuid) {
+		return ByteString.copyFrom(ByteBuffer.allocate(16)
+				.putLong(uuid.getMostSignificantBits())
+				.putLong(uuid.getLeastSignificantBits()).array());
+	}
+
+	private static UUID toUuid(ByteString bytes) {
+		if (bytes.size() != SESSION_ID_LENGTH) {
+			throw new IllegalArgumentException("A session id must be "
+					+ SESSION_ID_LENGTH + " bytes long, not " + bytes.size());
+		}
+		ByteBuffer buffer = bytes.asReadOnlyByteBuffer();
+		return new UUID(buffer.getLong(), buffer.getLong());
+	}
+
 	/**
 	 * Build a message of type SessionEvent which will be used by the
 	 * SessionListener to notify listers that a change has occurred in some
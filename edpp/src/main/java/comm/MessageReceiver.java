@@ -2,68 +2,458 @@ package comm;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.protobuf.InvalidProtocolBufferException;
 
 import comm.ProtocolMessage.Message;
 import core.ProtocolController;
 
 /**
  * Class that is responsible for receiving incoming protocol messages through
- * TCP connections and forwarding them to the protocol controller
- * 
+ * TCP connections and forwarding them to the protocol controller. Remote nodes
+ * keep their connections open, so the receiver multiplexes all the inbound
+ * connections on a single Selector and decodes the length-delimited messages of
+ * each connection as their bytes arrive. A slow or stalled remote node
+ * therefore never blocks the messages of any other node. When the incoming
+ * queue is full, a connection stops being read until there is room for its
+ * next message, so that the remote node is slowed down by TCP flow control
+ * instead of having its messages dropped
+ *
  * @author Xenofon Foukas
- * 
+ *
  */
 public class MessageReceiver implements Runnable {
 
+	/**
+	 * The default maximum length of the queue of pending TCP connections
+	 */
+	public static final int DEFAULT_BACKLOG = 1024;
+
+	/**
+	 * The time in milliseconds after which an idle inbound connection is
+	 * closed. It should be longer than the idle timeout of the ConnectionPool
+	 * of the sending side
+	 */
+	public static final int IDLE_TIMEOUT = 60000;
+
+	/**
+	 * The maximum size in bytes of a single message. A remote node sending a
+	 * larger message is considered faulty and its connection is closed
+	 */
+	public static final int MAX_MESSAGE_SIZE = 1024 * 1024;
+
+	/**
+	 * The time in milliseconds after which the connections waiting for room
+	 * in the incoming queue try to deliver their next message again
+	 */
+	public static final int RETRY_INTERVAL = 10;
+
+	private static final int INITIAL_BUFFER_SIZE = 4096;
+
+	private Logger logger;
 	private BlockingQueue<TransferableMessage> incomingQueue;
-	private ServerSocket ss;
-	private Socket incomingSocket;
+	private ContactTable contacts;
+	private final int backlog;
+	private final int port;
+	private volatile Selector selector;
+	private volatile ServerSocketChannel ss;
+	// the connections that are not read until their next message fits in the
+	// incoming queue. Only accessed by the selector thread
+	private final List<SelectionKey> stalledKeys;
+	private final AtomicLong stalledCount;
 
 	/**
-	 * Class constructor
-	 * 
+	 * Class constructor. The receiver will use the default backlog for pending
+	 * connections
+	 *
 	 * @param incomingQueue
 	 *            the queue, where the incoming messages will be placed
 	 */
 	public MessageReceiver(BlockingQueue<TransferableMessage> incomingQueue) {
+		this(incomingQueue, DEFAULT_BACKLOG);
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param incomingQueue
+	 *            the queue, where the incoming messages will be placed
+	 * @param backlog
+	 *            the maximum length of the queue of pending TCP connections
+	 */
+	public MessageReceiver(BlockingQueue<TransferableMessage> incomingQueue,
+			int backlog) {
+		this(incomingQueue, backlog, ProtocolController.PROTOCOL_PORT);
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param incomingQueue
+	 *            the queue, where the incoming messages will be placed
+	 * @param backlog
+	 *            the maximum length of the queue of pending TCP connections
+	 * @param port
+	 *            the port on which the receiver listens for connections
+	 */
+	public MessageReceiver(BlockingQueue<TransferableMessage> incomingQueue,
+			int backlog, int port) {
+		this(incomingQueue, backlog, port, null);
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param incomingQueue
+	 *            the queue, where the incoming messages will be placed
+	 * @param backlog
+	 *            the maximum length of the queue of pending TCP connections
+	 * @param port
+	 *            the port on which the receiver listens for connections
+	 * @param contacts
+	 *            the ContactTable in which the remote nodes are recorded
+	 *            whenever they send data, or null
+	 */
+	public MessageReceiver(BlockingQueue<TransferableMessage> incomingQueue,
+			int backlog, int port, ContactTable contacts) {
+		logger = Logger.getLogger(MessageReceiver.class.getName());
 		this.incomingQueue = incomingQueue;
+		this.backlog = backlog;
+		this.port = port;
+		this.contacts = contacts;
+		this.stalledKeys = new ArrayList<SelectionKey>();
+		this.stalledCount = new AtomicLong();
 	}
 
 	@Override
 	public void run() {
-		InetAddress address;
 		try {
-			// Accept up to 100 concurrent TCP connections. This could probably
-			// be increased more
-			ss = new ServerSocket(ProtocolController.PROTOCOL_PORT, 100);
-			while (true) {
-				incomingSocket = ss.accept();
-				address = incomingSocket.getInetAddress();
-				Message pm = Message.parseFrom(incomingSocket.getInputStream());
-
-				// place the message in the incoming queue to be handled by the
-				// ProtocolController
-				incomingQueue.add(new TransferableMessage(pm, address, true));
-				incomingSocket.close();
+			selector = Selector.open();
+			ss = ServerSocketChannel.open();
+			ss.socket().setReuseAddress(true);
+			ss.socket().bind(new InetSocketAddress(port), backlog);
+			ss.configureBlocking(false);
+			ss.register(selector, SelectionKey.OP_ACCEPT);
+
+			long lastSweep = System.currentTimeMillis();
+			while (ss.isOpen()) {
+				selector.select(stalledKeys.isEmpty() ? IDLE_TIMEOUT
+						: RETRY_INTERVAL);
+				Iterator<SelectionKey> iter = selector.selectedKeys()
+						.iterator();
+				while (iter.hasNext()) {
+					SelectionKey key = iter.next();
+					iter.remove();
+					// a failure is confined to the connection it occurred on
+					try {
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							accept();
+						} else if (key.isReadable()) {
+							read(key);
+						}
+					} catch (IOException e) {
+						handleFailure(key, e);
+					} catch (RuntimeException e) {
+						handleFailure(key, e);
+					}
+				}
+				resumeStalledConnections();
+				// close the connections that remote nodes no longer use
+				if (System.currentTimeMillis() - lastSweep > IDLE_TIMEOUT) {
+					closeIdleConnections();
+					lastSweep = System.currentTimeMillis();
+				}
 			}
 		} catch (IOException e) {
-			// TODO Must fix this to locate the exact case of the exception
+			if (ss == null || ss.isOpen()) {
+				logger.log(Level.SEVERE, "The TCP receiver stopped", e);
+			}
+		} finally {
+			closeAll();
 		}
+	}
 
+	/**
+	 *
+	 * @return the number of times a connection stopped being read because the
+	 *         incoming queue was full
+	 */
+	public long getStalledCount() {
+		return stalledCount.get();
 	}
 
 	/**
-	 * Stops the message receiving service, by closing the server socket
+	 * Stops the message receiving service, by closing the server socket and
+	 * all the open inbound connections
 	 */
 	public void stopService() {
 		try {
-			ss.close();
+			if (ss != null) {
+				ss.close();
+			}
+		} catch (IOException e) {
+
+		}
+		if (selector != null) {
+			selector.wakeup();
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel sc;
+		// accept all the pending connections
+		while ((sc = ss.accept()) != null) {
+			try {
+				sc.configureBlocking(false);
+				sc.socket().setTcpNoDelay(true);
+				sc.register(selector, SelectionKey.OP_READ, new Connection(sc
+						.socket().getInetAddress()));
+			} catch (IOException e) {
+				// only the new connection is dropped. The remote node will open
+				// another one if required
+				logger.log(Level.WARNING, "Could not set up an inbound connection",
+						e);
+				sc.close();
+			}
+		}
+	}
+
+	/**
+	 * Handles a failure that occurred while serving a single key. A failed
+	 * inbound connection is closed, while a failure of the server socket is
+	 * only logged, so that the connections already open are not affected
+	 */
+	private void handleFailure(SelectionKey key, Exception e) {
+		if (key.channel() == ss) {
+			if (ss.isOpen()) {
+				logger.log(Level.WARNING, "Could not accept a connection", e);
+			}
+			return;
+		}
+		logger.log(Level.WARNING, "Closing a failed inbound connection", e);
+		close(key);
+	}
+
+	private void read(SelectionKey key) {
+		SocketChannel sc = (SocketChannel) key.channel();
+		Connection c = (Connection) key.attachment();
+		try {
+			int n;
+			while ((n = sc.read(c.buffer)) > 0) {
+				c.lastRead = System.currentTimeMillis();
+				if (contacts != null) {
+					contacts.heardFrom(c.address);
+				}
+				if (!decode(c)) {
+					stall(key);
+					return;
+				}
+			}
+			if (n < 0) {
+				// the remote node closed the connection
+				close(key);
+			}
+		} catch (IOException e) {
+			// the connection was reset or the remote node sent a malformed
+			// message. The remote node will open a new one if required
+			close(key);
+		}
+	}
+
+	/**
+	 * Stops reading from a connection whose next message does not fit in the
+	 * incoming queue. The selector never waits for room, since that would
+	 * stall every connection
+	 */
+	private void stall(SelectionKey key) {
+		key.interestOps(0);
+		stalledKeys.add(key);
+		stalledCount.incrementAndGet();
+		logger.warning("The incoming queue is full. Pausing the connection of "
+				+ ((Connection) key.attachment()).address);
+	}
+
+	/**
+	 * Delivers the messages the stalled connections were holding, for as long
+	 * as there is room in the incoming queue, and reads again from the
+	 * connections that have nothing left to deliver
+	 */
+	private void resumeStalledConnections() {
+		for (Iterator<SelectionKey> iter = stalledKeys.iterator(); iter
+				.hasNext();) {
+			SelectionKey key = iter.next();
+			if (!key.isValid()) {
+				iter.remove();
+				continue;
+			}
+			Connection c = (Connection) key.attachment();
+			try {
+				if (!incomingQueue.offer(c.stalled)) {
+					continue;
+				}
+				c.stalled = null;
+				if (decode(c)) {
+					c.lastRead = System.currentTimeMillis();
+					key.interestOps(SelectionKey.OP_READ);
+					iter.remove();
+				}
+			} catch (IOException e) {
+				iter.remove();
+				handleFailure(key, e);
+			} catch (RuntimeException e) {
+				iter.remove();
+				handleFailure(key, e);
+			}
+		}
+	}
+
+	/**
+	 * Decodes all the complete messages currently held in the buffer of a
+	 * connection and places them in the incoming queue. Any trailing partial
+	 * message is kept in the buffer until the rest of its bytes arrive
+	 *
+	 * @return true if all the complete messages were placed in the incoming
+	 *         queue, false if the queue was full, in which case the message
+	 *         that did not fit is kept by the connection
+	 */
+	private boolean decode(Connection c) throws IOException {
+		ByteBuffer buf = c.buffer;
+		int pending = 0;
+		buf.flip();
+		while (buf.hasRemaining()) {
+			int start = buf.position();
+			int length = readRawVarint32(buf);
+			if (length > MAX_MESSAGE_SIZE) {
+				throw new InvalidProtocolBufferException(
+						"Message exceeds the maximum allowed size");
+			}
+			if (length < 0 || buf.remaining() < length) {
+				// wait for the rest of the message to arrive
+				buf.position(start);
+				pending = length;
+				break;
+			}
+			Message pm = Message.PARSER.parseFrom(buf.array(),
+					buf.arrayOffset() + buf.position(), length);
+			buf.position(buf.position() + length);
+			// place the message in the incoming queue to be handled by the
+			// ProtocolController
+			TransferableMessage tm = new TransferableMessage(pm, c.address,
+					true);
+			if (!incomingQueue.offer(tm)) {
+				c.stalled = tm;
+				break;
+			}
+		}
+		buf.compact();
+		c.ensureCapacity(pending);
+		return c.stalled == null;
+	}
+
+	/**
+	 * Reads the varint length prefix of a delimited message
+	 *
+	 * @return the decoded length, or -1 if the buffer does not contain the
+	 *         whole prefix yet
+	 */
+	private static int readRawVarint32(ByteBuffer buf)
+			throws InvalidProtocolBufferException {
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			if (!buf.hasRemaining()) {
+				return -1;
+			}
+			byte b = buf.get();
+			result |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return result;
+			}
+		}
+		throw new InvalidProtocolBufferException("Malformed message length");
+	}
+
+	private void closeIdleConnections() {
+		long now = System.currentTimeMillis();
+		for (SelectionKey key : selector.keys()) {
+			Object attachment = key.attachment();
+			// a stalled connection is not read, so it is never idle
+			if (attachment instanceof Connection
+					&& ((Connection) attachment).stalled == null
+					&& now - ((Connection) attachment).lastRead > IDLE_TIMEOUT) {
+				close(key);
+			}
+		}
+	}
+
+	private void closeAll() {
+		if (selector == null) {
+			return;
+		}
+		try {
+			for (SelectionKey key : selector.keys()) {
+				close(key);
+			}
+			selector.close();
+		} catch (IOException e) {
+
+		}
+	}
+
+	private static void close(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
 		} catch (IOException e) {
 
 		}
 	}
 
+	private static class Connection {
+
+		final InetAddress address;
+		ByteBuffer buffer;
+		long lastRead;
+		// the decoded message waiting for room in the incoming queue
+		TransferableMessage stalled;
+
+		Connection(InetAddress address) {
+			this.address = address;
+			this.buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+			this.lastRead = System.currentTimeMillis();
+		}
+
+		/**
+		 * Grows the buffer of the connection if it cannot hold a message of
+		 * the given length along with its length prefix. The buffer is
+		 * expected to be ready for writing
+		 */
+		void ensureCapacity(int length) {
+			int required = length + 5;
+			if (buffer.capacity() >= required) {
+				return;
+			}
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(required,
+					2 * buffer.capacity()));
+			buffer.flip();
+			larger.put(buffer);
+			buffer = larger;
+		}
+	}
+
 }
@@ -1,122 +1,674 @@
 package comm;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.google.protobuf.CodedOutputStream;
+
+import comm.ProtocolMessage.Message;
+import comm.ProtocolMessage.Message.MessageType;
 import core.ProtocolController;
 
 /**
  * Class that is responsible for forwarding protocol messages from the protocol
- * controller to remote nodes either by using TCP or UDP
- * 
+ * controller to remote nodes either by using TCP or UDP. TCP connections are
+ * kept open in a ConnectionPool and reused for all the messages sent to the
+ * same remote node, while all the datagrams, including liveness checks, are
+ * sent through a single bound DatagramChannel. NEXT messages waiting to be sent
+ * to the same remote node are coalesced into a single BATCH datagram. Since
+ * the NEXT messages of a round are queued one at a time, the sender lingers
+ * for a short while after the first of them, so that the messages queued
+ * together end up in the same batch.
+ * Each remote node has its own queue of outgoing messages, drained by a small
+ * pool of workers, so that an unreachable node only delays its own messages.
+ * TCP connections are established without blocking, so a worker is never held
+ * by a remote node that does not reply while the connection is being made. The
+ * messages of such a node are resumed by the ConnectionPool once its
+ * connection is ready.
+ * Failed messages are retransmitted with an exponential backoff and are
+ * abandoned after a maximum number of attempts or once their deadline expires,
+ * in which case the DeadLetterListeners of the sender are notified
+ *
  * @author Xenofon Foukas
- * 
+ *
  */
 public class MessageSender implements Runnable {
 
+	/**
+	 * The maximum size in bytes of a datagram sent or received by the protocol
+	 */
+	public static final int MAX_DATAGRAM_SIZE = 2048;
+
+	/**
+	 * The maximum number of NEXT values carried by a single BATCH message
+	 */
+	public static final int MAX_BATCH_SIZE = 32;
+
+	/**
+	 * The default time in milliseconds the sender waits for more messages to
+	 * coalesce, once a NEXT message is queued
+	 */
+	public static final long DEFAULT_LINGER = 5;
+
+	/**
+	 * The default number of threads sending the queued messages
+	 */
+	public static final int DEFAULT_WORKERS = 4;
+
+	/**
+	 * The default number of attempts made to send a message before it is
+	 * abandoned
+	 */
+	public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+	/**
+	 * The default time in milliseconds after which a message that has not been
+	 * sent yet is abandoned
+	 */
+	public static final long DEFAULT_DEADLINE = 30000;
+
+	/**
+	 * The time in milliseconds to wait before the first retransmission of a
+	 * message. It is doubled after every failed attempt
+	 */
+	public static final long INITIAL_BACKOFF = 100;
+
+	/**
+	 * The maximum time in milliseconds to wait between two attempts
+	 */
+	public static final long MAX_BACKOFF = 5000;
+
+	private static final int MAX_DRAINED_MESSAGES = 1024;
+
 	private BlockingQueue<TransferableMessage> outgoingQueue;
-	private Socket s;
+	private final int port;
+	private final int maxAttempts;
+	private final long deadline;
+	private final long linger;
+	private ConnectionPool pool;
+	private DatagramChannel channel;
+	private final ConcurrentMap<InetAddress, Destination> destinations;
+	private final ScheduledExecutorService workers;
+	private final List<DeadLetterListener> deadLetterListeners;
+
+	// buffers used by each worker for encoding datagrams
+	private final ThreadLocal<EncodingBuffers> sendBuffers;
+
+	// buffers used for encoding the datagrams that bypass the queue
+	private final EncodingBuffers directBuffers;
 
 	/**
-	 * Constructor class
-	 * 
+	 * Constructor class. Messages are sent to the PROTOCOL_PORT of the remote
+	 * nodes, using the default number of workers and retransmission limits
+	 *
 	 * @param outgoigQueue
 	 *            the queue, where the incoming messages will be placed
 	 */
 	public MessageSender(BlockingQueue<TransferableMessage> outgoigQueue) {
+		this(outgoigQueue, ProtocolController.PROTOCOL_PORT, DEFAULT_WORKERS,
+				DEFAULT_MAX_ATTEMPTS, DEFAULT_DEADLINE);
+	}
+
+	/**
+	 * Constructor class
+	 *
+	 * @param outgoigQueue
+	 *            the queue, where the incoming messages will be placed
+	 * @param port
+	 *            the port of the remote nodes the messages are sent to
+	 * @param nWorkers
+	 *            the number of threads sending the queued messages. The
+	 *            messages of a single remote node are always sent by one
+	 *            thread at a time
+	 * @param maxAttempts
+	 *            the number of attempts made to send a message before it is
+	 *            abandoned
+	 * @param deadline
+	 *            the time in milliseconds after which a message that has not
+	 *            been sent yet is abandoned
+	 */
+	public MessageSender(BlockingQueue<TransferableMessage> outgoigQueue,
+			int port, int nWorkers, int maxAttempts, long deadline) {
+		this(outgoigQueue, port, nWorkers, maxAttempts, deadline,
+				DEFAULT_LINGER);
+	}
+
+	/**
+	 * Constructor class
+	 *
+	 * @param outgoigQueue
+	 *            the queue, where the incoming messages will be placed
+	 * @param port
+	 *            the port of the remote nodes the messages are sent to
+	 * @param nWorkers
+	 *            the number of threads sending the queued messages. The
+	 *            messages of a single remote node are always sent by one
+	 *            thread at a time
+	 * @param maxAttempts
+	 *            the number of attempts made to send a message before it is
+	 *            abandoned
+	 * @param deadline
+	 *            the time in milliseconds after which a message that has not
+	 *            been sent yet is abandoned
+	 * @param linger
+	 *            the time in milliseconds to wait for more messages to
+	 *            coalesce once a NEXT message is queued, or 0 to only coalesce
+	 *            the messages already queued
+	 */
+	public MessageSender(BlockingQueue<TransferableMessage> outgoigQueue,
+			int port, int nWorkers, int maxAttempts, long deadline, long linger) {
 		this.outgoingQueue = outgoigQueue;
+		this.port = port;
+		this.maxAttempts = maxAttempts;
+		this.deadline = deadline;
+		this.linger = linger;
+		this.pool = new ConnectionPool(port);
+		this.destinations = new ConcurrentHashMap<InetAddress, Destination>();
+		this.workers = Executors.newScheduledThreadPool(nWorkers,
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r);
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		this.deadLetterListeners = new CopyOnWriteArrayList<DeadLetterListener>();
+		this.sendBuffers = new ThreadLocal<EncodingBuffers>() {
+			@Override
+			protected EncodingBuffers initialValue() {
+				return new EncodingBuffers();
+			}
+		};
+		this.directBuffers = new EncodingBuffers();
 	}
 
 	@Override
 	public void run() {
-		while (true) {
-			TransferableMessage m = null;
+		long lastSweep = System.currentTimeMillis();
+		List<TransferableMessage> pending = new ArrayList<TransferableMessage>();
+		while (!workers.isShutdown()) {
 			try {
+				// periodically close any pooled connections and forget the
+				// remote nodes that are no longer used
+				if (System.currentTimeMillis() - lastSweep > ConnectionPool.DEFAULT_IDLE_TIMEOUT) {
+					pool.closeIdleConnections();
+					removeIdleDestinations();
+					lastSweep = System.currentTimeMillis();
+				}
 				// Take a message from the queue of messages waiting to be
 				// transferred
-				m = outgoingQueue.take();
-				if (m.getSendReliably()) { // if the message needs to be sent
-											// through TCP
-					s = new Socket();
-					// set a timeout to the socket, because the remote node
-					// might take to long to reply
-					s.connect(new InetSocketAddress(m.getAddress(),
-							ProtocolController.PROTOCOL_PORT), 10000);
-					m.getMessage().writeTo(s.getOutputStream());
-					s.close();
-				} else { // if the message uses the UDP protocol
-					// create a datagram socket and send it
-					ByteArrayOutputStream output = new ByteArrayOutputStream(
-							2048);
-					m.getMessage().writeDelimitedTo(output);
-					DatagramSocket socket = new DatagramSocket();
-					byte[] buf = output.toByteArray();
-					DatagramPacket packet = new DatagramPacket(buf, buf.length,
-							m.getAddress(), ProtocolController.PROTOCOL_PORT);
-					socket.send(packet);
-					socket.close();
+				TransferableMessage m = outgoingQueue.poll(
+						ConnectionPool.DEFAULT_IDLE_TIMEOUT,
+						TimeUnit.MILLISECONDS);
+				if (m == null) {
+					continue;
 				}
-			} catch (IOException e) {
-				// if the message is not sent for any reason (timer expiry, io
-				// error etc) put it back to the queue and try to retransmit it
-				// later
-				try {
-					outgoingQueue.put(m);
-				} catch (InterruptedException e1) {
-					e1.printStackTrace();
+				// take along any other message already waiting, so that the
+				// NEXT messages for the same remote node can be sent together
+				pending.clear();
+				pending.add(m);
+				outgoingQueue.drainTo(pending, MAX_DRAINED_MESSAGES);
+				if (linger > 0 && hasCoalescableMessage(pending)) {
+					collectLingering(pending);
+				}
+				// hand the messages to the queues of their remote nodes, so
+				// that a slow or unreachable node only delays its own messages
+				for (TransferableMessage tm : coalesceNextMessages(pending)) {
+					if (tm.hasMultipleDestinations()) {
+						// the copies for each remote node share the same
+						// serialized bytes
+						for (TransferableMessage copy : tm.split()) {
+							submit(copy);
+						}
+					} else {
+						submit(tm);
+					}
 				}
 			} catch (InterruptedException e) {
 				e.printStackTrace();
+			} catch (RejectedExecutionException e) {
+				// the sender was stopped
+			}
+		}
+	}
+
+	/**
+	 * Keeps taking messages from the outgoing queue until the linger time
+	 * since the call expires, so that the NEXT messages queued one at a time
+	 * for the same tick are coalesced together
+	 */
+	private void collectLingering(List<TransferableMessage> pending)
+			throws InterruptedException {
+		long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(linger);
+		long remaining;
+		while (pending.size() < MAX_DRAINED_MESSAGES
+				&& (remaining = end - System.nanoTime()) > 0) {
+			TransferableMessage m = outgoingQueue.poll(remaining,
+					TimeUnit.NANOSECONDS);
+			if (m == null) {
+				return;
+			}
+			pending.add(m);
+			outgoingQueue.drainTo(pending,
+					MAX_DRAINED_MESSAGES - pending.size());
+		}
+	}
+
+	private static boolean hasCoalescableMessage(
+			List<TransferableMessage> messages) {
+		for (TransferableMessage tm : messages) {
+			if (isCoalescable(tm)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isCoalescable(TransferableMessage tm) {
+		return !tm.getSendReliably()
+				&& tm.getMessage().getType() == MessageType.NEXT;
+	}
+
+	/**
+	 * Places a message in the queue of the remote node it is intended for. The
+	 * messages of each remote node are sent in the order they were submitted
+	 *
+	 * @param tm
+	 *            the message to be sent along with the address of the remote
+	 *            node
+	 */
+	public void submit(TransferableMessage tm) {
+		PendingMessage pm = new PendingMessage(tm);
+		Destination d;
+		while (true) {
+			d = destinations.get(tm.getAddress());
+			if (d == null) {
+				d = new Destination();
+				Destination previous = destinations.putIfAbsent(
+						tm.getAddress(), d);
+				if (previous != null) {
+					d = previous;
+				}
 			}
+			synchronized (d) {
+				// a removed destination no longer accepts messages, so that a
+				// remote node never has two queues drained at the same time
+				if (!d.removed) {
+					d.queue.add(pm);
+					break;
+				}
+			}
+		}
+		d.schedule();
+	}
+
+	/**
+	 * Adds a DeadLetterListener to be notified about abandoned messages
+	 *
+	 * @param listener
+	 *            the DeadLetterListener to be added
+	 */
+	public void addDeadLetterListener(DeadLetterListener listener) {
+		deadLetterListeners.add(listener);
+	}
+
+	/**
+	 * Removes a DeadLetterListener from the listeners of this sender
+	 *
+	 * @param listener
+	 *            the DeadLetterListener to be removed
+	 * @return true if the listener was removed, otherwise false
+	 */
+	public boolean removeDeadLetterListener(DeadLetterListener listener) {
+		return deadLetterListeners.remove(listener);
+	}
+
+	/**
+	 *
+	 * @return the number of messages submitted but not yet sent or abandoned
+	 */
+	public int getPendingMessages() {
+		int pending = 0;
+		for (Destination d : destinations.values()) {
+			pending += d.queue.size();
 		}
+		return pending;
 	}
 
 	/**
-	 * Checks whether a remote node is alive by sending a LIVENESS_CHECK message
-	 * through UDP
+	 * Replaces the NEXT messages that are sent through UDP to the same remote
+	 * node with BATCH messages carrying all their values, so that they are
+	 * transmitted in a single datagram. A NEXT message intended for several
+	 * remote nodes has its value batched with the rest of the values of each
+	 * one of them. The rest of the messages are returned unchanged
 	 * 
+	 * @param messages
+	 *            a list of messages waiting to be transmitted
+	 * @return the list of messages that should actually be transmitted
+	 */
+	static List<TransferableMessage> coalesceNextMessages(
+			List<TransferableMessage> messages) {
+		List<TransferableMessage> result = new ArrayList<TransferableMessage>(
+				messages.size());
+		Map<InetAddress, List<Message>> nextMessages = new LinkedHashMap<InetAddress, List<Message>>();
+
+		for (TransferableMessage tm : messages) {
+			if (!isCoalescable(tm)) {
+				result.add(tm);
+				continue;
+			}
+			Message m = tm.getMessage();
+			for (InetAddress address : tm.getAddresses()) {
+				List<Message> sameDestination = nextMessages.get(address);
+				if (sameDestination == null) {
+					sameDestination = new ArrayList<Message>();
+					nextMessages.put(address, sameDestination);
+				}
+				// a batch carries a single node id, so any NEXT message sent on
+				// behalf of some other id is transmitted on its own
+				if (sameDestination.isEmpty()
+						|| sameNodeId(sameDestination.get(0), m)) {
+					sameDestination.add(m);
+				} else if (tm.hasMultipleDestinations()) {
+					result.add(new TransferableMessage(m, address, false));
+				} else {
+					result.add(tm);
+				}
+			}
+		}
+
+		for (Map.Entry<InetAddress, List<Message>> entry : nextMessages
+				.entrySet()) {
+			List<Message> values = entry.getValue();
+			for (int i = 0; i < values.size(); i += MAX_BATCH_SIZE) {
+				addBatches(values.subList(i,
+						Math.min(i + MAX_BATCH_SIZE, values.size())),
+						entry.getKey(), result);
+			}
+		}
+		return result;
+	}
+
+	private static boolean sameNodeId(Message m1, Message m2) {
+		return m1.getNodeId().equals(m2.getNodeId())
+				&& m1.getRawNodeId().equals(m2.getRawNodeId());
+	}
+
+	private static void addBatches(List<Message> values, InetAddress address,
+			List<TransferableMessage> result) {
+		if (values.size() == 1) {
+			result.add(new TransferableMessage(values.get(0), address, false));
+			return;
+		}
+		Message batch = MessageBuilder.buildBatchMessage(values);
+		if (batch.getSerializedSize() + 5 > MAX_DATAGRAM_SIZE) {
+			// the batch does not fit in a datagram, so split it in two
+			int half = values.size() / 2;
+			addBatches(values.subList(0, half), address, result);
+			addBatches(values.subList(half, values.size()), address, result);
+		} else {
+			result.add(new TransferableMessage(batch, address, false));
+		}
+	}
+
+	/**
+	 * Sends a message to its remote node
+	 *
+	 * @return true if the message was sent, or false if the attempt failed
+	 *         and should be repeated later
+	 * @throws IllegalArgumentException
+	 *             if the message can never fit in a datagram
+	 */
+	private boolean send(TransferableMessage m) {
+		try {
+			if (m.getSendReliably()) { // if the message needs to be sent
+										// through TCP
+				// write the message to the pooled connection of the remote
+				// node, which the Destination has already established
+				pool.write(m);
+			} else { // if the message uses the UDP protocol
+				// encode it in the reusable buffer of this worker and send it
+				// through the shared channel
+				EncodingBuffers b = sendBuffers.get();
+				if (m.isEncoded()) {
+					// reuse the bytes shared by all the copies of the message
+					encode(m.getEncodedMessage(), b.buffer);
+				} else {
+					encode(m.getMessage(), b.array, b.buffer);
+				}
+				channel().send(b.buffer,
+						new InetSocketAddress(m.getAddress(), port));
+			}
+			return true;
+		} catch (IOException e) {
+			// the message was not sent for some reason (timer expiry, io error
+			// etc)
+			return false;
+		}
+	}
+
+	private void abandon(PendingMessage pm) {
+		for (DeadLetterListener listener : deadLetterListeners) {
+			listener.messageAbandoned(pm.message, pm.attempts);
+		}
+	}
+
+	private void removeIdleDestinations() {
+		Iterator<Map.Entry<InetAddress, Destination>> iter = destinations
+				.entrySet().iterator();
+		while (iter.hasNext()) {
+			Destination d = iter.next().getValue();
+			synchronized (d) {
+				if (!d.scheduled.get() && d.queue.isEmpty()) {
+					d.removed = true;
+					iter.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends a message through UDP immediately, without placing it in the queue
+	 * of outgoing messages. It is used for time-critical datagrams, like
+	 * liveness checks, and it can be called from any thread
+	 *
 	 * @param tm
-	 *            a liveness check message for a remote node
-	 * @return true if the remote node is alive
+	 *            the message to be sent along with the address of the remote
+	 *            node
+	 * @throws IOException
+	 *             if the datagram could not be sent
+	 */
+	public void sendDatagram(TransferableMessage tm) throws IOException {
+		synchronized (directBuffers) {
+			encode(tm.getMessage(), directBuffers.array, directBuffers.buffer);
+			channel().send(directBuffers.buffer,
+					new InetSocketAddress(tm.getAddress(), port));
+		}
+	}
+
+	/**
+	 * Stops the message sending service, by discarding the queued messages and
+	 * closing the datagram channel and all the pooled TCP connections
+	 */
+	public void stopService() {
+		workers.shutdownNow();
+		synchronized (this) {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+
+				}
+			}
+		}
+		pool.closeAll();
+	}
+
+	/**
+	 * Returns the channel through which all datagrams are sent, opening and
+	 * binding it to an ephemeral port on first use
+	 */
+	private synchronized DatagramChannel channel() throws IOException {
+		if (channel == null || !channel.isOpen()) {
+			channel = DatagramChannel.open();
+			channel.socket().bind(null);
+		}
+		return channel;
+	}
+
+	/**
+	 * Encodes a length-delimited message in a reusable array and copies it to
+	 * a reusable direct buffer, which is then ready to be sent
+	 */
+	static void encode(Message m, byte[] array, ByteBuffer buffer)
+			throws IOException {
+		int size = m.getSerializedSize();
+		if (CodedOutputStream.computeRawVarint32Size(size) + size > array.length) {
+			throw new IllegalArgumentException(
+					"The message does not fit in a single datagram");
+		}
+		CodedOutputStream output = CodedOutputStream.newInstance(array);
+		output.writeRawVarint32(size);
+		m.writeTo(output);
+		int length = array.length - output.spaceLeft();
+		buffer.clear();
+		buffer.put(array, 0, length);
+		buffer.flip();
+	}
+
+	/**
+	 * Copies an already encoded message to a reusable direct buffer, which is
+	 * then ready to be sent
 	 */
-	public static boolean makeLivenessCheck(TransferableMessage tm) {
-		ByteArrayOutputStream output;
-		int numOfTries = 0;
-		do {
+	static void encode(byte[] encoded, ByteBuffer buffer) {
+		if (encoded.length > buffer.capacity()) {
+			throw new IllegalArgumentException(
+					"The message does not fit in a single datagram");
+		}
+		buffer.clear();
+		buffer.put(encoded);
+		buffer.flip();
+	}
+
+	/**
+	 * The queue of the messages waiting to be sent to a single remote node. It
+	 * is drained by one worker at a time, so the messages are sent in order.
+	 * When an attempt fails the whole queue backs off, since the rest of its
+	 * messages would most probably fail as well
+	 */
+	private class Destination implements Runnable {
+
+		final Queue<PendingMessage> queue = new ConcurrentLinkedQueue<PendingMessage>();
+		final AtomicBoolean scheduled = new AtomicBoolean();
+		// guarded by the Destination itself
+		boolean removed;
+		// run by the ConnectionPool once the connection being established is
+		// ready
+		final Runnable resume = new Runnable() {
+			@Override
+			public void run() {
+				retry(0);
+			}
+		};
+
+		void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				workers.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			PendingMessage pm;
+			while ((pm = queue.peek()) != null) {
+				boolean sent;
+				try {
+					if (pm.message.getSendReliably()
+							&& !pool.connect(pm.message.getAddress(), resume)) {
+						// the connection is still being established. The pool
+						// resumes the Destination once it is ready, instead of
+						// holding the worker meanwhile
+						return;
+					}
+					sent = send(pm.message);
+				} catch (IOException e) {
+					// the connection could not be established
+					sent = false;
+				} catch (IllegalArgumentException e) {
+					// the message can never fit in a datagram, so there is no
+					// point in retransmitting it
+					queue.poll();
+					abandon(pm);
+					continue;
+				}
+				if (sent) {
+					queue.poll();
+					continue;
+				}
+				pm.attempts++;
+				if (pm.attempts >= maxAttempts
+						|| System.currentTimeMillis() - pm.submitted >= deadline) {
+					queue.poll();
+					abandon(pm);
+					continue;
+				}
+				// retry after an exponentially growing delay
+				retry(Math.min(MAX_BACKOFF,
+						INITIAL_BACKOFF << Math.min(pm.attempts - 1, 30)));
+				return;
+			}
+			scheduled.set(false);
+			// a message might have been added after the queue was found empty
+			if (!queue.isEmpty()) {
+				schedule();
+			}
+		}
+
+		private void retry(long delay) {
 			try {
-				output = new ByteArrayOutputStream(2048);
-				tm.getMessage().writeDelimitedTo(output);
-				// Create a datagram to send the liveness check message
-				DatagramSocket socket = new DatagramSocket();
-				byte[] buf = output.toByteArray();
-				DatagramPacket packet = new DatagramPacket(buf, buf.length,
-						tm.getAddress(), ProtocolController.PROTOCOL_PORT);
-				socket.send(packet);
-				// Wait for 3sec to receive a reply to the probe. It might be
-				// better to reduce this value. Need to check it
-				buf = new byte[64];
-				packet = new DatagramPacket(buf, buf.length);
-				socket.setSoTimeout(3000);
-				// if a reply is received the node is alive. no need to check
-				// the contents of the message
-				socket.receive(packet);
-				socket.close();
-				return true;
-			} catch (SocketTimeoutException ste) {
-				numOfTries++;
-			} catch (IOException e) {
-				// if the message was not sent increase the number of failed
-				// attempts
-				numOfTries++;
-			}
-		} while (numOfTries <= 3); // stop trying after 3 failed attempts
-		return false;
+				workers.schedule(this, delay, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// the sender was stopped
+			}
+		}
+	}
+
+	private static class PendingMessage {
+
+		final TransferableMessage message;
+		final long submitted;
+		int attempts;
+
+		PendingMessage(TransferableMessage message) {
+			this.message = message;
+			this.submitted = System.currentTimeMillis();
+		}
+	}
+
+	private static class EncodingBuffers {
+
+		final byte[] array = new byte[MAX_DATAGRAM_SIZE];
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
 	}
 
 }
@@ -104,6 +104,61 @@ public final class ProtocolMessage {
      * <code>repeated double eigenvals = 8 [packed = true];</code>
      */
     double getEigenvals(int index);
+
+    // repeated .comm.BatchedValue batchedValues = 9;
+    /**
+     * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+     */
+    java.util.List<comm.ProtocolMessage.BatchedValue> 
+        getBatchedValuesList();
+    /**
+     * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+     */
+    comm.ProtocolMessage.BatchedValue getBatchedValues(int index);
+    /**
+     * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+     */
+    int getBatchedValuesCount();
+    /**
+     * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+     */
+    java.util.List<? extends comm.ProtocolMessage.BatchedValueOrBuilder> 
+        getBatchedValuesOrBuilderList();
+    /**
+     * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+     */
+    comm.ProtocolMessage.BatchedValueOrBuilder getBatchedValuesOrBuilder(
+        int index);
+
+    // optional int64 probeId = 10;
+    /**
+     * <code>optional int64 probeId = 10;</code>
+     */
+    boolean hasProbeId();
+    /**
+     * <code>optional int64 probeId = 10;</code>
+     */
+    long getProbeId();
+
+    // optional bytes rawNodeId = 11;
+    /**
+     * <code>optional bytes rawNodeId = 11;</code>
+     */
+    boolean hasRawNodeId();
+    /**
+     * <code>optional bytes rawNodeId = 11;</code>
+     */
+    com.google.protobuf.ByteString getRawNodeId();
+
+    // optional bytes rawSession = 12;
+    /**
+     * <code>optional bytes rawSession = 12;</code>
+     */
+    boolean hasRawSession();
+    /**
+     * <code>optional bytes rawSession = 12;</code>
+     */
+    com.google.protobuf.ByteString getRawSession();
   }
   /**
    * Protobuf type {@code comm.Message}
@@ -218,6 +273,29 @@ public final class ProtocolMessage {
               input.popLimit(limit);
               break;
             }
+            case 74: {
+              if (!((mutable_bitField0_ & 0x00000100) == 0x00000100)) {
+                batchedValues_ = new java.util.ArrayList<comm.ProtocolMessage.BatchedValue>();
+                mutable_bitField0_ |= 0x00000100;
+              }
+              batchedValues_.add(input.readMessage(comm.ProtocolMessage.BatchedValue.PARSER, extensionRegistry));
+              break;
+            }
+            case 80: {
+              bitField0_ |= 0x00000080;
+              probeId_ = input.readInt64();
+              break;
+            }
+            case 90: {
+              bitField0_ |= 0x00000100;
+              rawNodeId_ = input.readBytes();
+              break;
+            }
+            case 98: {
+              bitField0_ |= 0x00000200;
+              rawSession_ = input.readBytes();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -229,6 +307,9 @@ public final class ProtocolMessage {
         if (((mutable_bitField0_ & 0x00000080) == 0x00000080)) {
           eigenvals_ = java.util.Collections.unmodifiableList(eigenvals_);
         }
+        if (((mutable_bitField0_ & 0x00000100) == 0x00000100)) {
+          batchedValues_ = java.util.Collections.unmodifiableList(batchedValues_);
+        }
         this.unknownFields = unknownFields.build();
         makeExtensionsImmutable();
       }
@@ -289,6 +370,18 @@ public final class ProtocolMessage {
        * <code>REQUEST_VAL = 5;</code>
        */
       REQUEST_VAL(5, 5),
+      /**
+       * <code>BATCH = 6;</code>
+       */
+      BATCH(6, 6),
+      /**
+       * <code>LIVENESS_REPLY = 7;</code>
+       */
+      LIVENESS_REPLY(7, 7),
+      /**
+       * <code>TERMINATE = 8;</code>
+       */
+      TERMINATE(8, 8),
       ;
 
       /**
@@ -315,6 +408,18 @@ public final class ProtocolMessage {
        * <code>REQUEST_VAL = 5;</code>
        */
       public static final int REQUEST_VAL_VALUE = 5;
+      /**
+       * <code>BATCH = 6;</code>
+       */
+      public static final int BATCH_VALUE = 6;
+      /**
+       * <code>LIVENESS_REPLY = 7;</code>
+       */
+      public static final int LIVENESS_REPLY_VALUE = 7;
+      /**
+       * <code>TERMINATE = 8;</code>
+       */
+      public static final int TERMINATE_VALUE = 8;
 
 
       public final int getNumber() { return value; }
@@ -327,6 +432,9 @@ public final class ProtocolMessage {
           case 3: return GOSSIP;
           case 4: return LIVENESS_CHECK;
           case 5: return REQUEST_VAL;
+          case 6: return BATCH;
+          case 7: return LIVENESS_REPLY;
+          case 8: return TERMINATE;
           default: return null;
         }
       }
@@ -569,6 +677,90 @@ public final class ProtocolMessage {
     }
     private int eigenvalsMemoizedSerializedSize = -1;
 
+    // repeated .comm.BatchedValue batchedValues = 9;
+    public static final int BATCHEDVALUES_FIELD_NUMBER = 9;
+    private java.util.List<comm.ProtocolMessage.BatchedValue> batchedValues_;
+    /**
+     * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+     */
+    public java.util.List<comm.ProtocolMessage.BatchedValue> getBatchedValuesList() {
+      return batchedValues_;
+    }
+    /**
+     * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+     */
+    public java.util.List<? extends comm.ProtocolMessage.BatchedValueOrBuilder> 
+        getBatchedValuesOrBuilderList() {
+      return batchedValues_;
+    }
+    /**
+     * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+     */
+    public int getBatchedValuesCount() {
+      return batchedValues_.size();
+    }
+    /**
+     * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+     */
+    public comm.ProtocolMessage.BatchedValue getBatchedValues(int index) {
+      return batchedValues_.get(index);
+    }
+    /**
+     * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+     */
+    public comm.ProtocolMessage.BatchedValueOrBuilder getBatchedValuesOrBuilder(
+        int index) {
+      return batchedValues_.get(index);
+    }
+
+    // optional int64 probeId = 10;
+    public static final int PROBEID_FIELD_NUMBER = 10;
+    private long probeId_;
+    /**
+     * <code>optional int64 probeId = 10;</code>
+     */
+    public boolean hasProbeId() {
+      return ((bitField0_ & 0x00000080) == 0x00000080);
+    }
+    /**
+     * <code>optional int64 probeId = 10;</code>
+     */
+    public long getProbeId() {
+      return probeId_;
+    }
+
+    // optional bytes rawNodeId = 11;
+    public static final int RAWNODEID_FIELD_NUMBER = 11;
+    private com.google.protobuf.ByteString rawNodeId_;
+    /**
+     * <code>optional bytes rawNodeId = 11;</code>
+     */
+    public boolean hasRawNodeId() {
+      return ((bitField0_ & 0x00000100) == 0x00000100);
+    }
+    /**
+     * <code>optional bytes rawNodeId = 11;</code>
+     */
+    public com.google.protobuf.ByteString getRawNodeId() {
+      return rawNodeId_;
+    }
+
+    // optional bytes rawSession = 12;
+    public static final int RAWSESSION_FIELD_NUMBER = 12;
+    private com.google.protobuf.ByteString rawSession_;
+    /**
+     * <code>optional bytes rawSession = 12;</code>
+     */
+    public boolean hasRawSession() {
+      return ((bitField0_ & 0x00000200) == 0x00000200);
+    }
+    /**
+     * <code>optional bytes rawSession = 12;</code>
+     */
+    public com.google.protobuf.ByteString getRawSession() {
+      return rawSession_;
+    }
+
     private void initFields() {
       type_ = comm.ProtocolMessage.Message.MessageType.NEW;
       nodeId_ = "";
@@ -578,6 +770,10 @@ public final class ProtocolMessage {
       round_ = 0;
       val_ = 0D;
       eigenvals_ = java.util.Collections.emptyList();
+      batchedValues_ = java.util.Collections.emptyList();
+      probeId_ = 0L;
+      rawNodeId_ = com.google.protobuf.ByteString.EMPTY;
+      rawSession_ = com.google.protobuf.ByteString.EMPTY;
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -588,6 +784,12 @@ public final class ProtocolMessage {
         memoizedIsInitialized = 0;
         return false;
       }
+      for (int i = 0; i < getBatchedValuesCount(); i++) {
+        if (!getBatchedValues(i).isInitialized()) {
+          memoizedIsInitialized = 0;
+          return false;
+        }
+      }
       memoizedIsInitialized = 1;
       return true;
     }
@@ -623,6 +825,18 @@ public final class ProtocolMessage {
       for (int i = 0; i < eigenvals_.size(); i++) {
         output.writeDoubleNoTag(eigenvals_.get(i));
       }
+      for (int i = 0; i < batchedValues_.size(); i++) {
+        output.writeMessage(9, batchedValues_.get(i));
+      }
+      if (((bitField0_ & 0x00000080) == 0x00000080)) {
+        output.writeInt64(10, probeId_);
+      }
+      if (((bitField0_ & 0x00000100) == 0x00000100)) {
+        output.writeBytes(11, rawNodeId_);
+      }
+      if (((bitField0_ & 0x00000200) == 0x00000200)) {
+        output.writeBytes(12, rawSession_);
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -671,6 +885,22 @@ public final class ProtocolMessage {
         }
         eigenvalsMemoizedSerializedSize = dataSize;
       }
+      for (int i = 0; i < batchedValues_.size(); i++) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeMessageSize(9, batchedValues_.get(i));
+      }
+      if (((bitField0_ & 0x00000080) == 0x00000080)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeInt64Size(10, probeId_);
+      }
+      if (((bitField0_ & 0x00000100) == 0x00000100)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(11, rawNodeId_);
+      }
+      if (((bitField0_ & 0x00000200) == 0x00000200)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(12, rawSession_);
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -779,6 +1009,7 @@ public final class ProtocolMessage {
       }
       private void maybeForceBuilderInitialization() {
         if (com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders) {
+          getBatchedValuesFieldBuilder();
         }
       }
       private static Builder create() {
@@ -803,6 +1034,18 @@ public final class ProtocolMessage {
         bitField0_ = (bitField0_ & ~0x00000040);
         eigenvals_ = java.util.Collections.emptyList();
         bitField0_ = (bitField0_ & ~0x00000080);
+        if (batchedValuesBuilder_ == null) {
+          batchedValues_ = java.util.Collections.emptyList();
+          bitField0_ = (bitField0_ & ~0x00000100);
+        } else {
+          batchedValuesBuilder_.clear();
+        }
+        probeId_ = 0L;
+        bitField0_ = (bitField0_ & ~0x00000200);
+        rawNodeId_ = com.google.protobuf.ByteString.EMPTY;
+        bitField0_ = (bitField0_ & ~0x00000400);
+        rawSession_ = com.google.protobuf.ByteString.EMPTY;
+        bitField0_ = (bitField0_ & ~0x00000800);
         return this;
       }
 
@@ -864,6 +1107,27 @@ public final class ProtocolMessage {
           bitField0_ = (bitField0_ & ~0x00000080);
         }
         result.eigenvals_ = eigenvals_;
+        if (batchedValuesBuilder_ == null) {
+          if (((bitField0_ & 0x00000100) == 0x00000100)) {
+            batchedValues_ = java.util.Collections.unmodifiableList(batchedValues_);
+            bitField0_ = (bitField0_ & ~0x00000100);
+          }
+          result.batchedValues_ = batchedValues_;
+        } else {
+          result.batchedValues_ = batchedValuesBuilder_.build();
+        }
+        if (((from_bitField0_ & 0x00000200) == 0x00000200)) {
+          to_bitField0_ |= 0x00000080;
+        }
+        result.probeId_ = probeId_;
+        if (((from_bitField0_ & 0x00000400) == 0x00000400)) {
+          to_bitField0_ |= 0x00000100;
+        }
+        result.rawNodeId_ = rawNodeId_;
+        if (((from_bitField0_ & 0x00000800) == 0x00000800)) {
+          to_bitField0_ |= 0x00000200;
+        }
+        result.rawSession_ = rawSession_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -915,6 +1179,41 @@ public final class ProtocolMessage {
           }
           onChanged();
         }
+        if (batchedValuesBuilder_ == null) {
+          if (!other.batchedValues_.isEmpty()) {
+            if (batchedValues_.isEmpty()) {
+              batchedValues_ = other.batchedValues_;
+              bitField0_ = (bitField0_ & ~0x00000100);
+            } else {
+              ensureBatchedValuesIsMutable();
+              batchedValues_.addAll(other.batchedValues_);
+            }
+            onChanged();
+          }
+        } else {
+          if (!other.batchedValues_.isEmpty()) {
+            if (batchedValuesBuilder_.isEmpty()) {
+              batchedValuesBuilder_.dispose();
+              batchedValuesBuilder_ = null;
+              batchedValues_ = other.batchedValues_;
+              bitField0_ = (bitField0_ & ~0x00000100);
+              batchedValuesBuilder_ = 
+                com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders ?
+                   getBatchedValuesFieldBuilder() : null;
+            } else {
+              batchedValuesBuilder_.addAllMessages(other.batchedValues_);
+            }
+          }
+        }
+        if (other.hasProbeId()) {
+          setProbeId(other.getProbeId());
+        }
+        if (other.hasRawNodeId()) {
+          setRawNodeId(other.getRawNodeId());
+        }
+        if (other.hasRawSession()) {
+          setRawSession(other.getRawSession());
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -924,6 +1223,1352 @@ public final class ProtocolMessage {
           
           return false;
         }
+        for (int i = 0; i < getBatchedValuesCount(); i++) {
+          if (!getBatchedValues(i).isInitialized()) {
+            
+            return false;
+          }
+        }
+        return true;
+      }
+
+      public Builder mergeFrom(
+          com.google.protobuf.CodedInputStream input,
+          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+          throws java.io.IOException {
+        comm.ProtocolMessage.Message parsedMessage = null;
+        try {
+          parsedMessage = PARSER.parsePartialFrom(input, extensionRegistry);
+        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+          parsedMessage = (comm.ProtocolMessage.Message) e.getUnfinishedMessage();
+          throw e;
+        } finally {
+          if (parsedMessage != null) {
+            mergeFrom(parsedMessage);
+          }
+        }
+        return this;
+      }
+      private int bitField0_;
+
+      // required .comm.Message.MessageType type = 1;
+      private comm.ProtocolMessage.Message.MessageType type_ = comm.ProtocolMessage.Message.MessageType.NEW;
+      /**
+       * <code>required .comm.Message.MessageType type = 1;</code>
+       */
+      public boolean hasType() {
+        return ((bitField0_ & 0x00000001) == 0x00000001);
+      }
+      /**
+       * <code>required .comm.Message.MessageType type = 1;</code>
+       */
+      public comm.ProtocolMessage.Message.MessageType getType() {
+        return type_;
+      }
+      /**
+       * <code>required .comm.Message.MessageType type = 1;</code>
+       */
+      public Builder setType(comm.ProtocolMessage.Message.MessageType value) {
+        if (value == null) {
+          throw new NullPointerException();
+        }
+        bitField0_ |= 0x00000001;
+        type_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>required .comm.Message.MessageType type = 1;</code>
+       */
+      public Builder clearType() {
+        bitField0_ = (bitField0_ & ~0x00000001);
+        type_ = comm.ProtocolMessage.Message.MessageType.NEW;
+        onChanged();
+        return this;
+      }
+
+      // optional string nodeId = 2;
+      private java.lang.Object nodeId_ = "";
+      /**
+       * <code>optional string nodeId = 2;</code>
+       */
+      public boolean hasNodeId() {
+        return ((bitField0_ & 0x00000002) == 0x00000002);
+      }
+      /**
+       * <code>optional string nodeId = 2;</code>
+       */
+      public java.lang.String getNodeId() {
+        java.lang.Object ref = nodeId_;
+        if (!(ref instanceof java.lang.String)) {
+          java.lang.String s = ((com.google.protobuf.ByteString) ref)
+              .toStringUtf8();
+          nodeId_ = s;
+          return s;
+        } else {
+          return (java.lang.String) ref;
+        }
+      }
+      /**
+       * <code>optional string nodeId = 2;</code>
+       */
+      public com.google.protobuf.ByteString
+          getNodeIdBytes() {
+        java.lang.Object ref = nodeId_;
+        if (ref instanceof String) {
+          com.google.protobuf.ByteString b = 
+              com.google.protobuf.ByteString.copyFromUtf8(
+                  (java.lang.String) ref);
+          nodeId_ = b;
+          return b;
+        } else {
+          return (com.google.protobuf.ByteString) ref;
+        }
+      }
+      /**
+       * <code>optional string nodeId = 2;</code>
+       */
+      public Builder setNodeId(
+          java.lang.String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000002;
+        nodeId_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string nodeId = 2;</code>
+       */
+      public Builder clearNodeId() {
+        bitField0_ = (bitField0_ & ~0x00000002);
+        nodeId_ = getDefaultInstance().getNodeId();
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string nodeId = 2;</code>
+       */
+      public Builder setNodeIdBytes(
+          com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000002;
+        nodeId_ = value;
+        onChanged();
+        return this;
+      }
+
+      // optional string session = 3;
+      private java.lang.Object session_ = "";
+      /**
+       * <code>optional string session = 3;</code>
+       */
+      public boolean hasSession() {
+        return ((bitField0_ & 0x00000004) == 0x00000004);
+      }
+      /**
+       * <code>optional string session = 3;</code>
+       */
+      public java.lang.String getSession() {
+        java.lang.Object ref = session_;
+        if (!(ref instanceof java.lang.String)) {
+          java.lang.String s = ((com.google.protobuf.ByteString) ref)
+              .toStringUtf8();
+          session_ = s;
+          return s;
+        } else {
+          return (java.lang.String) ref;
+        }
+      }
+      /**
+       * <code>optional string session = 3;</code>
+       */
+      public com.google.protobuf.ByteString
+          getSessionBytes() {
+        java.lang.Object ref = session_;
+        if (ref instanceof String) {
+          com.google.protobuf.ByteString b = 
+              com.google.protobuf.ByteString.copyFromUtf8(
+                  (java.lang.String) ref);
+          session_ = b;
+          return b;
+        } else {
+          return (com.google.protobuf.ByteString) ref;
+        }
+      }
+      /**
+       * <code>optional string session = 3;</code>
+       */
+      public Builder setSession(
+          java.lang.String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000004;
+        session_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string session = 3;</code>
+       */
+      public Builder clearSession() {
+        bitField0_ = (bitField0_ & ~0x00000004);
+        session_ = getDefaultInstance().getSession();
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string session = 3;</code>
+       */
+      public Builder setSessionBytes(
+          com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000004;
+        session_ = value;
+        onChanged();
+        return this;
+      }
+
+      // optional int32 execution = 4;
+      private int execution_ ;
+      /**
+       * <code>optional int32 execution = 4;</code>
+       */
+      public boolean hasExecution() {
+        return ((bitField0_ & 0x00000008) == 0x00000008);
+      }
+      /**
+       * <code>optional int32 execution = 4;</code>
+       */
+      public int getExecution() {
+        return execution_;
+      }
+      /**
+       * <code>optional int32 execution = 4;</code>
+       */
+      public Builder setExecution(int value) {
+        bitField0_ |= 0x00000008;
+        execution_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional int32 execution = 4;</code>
+       */
+      public Builder clearExecution() {
+        bitField0_ = (bitField0_ & ~0x00000008);
+        execution_ = 0;
+        onChanged();
+        return this;
+      }
+
+      // optional int32 totalNumberOfExecutions = 5;
+      private int totalNumberOfExecutions_ ;
+      /**
+       * <code>optional int32 totalNumberOfExecutions = 5;</code>
+       */
+      public boolean hasTotalNumberOfExecutions() {
+        return ((bitField0_ & 0x00000010) == 0x00000010);
+      }
+      /**
+       * <code>optional int32 totalNumberOfExecutions = 5;</code>
+       */
+      public int getTotalNumberOfExecutions() {
+        return totalNumberOfExecutions_;
+      }
+      /**
+       * <code>optional int32 totalNumberOfExecutions = 5;</code>
+       */
+      public Builder setTotalNumberOfExecutions(int value) {
+        bitField0_ |= 0x00000010;
+        totalNumberOfExecutions_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional int32 totalNumberOfExecutions = 5;</code>
+       */
+      public Builder clearTotalNumberOfExecutions() {
+        bitField0_ = (bitField0_ & ~0x00000010);
+        totalNumberOfExecutions_ = 0;
+        onChanged();
+        return this;
+      }
+
+      // optional int32 round = 6;
+      private int round_ ;
+      /**
+       * <code>optional int32 round = 6;</code>
+       */
+      public boolean hasRound() {
+        return ((bitField0_ & 0x00000020) == 0x00000020);
+      }
+      /**
+       * <code>optional int32 round = 6;</code>
+       */
+      public int getRound() {
+        return round_;
+      }
+      /**
+       * <code>optional int32 round = 6;</code>
+       */
+      public Builder setRound(int value) {
+        bitField0_ |= 0x00000020;
+        round_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional int32 round = 6;</code>
+       */
+      public Builder clearRound() {
+        bitField0_ = (bitField0_ & ~0x00000020);
+        round_ = 0;
+        onChanged();
+        return this;
+      }
+
+      // optional double val = 7;
+      private double val_ ;
+      /**
+       * <code>optional double val = 7;</code>
+       */
+      public boolean hasVal() {
+        return ((bitField0_ & 0x00000040) == 0x00000040);
+      }
+      /**
+       * <code>optional double val = 7;</code>
+       */
+      public double getVal() {
+        return val_;
+      }
+      /**
+       * <code>optional double val = 7;</code>
+       */
+      public Builder setVal(double value) {
+        bitField0_ |= 0x00000040;
+        val_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional double val = 7;</code>
+       */
+      public Builder clearVal() {
+        bitField0_ = (bitField0_ & ~0x00000040);
+        val_ = 0D;
+        onChanged();
+        return this;
+      }
+
+      // repeated double eigenvals = 8 [packed = true];
+      private java.util.List<java.lang.Double> eigenvals_ = java.util.Collections.emptyList();
+      private void ensureEigenvalsIsMutable() {
+        if (!((bitField0_ & 0x00000080) == 0x00000080)) {
+          eigenvals_ = new java.util.ArrayList<java.lang.Double>(eigenvals_);
+          bitField0_ |= 0x00000080;
+         }
+      }
+      /**
+       * <code>repeated double eigenvals = 8 [packed = true];</code>
+       */
+      public java.util.List<java.lang.Double>
+          getEigenvalsList() {
+        return java.util.Collections.unmodifiableList(eigenvals_);
+      }
+      /**
+       * <code>repeated double eigenvals = 8 [packed = true];</code>
+       */
+      public int getEigenvalsCount() {
+        return eigenvals_.size();
+      }
+      /**
+       * <code>repeated double eigenvals = 8 [packed = true];</code>
+       */
+      public double getEigenvals(int index) {
+        return eigenvals_.get(index);
+      }
+      /**
+       * <code>repeated double eigenvals = 8 [packed = true];</code>
+       */
+      public Builder setEigenvals(
+          int index, double value) {
+        ensureEigenvalsIsMutable();
+        eigenvals_.set(index, value);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated double eigenvals = 8 [packed = true];</code>
+       */
+      public Builder addEigenvals(double value) {
+        ensureEigenvalsIsMutable();
+        eigenvals_.add(value);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated double eigenvals = 8 [packed = true];</code>
+       */
+      public Builder addAllEigenvals(
+          java.lang.Iterable<? extends java.lang.Double> values) {
+        ensureEigenvalsIsMutable();
+        super.addAll(values, eigenvals_);
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>repeated double eigenvals = 8 [packed = true];</code>
+       */
+      public Builder clearEigenvals() {
+        eigenvals_ = java.util.Collections.emptyList();
+        bitField0_ = (bitField0_ & ~0x00000080);
+        onChanged();
+        return this;
+      }
+
+      // repeated .comm.BatchedValue batchedValues = 9;
+      private java.util.List<comm.ProtocolMessage.BatchedValue> batchedValues_ =
+        java.util.Collections.emptyList();
+      private void ensureBatchedValuesIsMutable() {
+        if (!((bitField0_ & 0x00000100) == 0x00000100)) {
+          batchedValues_ = new java.util.ArrayList<comm.ProtocolMessage.BatchedValue>(batchedValues_);
+          bitField0_ |= 0x00000100;
+         }
+      }
+
+      private com.google.protobuf.RepeatedFieldBuilder<
+          comm.ProtocolMessage.BatchedValue, comm.ProtocolMessage.BatchedValue.Builder, comm.ProtocolMessage.BatchedValueOrBuilder> batchedValuesBuilder_;
+
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public java.util.List<comm.ProtocolMessage.BatchedValue> getBatchedValuesList() {
+        if (batchedValuesBuilder_ == null) {
+          return java.util.Collections.unmodifiableList(batchedValues_);
+        } else {
+          return batchedValuesBuilder_.getMessageList();
+        }
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public int getBatchedValuesCount() {
+        if (batchedValuesBuilder_ == null) {
+          return batchedValues_.size();
+        } else {
+          return batchedValuesBuilder_.getCount();
+        }
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public comm.ProtocolMessage.BatchedValue getBatchedValues(int index) {
+        if (batchedValuesBuilder_ == null) {
+          return batchedValues_.get(index);
+        } else {
+          return batchedValuesBuilder_.getMessage(index);
+        }
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public Builder setBatchedValues(
+          int index, comm.ProtocolMessage.BatchedValue value) {
+        if (batchedValuesBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureBatchedValuesIsMutable();
+          batchedValues_.set(index, value);
+          onChanged();
+        } else {
+          batchedValuesBuilder_.setMessage(index, value);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public Builder setBatchedValues(
+          int index, comm.ProtocolMessage.BatchedValue.Builder builderForValue) {
+        if (batchedValuesBuilder_ == null) {
+          ensureBatchedValuesIsMutable();
+          batchedValues_.set(index, builderForValue.build());
+          onChanged();
+        } else {
+          batchedValuesBuilder_.setMessage(index, builderForValue.build());
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public Builder addBatchedValues(comm.ProtocolMessage.BatchedValue value) {
+        if (batchedValuesBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureBatchedValuesIsMutable();
+          batchedValues_.add(value);
+          onChanged();
+        } else {
+          batchedValuesBuilder_.addMessage(value);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public Builder addBatchedValues(
+          int index, comm.ProtocolMessage.BatchedValue value) {
+        if (batchedValuesBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureBatchedValuesIsMutable();
+          batchedValues_.add(index, value);
+          onChanged();
+        } else {
+          batchedValuesBuilder_.addMessage(index, value);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public Builder addBatchedValues(
+          comm.ProtocolMessage.BatchedValue.Builder builderForValue) {
+        if (batchedValuesBuilder_ == null) {
+          ensureBatchedValuesIsMutable();
+          batchedValues_.add(builderForValue.build());
+          onChanged();
+        } else {
+          batchedValuesBuilder_.addMessage(builderForValue.build());
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public Builder addBatchedValues(
+          int index, comm.ProtocolMessage.BatchedValue.Builder builderForValue) {
+        if (batchedValuesBuilder_ == null) {
+          ensureBatchedValuesIsMutable();
+          batchedValues_.add(index, builderForValue.build());
+          onChanged();
+        } else {
+          batchedValuesBuilder_.addMessage(index, builderForValue.build());
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public Builder addAllBatchedValues(
+          java.lang.Iterable<? extends comm.ProtocolMessage.BatchedValue> values) {
+        if (batchedValuesBuilder_ == null) {
+          ensureBatchedValuesIsMutable();
+          super.addAll(values, batchedValues_);
+          onChanged();
+        } else {
+          batchedValuesBuilder_.addAllMessages(values);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public Builder clearBatchedValues() {
+        if (batchedValuesBuilder_ == null) {
+          batchedValues_ = java.util.Collections.emptyList();
+          bitField0_ = (bitField0_ & ~0x00000100);
+          onChanged();
+        } else {
+          batchedValuesBuilder_.clear();
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public Builder removeBatchedValues(int index) {
+        if (batchedValuesBuilder_ == null) {
+          ensureBatchedValuesIsMutable();
+          batchedValues_.remove(index);
+          onChanged();
+        } else {
+          batchedValuesBuilder_.remove(index);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public comm.ProtocolMessage.BatchedValue.Builder getBatchedValuesBuilder(
+          int index) {
+        return getBatchedValuesFieldBuilder().getBuilder(index);
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public comm.ProtocolMessage.BatchedValueOrBuilder getBatchedValuesOrBuilder(
+          int index) {
+        if (batchedValuesBuilder_ == null) {
+          return batchedValues_.get(index);  } else {
+          return batchedValuesBuilder_.getMessageOrBuilder(index);
+        }
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public java.util.List<? extends comm.ProtocolMessage.BatchedValueOrBuilder> 
+           getBatchedValuesOrBuilderList() {
+        if (batchedValuesBuilder_ != null) {
+          return batchedValuesBuilder_.getMessageOrBuilderList();
+        } else {
+          return java.util.Collections.unmodifiableList(batchedValues_);
+        }
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public comm.ProtocolMessage.BatchedValue.Builder addBatchedValuesBuilder() {
+        return getBatchedValuesFieldBuilder().addBuilder(
+            comm.ProtocolMessage.BatchedValue.getDefaultInstance());
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public comm.ProtocolMessage.BatchedValue.Builder addBatchedValuesBuilder(
+          int index) {
+        return getBatchedValuesFieldBuilder().addBuilder(
+            index, comm.ProtocolMessage.BatchedValue.getDefaultInstance());
+      }
+      /**
+       * <code>repeated .comm.BatchedValue batchedValues = 9;</code>
+       */
+      public java.util.List<comm.ProtocolMessage.BatchedValue.Builder> 
+           getBatchedValuesBuilderList() {
+        return getBatchedValuesFieldBuilder().getBuilderList();
+      }
+      private com.google.protobuf.RepeatedFieldBuilder<
+          comm.ProtocolMessage.BatchedValue, comm.ProtocolMessage.BatchedValue.Builder, comm.ProtocolMessage.BatchedValueOrBuilder> 
+          getBatchedValuesFieldBuilder() {
+        if (batchedValuesBuilder_ == null) {
+          batchedValuesBuilder_ = new com.google.protobuf.RepeatedFieldBuilder<
+              comm.ProtocolMessage.BatchedValue, comm.ProtocolMessage.BatchedValue.Builder, comm.ProtocolMessage.BatchedValueOrBuilder>(
+                  batchedValues_,
+                  ((bitField0_ & 0x00000100) == 0x00000100),
+                  getParentForChildren(),
+                  isClean());
+          batchedValues_ = null;
+        }
+        return batchedValuesBuilder_;
+      }
+
+      // optional int64 probeId = 10;
+      private long probeId_ ;
+      /**
+       * <code>optional int64 probeId = 10;</code>
+       */
+      public boolean hasProbeId() {
+        return ((bitField0_ & 0x00000200) == 0x00000200);
+      }
+      /**
+       * <code>optional int64 probeId = 10;</code>
+       */
+      public long getProbeId() {
+        return probeId_;
+      }
+      /**
+       * <code>optional int64 probeId = 10;</code>
+       */
+      public Builder setProbeId(long value) {
+        bitField0_ |= 0x00000200;
+        probeId_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional int64 probeId = 10;</code>
+       */
+      public Builder clearProbeId() {
+        bitField0_ = (bitField0_ & ~0x00000200);
+        probeId_ = 0L;
+        onChanged();
+        return this;
+      }
+
+      // optional bytes rawNodeId = 11;
+      private com.google.protobuf.ByteString rawNodeId_ = com.google.protobuf.ByteString.EMPTY;
+      /**
+       * <code>optional bytes rawNodeId = 11;</code>
+       */
+      public boolean hasRawNodeId() {
+        return ((bitField0_ & 0x00000400) == 0x00000400);
+      }
+      /**
+       * <code>optional bytes rawNodeId = 11;</code>
+       */
+      public com.google.protobuf.ByteString getRawNodeId() {
+        return rawNodeId_;
+      }
+      /**
+       * <code>optional bytes rawNodeId = 11;</code>
+       */
+      public Builder setRawNodeId(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000400;
+        rawNodeId_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional bytes rawNodeId = 11;</code>
+       */
+      public Builder clearRawNodeId() {
+        bitField0_ = (bitField0_ & ~0x00000400);
+        rawNodeId_ = getDefaultInstance().getRawNodeId();
+        onChanged();
+        return this;
+      }
+
+      // optional bytes rawSession = 12;
+      private com.google.protobuf.ByteString rawSession_ = com.google.protobuf.ByteString.EMPTY;
+      /**
+       * <code>optional bytes rawSession = 12;</code>
+       */
+      public boolean hasRawSession() {
+        return ((bitField0_ & 0x00000800) == 0x00000800);
+      }
+      /**
+       * <code>optional bytes rawSession = 12;</code>
+       */
+      public com.google.protobuf.ByteString getRawSession() {
+        return rawSession_;
+      }
+      /**
+       * <code>optional bytes rawSession = 12;</code>
+       */
+      public Builder setRawSession(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000800;
+        rawSession_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional bytes rawSession = 12;</code>
+       */
+      public Builder clearRawSession() {
+        bitField0_ = (bitField0_ & ~0x00000800);
+        rawSession_ = getDefaultInstance().getRawSession();
+        onChanged();
+        return this;
+      }
+
+      // @@protoc_insertion_point(builder_scope:comm.Message)
+    }
+
+    static {
+      defaultInstance = new Message(true);
+      defaultInstance.initFields();
+    }
+
+    // @@protoc_insertion_point(class_scope:comm.Message)
+  }
+
+  public interface BatchedValueOrBuilder
+      extends com.google.protobuf.MessageOrBuilder {
+
+    // optional string session = 1;
+    /**
+     * <code>optional string session = 1;</code>
+     */
+    boolean hasSession();
+    /**
+     * <code>optional string session = 1;</code>
+     */
+    java.lang.String getSession();
+    /**
+     * <code>optional string session = 1;</code>
+     */
+    com.google.protobuf.ByteString
+        getSessionBytes();
+
+    // required int32 execution = 2;
+    /**
+     * <code>required int32 execution = 2;</code>
+     */
+    boolean hasExecution();
+    /**
+     * <code>required int32 execution = 2;</code>
+     */
+    int getExecution();
+
+    // required int32 round = 3;
+    /**
+     * <code>required int32 round = 3;</code>
+     */
+    boolean hasRound();
+    /**
+     * <code>required int32 round = 3;</code>
+     */
+    int getRound();
+
+    // required double val = 4;
+    /**
+     * <code>required double val = 4;</code>
+     */
+    boolean hasVal();
+    /**
+     * <code>required double val = 4;</code>
+     */
+    double getVal();
+
+    // optional bytes rawSession = 5;
+    /**
+     * <code>optional bytes rawSession = 5;</code>
+     */
+    boolean hasRawSession();
+    /**
+     * <code>optional bytes rawSession = 5;</code>
+     */
+    com.google.protobuf.ByteString getRawSession();
+  }
+  /**
+   * Protobuf type {@code comm.BatchedValue}
+   */
+  public static final class BatchedValue extends
+      com.google.protobuf.GeneratedMessage
+      implements BatchedValueOrBuilder {
+    // Use BatchedValue.newBuilder() to construct.
+    private BatchedValue(com.google.protobuf.GeneratedMessage.Builder<?> builder) {
+      super(builder);
+      this.unknownFields = builder.getUnknownFields();
+    }
+    private BatchedValue(boolean noInit) { this.unknownFields = com.google.protobuf.UnknownFieldSet.getDefaultInstance(); }
+
+    private static final BatchedValue defaultInstance;
+    public static BatchedValue getDefaultInstance() {
+      return defaultInstance;
+    }
+
+    public BatchedValue getDefaultInstanceForType() {
+      return defaultInstance;
+    }
+
+    private final com.google.protobuf.UnknownFieldSet unknownFields;
+    @java.lang.Override
+    public final com.google.protobuf.UnknownFieldSet
+        getUnknownFields() {
+      return this.unknownFields;
+    }
+    private BatchedValue(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      initFields();
+      int mutable_bitField0_ = 0;
+      com.google.protobuf.UnknownFieldSet.Builder unknownFields =
+          com.google.protobuf.UnknownFieldSet.newBuilder();
+      try {
+        boolean done = false;
+        while (!done) {
+          int tag = input.readTag();
+          switch (tag) {
+            case 0:
+              done = true;
+              break;
+            default: {
+              if (!parseUnknownField(input, unknownFields,
+                                     extensionRegistry, tag)) {
+                done = true;
+              }
+              break;
+            }
+            case 10: {
+              bitField0_ |= 0x00000001;
+              session_ = input.readBytes();
+              break;
+            }
+            case 16: {
+              bitField0_ |= 0x00000002;
+              execution_ = input.readInt32();
+              break;
+            }
+            case 24: {
+              bitField0_ |= 0x00000004;
+              round_ = input.readInt32();
+              break;
+            }
+            case 33: {
+              bitField0_ |= 0x00000008;
+              val_ = input.readDouble();
+              break;
+            }
+            case 42: {
+              bitField0_ |= 0x00000010;
+              rawSession_ = input.readBytes();
+              break;
+            }
+          }
+        }
+      } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+        throw e.setUnfinishedMessage(this);
+      } catch (java.io.IOException e) {
+        throw new com.google.protobuf.InvalidProtocolBufferException(
+            e.getMessage()).setUnfinishedMessage(this);
+      } finally {
+        this.unknownFields = unknownFields.build();
+        makeExtensionsImmutable();
+      }
+    }
+    public static final com.google.protobuf.Descriptors.Descriptor
+        getDescriptor() {
+      return comm.ProtocolMessage.internal_static_comm_BatchedValue_descriptor;
+    }
+
+    protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
+        internalGetFieldAccessorTable() {
+      return comm.ProtocolMessage.internal_static_comm_BatchedValue_fieldAccessorTable
+          .ensureFieldAccessorsInitialized(
+              comm.ProtocolMessage.BatchedValue.class, comm.ProtocolMessage.BatchedValue.Builder.class);
+    }
+
+    public static com.google.protobuf.Parser<BatchedValue> PARSER =
+        new com.google.protobuf.AbstractParser<BatchedValue>() {
+      public BatchedValue parsePartialFrom(
+          com.google.protobuf.CodedInputStream input,
+          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+          throws com.google.protobuf.InvalidProtocolBufferException {
+        return new BatchedValue(input, extensionRegistry);
+      }
+    };
+
+    @java.lang.Override
+    public com.google.protobuf.Parser<BatchedValue> getParserForType() {
+      return PARSER;
+    }
+
+    private int bitField0_;
+    // optional string session = 1;
+    public static final int SESSION_FIELD_NUMBER = 1;
+    private java.lang.Object session_;
+    /**
+     * <code>optional string session = 1;</code>
+     */
+    public boolean hasSession() {
+      return ((bitField0_ & 0x00000001) == 0x00000001);
+    }
+    /**
+     * <code>optional string session = 1;</code>
+     */
+    public java.lang.String getSession() {
+      java.lang.Object ref = session_;
+      if (ref instanceof java.lang.String) {
+        return (java.lang.String) ref;
+      } else {
+        com.google.protobuf.ByteString bs = 
+            (com.google.protobuf.ByteString) ref;
+        java.lang.String s = bs.toStringUtf8();
+        if (bs.isValidUtf8()) {
+          session_ = s;
+        }
+        return s;
+      }
+    }
+    /**
+     * <code>optional string session = 1;</code>
+     */
+    public com.google.protobuf.ByteString
+        getSessionBytes() {
+      java.lang.Object ref = session_;
+      if (ref instanceof java.lang.String) {
+        com.google.protobuf.ByteString b = 
+            com.google.protobuf.ByteString.copyFromUtf8(
+                (java.lang.String) ref);
+        session_ = b;
+        return b;
+      } else {
+        return (com.google.protobuf.ByteString) ref;
+      }
+    }
+
+    // required int32 execution = 2;
+    public static final int EXECUTION_FIELD_NUMBER = 2;
+    private int execution_;
+    /**
+     * <code>required int32 execution = 2;</code>
+     */
+    public boolean hasExecution() {
+      return ((bitField0_ & 0x00000002) == 0x00000002);
+    }
+    /**
+     * <code>required int32 execution = 2;</code>
+     */
+    public int getExecution() {
+      return execution_;
+    }
+
+    // required int32 round = 3;
+    public static final int ROUND_FIELD_NUMBER = 3;
+    private int round_;
+    /**
+     * <code>required int32 round = 3;</code>
+     */
+    public boolean hasRound() {
+      return ((bitField0_ & 0x00000004) == 0x00000004);
+    }
+    /**
+     * <code>required int32 round = 3;</code>
+     */
+    public int getRound() {
+      return round_;
+    }
+
+    // required double val = 4;
+    public static final int VAL_FIELD_NUMBER = 4;
+    private double val_;
+    /**
+     * <code>required double val = 4;</code>
+     */
+    public boolean hasVal() {
+      return ((bitField0_ & 0x00000008) == 0x00000008);
+    }
+    /**
+     * <code>required double val = 4;</code>
+     */
+    public double getVal() {
+      return val_;
+    }
+
+    // optional bytes rawSession = 5;
+    public static final int RAWSESSION_FIELD_NUMBER = 5;
+    private com.google.protobuf.ByteString rawSession_;
+    /**
+     * <code>optional bytes rawSession = 5;</code>
+     */
+    public boolean hasRawSession() {
+      return ((bitField0_ & 0x00000010) == 0x00000010);
+    }
+    /**
+     * <code>optional bytes rawSession = 5;</code>
+     */
+    public com.google.protobuf.ByteString getRawSession() {
+      return rawSession_;
+    }
+
+    private void initFields() {
+      session_ = "";
+      execution_ = 0;
+      round_ = 0;
+      val_ = 0D;
+      rawSession_ = com.google.protobuf.ByteString.EMPTY;
+    }
+    private byte memoizedIsInitialized = -1;
+    public final boolean isInitialized() {
+      byte isInitialized = memoizedIsInitialized;
+      if (isInitialized != -1) return isInitialized == 1;
+
+      if (!hasExecution()) {
+        memoizedIsInitialized = 0;
+        return false;
+      }
+      if (!hasRound()) {
+        memoizedIsInitialized = 0;
+        return false;
+      }
+      if (!hasVal()) {
+        memoizedIsInitialized = 0;
+        return false;
+      }
+      memoizedIsInitialized = 1;
+      return true;
+    }
+
+    public void writeTo(com.google.protobuf.CodedOutputStream output)
+                        throws java.io.IOException {
+      getSerializedSize();
+      if (((bitField0_ & 0x00000001) == 0x00000001)) {
+        output.writeBytes(1, getSessionBytes());
+      }
+      if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        output.writeInt32(2, execution_);
+      }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        output.writeInt32(3, round_);
+      }
+      if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        output.writeDouble(4, val_);
+      }
+      if (((bitField0_ & 0x00000010) == 0x00000010)) {
+        output.writeBytes(5, rawSession_);
+      }
+      getUnknownFields().writeTo(output);
+    }
+
+    private int memoizedSerializedSize = -1;
+    public int getSerializedSize() {
+      int size = memoizedSerializedSize;
+      if (size != -1) return size;
+
+      size = 0;
+      if (((bitField0_ & 0x00000001) == 0x00000001)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(1, getSessionBytes());
+      }
+      if (((bitField0_ & 0x00000002) == 0x00000002)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeInt32Size(2, execution_);
+      }
+      if (((bitField0_ & 0x00000004) == 0x00000004)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeInt32Size(3, round_);
+      }
+      if (((bitField0_ & 0x00000008) == 0x00000008)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeDoubleSize(4, val_);
+      }
+      if (((bitField0_ & 0x00000010) == 0x00000010)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(5, rawSession_);
+      }
+      size += getUnknownFields().getSerializedSize();
+      memoizedSerializedSize = size;
+      return size;
+    }
+
+    private static final long serialVersionUID = 0L;
+    @java.lang.Override
+    protected java.lang.Object writeReplace()
+        throws java.io.ObjectStreamException {
+      return super.writeReplace();
+    }
+
+    public static comm.ProtocolMessage.BatchedValue parseFrom(
+        com.google.protobuf.ByteString data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data);
+    }
+    public static comm.ProtocolMessage.BatchedValue parseFrom(
+        com.google.protobuf.ByteString data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data, extensionRegistry);
+    }
+    public static comm.ProtocolMessage.BatchedValue parseFrom(byte[] data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data);
+    }
+    public static comm.ProtocolMessage.BatchedValue parseFrom(
+        byte[] data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data, extensionRegistry);
+    }
+    public static comm.ProtocolMessage.BatchedValue parseFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input);
+    }
+    public static comm.ProtocolMessage.BatchedValue parseFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input, extensionRegistry);
+    }
+    public static comm.ProtocolMessage.BatchedValue parseDelimitedFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      return PARSER.parseDelimitedFrom(input);
+    }
+    public static comm.ProtocolMessage.BatchedValue parseDelimitedFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return PARSER.parseDelimitedFrom(input, extensionRegistry);
+    }
+    public static comm.ProtocolMessage.BatchedValue parseFrom(
+        com.google.protobuf.CodedInputStream input)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input);
+    }
+    public static comm.ProtocolMessage.BatchedValue parseFrom(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return PARSER.parseFrom(input, extensionRegistry);
+    }
+
+    public static Builder newBuilder() { return Builder.create(); }
+    public Builder newBuilderForType() { return newBuilder(); }
+    public static Builder newBuilder(comm.ProtocolMessage.BatchedValue prototype) {
+      return newBuilder().mergeFrom(prototype);
+    }
+    public Builder toBuilder() { return newBuilder(this); }
+
+    @java.lang.Override
+    protected Builder newBuilderForType(
+        com.google.protobuf.GeneratedMessage.BuilderParent parent) {
+      Builder builder = new Builder(parent);
+      return builder;
+    }
+    /**
+     * Protobuf type {@code comm.BatchedValue}
+     */
+    public static final class Builder extends
+        com.google.protobuf.GeneratedMessage.Builder<Builder>
+       implements comm.ProtocolMessage.BatchedValueOrBuilder {
+      public static final com.google.protobuf.Descriptors.Descriptor
+          getDescriptor() {
+        return comm.ProtocolMessage.internal_static_comm_BatchedValue_descriptor;
+      }
+
+      protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
+          internalGetFieldAccessorTable() {
+        return comm.ProtocolMessage.internal_static_comm_BatchedValue_fieldAccessorTable
+            .ensureFieldAccessorsInitialized(
+                comm.ProtocolMessage.BatchedValue.class, comm.ProtocolMessage.BatchedValue.Builder.class);
+      }
+
+      // Construct using comm.ProtocolMessage.BatchedValue.newBuilder()
+      private Builder() {
+        maybeForceBuilderInitialization();
+      }
+
+      private Builder(
+          com.google.protobuf.GeneratedMessage.BuilderParent parent) {
+        super(parent);
+        maybeForceBuilderInitialization();
+      }
+      private void maybeForceBuilderInitialization() {
+        if (com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders) {
+        }
+      }
+      private static Builder create() {
+        return new Builder();
+      }
+
+      public Builder clear() {
+        super.clear();
+        session_ = "";
+        bitField0_ = (bitField0_ & ~0x00000001);
+        execution_ = 0;
+        bitField0_ = (bitField0_ & ~0x00000002);
+        round_ = 0;
+        bitField0_ = (bitField0_ & ~0x00000004);
+        val_ = 0D;
+        bitField0_ = (bitField0_ & ~0x00000008);
+        rawSession_ = com.google.protobuf.ByteString.EMPTY;
+        bitField0_ = (bitField0_ & ~0x00000010);
+        return this;
+      }
+
+      public Builder clone() {
+        return create().mergeFrom(buildPartial());
+      }
+
+      public com.google.protobuf.Descriptors.Descriptor
+          getDescriptorForType() {
+        return comm.ProtocolMessage.internal_static_comm_BatchedValue_descriptor;
+      }
+
+      public comm.ProtocolMessage.BatchedValue getDefaultInstanceForType() {
+        return comm.ProtocolMessage.BatchedValue.getDefaultInstance();
+      }
+
+      public comm.ProtocolMessage.BatchedValue build() {
+        comm.ProtocolMessage.BatchedValue result = buildPartial();
+        if (!result.isInitialized()) {
+          throw newUninitializedMessageException(result);
+        }
+        return result;
+      }
+
+      public comm.ProtocolMessage.BatchedValue buildPartial() {
+        comm.ProtocolMessage.BatchedValue result = new comm.ProtocolMessage.BatchedValue(this);
+        int from_bitField0_ = bitField0_;
+        int to_bitField0_ = 0;
+        if (((from_bitField0_ & 0x00000001) == 0x00000001)) {
+          to_bitField0_ |= 0x00000001;
+        }
+        result.session_ = session_;
+        if (((from_bitField0_ & 0x00000002) == 0x00000002)) {
+          to_bitField0_ |= 0x00000002;
+        }
+        result.execution_ = execution_;
+        if (((from_bitField0_ & 0x00000004) == 0x00000004)) {
+          to_bitField0_ |= 0x00000004;
+        }
+        result.round_ = round_;
+        if (((from_bitField0_ & 0x00000008) == 0x00000008)) {
+          to_bitField0_ |= 0x00000008;
+        }
+        result.val_ = val_;
+        if (((from_bitField0_ & 0x00000010) == 0x00000010)) {
+          to_bitField0_ |= 0x00000010;
+        }
+        result.rawSession_ = rawSession_;
+        result.bitField0_ = to_bitField0_;
+        onBuilt();
+        return result;
+      }
+
+      public Builder mergeFrom(com.google.protobuf.Message other) {
+        if (other instanceof comm.ProtocolMessage.BatchedValue) {
+          return mergeFrom((comm.ProtocolMessage.BatchedValue)other);
+        } else {
+          super.mergeFrom(other);
+          return this;
+        }
+      }
+
+      public Builder mergeFrom(comm.ProtocolMessage.BatchedValue other) {
+        if (other == comm.ProtocolMessage.BatchedValue.getDefaultInstance()) return this;
+        if (other.hasSession()) {
+          bitField0_ |= 0x00000001;
+          session_ = other.session_;
+          onChanged();
+        }
+        if (other.hasExecution()) {
+          setExecution(other.getExecution());
+        }
+        if (other.hasRound()) {
+          setRound(other.getRound());
+        }
+        if (other.hasVal()) {
+          setVal(other.getVal());
+        }
+        if (other.hasRawSession()) {
+          setRawSession(other.getRawSession());
+        }
+        this.mergeUnknownFields(other.getUnknownFields());
+        return this;
+      }
+
+      public final boolean isInitialized() {
+        if (!hasExecution()) {
+          
+          return false;
+        }
+        if (!hasRound()) {
+          
+          return false;
+        }
+        if (!hasVal()) {
+          
+          return false;
+        }
         return true;
       }
 
@@ -931,11 +2576,11 @@ public final class ProtocolMessage {
           com.google.protobuf.CodedInputStream input,
           com.google.protobuf.ExtensionRegistryLite extensionRegistry)
           throws java.io.IOException {
-        comm.ProtocolMessage.Message parsedMessage = null;
+        comm.ProtocolMessage.BatchedValue parsedMessage = null;
         try {
           parsedMessage = PARSER.parsePartialFrom(input, extensionRegistry);
         } catch (com.google.protobuf.InvalidProtocolBufferException e) {
-          parsedMessage = (comm.ProtocolMessage.Message) e.getUnfinishedMessage();
+          parsedMessage = (comm.ProtocolMessage.BatchedValue) e.getUnfinishedMessage();
           throw e;
         } finally {
           if (parsedMessage != null) {
@@ -946,126 +2591,16 @@ public final class ProtocolMessage {
       }
       private int bitField0_;
 
-      // required .comm.Message.MessageType type = 1;
-      private comm.ProtocolMessage.Message.MessageType type_ = comm.ProtocolMessage.Message.MessageType.NEW;
-      /**
-       * <code>required .comm.Message.MessageType type = 1;</code>
-       */
-      public boolean hasType() {
-        return ((bitField0_ & 0x00000001) == 0x00000001);
-      }
-      /**
-       * <code>required .comm.Message.MessageType type = 1;</code>
-       */
-      public comm.ProtocolMessage.Message.MessageType getType() {
-        return type_;
-      }
-      /**
-       * <code>required .comm.Message.MessageType type = 1;</code>
-       */
-      public Builder setType(comm.ProtocolMessage.Message.MessageType value) {
-        if (value == null) {
-          throw new NullPointerException();
-        }
-        bitField0_ |= 0x00000001;
-        type_ = value;
-        onChanged();
-        return this;
-      }
-      /**
-       * <code>required .comm.Message.MessageType type = 1;</code>
-       */
-      public Builder clearType() {
-        bitField0_ = (bitField0_ & ~0x00000001);
-        type_ = comm.ProtocolMessage.Message.MessageType.NEW;
-        onChanged();
-        return this;
-      }
-
-      // optional string nodeId = 2;
-      private java.lang.Object nodeId_ = "";
-      /**
-       * <code>optional string nodeId = 2;</code>
-       */
-      public boolean hasNodeId() {
-        return ((bitField0_ & 0x00000002) == 0x00000002);
-      }
-      /**
-       * <code>optional string nodeId = 2;</code>
-       */
-      public java.lang.String getNodeId() {
-        java.lang.Object ref = nodeId_;
-        if (!(ref instanceof java.lang.String)) {
-          java.lang.String s = ((com.google.protobuf.ByteString) ref)
-              .toStringUtf8();
-          nodeId_ = s;
-          return s;
-        } else {
-          return (java.lang.String) ref;
-        }
-      }
-      /**
-       * <code>optional string nodeId = 2;</code>
-       */
-      public com.google.protobuf.ByteString
-          getNodeIdBytes() {
-        java.lang.Object ref = nodeId_;
-        if (ref instanceof String) {
-          com.google.protobuf.ByteString b = 
-              com.google.protobuf.ByteString.copyFromUtf8(
-                  (java.lang.String) ref);
-          nodeId_ = b;
-          return b;
-        } else {
-          return (com.google.protobuf.ByteString) ref;
-        }
-      }
-      /**
-       * <code>optional string nodeId = 2;</code>
-       */
-      public Builder setNodeId(
-          java.lang.String value) {
-        if (value == null) {
-    throw new NullPointerException();
-  }
-  bitField0_ |= 0x00000002;
-        nodeId_ = value;
-        onChanged();
-        return this;
-      }
-      /**
-       * <code>optional string nodeId = 2;</code>
-       */
-      public Builder clearNodeId() {
-        bitField0_ = (bitField0_ & ~0x00000002);
-        nodeId_ = getDefaultInstance().getNodeId();
-        onChanged();
-        return this;
-      }
-      /**
-       * <code>optional string nodeId = 2;</code>
-       */
-      public Builder setNodeIdBytes(
-          com.google.protobuf.ByteString value) {
-        if (value == null) {
-    throw new NullPointerException();
-  }
-  bitField0_ |= 0x00000002;
-        nodeId_ = value;
-        onChanged();
-        return this;
-      }
-
-      // optional string session = 3;
+      // optional string session = 1;
       private java.lang.Object session_ = "";
       /**
-       * <code>optional string session = 3;</code>
+       * <code>optional string session = 1;</code>
        */
       public boolean hasSession() {
-        return ((bitField0_ & 0x00000004) == 0x00000004);
+        return ((bitField0_ & 0x00000001) == 0x00000001);
       }
       /**
-       * <code>optional string session = 3;</code>
+       * <code>optional string session = 1;</code>
        */
       public java.lang.String getSession() {
         java.lang.Object ref = session_;
@@ -1079,7 +2614,7 @@ public final class ProtocolMessage {
         }
       }
       /**
-       * <code>optional string session = 3;</code>
+       * <code>optional string session = 1;</code>
        */
       public com.google.protobuf.ByteString
           getSessionBytes() {
@@ -1095,248 +2630,185 @@ public final class ProtocolMessage {
         }
       }
       /**
-       * <code>optional string session = 3;</code>
+       * <code>optional string session = 1;</code>
        */
       public Builder setSession(
           java.lang.String value) {
         if (value == null) {
     throw new NullPointerException();
   }
-  bitField0_ |= 0x00000004;
+  bitField0_ |= 0x00000001;
         session_ = value;
         onChanged();
         return this;
       }
       /**
-       * <code>optional string session = 3;</code>
+       * <code>optional string session = 1;</code>
        */
       public Builder clearSession() {
-        bitField0_ = (bitField0_ & ~0x00000004);
+        bitField0_ = (bitField0_ & ~0x00000001);
         session_ = getDefaultInstance().getSession();
         onChanged();
         return this;
       }
       /**
-       * <code>optional string session = 3;</code>
+       * <code>optional string session = 1;</code>
        */
       public Builder setSessionBytes(
           com.google.protobuf.ByteString value) {
         if (value == null) {
     throw new NullPointerException();
   }
-  bitField0_ |= 0x00000004;
+  bitField0_ |= 0x00000001;
         session_ = value;
         onChanged();
         return this;
       }
 
-      // optional int32 execution = 4;
+      // required int32 execution = 2;
       private int execution_ ;
       /**
-       * <code>optional int32 execution = 4;</code>
+       * <code>required int32 execution = 2;</code>
        */
       public boolean hasExecution() {
-        return ((bitField0_ & 0x00000008) == 0x00000008);
+        return ((bitField0_ & 0x00000002) == 0x00000002);
       }
       /**
-       * <code>optional int32 execution = 4;</code>
+       * <code>required int32 execution = 2;</code>
        */
       public int getExecution() {
         return execution_;
       }
       /**
-       * <code>optional int32 execution = 4;</code>
+       * <code>required int32 execution = 2;</code>
        */
       public Builder setExecution(int value) {
-        bitField0_ |= 0x00000008;
+        bitField0_ |= 0x00000002;
         execution_ = value;
         onChanged();
         return this;
       }
       /**
-       * <code>optional int32 execution = 4;</code>
+       * <code>required int32 execution = 2;</code>
        */
       public Builder clearExecution() {
-        bitField0_ = (bitField0_ & ~0x00000008);
+        bitField0_ = (bitField0_ & ~0x00000002);
         execution_ = 0;
         onChanged();
         return this;
       }
 
-      // optional int32 totalNumberOfExecutions = 5;
-      private int totalNumberOfExecutions_ ;
-      /**
-       * <code>optional int32 totalNumberOfExecutions = 5;</code>
-       */
-      public boolean hasTotalNumberOfExecutions() {
-        return ((bitField0_ & 0x00000010) == 0x00000010);
-      }
-      /**
-       * <code>optional int32 totalNumberOfExecutions = 5;</code>
-       */
-      public int getTotalNumberOfExecutions() {
-        return totalNumberOfExecutions_;
-      }
-      /**
-       * <code>optional int32 totalNumberOfExecutions = 5;</code>
-       */
-      public Builder setTotalNumberOfExecutions(int value) {
-        bitField0_ |= 0x00000010;
-        totalNumberOfExecutions_ = value;
-        onChanged();
-        return this;
-      }
-      /**
-       * <code>optional int32 totalNumberOfExecutions = 5;</code>
-       */
-      public Builder clearTotalNumberOfExecutions() {
-        bitField0_ = (bitField0_ & ~0x00000010);
-        totalNumberOfExecutions_ = 0;
-        onChanged();
-        return this;
-      }
-
-      // optional int32 round = 6;
+      // required int32 round = 3;
       private int round_ ;
       /**
-       * <code>optional int32 round = 6;</code>
+       * <code>required int32 round = 3;</code>
        */
       public boolean hasRound() {
-        return ((bitField0_ & 0x00000020) == 0x00000020);
+        return ((bitField0_ & 0x00000004) == 0x00000004);
       }
       /**
-       * <code>optional int32 round = 6;</code>
+       * <code>required int32 round = 3;</code>
        */
       public int getRound() {
         return round_;
       }
       /**
-       * <code>optional int32 round = 6;</code>
+       * <code>required int32 round = 3;</code>
        */
       public Builder setRound(int value) {
-        bitField0_ |= 0x00000020;
+        bitField0_ |= 0x00000004;
         round_ = value;
         onChanged();
         return this;
       }
       /**
-       * <code>optional int32 round = 6;</code>
+       * <code>required int32 round = 3;</code>
        */
       public Builder clearRound() {
-        bitField0_ = (bitField0_ & ~0x00000020);
+        bitField0_ = (bitField0_ & ~0x00000004);
         round_ = 0;
         onChanged();
         return this;
       }
 
-      // optional double val = 7;
+      // required double val = 4;
       private double val_ ;
       /**
-       * <code>optional double val = 7;</code>
+       * <code>required double val = 4;</code>
        */
       public boolean hasVal() {
-        return ((bitField0_ & 0x00000040) == 0x00000040);
+        return ((bitField0_ & 0x00000008) == 0x00000008);
       }
       /**
-       * <code>optional double val = 7;</code>
+       * <code>required double val = 4;</code>
        */
       public double getVal() {
         return val_;
       }
       /**
-       * <code>optional double val = 7;</code>
+       * <code>required double val = 4;</code>
        */
       public Builder setVal(double value) {
-        bitField0_ |= 0x00000040;
+        bitField0_ |= 0x00000008;
         val_ = value;
         onChanged();
         return this;
       }
       /**
-       * <code>optional double val = 7;</code>
+       * <code>required double val = 4;</code>
        */
       public Builder clearVal() {
-        bitField0_ = (bitField0_ & ~0x00000040);
+        bitField0_ = (bitField0_ & ~0x00000008);
         val_ = 0D;
         onChanged();
         return this;
       }
 
-      // repeated double eigenvals = 8 [packed = true];
-      private java.util.List<java.lang.Double> eigenvals_ = java.util.Collections.emptyList();
-      private void ensureEigenvalsIsMutable() {
-        if (!((bitField0_ & 0x00000080) == 0x00000080)) {
-          eigenvals_ = new java.util.ArrayList<java.lang.Double>(eigenvals_);
-          bitField0_ |= 0x00000080;
-         }
-      }
-      /**
-       * <code>repeated double eigenvals = 8 [packed = true];</code>
-       */
-      public java.util.List<java.lang.Double>
-          getEigenvalsList() {
-        return java.util.Collections.unmodifiableList(eigenvals_);
-      }
+      // optional bytes rawSession = 5;
+      private com.google.protobuf.ByteString rawSession_ = com.google.protobuf.ByteString.EMPTY;
       /**
-       * <code>repeated double eigenvals = 8 [packed = true];</code>
-       */
-      public int getEigenvalsCount() {
-        return eigenvals_.size();
-      }
-      /**
-       * <code>repeated double eigenvals = 8 [packed = true];</code>
-       */
-      public double getEigenvals(int index) {
-        return eigenvals_.get(index);
-      }
-      /**
-       * <code>repeated double eigenvals = 8 [packed = true];</code>
+       * <code>optional bytes rawSession = 5;</code>
        */
-      public Builder setEigenvals(
-          int index, double value) {
-        ensureEigenvalsIsMutable();
-        eigenvals_.set(index, value);
-        onChanged();
-        return this;
+      public boolean hasRawSession() {
+        return ((bitField0_ & 0x00000010) == 0x00000010);
       }
       /**
-       * <code>repeated double eigenvals = 8 [packed = true];</code>
+       * <code>optional bytes rawSession = 5;</code>
        */
-      public Builder addEigenvals(double value) {
-        ensureEigenvalsIsMutable();
-        eigenvals_.add(value);
-        onChanged();
-        return this;
+      public com.google.protobuf.ByteString getRawSession() {
+        return rawSession_;
       }
       /**
-       * <code>repeated double eigenvals = 8 [packed = true];</code>
+       * <code>optional bytes rawSession = 5;</code>
        */
-      public Builder addAllEigenvals(
-          java.lang.Iterable<? extends java.lang.Double> values) {
-        ensureEigenvalsIsMutable();
-        super.addAll(values, eigenvals_);
+      public Builder setRawSession(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000010;
+        rawSession_ = value;
         onChanged();
         return this;
       }
       /**
-       * <code>repeated double eigenvals = 8 [packed = true];</code>
+       * <code>optional bytes rawSession = 5;</code>
        */
-      public Builder clearEigenvals() {
-        eigenvals_ = java.util.Collections.emptyList();
-        bitField0_ = (bitField0_ & ~0x00000080);
+      public Builder clearRawSession() {
+        bitField0_ = (bitField0_ & ~0x00000010);
+        rawSession_ = getDefaultInstance().getRawSession();
         onChanged();
         return this;
       }
 
-      // @@protoc_insertion_point(builder_scope:comm.Message)
+      // @@protoc_insertion_point(builder_scope:comm.BatchedValue)
     }
 
     static {
-      defaultInstance = new Message(true);
+      defaultInstance = new BatchedValue(true);
       defaultInstance.initFields();
     }
 
-    // @@protoc_insertion_point(class_scope:comm.Message)
+    // @@protoc_insertion_point(class_scope:comm.BatchedValue)
   }
 
   public interface SessionEventOrBuilder
@@ -2595,6 +4067,11 @@ public final class ProtocolMessage {
   private static
     com.google.protobuf.GeneratedMessage.FieldAccessorTable
       internal_static_comm_Message_fieldAccessorTable;
+  private static com.google.protobuf.Descriptors.Descriptor
+    internal_static_comm_BatchedValue_descriptor;
+  private static
+    com.google.protobuf.GeneratedMessage.FieldAccessorTable
+      internal_static_comm_BatchedValue_fieldAccessorTable;
   private static com.google.protobuf.Descriptors.Descriptor
     internal_static_comm_SessionEvent_descriptor;
   private static
@@ -2609,20 +4086,26 @@ public final class ProtocolMessage {
       descriptor;
   static {
     java.lang.String[] descriptorData = {
-      "\n\027resources/message.proto\022\004comm\"\227\002\n\007Mess" +
+      "\n\027resources/message.proto\022\004comm\"\251\003\n\007Mess" +
       "age\022\'\n\004type\030\001 \002(\0162\031.comm.Message.Message" +
       "Type\022\016\n\006nodeId\030\002 \001(\t\022\017\n\007session\030\003 \001(\t\022\021\n" +
       "\texecution\030\004 \001(\005\022\037\n\027totalNumberOfExecuti" +
       "ons\030\005 \001(\005\022\r\n\005round\030\006 \001(\005\022\013\n\003val\030\007 \001(\001\022\025\n" +
-      "\teigenvals\030\010 \003(\001B\002\020\001\"[\n\013MessageType\022\007\n\003N" +
-      "EW\020\000\022\010\n\004INIT\020\001\022\010\n\004NEXT\020\002\022\n\n\006GOSSIP\020\003\022\022\n\016" +
-      "LIVENESS_CHECK\020\004\022\017\n\013REQUEST_VAL\020\005\"\303\001\n\014Se" +
-      "ssionEvent\022*\n\004type\030\001 \002(\0162\034.comm.SessionE" +
-      "vent.EventType\022\023\n\013localNodeId\030\002 \002(\t\022\021\n\ts",
-      "essionId\030\003 \002(\t\022\014\n\004date\030\004 \002(\003\022\023\n\013eigenval" +
-      "ues\030\005 \003(\001\022\024\n\014outNeighbors\030\006 \003(\t\"&\n\tEvent" +
-      "Type\022\013\n\007INITIAL\020\000\022\014\n\010TERMINAL\020\001B\027\n\004commB" +
-      "\017ProtocolMessage"
+      "\teigenvals\030\010 \003(\001B\002\020\001\022)\n\rbatchedValues\030\t " +
+      "\003(\0132\022.comm.BatchedValue\022\017\n\007probeId\030\n \001(\003" +
+      "\022\021\n\trawNodeId\030\013 \001(\014\022\022\n\nrawSession\030\014 \001(\014\"" +
+      "\211\001\n\013MessageType\022\007\n\003NEW\020\000\022\010\n\004INIT\020\001\022\010\n\004NEX" +
+      "T\020\002\022\n\n\006GOSSIP\020\003\022\022\n\016LIVENESS_CHECK\020\004\022\017\n\013R",
+      "EQUEST_VAL\020\005\022\t\n\005BATCH\020\006\022\022\n\016LIVENESS_REPL" +
+      "Y\020\007\022\r\n\tTERMINATE\020\010\"b\n\014BatchedValue\022\017\n\007session\030\001 \001(\t\022\021\n\t" +
+      "execution\030\002 \002(\005\022\r\n\005round\030\003 \002(\005\022\013\n\003val\030\004 " +
+      "\002(\001\022\022\n\nrawSession\030\005 \001(\014\"\303\001\n\014SessionEvent" +
+      "\022*\n\004type\030\001 \002(\0162\034.comm.SessionEvent.Event" +
+      "Type\022\023\n\013localNodeId\030\002 \002(\t\022\021\n\tsessionId\030\003" +
+      " \002(\t\022\014\n\004date\030\004 \002(\003\022\023\n\013eigenvalues\030\005 \003(\001\022" +
+      "\024\n\014outNeighbors\030\006 \003(\t\"&\n\tEventType\022\013\n\007IN" +
+      "ITIAL\020\000\022\014\n\010TERMINAL\020\001B\027\n\004commB\017ProtocolM" +
+      "essage"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
       new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
@@ -2634,9 +4117,15 @@ public final class ProtocolMessage {
           internal_static_comm_Message_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_comm_Message_descriptor,
-              new java.lang.String[] { "Type", "NodeId", "Session", "Execution", "TotalNumberOfExecutions", "Round", "Val", "Eigenvals", });
-          internal_static_comm_SessionEvent_descriptor =
+              new java.lang.String[] { "Type", "NodeId", "Session", "Execution", "TotalNumberOfExecutions", "Round", "Val", "Eigenvals", "BatchedValues", "ProbeId", "RawNodeId", "RawSession", });
+          internal_static_comm_BatchedValue_descriptor =
             getDescriptor().getMessageTypes().get(1);
+          internal_static_comm_BatchedValue_fieldAccessorTable = new
+            com.google.protobuf.GeneratedMessage.FieldAccessorTable(
+              internal_static_comm_BatchedValue_descriptor,
+              new java.lang.String[] { "Session", "Execution", "Round", "Val", "RawSession", });
+          internal_static_comm_SessionEvent_descriptor =
+            getDescriptor().getMessageTypes().get(2);
           internal_static_comm_SessionEvent_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_comm_SessionEvent_descriptor,
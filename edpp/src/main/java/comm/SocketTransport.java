@@ -0,0 +1,141 @@
+package comm;
+
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import comm.BoundedMessageQueue.OverflowPolicy;
+import comm.ProtocolMessage.Message;
+import core.ProtocolController;
+
+/**
+ * Transport exchanging messages with remote nodes over real sockets. Reliable
+ * messages are sent through TCP and best-effort messages and liveness checks
+ * through UDP, all of them using the same port on every node
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class SocketTransport implements Transport {
+
+	private static final int UDP_RECEIVER_THREADS = Runtime.getRuntime()
+			.availableProcessors();
+
+	private final int port;
+	private BlockingQueue<TransferableMessage> outgoingQueue;
+	private MessageSender sender;
+	private LivenessProber prober;
+	private MessageReceiver receiver;
+	private LightMessageReceiver lightReceiver;
+	private ExecutorService daemonExecutor;
+
+	/**
+	 * Class constructor. The transport will use the PROTOCOL_PORT
+	 */
+	public SocketTransport() {
+		this(ProtocolController.PROTOCOL_PORT);
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param port
+	 *            the port used for sending and receiving messages
+	 */
+	public SocketTransport(int port) {
+		this.port = port;
+		outgoingQueue = new BoundedMessageQueue(
+				BoundedMessageQueue.DEFAULT_CAPACITY,
+				OverflowPolicy.DROP_OLDEST);
+		sender = new MessageSender(outgoingQueue, port,
+				MessageSender.DEFAULT_WORKERS,
+				MessageSender.DEFAULT_MAX_ATTEMPTS,
+				MessageSender.DEFAULT_DEADLINE);
+		prober = new LivenessProber(sender);
+		daemonExecutor = Executors.newFixedThreadPool(3, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	@Override
+	public void start(BlockingQueue<TransferableMessage> incomingQueue,
+			ContactTable contacts) {
+		receiver = new MessageReceiver(incomingQueue,
+				MessageReceiver.DEFAULT_BACKLOG, port, contacts);
+		lightReceiver = new LightMessageReceiver(incomingQueue, prober,
+				UDP_RECEIVER_THREADS, port, contacts);
+		daemonExecutor.execute(receiver);
+		daemonExecutor.execute(sender);
+		daemonExecutor.execute(lightReceiver);
+	}
+
+	@Override
+	public void sendReliably(Message m, InetAddress address) {
+		enqueue(new TransferableMessage(m, address, true));
+	}
+
+	@Override
+	public void sendBestEffort(Message m, InetAddress address) {
+		enqueue(new TransferableMessage(m, address, false));
+	}
+
+	@Override
+	public void sendReliably(Message m, Collection<InetAddress> addresses) {
+		enqueue(new TransferableMessage(m, addresses, true));
+	}
+
+	@Override
+	public void sendBestEffort(Message m, Collection<InetAddress> addresses) {
+		enqueue(new TransferableMessage(m, addresses, false));
+	}
+
+	@Override
+	public void probeLiveness(InetAddress address, LivenessCallback callback) {
+		prober.probe(address, callback);
+	}
+
+	@Override
+	public long getProbeDuration() {
+		return prober.getProbeDuration();
+	}
+
+	@Override
+	public void stop() {
+		if (receiver != null) {
+			receiver.stopService();
+			lightReceiver.stopService();
+		}
+		prober.stopService();
+		sender.stopService();
+		daemonExecutor.shutdownNow();
+	}
+
+	/**
+	 *
+	 * @return the port used for sending and receiving messages
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Places a message in the queue of outgoing messages, waiting for room if
+	 * the queue is full
+	 */
+	private void enqueue(TransferableMessage tm) {
+		try {
+			outgoingQueue.put(tm);
+		} catch (InterruptedException e) {
+			// the node is shutting down
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -1,11 +1,20 @@
 package comm;
 
+import java.io.IOException;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.protobuf.CodedOutputStream;
 
 import comm.ProtocolMessage.Message;
 
 /**
- * A protocol message along with the destination address
+ * A protocol message along with the destination address. A message intended
+ * for several remote nodes can carry all their addresses, so that it is
+ * serialized only once and the same bytes are written to each one of them
  * 
  * @author Xenofon Foukas
  * 
@@ -14,7 +23,9 @@ public class TransferableMessage {
 
 	private Message message;
 	private InetAddress address;
+	private List<InetAddress> addresses;
 	private boolean sendReliably;
+	private volatile byte[] encodedMessage;
 
 	/**
 	 * Class constructor
@@ -37,6 +48,39 @@ public class TransferableMessage {
 		this.setSendReliably(true);
 	}
 
+	/**
+	 * Class constructor for a message intended for several remote nodes. A
+	 * message for a single remote node is no different than one created with
+	 * its address alone
+	 * 
+	 * @param message
+	 *            The Message that will be sent to all the remote nodes
+	 * @param addresses
+	 *            The InetAddresses of the remote nodes
+	 * @param sendReliably
+	 *            true if the message should be sent through TCP, false for UDP
+	 */
+	public TransferableMessage(Message message,
+			Collection<InetAddress> addresses, boolean sendReliably) {
+		this.setMessage(message);
+		if (addresses.size() == 1) {
+			this.address = addresses.iterator().next();
+		} else {
+			this.addresses = Collections
+					.unmodifiableList(new ArrayList<InetAddress>(addresses));
+			this.address = this.addresses.isEmpty() ? null : this.addresses
+					.get(0);
+		}
+		this.setSendReliably(sendReliably);
+	}
+
+	private TransferableMessage(TransferableMessage tm, InetAddress address) {
+		this.message = tm.message;
+		this.address = address;
+		this.sendReliably = tm.sendReliably;
+		this.encodedMessage = tm.getEncodedMessage();
+	}
+
 	/**
 	 * 
 	 * @return The transfered Message
@@ -52,16 +96,90 @@ public class TransferableMessage {
 	 */
 	public void setMessage(Message message) {
 		this.message = message;
+		this.encodedMessage = null;
 	}
 
 	/**
 	 * 
-	 * @return The InetAddress of the remote node
+	 * @return The InetAddress of the remote node, or of the first remote node
+	 *         if the message is intended for several ones
 	 */
 	public InetAddress getAddress() {
 		return address;
 	}
 
+	/**
+	 * 
+	 * @return The InetAddresses of all the remote nodes the message is
+	 *         intended for
+	 */
+	public List<InetAddress> getAddresses() {
+		if (addresses == null) {
+			return Collections.singletonList(address);
+		}
+		return addresses;
+	}
+
+	/**
+	 * 
+	 * @return true if the message is intended for several remote nodes, or
+	 *         for none
+	 */
+	public boolean hasMultipleDestinations() {
+		return addresses != null;
+	}
+
+	/**
+	 * Splits a message intended for several remote nodes into one message per
+	 * remote node. All the resulting messages share the same serialized bytes,
+	 * so the Message is only serialized once
+	 * 
+	 * @return a list with a TransferableMessage for every remote node
+	 */
+	public List<TransferableMessage> split() {
+		List<InetAddress> targets = getAddresses();
+		List<TransferableMessage> result = new ArrayList<TransferableMessage>(
+				targets.size());
+		for (InetAddress target : targets) {
+			result.add(new TransferableMessage(this, target));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the Message serialized in the length-delimited form used on the
+	 * wire. It is serialized on first use and the same bytes are returned
+	 * afterwards
+	 * 
+	 * @return a byte array holding the length-delimited Message
+	 */
+	public byte[] getEncodedMessage() {
+		byte[] encoded = encodedMessage;
+		if (encoded == null) {
+			int size = message.getSerializedSize();
+			encoded = new byte[CodedOutputStream.computeRawVarint32Size(size)
+					+ size];
+			CodedOutputStream output = CodedOutputStream.newInstance(encoded);
+			try {
+				output.writeRawVarint32(size);
+				message.writeTo(output);
+			} catch (IOException e) {
+				// cannot happen, the array has exactly the required size
+				throw new IllegalStateException(e);
+			}
+			encodedMessage = encoded;
+		}
+		return encoded;
+	}
+
+	/**
+	 * 
+	 * @return true if the Message has already been serialized
+	 */
+	boolean isEncoded() {
+		return encodedMessage != null;
+	}
+
 	/**
 	 * 
 	 * @param address
@@ -0,0 +1,100 @@
+package comm;
+
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+
+import comm.ProtocolMessage.Message;
+
+/**
+ * Interface of the layer through which the protocol exchanges messages with
+ * remote nodes. The ProtocolController only communicates with the network
+ * through a Transport, so that the protocol can run over real sockets or over
+ * a simulated network inside a single process
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public interface Transport {
+
+	/**
+	 * Starts the transport. Any message received from a remote node from now
+	 * on is placed in the given queue
+	 *
+	 * @param incomingQueue
+	 *            the queue, where the incoming messages will be placed
+	 * @param contacts
+	 *            the ContactTable in which every remote node that sends a
+	 *            message, including a liveness check, is recorded
+	 */
+	public void start(BlockingQueue<TransferableMessage> incomingQueue,
+			ContactTable contacts);
+
+	/**
+	 * Sends a message to a remote node, making sure that it is delivered in
+	 * order with the rest of the reliable messages to the same node
+	 *
+	 * @param m
+	 *            the message to be sent
+	 * @param address
+	 *            the InetAddress of the remote node
+	 */
+	public void sendReliably(Message m, InetAddress address);
+
+	/**
+	 * Sends a message to a remote node, without any guarantee that it will be
+	 * delivered
+	 *
+	 * @param m
+	 *            the message to be sent
+	 * @param address
+	 *            the InetAddress of the remote node
+	 */
+	public void sendBestEffort(Message m, InetAddress address);
+
+	/**
+	 * Sends the same message reliably to several remote nodes. The message is
+	 * serialized only once for all of them
+	 *
+	 * @param m
+	 *            the message to be sent
+	 * @param addresses
+	 *            the InetAddresses of the remote nodes
+	 */
+	public void sendReliably(Message m, Collection<InetAddress> addresses);
+
+	/**
+	 * Sends the same message to several remote nodes, without any guarantee
+	 * that it will be delivered. The message is serialized only once for all
+	 * of them
+	 *
+	 * @param m
+	 *            the message to be sent
+	 * @param addresses
+	 *            the InetAddresses of the remote nodes
+	 */
+	public void sendBestEffort(Message m, Collection<InetAddress> addresses);
+
+	/**
+	 * Checks asynchronously whether a remote node is alive. The outcome is
+	 * reported to the callback in at most getProbeDuration() milliseconds
+	 *
+	 * @param address
+	 *            the InetAddress of the remote node
+	 * @param callback
+	 *            the LivenessCallback to be notified about the outcome
+	 */
+	public void probeLiveness(InetAddress address, LivenessCallback callback);
+
+	/**
+	 *
+	 * @return the maximum time in milliseconds a liveness check can take
+	 *         before the remote node is considered unreachable
+	 */
+	public long getProbeDuration();
+
+	/**
+	 * Stops the transport and releases any resources it holds
+	 */
+	public void stop();
+}
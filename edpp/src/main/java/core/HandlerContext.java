@@ -0,0 +1,171 @@
+package core;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+
+import comm.TransferableMessage;
+import domain.InitArrivalModel;
+import domain.RttEstimator;
+import domain.Session;
+import domain.network.Node;
+
+/**
+ * The state of the local node shared by all the MessageHandlerTasks. It is
+ * created once by the ProtocolController, instead of being passed to every
+ * task piece by piece. Only the Sessions, the local node and the outgoing
+ * queue are required, the rest of the settings are optional. The tasks share
+ * a single RoundAdvancer, placing messages in the outgoing queue
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class HandlerContext {
+
+	private final Map<UUID, Session> sessions;
+	private final Node localNode;
+	private final BlockingQueue<TransferableMessage> outQueue;
+	private final RoundAdvancer roundAdvancer;
+	private InitArrivalModel initArrivals;
+	private RttEstimator rtt;
+	private boolean earlyTermination;
+	private SessionEvictor evictor;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param sessions
+	 *            a Map containing all the currently active Sessions in the
+	 *            protocol, using their UUIDs as keys
+	 * @param localNode
+	 *            the abstract Node representation of the local node
+	 * @param outQueue
+	 *            the queue where the outgoing messages should be placed
+	 */
+	public HandlerContext(Map<UUID, Session> sessions, Node localNode,
+			BlockingQueue<TransferableMessage> outQueue) {
+		this.sessions = sessions;
+		this.localNode = localNode;
+		this.outQueue = outQueue;
+		this.roundAdvancer = new RoundAdvancer(outQueue, localNode);
+	}
+
+	/**
+	 *
+	 * @return a Map containing all the currently active Sessions in the
+	 *         protocol, using their UUIDs as keys
+	 */
+	public Map<UUID, Session> getSessions() {
+		return sessions;
+	}
+
+	/**
+	 *
+	 * @return the abstract Node representation of the local node
+	 */
+	public Node getLocalNode() {
+		return localNode;
+	}
+
+	/**
+	 *
+	 * @return the queue where the outgoing messages should be placed
+	 */
+	public BlockingQueue<TransferableMessage> getOutQueue() {
+		return outQueue;
+	}
+
+	/**
+	 *
+	 * @return the RoundAdvancer closing the rounds of the Executions on behalf
+	 *         of the tasks
+	 */
+	public RoundAdvancer getRoundAdvancer() {
+		return roundAdvancer;
+	}
+
+	/**
+	 *
+	 * @return the InitArrivalModel given to the Sessions created by the
+	 *         tasks, or null
+	 */
+	public InitArrivalModel getInitArrivals() {
+		return initArrivals;
+	}
+
+	/**
+	 *
+	 * @param initArrivals
+	 *            the InitArrivalModel of the local node, given to the Sessions
+	 *            created by the tasks, or null
+	 * @return this HandlerContext
+	 */
+	public HandlerContext setInitArrivals(InitArrivalModel initArrivals) {
+		this.initArrivals = initArrivals;
+		return this;
+	}
+
+	/**
+	 *
+	 * @return the RttEstimator given to the Sessions created by the tasks, or
+	 *         null
+	 */
+	public RttEstimator getRtt() {
+		return rtt;
+	}
+
+	/**
+	 *
+	 * @param rtt
+	 *            the RttEstimator of the local node, given to the Sessions
+	 *            created by the tasks, or null
+	 * @return this HandlerContext
+	 */
+	public HandlerContext setRtt(RttEstimator rtt) {
+		this.rtt = rtt;
+		return this;
+	}
+
+	/**
+	 *
+	 * @return true if the Executions of the Sessions created by the tasks end
+	 *         once their impulse response converges
+	 */
+	public boolean isEarlyTermination() {
+		return earlyTermination;
+	}
+
+	/**
+	 *
+	 * @param earlyTermination
+	 *            true if the Executions of the Sessions created by the tasks
+	 *            should end once their impulse response converges
+	 * @return this HandlerContext
+	 */
+	public HandlerContext setEarlyTermination(boolean earlyTermination) {
+		this.earlyTermination = earlyTermination;
+		return this;
+	}
+
+	/**
+	 *
+	 * @return the SessionEvictor whose evicted Sessions are not created again
+	 *         by late messages, or null
+	 */
+	public SessionEvictor getEvictor() {
+		return evictor;
+	}
+
+	/**
+	 *
+	 * @param evictor
+	 *            the SessionEvictor of the local node, whose evicted Sessions
+	 *            are not created again by late messages, or null
+	 * @return this HandlerContext
+	 */
+	public HandlerContext setEvictor(SessionEvictor evictor) {
+		this.evictor = evictor;
+		return this;
+	}
+
+}
@@ -1,37 +1,51 @@
 package core;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import storage.Database;
+import comm.ContactTable;
+import comm.FailureDetector;
 import comm.MessageBuilder;
-import comm.MessageSender;
+import comm.LivenessCallback;
 import comm.ProtocolMessage.SessionEvent;
 import comm.TransferableMessage;
+import comm.Transport;
 import comm.ProtocolMessage.Message;
-import comm.ProtocolMessage.Message.MessageType;
 import comm.ProtocolMessage.SessionEvent.EventType;
 import domain.Execution;
 import domain.Phase;
-import domain.PlainNeighbor;
 import domain.RecordedSession;
 import domain.Session;
 import domain.TimedNeighbor;
 import domain.network.Node;
-import domain.structure.PlainNeighborsTable;
 import domain.structure.TimedNeighborsTable;
+import domain.structure.TimerWheel;
 import event.SessionListener;
 
 /**
  * This is the scheduled task that runs periodically and checks whether remote
  * nodes have failed and if an Execution should proceed to the next round,
- * terminate etc.
+ * terminate etc. The Executions are kept in a timer wheel and each one is only
+ * checked once the earliest of its timers expires, instead of sweeping all the
+ * in-neighbors of every Execution in each run. Whether an in-neighbor has
+ * failed is decided by the FailureDetector of the node, which is shared by all
+ * the Sessions and Executions
  * 
  * @author Xenofon Foukas
  * 
@@ -40,18 +54,24 @@ public class MaintenanceTask implements Runnable {
 
 	private Logger logger;
 
-	private Map<String, Session> sessions;
-	private BlockingQueue<TransferableMessage> outgoingQueue;
+	private Map<UUID, Session> sessions;
 	private Node localNode;
 	private Database db;
-	private static List<SessionListener> sessionListeners = new LinkedList<SessionListener>();
+	private FailureDetector detector;
+	private RoundAdvancer roundAdvancer;
+	private TimerWheel<ScheduledExecution> timers;
+	private Map<UUID, Integer> discovered;
+	private ForkJoinPool pool;
+	private SessionEvictor evictor;
+	private long lastEviction;
+	private static List<SessionListener> sessionListeners = new CopyOnWriteArrayList<SessionListener>();
 
 	/**
 	 * Constructor class
 	 * 
 	 * @param sessions
 	 *            a map containing all the currently active sessions and their
-	 *            ids as keys
+	 *            UUIDs as keys
 	 * @param outgoingQueue
 	 *            the queue, where the messages intended for remote nodes will
 	 *            be placed
@@ -59,366 +79,479 @@ public class MaintenanceTask implements Runnable {
 	 *            an object of type Node representing the local node
 	 * @param db
 	 *            a database which will be used for storing completed Sessions
+	 * @param transport
+	 *            the Transport used for checking whether in-neighbors
+	 *            suspected of failure are alive
 	 */
-	public MaintenanceTask(Map<String, Session> sessions,
+	public MaintenanceTask(Map<UUID, Session> sessions,
 			BlockingQueue<TransferableMessage> outgoingQueue, Node localNode,
-			Database db) {
+			Database db, Transport transport) {
+		this(sessions, outgoingQueue, localNode, db, transport,
+				new ContactTable());
+	}
+
+	/**
+	 * Constructor class
+	 * 
+	 * @param sessions
+	 *            a map containing all the currently active sessions and their
+	 *            UUIDs as keys
+	 * @param outgoingQueue
+	 *            the queue, where the messages intended for remote nodes will
+	 *            be placed
+	 * @param localNode
+	 *            an object of type Node representing the local node
+	 * @param db
+	 *            a database which will be used for storing completed Sessions
+	 * @param transport
+	 *            the Transport used for checking whether in-neighbors
+	 *            suspected of failure are alive
+	 * @param contacts
+	 *            the ContactTable recording when each remote node was last
+	 *            heard from. In-neighbors heard from recently are not checked
+	 *            for liveness
+	 */
+	public MaintenanceTask(Map<UUID, Session> sessions,
+			BlockingQueue<TransferableMessage> outgoingQueue, Node localNode,
+			Database db, Transport transport, ContactTable contacts) {
+		this(sessions, outgoingQueue, localNode, db, transport, contacts, null);
+	}
+
+	/**
+	 * Constructor class
+	 * 
+	 * @param sessions
+	 *            a map containing all the currently active sessions and their
+	 *            UUIDs as keys. If a pool is used, the map must allow concurrent
+	 *            access
+	 * @param outgoingQueue
+	 *            the queue, where the messages intended for remote nodes will
+	 *            be placed
+	 * @param localNode
+	 *            an object of type Node representing the local node
+	 * @param db
+	 *            a database which will be used for storing completed Sessions
+	 * @param transport
+	 *            the Transport used for checking whether in-neighbors
+	 *            suspected of failure are alive
+	 * @param contacts
+	 *            the ContactTable recording when each remote node was last
+	 *            heard from. In-neighbors heard from recently are not checked
+	 *            for liveness
+	 * @param pool
+	 *            the ForkJoinPool in which the Sessions are maintained in
+	 *            parallel during each run, or null if the Sessions should be
+	 *            maintained one after the other by the thread of the task
+	 */
+	public MaintenanceTask(Map<UUID, Session> sessions,
+			BlockingQueue<TransferableMessage> outgoingQueue, Node localNode,
+			Database db, Transport transport, ContactTable contacts,
+			ForkJoinPool pool) {
+		this(sessions, outgoingQueue, localNode, db, new FailureDetector(
+				contacts, transport), pool);
+	}
+
+	/**
+	 * Constructor class
+	 * 
+	 * @param sessions
+	 *            a map containing all the currently active sessions and their
+	 *            UUIDs as keys. If a pool is used, the map must allow concurrent
+	 *            access
+	 * @param outgoingQueue
+	 *            the queue, where the messages intended for remote nodes will
+	 *            be placed
+	 * @param localNode
+	 *            an object of type Node representing the local node
+	 * @param db
+	 *            a database which will be used for storing completed Sessions
+	 * @param detector
+	 *            the FailureDetector of the node, which decides whether
+	 *            in-neighbors suspected of failure are alive
+	 * @param pool
+	 *            the ForkJoinPool in which the Sessions are maintained in
+	 *            parallel during each run, or null if the Sessions should be
+	 *            maintained one after the other by the thread of the task
+	 */
+	public MaintenanceTask(Map<UUID, Session> sessions,
+			BlockingQueue<TransferableMessage> outgoingQueue, Node localNode,
+			Database db, FailureDetector detector, ForkJoinPool pool) {
+		this(sessions, outgoingQueue, localNode, db, detector, pool,
+				new SessionEvictor());
+	}
+
+	/**
+	 * Constructor class
+	 * 
+	 * @param sessions
+	 *            a map containing all the currently active sessions and their
+	 *            UUIDs as keys. If a pool is used, the map must allow concurrent
+	 *            access
+	 * @param outgoingQueue
+	 *            the queue, where the messages intended for remote nodes will
+	 *            be placed
+	 * @param localNode
+	 *            an object of type Node representing the local node
+	 * @param db
+	 *            a database which will be used for storing completed Sessions
+	 * @param detector
+	 *            the FailureDetector of the node, which decides whether
+	 *            in-neighbors suspected of failure are alive
+	 * @param pool
+	 *            the ForkJoinPool in which the Sessions are maintained in
+	 *            parallel during each run, or null if the Sessions should be
+	 *            maintained one after the other by the thread of the task
+	 * @param evictor
+	 *            the SessionEvictor removing the Sessions that make no
+	 *            progress
+	 */
+	public MaintenanceTask(Map<UUID, Session> sessions,
+			BlockingQueue<TransferableMessage> outgoingQueue, Node localNode,
+			Database db, FailureDetector detector, ForkJoinPool pool,
+			SessionEvictor evictor) {
 		logger = Logger.getLogger(MaintenanceTask.class.getName());
 		this.sessions = sessions;
-		this.outgoingQueue = outgoingQueue;
 		this.localNode = localNode;
 		this.db = db;
+		this.detector = detector;
+		this.roundAdvancer = new RoundAdvancer(outgoingQueue, localNode);
+		this.timers = new TimerWheel<ScheduledExecution>();
+		this.discovered = new ConcurrentHashMap<UUID, Integer>();
+		this.pool = pool;
+		this.evictor = evictor;
+		this.lastEviction = System.nanoTime();
 	}
 
-	// TODO MUST break this run() into smaller tasks, because it is too long
-	// (use private methods probably)
-
 	@Override
 	public void run() {
 		logger.fine("Running maintenance task");
-		Execution e;
+		evictStalledSessions();
+		discoverExecutions();
+		// only the Executions with an expired timer need to be checked
+		Collection<List<ScheduledExecution>> dueSessions = groupBySession(timers
+				.expire());
+		if (pool == null || dueSessions.size() < 2) {
+			for (List<ScheduledExecution> dueExecutions : dueSessions) {
+				maintainSession(dueExecutions);
+			}
+			return;
+		}
+		// each Session is maintained by a different task of the pool, while
+		// the Executions of a Session are still maintained one after the
+		// other. All the tasks are complete before the next run
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		for (final List<ScheduledExecution> dueExecutions : dueSessions) {
+			tasks.add(pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					maintainSession(dueExecutions);
+				}
+			}));
+		}
+		for (ForkJoinTask<?> task : tasks) {
+			try {
+				task.join();
+			} catch (RuntimeException ex) {
+				// a failure in one Session must not stop the maintenance of
+				// the rest
+				logger.warning("The maintenance of a Session failed: " + ex);
+			}
+		}
+	}
+
+	private void maintainSession(List<ScheduledExecution> dueExecutions) {
+		for (ScheduledExecution due : dueExecutions) {
+			Session s = due.session;
+			Execution e = due.execution;
+			if (sessions.get(s.getSessionUuid()) != s) {
+				// the Session was evicted, so its Executions are dropped from
+				// the timer wheel
+				continue;
+			}
+			checkExecution(s, e);
+			// the messages built while the Execution was locked
+			roundAdvancer.flush();
+			if (e.getPhase() != Phase.TERMINATED) {
+				timers.schedule(due, nextCheckDelay(e));
+			}
+		}
+	}
+
+	/**
+	 * Groups the expired Executions by Session, keeping the Executions of each
+	 * Session in the order of their execution numbers
+	 */
+	private Collection<List<ScheduledExecution>> groupBySession(
+			List<ScheduledExecution> expired) {
+		Map<UUID, List<ScheduledExecution>> groups = new LinkedHashMap<UUID, List<ScheduledExecution>>();
+		for (ScheduledExecution due : expired) {
+			UUID sessionId = due.session.getSessionUuid();
+			List<ScheduledExecution> group = groups.get(sessionId);
+			if (group == null) {
+				group = new ArrayList<ScheduledExecution>();
+				groups.put(sessionId, group);
+			}
+			group.add(due);
+		}
+		for (List<ScheduledExecution> group : groups.values()) {
+			Collections.sort(group, new Comparator<ScheduledExecution>() {
+				@Override
+				public int compare(ScheduledExecution a, ScheduledExecution b) {
+					int x = a.execution.getExecutionNumber();
+					int y = b.execution.getExecutionNumber();
+					return (x < y) ? -1 : ((x == y) ? 0 : 1);
+				}
+			});
+		}
+		return groups.values();
+	}
+
+	// TODO MUST break this method into smaller tasks, because it is too long
+	// (use private methods probably)
+
+	private void checkExecution(Session s, Execution e) {
 		TimedNeighborsTable inNeighbors;
-		Collection<Session> sessionSet = sessions.values();
-
-		Iterator<Session> sessionIter = sessionSet.iterator();
-		Session s;
-		// iterate over the active Sessions
-		while (sessionIter.hasNext()) {
-			s = sessionIter.next();
-			// Iterate over the Executions of a Session
-			for (int i = 1; i <= s.getCurrentNumberOfExecutions(); i++) {
-				e = s.getExecution(i);
-				if (e != null) {
-					// Check if it is in the INIT phase
-					if (e.getPhase() == Phase.INIT) {
-						// Check if the INIT phase should end, i.e. whether the
-						// timer of this phase has expired
-						if (e.remainingInitTime() <= 0) {
-							logger.info("Stage is " + e.getPhase()
-									+ " and remaining time is "
-									+ e.remainingInitTime());
-							logger.info("The INIT phase of Execution "
-									+ e.getExecutionNumber()
-									+ " in Session "
-									+ s.getSessionId()
-									+ " is over. Entering the DATA_EXCHANGE phase");
-							/*
-							 * Enter DATA_EXCHANGE phase Go to next round and
-							 * send message to all out-neighbors
-							 */
-							e.setPhase(Phase.DATA_EXCHANGE);
-							e.setRound(2);
-
-							// check whether a new Execution should be initiated
-							// in this round
-							checkForNewExecution(s, e);
-							logger.info("Recomputed weights and set round to "
-									+ e.getCurrentRound() + " in execution "
-									+ e.getExecutionNumber() + " of session "
-									+ s.getSessionId());
-
-							// if the Execution has another round, send next
-							// messages and renew timers of in-neighbors
-							if (e.hasAnotherRound()) {
-								sendOutNextMessage(MessageType.NEXT, s, e);
-								e.getInNeighbors().renewTimers();
-								int newRound = e.getCurrentRound() + 1;
-								checkForNewExecution(s, e);
-								logger.info("Round " + e.getCurrentRound()
-										+ " of execution "
-										+ e.getExecutionNumber()
-										+ " in session " + s.getSessionId()
-										+ " is over. Going to round "
-										+ newRound);
-								e.setRound(newRound);
-							} else { // it he Execution does not have another
-										// round, switch to GOSSIP phase
-								logger.info("Round "
-										+ e.getCurrentRound()
-										+ " of execution "
-										+ e.getExecutionNumber()
-										+ " in session "
-										+ s.getSessionId()
-										+ " is over. This was the final round. "
-										+ "Switching to GOSSIP phase");
-								e.setPhase(Phase.GOSSIP);
-								e.computeRealizationMatrix();
-								logger.info("The realization matrix of execution "
-										+ e.getExecutionNumber()
-										+ " of session "
-										+ s.getSessionId()
-										+ " was computed");
-
-								// add any gossip messages already received to
-								// the gossip data of the Execution
-								e.transferPendingGossipMessages();
-
-								// compute the eigenvalues of the approximation
-								// matrix
-								// TODO probably should test this for null
-								double[] eigenvals = e.getMatrixAEigenvalues();
-								String eig = "[";
-								for (int j = 0; j < eigenvals.length; j++) {
-									eig += eigenvals[j];
-									eig += ", ";
-								}
-								eig += "]";
-
-								// Send only the 3 largest eigenvalues. This
-								// should probably be implemented to change
-								// dynamically by the user
-								double[] valsToSend;
-								if (eigenvals.length > 3) {
-									valsToSend = new double[3];
-									for (int j = 0; j < 3; j++) {
-										valsToSend[j] = eigenvals[j];
-									}
-								} else {
-									valsToSend = eigenvals;
-								}
-								logger.info("The computed eigenvalues of execution "
-										+ e.getExecutionNumber()
-										+ " of session "
-										+ s.getSessionId()
-										+ " are " + eig);
-								Message msg = MessageBuilder
-										.buildGossipMessage(localNode
-												.getLocalId().toString(), s
-												.getSessionId(), e
-												.getExecutionNumber(),
-												valsToSend);
-								// send GOSSIP message to out-neighbors
-								sendGossipMessage(msg, e);
-							}
-						}
-					} else if (e.getPhase() == Phase.DATA_EXCHANGE) { /*
-																	 * Check for
-																	 * in
-																	 * -neighbors
-																	 * suspected
-																	 * of
-																	 * failure
-																	 */
-						e.setProperTimersToInf();
-						inNeighbors = e.getInNeighbors();
-						boolean endOfRound = true;
-
-						// iterate over the in-neighbors to check whether a node
-						// has failed
-						synchronized (inNeighbors) {
-							Iterator<TimedNeighbor> iter = inNeighbors
-									.iterator();
-
-							while (iter.hasNext()) {
-								TimedNeighbor neighbor = iter.next();
-
-								long remainingTime = neighbor.getTimeToProbe();
-								if (remainingTime != TimedNeighbor.INF)
-									neighbor.decreaseTime(ProtocolController.TIMEOUT);
-								if (neighbor.getTimeToProbe() <= 0) { /*
-																	 * Check
-																	 * whether
-																	 * the node
-																	 * is alive
-																	 */
-									if (isAlive(neighbor)) {
-										// if the node is alive, the value the
-										// present node expects is probably
-										// lost; request retransmission and
-										// renew the timer of the suspected node
-										requestPreviousVal(s.getSessionId(),
-												e.getExecutionNumber(),
-												e.getCurrentRound(),
-												neighbor.getAddress());
-
-										inNeighbors.renewTimer(neighbor);
-										endOfRound = false;
-									} else { // if the node has failed just
-												// remove it from the list
-										logger.info("Node "
-												+ neighbor.getId().toString()
-												+ " is no longer alive."
-												+ " Removing it from in-neihgbors table of Execution "
-												+ e.getExecutionNumber()
-												+ " in Session "
-												+ s.getSessionId());
-										iter.remove();
-
-										// give a hint to the overlay that a
-										// node has failed and it should
-										// probably remove it
-										if (localNode
-												.removeOutNeighborNode(neighbor
-														.getId().toString())) {
-											logger.info("Node "
-													+ neighbor.getId()
-															.toString()
-													+ " is no longer alive."
-													+ " Removing it from out-neihgbors table");
-										}
-									}
-								} else if (neighbor.getTimeToProbe() != TimedNeighbor.INF) {
-									endOfRound = false;
-								}
-							}
-						}
-						if (endOfRound) { // If the round is over, check if it
-											// was the last round or not
-							e.getInNeighbors().renewTimers();
-							// If it is the end of the round check if we have
-							// another round
-							if (e.hasAnotherRound()) {
-								sendOutNextMessage(MessageType.NEXT, s, e);
-								int newRound = e.getCurrentRound() + 1;
-								logger.info("Round " + e.getCurrentRound()
-										+ " of execution "
-										+ e.getExecutionNumber()
-										+ " in session " + s.getSessionId()
-										+ " is over. Going to round "
-										+ newRound);
-								e.setRound(e.getCurrentRound() + 1);
-								checkForNewExecution(s, e);
-							} else { // if this was the last round, go to the
-										// Gossip Round phase
-								logger.info("Round "
-										+ e.getCurrentRound()
-										+ " of execution "
-										+ e.getExecutionNumber()
-										+ " in session "
-										+ s.getSessionId()
-										+ " is over. This was the final round. "
-										+ "Switching to GOSSIP phase");
-								e.setRound(e.getCurrentRound() + 1);
-								e.setPhase(Phase.GOSSIP);
-
-								// Compute the eigenvalue estimations of the
-								// current node
-								e.computeRealizationMatrix();
-								logger.info("The realization matrix of execution "
-										+ e.getExecutionNumber()
-										+ " of session "
-										+ s.getSessionId()
-										+ " was computed");
-								e.transferPendingGossipMessages();
-
-								// TODO probably should test this for null
-								double[] eigenvals = e.getMatrixAEigenvalues();
-								String eig = "[";
-								for (int j = 0; j < eigenvals.length; j++) {
-									eig += eigenvals[j];
-									eig += ", ";
-								}
-								eig += "]";
-
-								// keep only the three largest eigenvalues
-								double[] valsToSend;
-								if (eigenvals.length > 3) {
-									valsToSend = new double[3];
-									for (int j = 0; j < 3; j++) {
-										valsToSend[j] = eigenvals[j];
-									}
-								} else {
-									valsToSend = eigenvals;
-								}
-								logger.info("The computed eigenvalues of execution "
-										+ e.getExecutionNumber()
-										+ " of session "
-										+ s.getSessionId()
-										+ " are " + eig);
-								Message msg = MessageBuilder
-										.buildGossipMessage(localNode
-												.getLocalId().toString(), s
-												.getSessionId(), e
-												.getExecutionNumber(),
-												valsToSend);
-								// send GOSSIP message to out-neighbors
-								sendGossipMessage(msg, e);
-							}
-						}
-					} else if (e.getPhase() == Phase.GOSSIP) {
-						e.transferPendingGossipMessages();
-						inNeighbors = e.getInNeighbors();
-
-						boolean endOfRound = true;
-						synchronized (inNeighbors) {
-							Iterator<TimedNeighbor> iter = inNeighbors
-									.iterator();
-							while (iter.hasNext()) {
-								TimedNeighbor neighbor = iter.next();
-								long remainingTime = neighbor.getTimeToProbe();
-								if (remainingTime != TimedNeighbor.INF)
-									neighbor.decreaseTime(ProtocolController.TIMEOUT);
-								if (neighbor.getTimeToProbe() <= 0) { /*
-																	 * Check
-																	 * whether
-																	 * the node
-																	 * is alive
-																	 */
-									if (isAlive(neighbor)) {
-										inNeighbors.renewTimer(neighbor);
-										requestPreviousVal(s.getSessionId(),
-												e.getExecutionNumber(), -1,
-												neighbor.getAddress());
-										endOfRound = false;
-									} else {
-										logger.info("Node "
-												+ neighbor.getId().toString()
-												+ " is no longer alive."
-												+ " Removing it from in-neihgbors table of Execution "
-												+ e.getExecutionNumber()
-												+ " in Session "
-												+ s.getSessionId());
-										iter.remove();
-										if (localNode
-												.removeOutNeighborNode(neighbor
-														.getId().toString())) {
-											logger.info("Node "
-													+ neighbor.getId()
-															.toString()
-													+ " is no longer alive."
-													+ " Removing it from out-neihgbors table");
-										}
-									}
-								} else if (neighbor.getTimeToProbe() != TimedNeighbor.INF) {
-									endOfRound = false;
-								}
-							}
-						}
-						if (endOfRound) {
-							double[] medianEig = e.computeMedianEigenvalues();
-							String eig = "[";
-							for (int j = 0; j < medianEig.length; j++) {
-								eig += medianEig[j];
-								eig += ", ";
-							}
-							eig += "]";
-							logger.info("Gossip round of execution "
-									+ e.getExecutionNumber()
-									+ " of session "
-									+ s.getSessionId()
-									+ " is now over. The median of all received eigenvalues is "
-									+ eig);
-							e.setPhase(Phase.TERMINATED);
-							s.addCompletedExecution();
-							if (s.hasTerminated()) {
-								sessionIter.remove();
-								RecordedSession recSes = new RecordedSession(s);
-								db.addSession(recSes);
-								// Notify all listeners
-								for (SessionListener sl : sessionListeners) {
-									SessionEvent se = MessageBuilder
-											.buildNewSessionEvent(s, localNode,
-													EventType.TERMINAL);
-									sl.sessionCompleted(se);
-								}
-							}
+		// Check if it is in the INIT phase
+		if (e.getPhase() == Phase.INIT) {
+			// Check if the INIT phase should end, i.e. whether the
+			// timer of this phase has expired
+			if (e.remainingInitTime() <= 0) {
+				logger.info("Stage is " + e.getPhase()
+						+ " and remaining time is "
+						+ e.remainingInitTime());
+				logger.info("The INIT phase of Execution "
+						+ e.getExecutionNumber()
+						+ " in Session "
+						+ s.getSessionId()
+						+ " is over. Entering the DATA_EXCHANGE phase");
+				// the Execution is locked, so that no round is
+				// closed by a MessageHandlerTask before the phase
+				// transition is complete
+				synchronized (e) {
+					/*
+					 * Enter DATA_EXCHANGE phase Go to next round
+					 * and send message to all out-neighbors
+					 */
+					e.setPhase(Phase.DATA_EXCHANGE);
+					e.setRound(2);
+
+					// check whether a new Execution should be
+					// initiated in this round
+					roundAdvancer.checkForNewExecution(s, e);
+					logger.info("Recomputed weights and set round to "
+							+ e.getCurrentRound()
+							+ " in execution "
+							+ e.getExecutionNumber()
+							+ " of session " + s.getSessionId());
+
+					// if the Execution has another round, send
+					// next messages and renew timers of
+					// in-neighbors
+					if (e.hasAnotherRound()) {
+						roundAdvancer.sendOutNextMessage(s, e);
+						e.getInNeighbors().renewTimers();
+						int newRound = e.getCurrentRound() + 1;
+						roundAdvancer.checkForNewExecution(s, e);
+						logger.info("Round "
+								+ e.getCurrentRound()
+								+ " of execution "
+								+ e.getExecutionNumber()
+								+ " in session "
+								+ s.getSessionId()
+								+ " is over. Going to round "
+								+ newRound);
+						e.setRound(newRound);
+					} else { // it he Execution does not have
+								// another round, switch to GOSSIP
+								// phase
+						logger.info("Round "
+								+ e.getCurrentRound()
+								+ " of execution "
+								+ e.getExecutionNumber()
+								+ " in session "
+								+ s.getSessionId()
+								+ " is over. This was the final round. "
+								+ "Switching to GOSSIP phase");
+						roundAdvancer.enterGossipPhase(s, e);
+					}
+				}
+			}
+		} else if (e.getPhase() == Phase.DATA_EXCHANGE) {
+			// Check for in-neighbors suspected of failure
+			// the Execution is locked, so that the round is not
+			// closed concurrently by a MessageHandlerTask
+			synchronized (e) {
+				// the round might have been closed in the
+				// meantime by the last value expected for it
+				if (e.getPhase() != Phase.DATA_EXCHANGE) {
+					return;
+				}
+				e.setProperTimersToInf();
+				inNeighbors = e.getInNeighbors();
+				boolean endOfRound = true;
+				List<TimedNeighbor> failedNeighbors = new ArrayList<TimedNeighbor>();
+
+				// iterate over the in-neighbors to check whether a
+				// node has failed
+				synchronized (inNeighbors) {
+					Iterator<TimedNeighbor> iter = inNeighbors
+							.iterator();
+
+					while (iter.hasNext()) {
+						TimedNeighbor neighbor = iter.next();
+						if (detector.hasFailed(neighbor.getAddress())) {
+							// the node was found unreachable while
+							// checked for another Execution
+							failedNeighbors.add(neighbor);
+						} else if (neighbor.getTimeToProbe() <= 0) {
+							// check asynchronously whether the
+							// node is alive. The round remains
+							// open until the outcome of the check
+							// is known
+							probe(s, e, neighbor);
+							endOfRound = false;
+						} else if (neighbor.getTimeToProbe() != TimedNeighbor.INF) {
+							endOfRound = false;
 						}
 					}
 				}
+				for (TimedNeighbor neighbor : failedNeighbors) {
+					removeFailedNeighbor(s, e, neighbor);
+				}
+				// If the round is over, check if it was the last
+				// round or not
+				if (endOfRound) {
+					roundAdvancer.advanceRound(s, e);
+				}
+			}
+		} else if (e.getPhase() == Phase.GOSSIP) {
+			e.transferPendingGossipMessages();
+			inNeighbors = e.getInNeighbors();
+
+			boolean endOfRound = true;
+			List<TimedNeighbor> failedNeighbors = new ArrayList<TimedNeighbor>();
+			synchronized (inNeighbors) {
+				Iterator<TimedNeighbor> iter = inNeighbors
+						.iterator();
+				while (iter.hasNext()) {
+					TimedNeighbor neighbor = iter.next();
+					if (detector.hasFailed(neighbor.getAddress())) {
+						failedNeighbors.add(neighbor);
+					} else if (neighbor.getTimeToProbe() <= 0) {
+						// check asynchronously whether the node
+						// is alive. The round remains open until
+						// the outcome of the check is known
+						probe(s, e, neighbor);
+						endOfRound = false;
+					} else if (neighbor.getTimeToProbe() != TimedNeighbor.INF) {
+						endOfRound = false;
+					}
+				}
 			}
+			for (TimedNeighbor neighbor : failedNeighbors) {
+				removeFailedNeighbor(s, e, neighbor);
+			}
+			if (endOfRound) {
+				double[] medianEig = e.computeMedianEigenvalues();
+				String eig = "[";
+				for (int j = 0; j < medianEig.length; j++) {
+					eig += medianEig[j];
+					eig += ", ";
+				}
+				eig += "]";
+				logger.info("Gossip round of execution "
+						+ e.getExecutionNumber()
+						+ " of session "
+						+ s.getSessionId()
+						+ " is now over. The median of all received eigenvalues is "
+						+ eig);
+				e.setPhase(Phase.TERMINATED);
+				s.addCompletedExecution();
+				if (s.hasTerminated()) {
+					sessions.remove(s.getSessionUuid());
+					discovered.remove(s.getSessionUuid());
+					RecordedSession recSes = new RecordedSession(s);
+					db.addSession(recSes);
+					// Notify all listeners
+					for (SessionListener sl : sessionListeners) {
+						SessionEvent se = MessageBuilder
+								.buildNewSessionEvent(s, localNode,
+										EventType.TERMINAL);
+						sl.sessionCompleted(se);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Evicts the Sessions that made no progress for too long, or that exceed
+	 * the capacity of the node, and forgets the remote nodes silent for as
+	 * long. The Sessions are examined once per TIMEOUT instead of once per
+	 * tick
+	 */
+	private void evictStalledSessions() {
+		long now = System.nanoTime();
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(now - lastEviction);
+		if (elapsed < ProtocolController.TIMEOUT) {
+			return;
+		}
+		lastEviction = now;
+		for (Session s : evictor.evict(sessions)) {
+			discovered.remove(s.getSessionUuid());
+		}
+		// any Session waiting for a node silent for that long has been
+		// evicted as well
+		detector.prune(evictor.getTtl());
+	}
+
+	/**
+	 * Schedules the Executions created since the previous run, so that they
+	 * are checked right away. Only the number of Executions of each Session is
+	 * compared, so the cost does not depend on the number of in-neighbors
+	 */
+	private void discoverExecutions() {
+		for (Session s : sessions.values()) {
+			UUID sessionId = s.getSessionUuid();
+			Integer known = discovered.get(sessionId);
+			int i = (known == null) ? 1 : known + 1;
+			for (; i <= s.getCurrentNumberOfExecutions(); i++) {
+				Execution e = s.getExecution(i);
+				if (e == null) {
+					break;
+				}
+				timers.schedule(new ScheduledExecution(s, e), 0);
+			}
+			discovered.put(sessionId, i - 1);
 		}
 	}
 
+	/**
+	 * Computes the time after which an Execution has to be checked again,
+	 * i.e. the earliest deadline among the INIT timer and the timers of its
+	 * in-neighbors
+	 */
+	private long nextCheckDelay(Execution e) {
+		Phase phase = e.getPhase();
+		if (phase == Phase.INIT) {
+			return e.remainingInitTime();
+		}
+		long delay = TimedNeighbor.INF;
+		TimedNeighborsTable inNeighbors = e.getInNeighbors();
+		synchronized (inNeighbors) {
+			for (TimedNeighbor neighbor : inNeighbors) {
+				delay = Math.min(delay, neighbor.getTimeToProbe());
+			}
+		}
+		// the GOSSIP phase is over once the last in-neighbor has sent its
+		// eigenvalues, which is not signaled by any timer. An Execution whose
+		// timers are all set to INF is checked again in the next period
+		if (phase == Phase.GOSSIP || delay == TimedNeighbor.INF) {
+			delay = Math.min(delay, ProtocolController.TIMEOUT);
+		}
+		return delay;
+	}
+
 	/**
 	 * Adds a SessionListener to the MaintenanceTask
 	 * 
@@ -440,99 +573,127 @@ public class MaintenanceTask implements Runnable {
 		return sessionListeners.remove(listener);
 	}
 
-	private boolean isAlive(TimedNeighbor neighbor) {
-		Message m = MessageBuilder.buildLivenessMessage();
-		return MessageSender.makeLivenessCheck(new TransferableMessage(m,
-				neighbor.getAddress(), false));
+	private void probe(Session s, Execution e, TimedNeighbor neighbor) {
+		InetAddress address = neighbor.getAddress();
+		if (detector.isAvailable(address)) {
+			NeighborProbe callback = new NeighborProbe(s, e, neighbor);
+			// the messages of the neighbor are not late enough for it to be
+			// suspected, so it is alive and only the value the present node
+			// expects is missing
+			callback.nodeAlive(address);
+			return;
+		}
+		// keep the timer of the neighbor running for as long as the check
+		// might take, so that it is not probed again in the meantime
+		neighbor.setRemainingTime(detector.getProbeDuration()
+				+ ProtocolController.TIMEOUT);
+		// a node already checked for another Execution is not checked again
+		detector.probe(address, new NeighborProbe(s, e, neighbor));
 	}
 
-	private void sendGossipMessage(Message m, Execution e) {
-		InetAddress address;
-		PlainNeighborsTable pnt = e.getOutNeighbors();
+	/**
+	 * Removes an in-neighbor that has failed from an Execution and gives a
+	 * hint to the overlay that it should probably remove it as well
+	 */
+	private void removeFailedNeighbor(Session s, Execution e,
+			TimedNeighbor neighbor) {
+		logger.info("Node " + neighbor.getId().toString()
+				+ " is no longer alive."
+				+ " Removing it from in-neihgbors table of Execution "
+				+ e.getExecutionNumber() + " in Session " + s.getSessionId());
+		TimedNeighborsTable inNeighbors = e.getInNeighbors();
+		synchronized (inNeighbors) {
+			inNeighbors.removeNeighbor(neighbor);
+			// the estimations are relearned if the node recovers
+			inNeighbors.forgetResponseTimes(neighbor.getId());
+		}
 
-		// send it to all out-neighbors
-		synchronized (pnt) {
-			for (PlainNeighbor n : pnt) {
-				address = n.getAddress();
-				outgoingQueue.add(new TransferableMessage(m, address, false));
-			}
+		if (localNode.removeOutNeighborNode(neighbor.getId().toString())) {
+			logger.info("Node " + neighbor.getId().toString()
+					+ " is no longer alive."
+					+ " Removing it from out-neihgbors table");
 		}
 	}
 
-	private void checkForNewExecution(Session s, Execution e) {
-		// a new Execution can be created only from the initial Execution of the
-		// Session and only if the Session has the initiator flag on
-		if (s.isInitiator() && e.equals(s.getInitExecution())
-				&& s.newExecutionExpected()) {
-			Execution newExecution;
-			newExecution = s.createNewExecution();
-
-			InetAddress address;
-			double valueToSend;
-			Message outMessage;
-			String sessionId = s.getSessionId();
-			String nodeId = localNode.getLocalId().toString();
-			PlainNeighborsTable pnt = e.getOutNeighbors();
-
-			// send to all out-neighbors INIT messages for the newly created
-			// Execution
-			synchronized (pnt) {
-				for (PlainNeighbor n : pnt) {
-					address = n.getAddress();
-					valueToSend = newExecution.getCurrentValue()
-							* n.getWeight();
-					logger.info("Sending INIT message to node " + n.getId()
-							+ " with address " + address + " for execution "
-							+ newExecution.getExecutionNumber()
-							+ " of session " + sessionId);
-					outMessage = MessageBuilder.buildInitMessage(nodeId,
-							sessionId, newExecution.getExecutionNumber(),
-							s.getNumberOfExecutions(), s.getNumberOfRounds(),
-							valueToSend);
-					outgoingQueue.add(new TransferableMessage(outMessage,
-							address, true));
-				}
+	private void requestPreviousVal(Session s, int execNum, int round,
+			InetAddress address) {
+		Message m = MessageBuilder.requestPreviousValMessage(
+				localNode.getLocalId(), s.getSessionUuid(), execNum, round);
+		TransferableMessage tm = new TransferableMessage(m, address, false);
+		logger.info("Sending REQUEST message to node with address " + address
+				+ " for round " + round + " of execution " + execNum
+				+ " in session " + s.getSessionId());
+		enqueue(tm);
+	}
+
+	/**
+	 * Callback handling the outcome of the liveness check of an in-neighbor
+	 * suspected of failure
+	 */
+	private class NeighborProbe implements LivenessCallback {
+
+		private final Session s;
+		private final Execution e;
+		private final TimedNeighbor neighbor;
+
+		NeighborProbe(Session s, Execution e, TimedNeighbor neighbor) {
+			this.s = s;
+			this.e = e;
+			this.neighbor = neighbor;
+		}
+
+		@Override
+		public void nodeAlive(InetAddress address) {
+			// if the node is alive, the value the present node expects is
+			// probably lost; request retransmission and renew the timer of
+			// the suspected node
+			TimedNeighborsTable inNeighbors = e.getInNeighbors();
+			synchronized (inNeighbors) {
+				inNeighbors.renewTimer(neighbor);
+			}
+			Phase phase = e.getPhase();
+			if (phase == Phase.DATA_EXCHANGE) {
+				requestPreviousVal(s, e.getExecutionNumber(),
+						e.getCurrentRound(), address);
+			} else if (phase == Phase.GOSSIP) {
+				requestPreviousVal(s, e.getExecutionNumber(),
+						-1, address);
 			}
+			// a neighbor known to be alive is reported while the Execution is
+			// still locked, in which case the REQUEST is flushed along with
+			// the rest of the messages of the Execution
+			if (!Thread.holdsLock(e)) {
+				roundAdvancer.flush();
+			}
+		}
+
+		@Override
+		public void nodeUnreachable(InetAddress address) {
+			// if the node has failed just remove it from the list
+			removeFailedNeighbor(s, e, neighbor);
 		}
 	}
 
-	private void sendOutNextMessage(MessageType type, Session session,
-			Execution execution) {
-		InetAddress address;
-		double valueToSend;
-		Message outMessage;
-		String sessionId = session.getSessionId();
-		String nodeId = localNode.getLocalId().toString();
-		PlainNeighborsTable pnt = execution.getOutNeighbors();
-
-		synchronized (pnt) {
-			for (PlainNeighbor n : pnt) {
-				address = n.getAddress();
-				valueToSend = execution.getCurrentValue() * n.getWeight();
-				// round number + 1, because we send the message for a round
-				// using the value of the previous round
-				int r = execution.getCurrentRound() + 1;
-				logger.info("Sending NEXT message to node " + n.getId()
-						+ " with address " + address + " for round " + r
-						+ " of execution " + execution.getExecutionNumber()
-						+ " in session " + sessionId);
-				outMessage = MessageBuilder.buildNextMessage(nodeId, sessionId,
-						execution.getExecutionNumber(), r, valueToSend);
-				outgoingQueue.add(new TransferableMessage(outMessage, address,
-						false));
-			}
+	/**
+	 * An Execution kept in the timer wheel along with its Session
+	 */
+	private static class ScheduledExecution {
+
+		private final Session session;
+		private final Execution execution;
+
+		ScheduledExecution(Session session, Execution execution) {
+			this.session = session;
+			this.execution = execution;
 		}
 	}
 
-	private void requestPreviousVal(String sessionId, int execNum, int round,
-			InetAddress address) {
-		String nodeId = localNode.getLocalId().toString();
-		Message m = MessageBuilder.requestPreviousValMessage(nodeId, sessionId,
-				execNum, round);
-		TransferableMessage tm = new TransferableMessage(m, address, false);
-		logger.info("Sending REQUEST message to node with address " + address
-				+ " for round " + round + " of execution " + execNum
-				+ " in session " + sessionId);
-		outgoingQueue.add(tm);
+	/**
+	 * Places a message in the queue of outgoing messages along with the ones
+	 * built by the RoundAdvancer, once no Execution is locked
+	 */
+	private void enqueue(TransferableMessage tm) {
+		roundAdvancer.defer(tm);
 	}
+
 }
@@ -1,10 +1,11 @@
 package core;
 
 import java.net.InetAddress;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
 import comm.MessageBuilder;
@@ -14,8 +15,11 @@ import comm.ProtocolMessage.SessionEvent.EventType;
 import comm.TransferableMessage;
 import comm.ProtocolMessage.Message;
 import domain.Execution;
+import domain.Id;
+import domain.InitArrivalModel;
 import domain.Phase;
 import domain.PlainNeighbor;
+import domain.RttEstimator;
 import domain.Session;
 import domain.TimedNeighbor;
 import domain.network.Node;
@@ -37,34 +41,60 @@ public class MessageHandlerTask implements Runnable {
 
 	private TransferableMessage incomingMessage;
 	private Node localNode;
-	private Map<String, Session> sessions;
+	private Map<UUID, Session> sessions;
 	private BlockingQueue<TransferableMessage> outQueue;
+	private RoundAdvancer roundAdvancer;
+	private InitArrivalModel initArrivals;
+	private RttEstimator rtt;
+	private boolean earlyTermination;
+	private SessionEvictor evictor;
 
-	private static List<SessionListener> sessionListeners = new ArrayList<SessionListener>();
+	// the listeners are notified by all the shard threads, while new ones
+	// might be added at any time
+	private static List<SessionListener> sessionListeners = new CopyOnWriteArrayList<SessionListener>();
 
 	/**
-	 * Class constructor
+	 * Class constructor. The Sessions created by this task use none of the
+	 * optional settings of a HandlerContext
 	 * 
 	 * @param incomingMessage
 	 *            the message that needs to be handled by this task
 	 * @param sessions
 	 *            a Map containing all the currently active Sessions in the
-	 *            protocol, using their ids as keys
+	 *            protocol, using their UUIDs as keys
 	 * @param localNode
 	 *            the abstract Node representation of the local node
 	 * @param outQueue
 	 *            the queue where the outgoing messages should be placed
 	 */
 	public MessageHandlerTask(TransferableMessage incomingMessage,
-			Map<String, Session> sessions, Node localNode,
+			Map<UUID, Session> sessions, Node localNode,
 			BlockingQueue<TransferableMessage> outQueue) {
+		this(incomingMessage, new HandlerContext(sessions, localNode, outQueue));
+	}
+
+	/**
+	 * Class constructor
+	 * 
+	 * @param incomingMessage
+	 *            the message that needs to be handled by this task
+	 * @param context
+	 *            the HandlerContext of the local node
+	 */
+	public MessageHandlerTask(TransferableMessage incomingMessage,
+			HandlerContext context) {
 
 		this.logger = Logger.getLogger(MessageHandlerTask.class.getName());
 
 		this.incomingMessage = incomingMessage;
-		this.sessions = sessions;
-		this.localNode = localNode;
-		this.outQueue = outQueue;
+		this.sessions = context.getSessions();
+		this.localNode = context.getLocalNode();
+		this.outQueue = context.getOutQueue();
+		this.roundAdvancer = context.getRoundAdvancer();
+		this.initArrivals = context.getInitArrivals();
+		this.rtt = context.getRtt();
+		this.earlyTermination = context.isEarlyTermination();
+		this.evictor = context.getEvictor();
 	}
 
 	@Override
@@ -80,7 +110,14 @@ public class MessageHandlerTask implements Runnable {
 			this.handleInitMessage();
 			break;
 		case NEXT:
-			this.handleNextMessage();
+			this.handleNextMessage(m);
+			break;
+		case BATCH:
+			// a BATCH message carries the NEXT values that a remote node sent
+			// together, so handle each one of them separately
+			for (Message next : MessageBuilder.unpackBatchMessage(m)) {
+				this.handleNextMessage(next);
+			}
 			break;
 		case REQUEST_VAL:
 			this.resendVal();
@@ -88,6 +125,9 @@ public class MessageHandlerTask implements Runnable {
 		case GOSSIP:
 			this.handleGossipMessage();
 			break;
+		case TERMINATE:
+			this.handleTerminateMessage();
+			break;
 		default:
 			logger.warning("The message was malformed. Dropping...");
 			break;
@@ -100,7 +140,7 @@ public class MessageHandlerTask implements Runnable {
 
 		Message m = incomingMessage.getMessage();
 
-		s = sessions.get(m.getSession());
+		s = findSession(MessageBuilder.getSessionUuid(m));
 		// if the Session referred by the message exists check for the execution
 		// mentioned
 		if (s != null) {
@@ -111,7 +151,19 @@ public class MessageHandlerTask implements Runnable {
 				int wantedRound = m.getRound();
 				if (wantedRound >= 0) {
 					int currentRound = e.getCurrentRound();
-					if (wantedRound <= currentRound) {
+					if (wantedRound > e.getLastRound()) {
+						// the Execution ended before the requested round, so
+						// the value will never be sent. Tell the requesting
+						// node to end its Execution as well, in case the
+						// TERMINATE message was missed
+						Message outMessage = MessageBuilder
+								.buildTerminateMessage(localNode.getLocalId(),
+										s.getSessionUuid(),
+										e.getExecutionNumber(),
+										e.getLastRound());
+						enqueue(new TransferableMessage(outMessage,
+								incomingMessage.getAddress(), true));
+					} else if (wantedRound <= currentRound) {
 						NeighborsTable<PlainNeighbor> n = e.getOutNeighbors();
 						double weight = 1.0 / n.getSize();
 						double valToSend = e
@@ -125,11 +177,10 @@ public class MessageHandlerTask implements Runnable {
 								+ m.getExecution()
 								+ " in session "
 								+ s.getSessionId());
-						String nodeId = localNode.getLocalId().toString();
 						Message outMessage = MessageBuilder.buildNextMessage(
-								nodeId, s.getSessionId(),
+								localNode.getLocalId(), s.getSessionUuid(),
 								e.getExecutionNumber(), r, valToSend);
-						outQueue.add(new TransferableMessage(outMessage,
+						enqueue(new TransferableMessage(outMessage,
 								incomingMessage.getAddress(), false));
 					}
 				} else { // it wantedRound < 0, the request is for the estimated
@@ -146,11 +197,10 @@ public class MessageHandlerTask implements Runnable {
 							valsToSend = eigenvals;
 						}
 						Message msg = MessageBuilder.buildGossipMessage(
-								localNode.getLocalId().toString(),
-								s.getSessionId(), e.getExecutionNumber(),
-								valsToSend);
+								localNode.getLocalId(), s.getSessionUuid(),
+								e.getExecutionNumber(), valsToSend);
 						// send GOSSIP message to out-neighbors
-						outQueue.add(new TransferableMessage(msg,
+						enqueue(new TransferableMessage(msg,
 								incomingMessage.getAddress(), false));
 					}
 				}
@@ -188,22 +238,30 @@ public class MessageHandlerTask implements Runnable {
 		int numberOfExecutions = m.getTotalNumberOfExecutions();
 		int numberOfRounds = m.getRound();
 		// if the node is the initiator of the sampling request set the
-		// initiator flag of the Session to true
-		if (isInitiator) {
+		// initiator flag of the Session to true. The requester might have
+		// chosen the id of the Session, in order to recognize it once stored
+		if (isInitiator && (m.hasRawSession() || m.hasSession())) {
+			s = new Session(localNode, MessageBuilder.getSessionUuid(m),
+					numberOfExecutions, numberOfRounds, isInitiator);
+		} else if (isInitiator) {
 			s = new Session(localNode, numberOfExecutions, numberOfRounds,
 					isInitiator);
 		} else {
-			s = new Session(localNode, m.getSession(), numberOfExecutions,
+			s = new Session(localNode, MessageBuilder.getSessionUuid(m),
+					numberOfExecutions,
 					numberOfRounds, isInitiator);
 		}
 		logger.info("Created a new Session with id " + s.getSessionId());
+		s.setInitArrivalModel(initArrivals);
+		s.setRttEstimator(rtt);
+		s.setEarlyTermination(earlyTermination);
 		initExecution = s.createNewExecution();
 		logger.info("Created Execution number "
 				+ initExecution.getExecutionNumber() + " for session with id "
 				+ s.getSessionId());
 
 		if (!isInitiator) {
-			logger.info("Remote node with id " + m.getNodeId()
+			logger.info("Remote node with id " + MessageBuilder.getNodeId(m)
 					+ " sent the value " + m.getVal()
 					+ " for round 2 of the initial execution of session"
 					+ " with id " + s.getSessionId());
@@ -211,7 +269,7 @@ public class MessageHandlerTask implements Runnable {
 			// to be stored in round 2
 			initExecution.addValToRound(m.getVal(), 2);
 		}
-		sessions.put(s.getSessionId(), s);
+		sessions.put(s.getSessionUuid(), s);
 
 		sendOutMessage(MessageType.INIT, s, initExecution);
 
@@ -232,22 +290,28 @@ public class MessageHandlerTask implements Runnable {
 
 		Message m = incomingMessage.getMessage();
 
-		String sessionId = m.getSession();
+		UUID sessionId = MessageBuilder.getSessionUuid(m);
+		Id nodeId = MessageBuilder.getNodeId(m);
 		int executionNumber = m.getExecution();
 
 		// Check whether session already exists
-		s = sessions.get(sessionId);
-		// if it does not exist we need to create it
-		if (s == null) {
+		s = findSession(sessionId);
+		// if it does not exist we need to create it, unless it was evicted
+		if (s == null && evictor != null && evictor.isEvicted(sessionId)) {
+			logger.info("Session with id " + sessionId
+					+ " was evicted. Dropping the INIT message from node with IP "
+					+ incomingMessage.getAddress());
+		} else if (s == null) {
 			logger.info("Session with id " + sessionId + " does not exist");
 			s = createNewSession(false);
-			tn = new TimedNeighbor(m.getNodeId(), incomingMessage.getAddress());
-			logger.info("Adding node " + m.getNodeId() + " with IP "
+			tn = new TimedNeighbor(nodeId, incomingMessage.getAddress());
+			logger.info("Adding node " + nodeId + " with IP "
 					+ incomingMessage.getAddress()
 					+ " to the in-neighbors list");
 			addToInNeighborsTable(tn, s, executionNumber);
 		} else { // if the Session exists check whether the Execution exists
 			logger.info("Session with id " + sessionId + " already exists");
+			s.touch();
 			e = s.getExecution(executionNumber);
 			// if the Execution does not exist create a new execution for this
 			// Session
@@ -255,7 +319,7 @@ public class MessageHandlerTask implements Runnable {
 				logger.info("Execution number " + executionNumber
 						+ " does not exist. Will create it");
 				e = s.createNewExecution(executionNumber);
-				logger.info("Remote node with id " + m.getNodeId()
+				logger.info("Remote node with id " + nodeId
 						+ " sent the value " + m.getVal()
 						+ " for round 2 of execution number " + executionNumber
 						+ " of session" + " with id " + s.getSessionId());
@@ -263,9 +327,9 @@ public class MessageHandlerTask implements Runnable {
 				e.addValToRound(m.getVal(), 2);
 				// the node who sent the INIT message should be added in the
 				// in-neighbors list
-				tn = new TimedNeighbor(m.getNodeId(),
+				tn = new TimedNeighbor(nodeId,
 						incomingMessage.getAddress());
-				logger.info("Adding node " + m.getNodeId() + " with IP "
+				logger.info("Adding node " + nodeId + " with IP "
 						+ incomingMessage.getAddress()
 						+ " to the in-neighbors list");
 				addToInNeighborsTable(tn, s, executionNumber);
@@ -279,15 +343,15 @@ public class MessageHandlerTask implements Runnable {
 				logger.info("Execution number " + executionNumber
 						+ " of session " + s.getSessionId() + " already exists");
 				if (e.getPhase() == Phase.INIT && (!e.hasTerminated())) {
-					logger.info("Remote node with id " + m.getNodeId()
+					logger.info("Remote node with id " + nodeId
 							+ " sent the value " + m.getVal()
 							+ " for round 2 of execution number "
 							+ executionNumber + " of session" + " with id "
 							+ s.getSessionId());
 					e.addValToRound(m.getVal(), 2);
-					tn = new TimedNeighbor(m.getNodeId(),
+					tn = new TimedNeighbor(nodeId,
 							incomingMessage.getAddress());
-					logger.info("Adding node " + m.getNodeId() + " with IP "
+					logger.info("Adding node " + nodeId + " with IP "
 							+ incomingMessage.getAddress()
 							+ " to the in-neighbors list");
 					addToInNeighborsTable(tn, s, executionNumber);
@@ -296,20 +360,20 @@ public class MessageHandlerTask implements Runnable {
 		}
 	}
 
-	private void handleNextMessage() {
+	private void handleNextMessage(Message m) {
 
-		Message m = incomingMessage.getMessage();
-		String sessionId = m.getSession();
+		UUID sessionId = MessageBuilder.getSessionUuid(m);
 		int execution = m.getExecution();
 		int round = m.getRound();
 		Session s;
 		Execution e;
 
 		// Check whether session already exists
-		s = sessions.get(sessionId);
+		s = findSession(sessionId);
 		if (s != null) {
 			logger.info("Session with id " + sessionId
 					+ " was found. Checking for execution " + execution);
+			s.touch();
 			e = s.getExecution(execution);
 			if (e != null) {
 				logger.info("Execution " + execution + " of Session with id "
@@ -331,7 +395,14 @@ public class MessageHandlerTask implements Runnable {
 				logger.info("Adding " + m.getVal() + " to the values of round "
 						+ round + " in execution " + execution + " of session "
 						+ sessionId);
-				e.addValToNextRound(m.getNodeId(), m.getVal(), round);
+				e.addValToNextRound(MessageBuilder.getNodeId(m), m.getVal(),
+						round);
+				// if this was the last value expected for the current round,
+				// close the round without waiting for the MaintenanceTask
+				if (round == e.getCurrentRound()
+						&& e.getPhase() == Phase.DATA_EXCHANGE) {
+					roundAdvancer.advanceIfComplete(s, e);
+				}
 				// e.addNeighborToRound(m.getNodeId(), round);
 			} else {
 				// TODO What if execution does not exist
@@ -349,7 +420,8 @@ public class MessageHandlerTask implements Runnable {
 		Session s;
 		Execution e;
 		Message m = incomingMessage.getMessage();
-		String sessionId = m.getSession();
+		UUID sessionId = MessageBuilder.getSessionUuid(m);
+		Id nodeId = MessageBuilder.getNodeId(m);
 		int executionNumber = m.getExecution();
 		double[] eigenvals = new double[m.getEigenvalsCount()];
 		String eig = "[";
@@ -360,27 +432,77 @@ public class MessageHandlerTask implements Runnable {
 		}
 		eig += "]";
 
-		s = sessions.get(sessionId);
+		s = findSession(sessionId);
 
 		// check whether the Session and Execution mentioned in the GOSSIP
 		// message exist
 		if (s != null) {
 			logger.info("Session with id " + sessionId
 					+ " was found. Checking for execution " + executionNumber);
+			s.touch();
 			e = s.getExecution(executionNumber);
 			if (e != null) {
 				logger.info("Execution " + executionNumber
 						+ " of Session with id " + sessionId + " was located");
 				// Add the collected gossip round values
-				logger.info("Node with id " + m.getNodeId()
+				logger.info("Node with id " + nodeId
 						+ " sent the following eigenvalues: " + eig
 						+ " for execution " + executionNumber + " of session "
 						+ sessionId);
-				e.addPendingGossipMessage(m.getNodeId(), eigenvals);
+				e.addPendingGossipMessage(nodeId, eigenvals);
 			}
 		}
 	}
 
+	private void handleTerminateMessage() {
+		Session s;
+		Execution e;
+		Message m = incomingMessage.getMessage();
+		UUID sessionId = MessageBuilder.getSessionUuid(m);
+		int executionNumber = m.getExecution();
+
+		s = findSession(sessionId);
+		if (s == null) {
+			return;
+		}
+		e = s.getExecution(executionNumber);
+		if (e == null) {
+			return;
+		}
+		s.touch();
+		logger.info("Node with id " + MessageBuilder.getNodeId(m)
+				+ " ended execution " + executionNumber + " of session "
+				+ sessionId + " in round " + m.getRound());
+		// the Execution is locked, so that its round does not change before
+		// it is ended
+		synchronized (e) {
+			if (e.getPhase() != Phase.DATA_EXCHANGE) {
+				return;
+			}
+			// the values of the current round will not all arrive, so the
+			// Execution ends with the last complete round
+			int lastRound = Math.min(m.getRound(), e.getCurrentRound() - 1);
+			roundAdvancer.endExecution(s, e, lastRound);
+		}
+		// the TERMINATE messages are sent once the Execution is released
+		roundAdvancer.flush();
+	}
+
+	/**
+	 * Looks up an active Session
+	 * 
+	 * @param sessionId
+	 *            the UUID of the Session, or null if the message did not refer
+	 *            to one
+	 * @return the Session, or null if it does not exist
+	 */
+	private Session findSession(UUID sessionId) {
+		if (sessionId == null) {
+			return null;
+		}
+		return sessions.get(sessionId);
+	}
+
 	private boolean addToInNeighborsTable(TimedNeighbor tn, Session s,
 			int executionNumber) {
 		Execution execution;
@@ -395,45 +517,60 @@ public class MessageHandlerTask implements Runnable {
 
 	private void sendOutMessage(MessageType type, Session session,
 			Execution execution) {
-		InetAddress address;
+		List<InetAddress> addresses;
 		double valueToSend;
 		Message outMessage;
 		String sessionId = session.getSessionId();
-		String nodeId = localNode.getLocalId().toString();
+		UUID sessionUuid = session.getSessionUuid();
+		Id nodeId = localNode.getLocalId();
 		PlainNeighborsTable pnt = execution.getOutNeighbors();
 
-		// send the message to all the nodes in the out-neighbors list
-		synchronized (pnt) {
-			for (PlainNeighbor n : pnt) {
-				address = n.getAddress();
-				valueToSend = execution.getCurrentValue() * n.getWeight();
-				switch (type) {
-				case INIT:
-					logger.info("Sending INIT message to node " + n.getId()
-							+ " with address " + address + " for execution "
-							+ execution.getExecutionNumber() + " of session "
-							+ sessionId);
-					outMessage = MessageBuilder.buildInitMessage(nodeId,
-							sessionId, execution.getExecutionNumber(),
-							session.getNumberOfExecutions(),
-							session.getNumberOfRounds(), valueToSend);
-					break;
-				case NEXT:
-				default:
-					// round number + 1, because we send the message for a round
-					// using the value of the previous round
-					int r = execution.getCurrentRound() + 1;
-					logger.info("Sending NEXT message to node " + n.getId()
-							+ " with address " + address + " for round " + r
-							+ " of execution " + execution.getExecutionNumber()
-							+ " in session " + sessionId);
-					outMessage = MessageBuilder.buildNextMessage(nodeId,
-							sessionId, execution.getExecutionNumber(), r,
-							valueToSend);
-					break;
-				}
-				outQueue.add(new TransferableMessage(outMessage, address, true));
+		// send the message to all the nodes in the out-neighbors list. The
+		// nodes with the same weight receive the same value, so a single
+		// message is built and serialized for each group of them
+		for (Map.Entry<Double, List<InetAddress>> group : pnt
+				.getAddressesByWeight().entrySet()) {
+			addresses = group.getValue();
+			valueToSend = execution.getCurrentValue() * group.getKey();
+			switch (type) {
+			case INIT:
+				logger.info("Sending INIT message to nodes with addresses "
+						+ addresses + " for execution "
+						+ execution.getExecutionNumber() + " of session "
+						+ sessionId);
+				outMessage = MessageBuilder.buildInitMessage(nodeId,
+						sessionUuid, execution.getExecutionNumber(),
+						session.getNumberOfExecutions(),
+						session.getNumberOfRounds(), valueToSend);
+				break;
+			case NEXT:
+			default:
+				// round number + 1, because we send the message for a round
+				// using the value of the previous round
+				int r = execution.getCurrentRound() + 1;
+				logger.info("Sending NEXT message to nodes with addresses "
+						+ addresses + " for round " + r + " of execution "
+						+ execution.getExecutionNumber() + " in session "
+						+ sessionId);
+				outMessage = MessageBuilder.buildNextMessage(nodeId,
+						sessionUuid, execution.getExecutionNumber(), r,
+						valueToSend);
+				break;
 			}
+			enqueue(new TransferableMessage(outMessage, addresses, true));
+		}
+	}
+
+	/**
+	 * Places a message in the queue of outgoing messages, waiting for room if
+	 * the queue is full
+	 */
+	private void enqueue(TransferableMessage tm) {
+		try {
+			outQueue.put(tm);
+		} catch (InterruptedException e) {
+			// the node is shutting down
+			Thread.currentThread().interrupt();
 		}
 	}
 
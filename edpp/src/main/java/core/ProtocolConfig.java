@@ -0,0 +1,173 @@
+package core;
+
+import comm.BoundedMessageQueue;
+import comm.BoundedMessageQueue.OverflowPolicy;
+import comm.ContactTable;
+import comm.Transport;
+
+/**
+ * The settings of a ProtocolController. Every setting has a default, so only
+ * the ones that differ from it need to be set, e.g.
+ * <code>new ProtocolConfig().setTransport(t).setEarlyTermination(true)</code>
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class ProtocolConfig {
+
+	private Transport transport;
+	private ContactTable contacts;
+	private int queueCapacity;
+	private OverflowPolicy policy;
+	private boolean parallelMaintenance;
+	private boolean earlyTermination;
+
+	/**
+	 * Class constructor. Messages are exchanged through sockets on the
+	 * PROTOCOL_PORT, the queues hold BoundedMessageQueue.DEFAULT_CAPACITY
+	 * messages under the DROP_OLDEST policy, the Sessions are maintained one
+	 * after the other and the Executions always run for all their rounds
+	 */
+	public ProtocolConfig() {
+		this.transport = null;
+		this.contacts = null;
+		this.queueCapacity = BoundedMessageQueue.DEFAULT_CAPACITY;
+		this.policy = OverflowPolicy.DROP_OLDEST;
+		this.parallelMaintenance = false;
+		this.earlyTermination = false;
+	}
+
+	/**
+	 *
+	 * @return the Transport through which messages are exchanged with remote
+	 *         nodes, or null if a SocketTransport should be used
+	 */
+	public Transport getTransport() {
+		return transport;
+	}
+
+	/**
+	 *
+	 * @param transport
+	 *            the Transport through which messages are exchanged with
+	 *            remote nodes
+	 * @return this ProtocolConfig
+	 */
+	public ProtocolConfig setTransport(Transport transport) {
+		this.transport = transport;
+		return this;
+	}
+
+	/**
+	 *
+	 * @return the ContactTable recording when each remote node was last heard
+	 *         from, or null if a ContactTable with the default window should
+	 *         be used
+	 */
+	public ContactTable getContacts() {
+		return contacts;
+	}
+
+	/**
+	 *
+	 * @param contacts
+	 *            the ContactTable recording when each remote node was last
+	 *            heard from. In-neighbors heard from within its window are not
+	 *            checked for liveness
+	 * @return this ProtocolConfig
+	 */
+	public ProtocolConfig setContacts(ContactTable contacts) {
+		this.contacts = contacts;
+		return this;
+	}
+
+	/**
+	 *
+	 * @return the maximum number of messages held by the incoming and the
+	 *         outgoing queue, as well as by the queue of each message handling
+	 *         shard
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 *
+	 * @param queueCapacity
+	 *            the maximum number of messages held by the incoming and the
+	 *            outgoing queue, as well as by the queue of each message
+	 *            handling shard
+	 * @return this ProtocolConfig
+	 */
+	public ProtocolConfig setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+		return this;
+	}
+
+	/**
+	 *
+	 * @return the OverflowPolicy applied when the incoming or the outgoing
+	 *         queue is full
+	 */
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 *
+	 * @param policy
+	 *            the OverflowPolicy applied when the incoming or the outgoing
+	 *            queue is full
+	 * @return this ProtocolConfig
+	 */
+	public ProtocolConfig setPolicy(OverflowPolicy policy) {
+		this.policy = policy;
+		return this;
+	}
+
+	/**
+	 *
+	 * @return true if the maintenance of different Sessions runs in parallel
+	 *         in a ForkJoinPool
+	 */
+	public boolean isParallelMaintenance() {
+		return parallelMaintenance;
+	}
+
+	/**
+	 *
+	 * @param parallelMaintenance
+	 *            true if the maintenance of different Sessions should run in
+	 *            parallel in a ForkJoinPool, false if the Sessions should be
+	 *            maintained one after the other
+	 * @return this ProtocolConfig
+	 */
+	public ProtocolConfig setParallelMaintenance(boolean parallelMaintenance) {
+		this.parallelMaintenance = parallelMaintenance;
+		return this;
+	}
+
+	/**
+	 *
+	 * @return true if the Executions of the local node end once their impulse
+	 *         response converges
+	 */
+	public boolean isEarlyTermination() {
+		return earlyTermination;
+	}
+
+	/**
+	 *
+	 * @param earlyTermination
+	 *            true if the Executions of the local node should end once
+	 *            their impulse response converges, signaling their
+	 *            out-neighbors to end as well. Signals of remote nodes are
+	 *            followed either way
+	 * @return this ProtocolConfig
+	 */
+	public ProtocolConfig setEarlyTermination(boolean earlyTermination) {
+		this.earlyTermination = earlyTermination;
+		return this;
+	}
+
+}
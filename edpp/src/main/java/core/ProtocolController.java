@@ -1,24 +1,32 @@
 package core;
 
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import storage.Database;
-import comm.LightMessageReceiver;
-import comm.MessageReceiver;
-import comm.MessageSender;
+import comm.BoundedMessageQueue;
+import comm.ContactTable;
+import comm.FailureDetector;
+import comm.MessageBuilder;
+import comm.ProtocolMessage.Message;
 import comm.ProtocolMessage.Message.MessageType;
+import comm.SocketTransport;
 import comm.TransferableMessage;
+import comm.Transport;
+import domain.InitArrivalModel;
+import domain.RttEstimator;
 import domain.Session;
 import domain.network.Node;
+import domain.structure.TimerWheel;
 
 /**
  * This class is responsible for handling all the tasks related to the protocol,
@@ -33,25 +41,28 @@ public class ProtocolController implements Runnable {
 
 	public static final long TIMEOUT = 1000;
 
-	private static final int NTHREADS = 1;
-
 	private Node localNode;
-	private BlockingQueue<TransferableMessage> incomingQueue;
-	private BlockingQueue<TransferableMessage> outgoingQueue;
-	private MessageReceiver receiver;
-	private MessageSender sender;
-	private LightMessageReceiver lightReceiver;
-	private ExecutorService executor;
-	private ExecutorService initExecutor;
+	private BoundedMessageQueue incomingQueue;
+	private BoundedMessageQueue outgoingQueue;
+	private Transport transport;
+	private ContactTable contacts;
+	private FailureDetector detector;
+	private InitArrivalModel initArrivals;
+	private RttEstimator rtt;
+	private SessionShards shards;
 	private ExecutorService daemonExecutor;
 	private ScheduledExecutorService scheduledExecutor;
-	private Map<String, Session> sessions;
+	private ForkJoinPool maintenancePool;
+	private SessionEvictor evictor;
+	private HandlerContext handlerContext;
+	private Map<UUID, Session> sessions;
 	private Database db;
 
 	private Logger logger;
 
 	/**
-	 * Class constructor
+	 * Class constructor. The messages are exchanged through sockets on the
+	 * PROTOCOL_PORT and all the other settings have their default values
 	 * 
 	 * @param localNode
 	 *            the abstract Node representing the local network node
@@ -60,32 +71,71 @@ public class ProtocolController implements Runnable {
 	 *            Sessions
 	 */
 	public ProtocolController(Node localNode, Database db) {
+		this(localNode, db, new ProtocolConfig());
+	}
+
+	/**
+	 * Class constructor
+	 * 
+	 * @param localNode
+	 *            the abstract Node representing the local network node
+	 * @param db
+	 *            the Database used for storing and retrieving completed
+	 *            Sessions
+	 * @param config
+	 *            the settings of the controller
+	 */
+	public ProtocolController(Node localNode, Database db,
+			ProtocolConfig config) {
 
 		logger = Logger.getLogger(ProtocolController.class.getName());
 		this.localNode = localNode;
 		this.db = db;
+		this.transport = (config.getTransport() != null) ? config
+				.getTransport() : new SocketTransport();
+		this.contacts = (config.getContacts() != null) ? config.getContacts()
+				: new ContactTable();
+		// a single failure detector decides for all the Sessions whether a
+		// remote node has failed, so each suspected node is checked only once
+		this.detector = new FailureDetector(contacts, transport);
+		// the in-neighbor arrivals of all the Executions of the node are used
+		// for learning when their INIT phase can end
+		this.initArrivals = new InitArrivalModel();
+		// the response times of the remote nodes are shared by all the
+		// Executions, so each in-neighbor gets a timer fit for its link
+		this.rtt = new RttEstimator();
 
-		// initialize the blocking queues for incoming and outgoing messages
-		incomingQueue = new LinkedBlockingQueue<TransferableMessage>();
-		receiver = new MessageReceiver(incomingQueue);
-		lightReceiver = new LightMessageReceiver(incomingQueue);
-
-		outgoingQueue = new LinkedBlockingQueue<TransferableMessage>();
-		sender = new MessageSender(outgoingQueue);
+		// initialize the bounded queues for incoming and outgoing messages
+		int queueCapacity = config.getQueueCapacity();
+		incomingQueue = new BoundedMessageQueue(queueCapacity,
+				config.getPolicy());
+		outgoingQueue = new BoundedMessageQueue(queueCapacity,
+				config.getPolicy());
 
-		// set the number of threads in the pool of threads for message handling
-		// tasks
-		executor = Executors.newFixedThreadPool(NTHREADS);
-		initExecutor = Executors.newFixedThreadPool(1);
+		// the messages are handled by single-threaded shards, each one owning
+		// a part of the Sessions. Their queues are bounded as well, so that a
+		// burst of messages blocks the controller instead of piling up tasks
+		shards = new SessionShards(SessionShards.DEFAULT_SHARDS, queueCapacity);
 		scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
-		daemonExecutor = Executors.newFixedThreadPool(4, new ThreadFactory() {
+		if (config.isParallelMaintenance()) {
+			maintenancePool = new ForkJoinPool();
+		}
+		daemonExecutor = Executors.newFixedThreadPool(1, new ThreadFactory() {
 			public Thread newThread(Runnable r) {
 				Thread t = new Thread(r);
 				t.setDaemon(true);
 				return t;
 			}
 		});
-		sessions = new ConcurrentHashMap<String, Session>();
+		sessions = new ConcurrentHashMap<UUID, Session>();
+		// the Sessions that will never terminate, e.g. because their initiator
+		// failed, are evicted instead of being maintained forever
+		evictor = new SessionEvictor();
+		// the state shared by all the MessageHandlerTasks is assembled once
+		handlerContext = new HandlerContext(sessions, localNode, outgoingQueue)
+				.setInitArrivals(initArrivals).setRtt(rtt)
+				.setEarlyTermination(config.isEarlyTermination())
+				.setEvictor(evictor);
 	}
 
 	@Override
@@ -93,48 +143,132 @@ public class ProtocolController implements Runnable {
 		TransferableMessage incomingMessage;
 
 		// Set up and run the basic threads
-		logger.info("Initiating the receiver thread");
-		daemonExecutor.execute(receiver);
+		logger.info("Initiating the transport");
+		transport.start(incomingQueue, contacts);
 		logger.info("Initiating the sender thread");
-		daemonExecutor.execute(sender);
-		daemonExecutor.execute(lightReceiver);
+		daemonExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				dispatchOutgoingMessages();
+			}
+		});
 
 		// Set the threads as daemons, so that the vm will exit
 		// if only those threads remain running
 
-		// Schedule thread maintenance
+		// Schedule thread maintenance. The task runs once per tick of its timer
+		// wheel, but only checks the Executions whose timers have expired
 		logger.info("Initiating the maintenance task scheduler");
 		scheduledExecutor.scheduleWithFixedDelay(new MaintenanceTask(sessions,
-				outgoingQueue, localNode, db), TIMEOUT, TIMEOUT,
-				TimeUnit.MILLISECONDS);
+				outgoingQueue, localNode, db, detector, maintenancePool,
+				evictor), TIMEOUT,
+				TimerWheel.DEFAULT_TICK, TimeUnit.MILLISECONDS);
 
 		while (true) {
 			try {
 				incomingMessage = incomingQueue.take();
-				// if an INIT message arrives to the incoming queue you should
-				// handle it sequentially and not concurrently with other INIT
-				// messages. the reason is that creation of Executions cannot be
-				// parallelized
-				if (incomingMessage.getMessage().getType() == MessageType.INIT) {
-					initExecutor
-							.execute(new MessageHandlerTask(incomingMessage,
-									sessions, localNode, outgoingQueue));
-				} else {
-					// if the message is of any type other than INIT, take a
-					// thread from the pool and initiate a new
-					// MessageHandlerTask
-					executor.execute(new MessageHandlerTask(incomingMessage,
-							sessions, localNode, outgoingQueue));
-				}
 			} catch (InterruptedException e) {
 				e.printStackTrace();
+				continue;
+			}
+			try {
+				dispatchIncomingMessage(incomingMessage);
+			} catch (RuntimeException e) {
+				// only this message is lost, the thread keeps dispatching
+				logger.log(Level.WARNING, "Dropping a message from "
+						+ incomingMessage.getAddress()
+						+ " that could not be dispatched", e);
 			}
 		}
 
 	}
 
 	public void putMessageToInQueue(TransferableMessage tm) {
-		incomingQueue.add(tm);
+		try {
+			incomingQueue.put(tm);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 
+	 * @return the queue where the messages received from remote nodes are
+	 *         placed before being handled
+	 */
+	public BoundedMessageQueue getIncomingQueue() {
+		return incomingQueue;
+	}
+
+	/**
+	 * 
+	 * @return the queue where the messages intended for remote nodes are
+	 *         placed before being handed to the transport
+	 */
+	public BoundedMessageQueue getOutgoingQueue() {
+		return outgoingQueue;
+	}
+
+	/**
+	 * 
+	 * @return the SessionEvictor of the node, which keeps the number of
+	 *         Sessions evicted
+	 */
+	public SessionEvictor getSessionEvictor() {
+		return evictor;
+	}
+
+	/**
+	 * Assigns a received message to the shard owning its Session. All the
+	 * messages of a Session, INIT messages included, are handled sequentially
+	 * by the same thread, so the Executions of a Session are never created
+	 * concurrently, while different Sessions are handled in parallel
+	 */
+	private void dispatchIncomingMessage(TransferableMessage tm) {
+		Message m = tm.getMessage();
+		if (!MessageBuilder.hasWellFormedIds(m)) {
+			logger.warning("Dropping a message from " + tm.getAddress()
+					+ " with malformed ids");
+			return;
+		}
+		if (m.getType() == MessageType.BATCH) {
+			// the values in a BATCH message might belong to different Sessions,
+			// so each one is handled by the shard of its own Session
+			for (Message next : MessageBuilder.unpackBatchMessage(m)) {
+				dispatchIncomingMessage(new TransferableMessage(next,
+						tm.getAddress(), tm.getSendReliably()));
+			}
+			return;
+		}
+		shards.execute(MessageBuilder.getSessionUuid(m), new MessageHandlerTask(
+				tm, handlerContext));
+	}
+
+	/**
+	 * Hands the messages placed in the outgoing queue by the protocol tasks to
+	 * the transport
+	 */
+	private void dispatchOutgoingMessages() {
+		while (true) {
+			try {
+				TransferableMessage tm = outgoingQueue.take();
+				if (tm.hasMultipleDestinations()) {
+					if (tm.getSendReliably()) {
+						transport.sendReliably(tm.getMessage(),
+								tm.getAddresses());
+					} else {
+						transport.sendBestEffort(tm.getMessage(),
+								tm.getAddresses());
+					}
+				} else if (tm.getSendReliably()) {
+					transport.sendReliably(tm.getMessage(), tm.getAddress());
+				} else {
+					transport.sendBestEffort(tm.getMessage(), tm.getAddress());
+				}
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
 	}
 
 }
@@ -1,11 +1,24 @@
 package core;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import comm.SocketTransport;
+import comm.Transport;
+import domain.RecordedSession;
 import domain.SamplingParameters;
 import domain.Session;
 import domain.network.Node;
@@ -26,11 +39,21 @@ public class ProtocolEngine {
 	static final String DBNAME = "sessiondata.db";
 	static final String REC_NAME = "sessionRec";
 
+	/**
+	 * The default maximum age in milliseconds of the estimations served
+	 * without waiting for a new sampling
+	 */
+	public static final long DEFAULT_MAX_STALENESS = 5 * ProtocolRun.MAX_TIME_THRESHOLD;
+
 	private Logger logger;
 
-	private ExecutorService executor;
+	private ScheduledExecutorService timeoutScheduler;
+	private ConcurrentMap<SamplingParameters, SharedRequest> inFlight;
+	private SessionCache cache;
+	private SamplingCadenceController cadenceController;
 	private Database sessionDB;
 	private ProtocolController pc;
+	private Transport transport;
 
 	/**
 	 * Class constructor
@@ -39,34 +62,68 @@ public class ProtocolEngine {
 	 *            the abstract Node representation of the local node
 	 */
 	public ProtocolEngine(Node localNode) {
+		this(localNode, new KeyValueDatabase(DBNAME, REC_NAME),
+				new SocketTransport());
+	}
+
+	/**
+	 * Class constructor
+	 * 
+	 * @param localNode
+	 *            the abstract Node representation of the local node
+	 * @param sessionDB
+	 *            the Database used for storing and retrieving completed
+	 *            Sessions
+	 * @param transport
+	 *            the Transport through which the protocol exchanges messages
+	 *            with remote nodes
+	 */
+	public ProtocolEngine(Node localNode, Database sessionDB,
+			Transport transport) {
 
 		logger = Logger.getLogger(ProtocolEngine.class.getName());
 
-		sessionDB = new KeyValueDatabase(DBNAME, REC_NAME);
+		this.sessionDB = sessionDB;
+		this.transport = transport;
 
 		// initiate the ProtocolController and set it as a daemon service
-		pc = new ProtocolController(localNode, sessionDB);
+		pc = new ProtocolController(localNode, sessionDB,
+				new ProtocolConfig().setTransport(transport));
 		Thread controllerThread = new Thread(pc);
 		controllerThread.setDaemon(true);
 		controllerThread.start();
 
-		executor = Executors.newCachedThreadPool();
+		inFlight = new ConcurrentHashMap<SamplingParameters, SharedRequest>();
+		cache = new SessionCache(sessionDB);
+		cadenceController = new SamplingCadenceController();
+		// the requests are not served by threads of their own, so a single
+		// thread is enough for expiring the ones that take too long
+		timeoutScheduler = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r);
+						t.setDaemon(true);
+						return t;
+					}
+				});
 
 	}
 
 	/**
 	 * Method responsible for terminating the protocol engine gracefully. It
-	 * closes the database used and terminates the daemon threads
+	 * closes the database used, stops the transport and terminates the daemon
+	 * threads
 	 */
 	public void terminate() {
 		logger.info("Terminating the sampling engine gracefully");
 		sessionDB.closeDatabase();
-		executor.shutdownNow();
+		transport.stop();
+		timeoutScheduler.shutdownNow();
 	}
 
 	/**
 	 * This method is responsible for initiating a new ProtocolRun for making a
-	 * new sampling request
+	 * new sampling request. It blocks until the sampling data are available
 	 * 
 	 * @param sp
 	 *            the SamplingParameters that should be used for the new
@@ -75,16 +132,12 @@ public class ProtocolEngine {
 	 *         properties
 	 */
 	public Session requestSessionData(SamplingParameters sp) {
-		logger.info("Submitting a request for a new protocol run");
-		ProtocolRun pr = new ProtocolRun(sessionDB, pc, sp);
-		// run a ProtocolRun in a new thread
-		Future<Session> future = executor.submit(pr);
 		Session s = null;
 
 		// block waiting to receive the sampling data
 		try {
 			logger.info("Awaiting for sampling data...");
-			s = future.get();
+			s = requestSessionDataAsync(sp).get();
 			logger.info("Received sampling data for session "
 					+ s.getSessionId());
 		} catch (InterruptedException e) {
@@ -95,6 +148,172 @@ public class ProtocolEngine {
 		return s;
 	}
 
+	/**
+	 * This method is responsible for initiating a new ProtocolRun for making a
+	 * new sampling request, without blocking the caller. No thread is kept
+	 * waiting for the sampling data; the returned future is completed once the
+	 * Session is stored in the database. Concurrent requests with equal
+	 * SamplingParameters share a single ProtocolRun, so that only one Session
+	 * is initiated for all of them. Cancelling the future abandons the request
+	 * once no other caller is waiting for it
+	 * 
+	 * @param sp
+	 *            the SamplingParameters that should be used for the new
+	 *            sampling request
+	 * @return a ListenableFuture of the Session providing some estimation of
+	 *         the network's spectral properties
+	 */
+	public ListenableFuture<Session> requestSessionDataAsync(
+			SamplingParameters sp) {
+		// the parameters might be modified by the caller afterwards, so a copy
+		// of them is used as the key of the request
+		final SamplingParameters key = new SamplingParameters(
+				sp.getNumberOfExecutions(), sp.getNumberOfRounds());
+		while (true) {
+			SharedRequest shared = inFlight.get(key);
+			if (shared == null) {
+				ProtocolRun pr = new ProtocolRun(sessionDB, pc, key,
+						cadenceController);
+				final SharedRequest created = new SharedRequest(pr.getResult());
+				shared = inFlight.putIfAbsent(key, created);
+				if (shared == null) {
+					// the request is no longer in flight once it is complete
+					pr.getResult().addListener(new Runnable() {
+						@Override
+						public void run() {
+							inFlight.remove(key, created);
+						}
+					}, MoreExecutors.sameThreadExecutor());
+					ListenableFuture<Session> result = created.subscribe();
+					logger.info("Submitting a request for a new protocol run");
+					pr.start();
+					return result;
+				}
+				// another caller made the same request in the meantime
+				pr.getResult().cancel(false);
+			}
+			ListenableFuture<Session> result = shared.subscribe();
+			if (result != null) {
+				logger.info("Joining a protocol run already in flight");
+				return result;
+			}
+			// the request in flight was abandoned by all its callers
+			inFlight.remove(key, shared);
+		}
+	}
+
+	/**
+	 * This method is responsible for initiating a new ProtocolRun for making a
+	 * new sampling request, without blocking the caller. If the sampling data
+	 * are not available within the timeout, the returned future fails with a
+	 * TimeoutException and the request is abandoned
+	 * 
+	 * @param sp
+	 *            the SamplingParameters that should be used for the new
+	 *            sampling request
+	 * @param timeout
+	 *            the maximum time to wait for the sampling data
+	 * @param unit
+	 *            the TimeUnit of the timeout
+	 * @return a ListenableFuture of the Session providing some estimation of
+	 *         the network's spectral properties
+	 */
+	public ListenableFuture<Session> requestSessionDataAsync(
+			SamplingParameters sp, final long timeout, final TimeUnit unit) {
+		final ListenableFuture<Session> request = requestSessionDataAsync(sp);
+		final SettableFuture<Session> result = SettableFuture.create();
+
+		final ScheduledFuture<?> expiration = timeoutScheduler.schedule(
+				new Runnable() {
+					@Override
+					public void run() {
+						if (result.setException(new TimeoutException(
+								"No sampling data received within " + timeout
+										+ " " + unit))) {
+							request.cancel(false);
+						}
+					}
+				}, timeout, unit);
+		request.addListener(new Runnable() {
+			@Override
+			public void run() {
+				expiration.cancel(false);
+				try {
+					result.set(request.get());
+				} catch (ExecutionException e) {
+					result.setException(e.getCause());
+				} catch (Exception e) {
+					// the request was cancelled, either through the returned
+					// future or because it expired
+					result.cancel(false);
+				}
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		result.addListener(new Runnable() {
+			@Override
+			public void run() {
+				// propagate the cancellation of the returned future
+				if (result.isCancelled()) {
+					request.cancel(false);
+				}
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return result;
+	}
+
+	/**
+	 * This method serves the last estimations recorded with the given
+	 * parameters without waiting for a new sampling, as long as they are not
+	 * older than DEFAULT_MAX_STALENESS
+	 * 
+	 * @param sp
+	 *            the SamplingParameters that should be used if a new sampling
+	 *            request is required
+	 * @return a ListenableFuture of the Session providing some estimation of
+	 *         the network's spectral properties
+	 * @see #requestStaleSessionData(SamplingParameters, long)
+	 */
+	public ListenableFuture<Session> requestStaleSessionData(
+			SamplingParameters sp) {
+		return requestStaleSessionData(sp, DEFAULT_MAX_STALENESS);
+	}
+
+	/**
+	 * This method serves the last estimations recorded with the given
+	 * parameters without waiting for a new sampling. If they are older than
+	 * the sampling threshold of the parameters they are still returned at
+	 * once, while a new sampling request refreshes them in the background.
+	 * Only if no such Session has been recorded or the last one is older than
+	 * maxStaleness does the caller have to wait for the new sampling
+	 * 
+	 * @param sp
+	 *            the SamplingParameters that should be used if a new sampling
+	 *            request is required
+	 * @param maxStaleness
+	 *            the maximum age in milliseconds of the estimations that can
+	 *            be served while a new sampling is in progress
+	 * @return a ListenableFuture of the Session providing some estimation of
+	 *         the network's spectral properties. The future is already
+	 *         complete, unless no estimations recent enough are available
+	 */
+	public ListenableFuture<Session> requestStaleSessionData(
+			SamplingParameters sp, long maxStaleness) {
+		// estimations sampled with other parameters cannot be served instead
+		RecordedSession rs = cache.getLatest(sp);
+		long age = SessionCache.ageOf(rs);
+		if (age <= cadenceController.getThreshold(sp)) {
+			return Futures.immediateFuture(rs.getRecordedSession());
+		}
+		// concurrent refreshes of the same parameters share a single run
+		ListenableFuture<Session> refresh = requestSessionDataAsync(sp);
+		if (age <= maxStaleness) {
+			logger.info("Serving estimations recorded " + age
+					+ "ms ago while refreshing them");
+			return Futures.immediateFuture(rs.getRecordedSession());
+		}
+		return refresh;
+	}
+
 	/**
 	 * This method adds a SessionListener to the MessageHandlerTask and
 	 * MaintenanceTask
@@ -1,9 +1,16 @@
 package core;
 
 import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
 import storage.Database;
 import comm.MessageBuilder;
 import comm.ProtocolMessage.Message;
@@ -12,17 +19,22 @@ import comm.TransferableMessage;
 import domain.RecordedSession;
 import domain.SamplingParameters;
 import domain.Session;
+import event.EvictionListener;
 import event.SessionListener;
 
 /**
  * Class responsible for initiating a new sampling request by creating a message
- * of type NEW and placing it to the incoming queue. It should be executed in a
- * separate thread
+ * of type NEW and placing it to the incoming queue. The outcome of the request
+ * is provided through a ListenableFuture, which is completed once the Session
+ * initiated by the request is stored in the database, so no thread needs to
+ * wait for it. If that Session is evicted instead, the future fails with a
+ * TimeoutException
  * 
  * @author Xenofon Foukas
  * 
  */
-public class ProtocolRun implements Callable<Session>, SessionListener {
+public class ProtocolRun implements Callable<Session>, SessionListener,
+		EvictionListener {
 
 	public static final long TIME_THRESHOLD = 10000;
 
@@ -32,18 +44,17 @@ public class ProtocolRun implements Callable<Session>, SessionListener {
 	public static final double MIN_RATE = 0.05;
 	public static final double MAX_RATE = 1;
 
-	public static long CURRENT_THRESHOLD = MIN_TIME_THRESHOLD;
-	public static double CURRENT_INCREASE_RATE = MIN_RATE;
-	public static double CURRENT_DECREASE_RATE = MIN_RATE;
-
-	final Object lock;
-
 	private Logger logger;
 
-	private Session s;
 	private Database db;
 	private ProtocolController pc;
 	private SamplingParameters sp;
+	private SamplingCadence cadence;
+	private final SettableFuture<Session> result;
+	// the id of the Session initiated by the NEW message of this run, so that
+	// the Sessions requested by others are not taken for it
+	private final UUID sessionId;
+	private volatile Session previousSession;
 
 	/**
 	 * Class constructor
@@ -58,62 +69,112 @@ public class ProtocolRun implements Callable<Session>, SessionListener {
 	 *            the new Execution
 	 */
 	public ProtocolRun(Database db, ProtocolController pc, SamplingParameters sp) {
+		this(db, pc, sp, new SamplingCadenceController());
+	}
+
+	/**
+	 * Class constructor
+	 * 
+	 * @param db
+	 *            the database where the completed Sessions are stored
+	 * @param pc
+	 *            the ProtocolController object responsible for running the
+	 *            protocol tasks
+	 * @param sp
+	 *            an object of type SamplingParameters with the parameters of
+	 *            the new Execution
+	 * @param controller
+	 *            the SamplingCadenceController deciding whether a stored
+	 *            Session is recent enough to be used instead of a new sampling
+	 */
+	public ProtocolRun(Database db, ProtocolController pc,
+			SamplingParameters sp, SamplingCadenceController controller) {
 		logger = Logger.getLogger(ProtocolRun.class.getName());
 
-		lock = new Object();
-		s = null;
+		this.cadence = controller.getCadence(sp);
 		this.pc = pc;
 		this.sp = sp;
 		this.db = db;
+		this.result = SettableFuture.create();
+		this.sessionId = UUID.randomUUID();
+		this.previousSession = null;
+		// once the request is complete, failed or cancelled there is nothing
+		// more to listen for
+		result.addListener(new Runnable() {
+			@Override
+			public void run() {
+				ProtocolRun.this.db.removeSessionListener(ProtocolRun.this);
+				ProtocolRun.this.pc.getSessionEvictor()
+						.removeEvictionListener(ProtocolRun.this);
+			}
+		}, MoreExecutors.sameThreadExecutor());
 		this.db.addSessionListener(this);
+		this.pc.getSessionEvictor().addEvictionListener(this);
 	}
 
-	@Override
-	public Session call() throws Exception {
-
+	/**
+	 * Makes the sampling request without waiting for its outcome. If a recent
+	 * Session is stored in the database the returned future is already
+	 * complete, otherwise it is completed as soon as the new Session is stored
+	 * 
+	 * @return a ListenableFuture of the Session providing some estimation of
+	 *         the network's spectral properties
+	 */
+	public ListenableFuture<Session> start() {
 		RecordedSession rs = null;
-		Session previousSession = null;
 
 		logger.info("Checking for previously stored sampling data...");
 		rs = db.getLastRecordedSession();
 
-		// if no previous session was stored make a new request
-		if (rs == null) {
-			logger.info("No previously stored session data found. Making a new request");
-			Message m = MessageBuilder.buildNewMessage(
-					sp.getNumberOfExecutions(), sp.getNumberOfRounds());
-			TransferableMessage tm = new TransferableMessage(m,
-					InetAddress.getLocalHost());
-			pc.putMessageToInQueue(tm);
-		} else if (System.currentTimeMillis() - rs.getTimestamp() <= CURRENT_THRESHOLD) {
-			// if a previous Session was already stored and it is recent do not
-			// initiate a new sampling process
-			logger.info("A recently stored session exists. Using this");
-			s = rs.getRecordedSession();
-			return s;
-		} else {
-			// if a previous outdated Session was found, then a new sampling
-			// should be initiated
-			logger.info("Found a recorded session, but it is outdated. Will make a new request");
-			Message m = MessageBuilder.buildNewMessage(
-					sp.getNumberOfExecutions(), sp.getNumberOfRounds());
-			TransferableMessage tm = new TransferableMessage(m,
-					InetAddress.getLocalHost());
-			pc.putMessageToInQueue(tm);
-			previousSession = rs.getRecordedSession();
+		try {
+			// if no previous session was stored make a new request. A Session
+			// sampled with other parameters cannot be used instead of this
+			// request, nor does it tell anything about its cadence
+			if (rs == null) {
+				logger.info("No previously stored session data found. Making a new request");
+				putNewMessage();
+			} else if (!matches(rs.getRecordedSession())) {
+				logger.info("The stored session was sampled with other parameters. Making a new request");
+				putNewMessage();
+			} else if (System.currentTimeMillis() - rs.getTimestamp() <= cadence
+					.getThreshold()) {
+				// if a previous Session was already stored and it is recent do
+				// not initiate a new sampling process
+				logger.info("A recently stored session exists. Using this");
+				result.set(rs.getRecordedSession());
+			} else {
+				// if a previous outdated Session was found, then a new sampling
+				// should be initiated
+				logger.info("Found a recorded session, but it is outdated. Will make a new request");
+				previousSession = rs.getRecordedSession();
+				putNewMessage();
+			}
+		} catch (UnknownHostException e) {
+			result.setException(e);
 		}
+		return result;
+	}
 
-		// Wait to get a session through a record inserted event
-		synchronized (lock) {
-			lock.wait();
-		}
-		// Adjust the threshold of the elapsed time among consecutive samplings
-		if (previousSession != null)
-			logger.info("Adjusting the sampling time interval threshold");
-		adjustThreshold(previousSession.getComputedEigenvalues(),
-				s.getComputedEigenvalues());
-		this.db.removeSessionListener(this);
-		return s;
+	/**
+	 * 
+	 * @return the ListenableFuture completed with the outcome of the request
+	 */
+	public ListenableFuture<Session> getResult() {
+		return result;
+	}
+
+	/**
+	 * 
+	 * @return the String representation of the id of the Session initiated by
+	 *         this request, if a new sampling is required
+	 */
+	public String getSessionId() {
+		return sessionId.toString();
+	}
+
+	@Override
+	public Session call() throws Exception {
+		return start().get();
 	}
 
 	@Override
@@ -128,67 +189,51 @@ public class ProtocolRun implements Callable<Session>, SessionListener {
 
 	@Override
 	public void sessionStored(RecordedSession rs) {
-		synchronized (lock) {
-			logger.info("A new record was inserted to the database for session with id "
-					+ rs.getRecordedSession().getSessionId());
-			s = rs.getRecordedSession();
-			lock.notify();
+		if (result.isDone()) {
+			return;
+		}
+		Session s = rs.getRecordedSession();
+		// the stored Session might have been initiated by another request or
+		// by a remote node
+		if (!sessionId.equals(s.getSessionUuid())) {
+			return;
 		}
+		logger.info("A new record was inserted to the database for session with id "
+				+ s.getSessionId());
+		// Adjust the threshold of the elapsed time among consecutive samplings
+		if (previousSession != null) {
+			cadence.seed(previousSession.getComputedEigenvalues());
+		}
+		// being initiated by this request, the Session was sampled with the
+		// parameters of the cadence
+		logger.info("Adjusting the sampling time interval threshold");
+		cadence.record(s.getComputedEigenvalues());
+		result.set(s);
 	}
 
-	/**
-	 * This method is responsible for adjusting the interval between to
-	 * consecutive samplings by checking whether we have changes in the
-	 * estimations from previous samples
-	 * 
-	 * @param previousEigenvalues
-	 *            a double array of the eigenvalues estimated by the previous
-	 *            Session
-	 * @param newEigenvalues
-	 *            a double array of the eigenvalues estimated by the new Session
-	 */
-	public static void adjustThreshold(double[] previousEigenvalues,
-			double[] newEigenvalues) {
-		// if no changes were observed to the eigenvalues increase the interval
-		// between samplings
-		if (!eigenvaluesChanged(previousEigenvalues, newEigenvalues, 0.05)) {
-			long increase = (long) (CURRENT_INCREASE_RATE * CURRENT_THRESHOLD);
-			if (CURRENT_THRESHOLD + increase <= MAX_TIME_THRESHOLD) {
-				CURRENT_THRESHOLD += increase;
-			} else {
-				CURRENT_THRESHOLD = MAX_TIME_THRESHOLD;
-			}
-			if (CURRENT_INCREASE_RATE < MAX_RATE) {
-				CURRENT_INCREASE_RATE += 0.05;
-			}
-			CURRENT_DECREASE_RATE = MIN_RATE;
-		} else { // If changes were observed set the interval back to the
-					// minimum value
-			long decrease = (long) (CURRENT_DECREASE_RATE * CURRENT_THRESHOLD);
-			if (CURRENT_THRESHOLD - decrease >= MIN_TIME_THRESHOLD) {
-				CURRENT_THRESHOLD -= decrease;
-			} else {
-				CURRENT_THRESHOLD = MIN_TIME_THRESHOLD;
-			}
-			if (CURRENT_DECREASE_RATE < MAX_RATE) {
-				CURRENT_DECREASE_RATE += 0.05;
-			}
-			CURRENT_INCREASE_RATE = MIN_RATE;
+	@Override
+	public void sessionEvicted(Session s) {
+		// the Session will never be stored, so the request would otherwise
+		// wait forever
+		if (sessionId.equals(s.getSessionUuid())) {
+			logger.warning("Session with id " + s.getSessionId()
+					+ " was evicted before it completed");
+			result.setException(new TimeoutException("Session "
+					+ s.getSessionId() + " was evicted before it completed"));
 		}
 	}
 
-	private static boolean eigenvaluesChanged(double[] previousEigenvalues,
-			double[] newEigenvalues, double errorThres) {
-		if (previousEigenvalues.length != newEigenvalues.length)
-			return true;
+	private boolean matches(Session s) {
+		return s.getNumberOfExecutions() == sp.getNumberOfExecutions()
+				&& s.getNumberOfRounds() == sp.getNumberOfRounds();
+	}
 
-		// check if the eigenvalues are different, i.e. if their difference is
-		// greater than some threshold
-		for (int i = 0; i < previousEigenvalues.length; i++) {
-			if (Math.abs(previousEigenvalues[i] - newEigenvalues[i]) > errorThres)
-				return true;
-		}
-		return false;
+	private void putNewMessage() throws UnknownHostException {
+		Message m = MessageBuilder.buildNewMessage(sessionId,
+				sp.getNumberOfExecutions(), sp.getNumberOfRounds());
+		TransferableMessage tm = new TransferableMessage(m,
+				InetAddress.getLocalHost());
+		pc.putMessageToInQueue(tm);
 	}
 
 }
@@ -0,0 +1,418 @@
+package core;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Logger;
+
+import comm.MessageBuilder;
+import comm.TransferableMessage;
+import comm.ProtocolMessage.Message;
+import domain.Execution;
+import domain.Id;
+import domain.Phase;
+import domain.PlainNeighbor;
+import domain.Session;
+import domain.network.Node;
+import domain.structure.PlainNeighborsTable;
+
+/**
+ * This class closes the rounds of the Executions in the DATA_EXCHANGE phase,
+ * sending the NEXT messages of the following round or switching to the GOSSIP
+ * phase after the final round. A round is closed either by a
+ * MessageHandlerTask, as soon as the last value expected for it arrives, or by
+ * the MaintenanceTask, once the in-neighbors that did not send their values
+ * have been dealt with. The messages are built while the Execution is locked,
+ * but they are placed in the outgoing queue, which might be full, only once
+ * it is released, so that a full queue never keeps an Execution locked. A
+ * single RoundAdvancer can be shared by many threads
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class RoundAdvancer {
+
+	private Logger logger;
+
+	private BlockingQueue<TransferableMessage> outgoingQueue;
+	private Node localNode;
+	// the messages built by each thread while it held the lock of an
+	// Execution
+	private final ThreadLocal<List<TransferableMessage>> outbox;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param outgoingQueue
+	 *            the queue, where the messages intended for remote nodes will
+	 *            be placed
+	 * @param localNode
+	 *            an object of type Node representing the local node
+	 */
+	public RoundAdvancer(BlockingQueue<TransferableMessage> outgoingQueue,
+			Node localNode) {
+		this.logger = Logger.getLogger(RoundAdvancer.class.getName());
+		this.outgoingQueue = outgoingQueue;
+		this.localNode = localNode;
+		this.outbox = new ThreadLocal<List<TransferableMessage>>() {
+			@Override
+			protected List<TransferableMessage> initialValue() {
+				return new ArrayList<TransferableMessage>();
+			}
+		};
+	}
+
+	/**
+	 * Closes the current round of an Execution if the values of all its
+	 * in-neighbors have been received, without waiting for the MaintenanceTask.
+	 * If the values of the following rounds have already been received as
+	 * well, those rounds are closed too
+	 *
+	 * @param s
+	 *            the Session the Execution belongs to
+	 * @param e
+	 *            the Execution in the DATA_EXCHANGE phase
+	 * @return true if at least one round was closed, false otherwise
+	 */
+	public boolean advanceIfComplete(Session s, Execution e) {
+		boolean advanced = false;
+		synchronized (e) {
+			while (e.getPhase() == Phase.DATA_EXCHANGE
+					&& e.getInNeighbors().getSize() > 0) {
+				e.setProperTimersToInf();
+				if (!e.roundIsOver()) {
+					break;
+				}
+				advanceRound(s, e);
+				advanced = true;
+			}
+		}
+		flushIfUnlocked(e);
+		return advanced;
+	}
+
+	/**
+	 * Closes the current round of an Execution. If the Execution has another
+	 * round the NEXT messages of that round are sent to the out-neighbors,
+	 * otherwise the Execution switches to the GOSSIP phase
+	 *
+	 * @param s
+	 *            the Session the Execution belongs to
+	 * @param e
+	 *            the Execution in the DATA_EXCHANGE phase
+	 */
+	public void advanceRound(Session s, Execution e) {
+		synchronized (e) {
+			closeRound(s, e);
+		}
+		flushIfUnlocked(e);
+	}
+
+	private void closeRound(Session s, Execution e) {
+		synchronized (e) {
+			s.touch();
+			e.getInNeighbors().renewTimers();
+			// the remaining rounds are skipped if the Execution has
+			// converged
+			if (s.isEarlyTerminationEnabled() && e.hasAnotherRound()
+					&& e.hasConverged()) {
+				logger.info("The impulse response of execution "
+						+ e.getExecutionNumber() + " in session "
+						+ s.getSessionId() + " converged in round "
+						+ e.getCurrentRound() + ". Ending it early");
+				endExecution(s, e, e.getCurrentRound());
+				return;
+			}
+			// If it is the end of the round check if we have another round
+			if (e.hasAnotherRound()) {
+				sendOutNextMessage(s, e);
+				int newRound = e.getCurrentRound() + 1;
+				logger.info("Round " + e.getCurrentRound() + " of execution "
+						+ e.getExecutionNumber() + " in session "
+						+ s.getSessionId() + " is over. Going to round "
+						+ newRound);
+				e.setRound(newRound);
+				checkForNewExecution(s, e);
+			} else { // if this was the last round, go to the Gossip Round
+						// phase
+				logger.info("Round " + e.getCurrentRound() + " of execution "
+						+ e.getExecutionNumber() + " in session "
+						+ s.getSessionId()
+						+ " is over. This was the final round. "
+						+ "Switching to GOSSIP phase");
+				e.setRound(e.getCurrentRound() + 1);
+				enterGossipPhase(s, e);
+			}
+		}
+	}
+
+	/**
+	 * Ends an Execution in the DATA_EXCHANGE phase before its total number of
+	 * rounds. The out-neighbors are sent a TERMINATE message, so that they stop
+	 * waiting for the values of the following rounds and end their Execution
+	 * as well, and the Execution switches to the GOSSIP phase. If the initial
+	 * Execution of a Session initiated by the local node is ended, the
+	 * Executions that were not created yet are created at once
+	 *
+	 * @param s
+	 *            the Session the Execution belongs to
+	 * @param e
+	 *            the Execution to be ended
+	 * @param lastRound
+	 *            the final round of the Execution, whose values must already
+	 *            be complete
+	 * @return true if the Execution was ended, false if it was not in the
+	 *         DATA_EXCHANGE phase
+	 */
+	public boolean endExecution(Session s, Execution e, int lastRound) {
+		boolean ended;
+		synchronized (e) {
+			ended = end(s, e, lastRound);
+		}
+		flushIfUnlocked(e);
+		return ended;
+	}
+
+	private boolean end(Session s, Execution e, int lastRound) {
+		synchronized (e) {
+			if (e.getPhase() != Phase.DATA_EXCHANGE) {
+				return false;
+			}
+			e.endAtRound(lastRound);
+			Message m = MessageBuilder.buildTerminateMessage(
+					localNode.getLocalId(), s.getSessionUuid(),
+					e.getExecutionNumber(), e.getLastRound());
+			logger.info("Sending TERMINATE message for round "
+					+ e.getLastRound() + " of execution "
+					+ e.getExecutionNumber() + " in session "
+					+ s.getSessionId());
+			sendToOutNeighbors(m, e, true);
+			// the round may already be past the final one, if the TERMINATE
+			// message arrived late, so it is moved back for the Execution to
+			// be considered terminated
+			e.setRound(e.getLastRound() + 1);
+			// the following Executions are created from the rounds of the
+			// initial one, so the ones not created yet are created now
+			if (s.isInitiator() && e.equals(s.getInitExecution())) {
+				while (spawnExecution(s, e)) {
+					// one more Execution was created
+				}
+			}
+			enterGossipPhase(s, e);
+			return true;
+		}
+	}
+
+	/**
+	 * Switches an Execution to the GOSSIP phase. The eigenvalues of the
+	 * Execution are computed and sent to all the out-neighbors
+	 *
+	 * @param s
+	 *            the Session the Execution belongs to
+	 * @param e
+	 *            the Execution whose final round is over
+	 */
+	public void enterGossipPhase(Session s, Execution e) {
+		s.touch();
+		e.setPhase(Phase.GOSSIP);
+
+		// Compute the eigenvalue estimations of the current node
+		e.computeRealizationMatrix();
+		logger.info("The realization matrix of execution "
+				+ e.getExecutionNumber() + " of session " + s.getSessionId()
+				+ " was computed");
+
+		// add any gossip messages already received to the gossip data of the
+		// Execution
+		e.transferPendingGossipMessages();
+
+		// TODO probably should test this for null
+		double[] eigenvals = e.getMatrixAEigenvalues();
+		String eig = "[";
+		for (int j = 0; j < eigenvals.length; j++) {
+			eig += eigenvals[j];
+			eig += ", ";
+		}
+		eig += "]";
+
+		// Send only the 3 largest eigenvalues. This should probably be
+		// implemented to change dynamically by the user
+		double[] valsToSend;
+		if (eigenvals.length > 3) {
+			valsToSend = new double[3];
+			for (int j = 0; j < 3; j++) {
+				valsToSend[j] = eigenvals[j];
+			}
+		} else {
+			valsToSend = eigenvals;
+		}
+		logger.info("The computed eigenvalues of execution "
+				+ e.getExecutionNumber() + " of session " + s.getSessionId()
+				+ " are " + eig);
+		Message msg = MessageBuilder.buildGossipMessage(
+				localNode.getLocalId(), s.getSessionUuid(),
+				e.getExecutionNumber(), valsToSend);
+		// send GOSSIP message to out-neighbors
+		sendToOutNeighbors(msg, e, false);
+		flushIfUnlocked(e);
+	}
+
+	/**
+	 * Sends to all the out-neighbors of an Execution the NEXT messages for the
+	 * round following the current one
+	 *
+	 * @param session
+	 *            the Session the Execution belongs to
+	 * @param execution
+	 *            the Execution whose current round is over
+	 */
+	public void sendOutNextMessage(Session session, Execution execution) {
+		double valueToSend;
+		Message outMessage;
+		String sessionId = session.getSessionId();
+		UUID sessionUuid = session.getSessionUuid();
+		Id nodeId = localNode.getLocalId();
+		PlainNeighborsTable pnt = execution.getOutNeighbors();
+		// round number + 1, because we send the message for a round using the
+		// value of the previous round
+		int r = execution.getCurrentRound() + 1;
+
+		// the out-neighbors with the same weight receive the same value, so a
+		// single message is built and serialized for each group of them
+		for (Map.Entry<Double, List<InetAddress>> group : pnt
+				.getAddressesByWeight().entrySet()) {
+			valueToSend = execution.getCurrentValue() * group.getKey();
+			logger.info("Sending NEXT message to nodes with addresses "
+					+ group.getValue() + " for round " + r + " of execution "
+					+ execution.getExecutionNumber() + " in session "
+					+ sessionId);
+			outMessage = MessageBuilder.buildNextMessage(nodeId, sessionUuid,
+					execution.getExecutionNumber(), r, valueToSend);
+			enqueue(new TransferableMessage(outMessage, group
+					.getValue(), false));
+		}
+		flushIfUnlocked(execution);
+	}
+
+	/**
+	 * Creates a new Execution of a Session and sends the INIT messages for it
+	 * to the out-neighbors, if the local node is the initiator of the Session
+	 * and another Execution is expected
+	 *
+	 * @param s
+	 *            the Session that might need a new Execution
+	 * @param e
+	 *            the Execution whose round is over. New Executions are only
+	 *            created by the initial Execution of the Session
+	 */
+	public void checkForNewExecution(Session s, Execution e) {
+		// a new Execution can be created only from the initial Execution of the
+		// Session and only if the Session has the initiator flag on
+		if (s.isInitiator() && e.equals(s.getInitExecution())
+				&& s.newExecutionExpected()) {
+			spawnExecution(s, e);
+		}
+		flushIfUnlocked(e);
+	}
+
+	private boolean spawnExecution(Session s, Execution e) {
+		Execution newExecution = s.createNewExecution();
+		if (newExecution == null) {
+			return false;
+		}
+		double valueToSend;
+		Message outMessage;
+		String sessionId = s.getSessionId();
+		UUID sessionUuid = s.getSessionUuid();
+		Id nodeId = localNode.getLocalId();
+		PlainNeighborsTable pnt = e.getOutNeighbors();
+
+		// send to all out-neighbors INIT messages for the newly created
+		// Execution. The out-neighbors with the same weight receive the
+		// same value, so a single message is built for each group of them
+		for (Map.Entry<Double, List<InetAddress>> group : pnt
+				.getAddressesByWeight().entrySet()) {
+			valueToSend = newExecution.getCurrentValue() * group.getKey();
+			logger.info("Sending INIT message to nodes with addresses "
+					+ group.getValue() + " for execution "
+					+ newExecution.getExecutionNumber() + " of session "
+					+ sessionId);
+			outMessage = MessageBuilder.buildInitMessage(nodeId,
+					sessionUuid, newExecution.getExecutionNumber(),
+					s.getNumberOfExecutions(), s.getNumberOfRounds(),
+					valueToSend);
+			enqueue(new TransferableMessage(outMessage, group
+					.getValue(), true));
+		}
+		return true;
+	}
+
+	private void sendToOutNeighbors(Message m, Execution e, boolean reliably) {
+		List<InetAddress> addresses = new ArrayList<InetAddress>();
+		PlainNeighborsTable pnt = e.getOutNeighbors();
+
+		synchronized (pnt) {
+			for (PlainNeighbor n : pnt) {
+				addresses.add(n.getAddress());
+			}
+		}
+		// send it to all out-neighbors, serializing it only once
+		if (!addresses.isEmpty()) {
+			enqueue(new TransferableMessage(m, addresses, reliably));
+		}
+	}
+
+	/**
+	 * Places in the outgoing queue all the messages built by the calling thread
+	 * since its last flush, waiting for room if the queue is full. It must not
+	 * be called while the lock of an Execution is held, since the wait might
+	 * then block every other thread working on that Execution
+	 */
+	public void flush() {
+		List<TransferableMessage> pending = outbox.get();
+		try {
+			while (!pending.isEmpty()) {
+				outgoingQueue.put(pending.get(0));
+				pending.remove(0);
+			}
+		} catch (InterruptedException e) {
+			// the node is shutting down
+			pending.clear();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Keeps a message built by the calling thread until its next flush, so that
+	 * it is sent along with the messages built by this RoundAdvancer
+	 *
+	 * @param tm
+	 *            the message to be placed in the outgoing queue
+	 */
+	void defer(TransferableMessage tm) {
+		outbox.get().add(tm);
+	}
+
+	/**
+	 * Places a message in the queue of outgoing messages once the lock of the
+	 * Execution it was built for is released
+	 */
+	private void enqueue(TransferableMessage tm) {
+		outbox.get().add(tm);
+	}
+
+	/**
+	 * Flushes the messages of the calling thread, unless it still holds the
+	 * lock of the Execution, in which case the caller flushes them once it
+	 * releases it
+	 */
+	private void flushIfUnlocked(Execution e) {
+		if (!Thread.holdsLock(e)) {
+			flush();
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package core;
+
+import java.util.LinkedList;
+
+/**
+ * The sampling cadence of a single set of SamplingParameters. It keeps the
+ * recent eigenvalue estimations and the threshold of the time that should
+ * elapse between consecutive samplings. A new estimation is considered a
+ * change of the network only if it deviates from the mean of the recent ones
+ * by more than their own variability, so the threshold keeps growing while
+ * the topology is stable and drops as soon as it changes
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class SamplingCadence {
+
+	/**
+	 * The number of recent estimations taken into account
+	 */
+	public static final int HISTORY_SIZE = 8;
+	/**
+	 * The minimum difference of an eigenvalue from its recent mean that is
+	 * considered a change
+	 */
+	public static final double MIN_TOLERANCE = 0.05;
+	/**
+	 * The number of standard deviations an eigenvalue must differ from its
+	 * recent mean to be considered a change
+	 */
+	public static final double DEVIATIONS = 3;
+
+	private final long minThreshold;
+	private final long maxThreshold;
+	private final LinkedList<double[]> history;
+	private long threshold;
+	private double increaseRate;
+	private double decreaseRate;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param minThreshold
+	 *            the minimum time in milliseconds between consecutive
+	 *            samplings
+	 * @param maxThreshold
+	 *            the maximum time in milliseconds between consecutive
+	 *            samplings
+	 */
+	public SamplingCadence(long minThreshold, long maxThreshold) {
+		this.minThreshold = minThreshold;
+		this.maxThreshold = maxThreshold;
+		this.history = new LinkedList<double[]>();
+		this.threshold = minThreshold;
+		this.increaseRate = ProtocolRun.MIN_RATE;
+		this.decreaseRate = ProtocolRun.MIN_RATE;
+	}
+
+	/**
+	 *
+	 * @return the time in milliseconds during which a stored Session is
+	 *         recent enough to be used instead of a new sampling
+	 */
+	public synchronized long getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 *
+	 * @return the number of recent estimations currently kept
+	 */
+	public synchronized int getHistorySize() {
+		return history.size();
+	}
+
+	/**
+	 * Records an estimation, unless some estimations have already been
+	 * recorded. Used for taking into account Sessions stored before the
+	 * cadence was created
+	 *
+	 * @param eigenvalues
+	 *            the eigenvalues estimated by a stored Session
+	 */
+	public synchronized void seed(double[] eigenvalues) {
+		if (history.isEmpty() && eigenvalues != null) {
+			history.addLast(eigenvalues);
+		}
+	}
+
+	/**
+	 * Records the estimation of a new Session and adjusts the threshold. If
+	 * the estimation is in line with the recent ones the threshold is
+	 * increased, otherwise it is decreased and the older estimations are
+	 * discarded
+	 *
+	 * @param eigenvalues
+	 *            the eigenvalues estimated by the new Session
+	 * @return true if the estimation was considered a change of the network,
+	 *         false otherwise
+	 */
+	public synchronized boolean record(double[] eigenvalues) {
+		if (eigenvalues == null) {
+			return false;
+		}
+		if (history.isEmpty()) {
+			history.addLast(eigenvalues);
+			return false;
+		}
+		boolean changed = hasChanged(eigenvalues);
+		if (changed) {
+			// the older estimations describe a network that no longer exists
+			history.clear();
+			decrease();
+		} else {
+			increase();
+		}
+		history.addLast(eigenvalues);
+		if (history.size() > HISTORY_SIZE) {
+			history.removeFirst();
+		}
+		return changed;
+	}
+
+	private boolean hasChanged(double[] eigenvalues) {
+		int n = history.size();
+		for (double[] previous : history) {
+			if (previous.length != eigenvalues.length) {
+				return true;
+			}
+		}
+		for (int i = 0; i < eigenvalues.length; i++) {
+			double mean = 0;
+			for (double[] previous : history) {
+				mean += previous[i];
+			}
+			mean /= n;
+			double variance = 0;
+			for (double[] previous : history) {
+				variance += (previous[i] - mean) * (previous[i] - mean);
+			}
+			double deviation = (n > 1) ? Math.sqrt(variance / (n - 1)) : 0;
+			double tolerance = Math.max(MIN_TOLERANCE, DEVIATIONS * deviation);
+			if (Math.abs(eigenvalues[i] - mean) > tolerance) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void increase() {
+		long increase = (long) (increaseRate * threshold);
+		threshold = Math.min(threshold + increase, maxThreshold);
+		if (increaseRate < ProtocolRun.MAX_RATE) {
+			increaseRate += ProtocolRun.MIN_RATE;
+		}
+		decreaseRate = ProtocolRun.MIN_RATE;
+	}
+
+	private void decrease() {
+		long decrease = (long) (decreaseRate * threshold);
+		threshold = Math.max(threshold - decrease, minThreshold);
+		if (decreaseRate < ProtocolRun.MAX_RATE) {
+			decreaseRate += ProtocolRun.MIN_RATE;
+		}
+		increaseRate = ProtocolRun.MIN_RATE;
+	}
+
+}
@@ -0,0 +1,80 @@
+package core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import domain.SamplingParameters;
+
+/**
+ * Decides how often a new network-wide sampling is worth its cost. A separate
+ * SamplingCadence is kept for each set of SamplingParameters, so requests with
+ * different parameters do not affect each other
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class SamplingCadenceController {
+
+	private final long minThreshold;
+	private final long maxThreshold;
+	private final ConcurrentMap<SamplingParameters, SamplingCadence> cadences;
+
+	/**
+	 * Class constructor. The thresholds range from
+	 * ProtocolRun.MIN_TIME_THRESHOLD to ProtocolRun.MAX_TIME_THRESHOLD
+	 */
+	public SamplingCadenceController() {
+		this(ProtocolRun.MIN_TIME_THRESHOLD, ProtocolRun.MAX_TIME_THRESHOLD);
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param minThreshold
+	 *            the minimum time in milliseconds between consecutive
+	 *            samplings
+	 * @param maxThreshold
+	 *            the maximum time in milliseconds between consecutive
+	 *            samplings
+	 */
+	public SamplingCadenceController(long minThreshold, long maxThreshold) {
+		this.minThreshold = minThreshold;
+		this.maxThreshold = maxThreshold;
+		this.cadences = new ConcurrentHashMap<SamplingParameters, SamplingCadence>();
+	}
+
+	/**
+	 *
+	 * @param sp
+	 *            the SamplingParameters of a request
+	 * @return the time in milliseconds during which a stored Session is recent
+	 *         enough to serve a request with these parameters
+	 */
+	public long getThreshold(SamplingParameters sp) {
+		return getCadence(sp).getThreshold();
+	}
+
+	/**
+	 *
+	 * @param sp
+	 *            the SamplingParameters of a request
+	 * @return the SamplingCadence of the parameters, which is created if it
+	 *         does not exist
+	 */
+	public SamplingCadence getCadence(SamplingParameters sp) {
+		SamplingCadence cadence = cadences.get(sp);
+		if (cadence == null) {
+			// the parameters are mutable, so a copy of them is used as a key
+			SamplingParameters key = new SamplingParameters(
+					sp.getNumberOfExecutions(), sp.getNumberOfRounds());
+			SamplingCadence created = new SamplingCadence(minThreshold,
+					maxThreshold);
+			cadence = cadences.putIfAbsent(key, created);
+			if (cadence == null) {
+				cadence = created;
+			}
+		}
+		return cadence;
+	}
+
+}
@@ -0,0 +1,118 @@
+package core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import comm.ProtocolMessage.SessionEvent;
+import domain.RecordedSession;
+import domain.SamplingParameters;
+import domain.Session;
+import event.SessionListener;
+import storage.Database;
+
+/**
+ * In-memory copy of the last Session stored in the database, both overall and
+ * for each set of SamplingParameters. It is kept up to date by listening for
+ * new records, so the latest estimations can be read without accessing the
+ * database
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class SessionCache implements SessionListener {
+
+	private final AtomicReference<RecordedSession> latest;
+	private final ConcurrentMap<SamplingParameters, RecordedSession> latestByParameters;
+
+	/**
+	 * Class constructor. The cache starts with the last Session already stored
+	 * in the database and registers itself as a listener of the database
+	 *
+	 * @param db
+	 *            the database where the completed Sessions are stored
+	 */
+	public SessionCache(Database db) {
+		this.latest = new AtomicReference<RecordedSession>();
+		this.latestByParameters = new ConcurrentHashMap<SamplingParameters, RecordedSession>();
+		RecordedSession stored = db.getLastRecordedSession();
+		if (stored != null) {
+			sessionStored(stored);
+		}
+		db.addSessionListener(this);
+	}
+
+	/**
+	 *
+	 * @return the last stored RecordedSession or null if no Session has been
+	 *         stored yet
+	 */
+	public RecordedSession getLatest() {
+		return latest.get();
+	}
+
+	/**
+	 *
+	 * @param sp
+	 *            the SamplingParameters of the requested Session
+	 * @return the last stored RecordedSession sampled with the given
+	 *         parameters or null if no such Session has been stored yet
+	 */
+	public RecordedSession getLatest(SamplingParameters sp) {
+		return latestByParameters.get(sp);
+	}
+
+	/**
+	 *
+	 * @param rs
+	 *            a RecordedSession
+	 * @return the time in milliseconds elapsed since the RecordedSession was
+	 *         stored, or Long.MAX_VALUE if it is null
+	 */
+	public static long ageOf(RecordedSession rs) {
+		if (rs == null) {
+			return Long.MAX_VALUE;
+		}
+		return System.currentTimeMillis() - rs.getTimestamp();
+	}
+
+	@Override
+	public void sessionInitiated(SessionEvent e) {
+		return;
+	}
+
+	@Override
+	public void sessionCompleted(SessionEvent e) {
+		return;
+	}
+
+	@Override
+	public void sessionStored(RecordedSession rs) {
+		// records might be reported out of order by concurrent writers
+		while (true) {
+			RecordedSession current = latest.get();
+			if (current != null && rs.getTimestamp() < current.getTimestamp()) {
+				break;
+			}
+			if (latest.compareAndSet(current, rs)) {
+				break;
+			}
+		}
+		Session s = rs.getRecordedSession();
+		SamplingParameters key = new SamplingParameters(
+				s.getNumberOfExecutions(), s.getNumberOfRounds());
+		while (true) {
+			RecordedSession current = latestByParameters.get(key);
+			if (current == null) {
+				if (latestByParameters.putIfAbsent(key, rs) == null) {
+					return;
+				}
+			} else if (rs.getTimestamp() < current.getTimestamp()) {
+				return;
+			} else if (latestByParameters.replace(key, current, rs)) {
+				return;
+			}
+		}
+	}
+
+}
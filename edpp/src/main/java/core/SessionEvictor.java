@@ -0,0 +1,247 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import domain.Session;
+import event.EvictionListener;
+
+/**
+ * Removes the Sessions that will probably never terminate, e.g. because their
+ * initiator has failed, so that they do not hold memory and maintenance time
+ * forever. A Session is evicted once it has made no progress for longer than a
+ * time-to-live, or when there are more Sessions than the capacity allows, in
+ * which case the ones idle for the longest time are evicted first
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class SessionEvictor {
+
+	/**
+	 * The default time in milliseconds a Session can remain idle before it is
+	 * evicted
+	 */
+	public static final long DEFAULT_TTL = 10 * 60 * 1000;
+	/**
+	 * The default maximum number of active Sessions
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+	/**
+	 * The default number of evicted Session ids remembered
+	 */
+	public static final int DEFAULT_TOMBSTONES = 4 * DEFAULT_CAPACITY;
+
+	private Logger logger;
+
+	private final long ttl;
+	private final int capacity;
+	private final AtomicLong expiredCount;
+	private final AtomicLong overflowCount;
+	private final Set<UUID> tombstones;
+	private final List<EvictionListener> listeners;
+
+	/**
+	 * Class constructor. Sessions are evicted after DEFAULT_TTL milliseconds
+	 * without progress, or when there are more than DEFAULT_CAPACITY of them
+	 */
+	public SessionEvictor() {
+		this(DEFAULT_TTL, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param ttl
+	 *            the time in milliseconds a Session can remain idle before it
+	 *            is evicted
+	 * @param capacity
+	 *            the maximum number of active Sessions
+	 */
+	public SessionEvictor(long ttl, int capacity) {
+		this(ttl, capacity, DEFAULT_TOMBSTONES);
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param ttl
+	 *            the time in milliseconds a Session can remain idle before it
+	 *            is evicted
+	 * @param capacity
+	 *            the maximum number of active Sessions
+	 * @param maxTombstones
+	 *            the maximum number of evicted Session ids remembered. Once
+	 *            it is reached, the oldest ones are forgotten
+	 */
+	public SessionEvictor(long ttl, int capacity, final int maxTombstones) {
+		logger = Logger.getLogger(SessionEvictor.class.getName());
+		this.ttl = ttl;
+		this.capacity = capacity;
+		this.expiredCount = new AtomicLong();
+		this.overflowCount = new AtomicLong();
+		this.tombstones = Collections.synchronizedSet(Collections
+				.newSetFromMap(new LinkedHashMap<UUID, Boolean>() {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(
+							Map.Entry<UUID, Boolean> eldest) {
+						return size() > maxTombstones;
+					}
+				}));
+		this.listeners = new CopyOnWriteArrayList<EvictionListener>();
+	}
+
+	/**
+	 * Removes the stalled Sessions from a map of active Sessions
+	 *
+	 * @param sessions
+	 *            a map containing all the currently active sessions and their
+	 *            UUIDs as keys
+	 * @return the Sessions that were evicted
+	 */
+	public List<Session> evict(Map<UUID, Session> sessions) {
+		List<Session> evicted = new ArrayList<Session>();
+		for (Iterator<Session> iter = sessions.values().iterator(); iter
+				.hasNext();) {
+			Session s = iter.next();
+			if (s.getIdleTime() >= ttl) {
+				// the id is remembered before the Session is removed, so
+				// that a message handled in the meantime does not create it
+				// again
+				tombstones.add(s.getSessionUuid());
+				iter.remove();
+				expiredCount.incrementAndGet();
+				logger.warning("Session " + s.getSessionId()
+						+ " made no progress for " + s.getIdleTime()
+						+ " ms. Evicting it");
+				evicted.add(s);
+			}
+		}
+		int excess = sessions.size() - capacity;
+		if (excess <= 0) {
+			notifyListeners(evicted);
+			return evicted;
+		}
+		// the Sessions idle for the longest time are the least likely to
+		// terminate
+		List<Session> byIdleTime = new ArrayList<Session>(sessions.values());
+		Collections.sort(byIdleTime, new Comparator<Session>() {
+			@Override
+			public int compare(Session a, Session b) {
+				long x = a.getIdleTime();
+				long y = b.getIdleTime();
+				return (x > y) ? -1 : ((x == y) ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < excess && i < byIdleTime.size(); i++) {
+			Session s = byIdleTime.get(i);
+			if (sessions.get(s.getSessionUuid()) != s) {
+				continue;
+			}
+			tombstones.add(s.getSessionUuid());
+			sessions.remove(s.getSessionUuid());
+			overflowCount.incrementAndGet();
+			logger.warning("There are more than " + capacity
+					+ " active Sessions. Evicting Session " + s.getSessionId());
+			evicted.add(s);
+		}
+		notifyListeners(evicted);
+		return evicted;
+	}
+
+	/**
+	 *
+	 * @param sessionId
+	 *            the UUID of a Session
+	 * @return true if the Session is among the most recently evicted ones, so
+	 *         its messages should be dropped
+	 */
+	public boolean isEvicted(UUID sessionId) {
+		return tombstones.contains(sessionId);
+	}
+
+	/**
+	 * Adds a new EvictionListener to be notified about the evicted Sessions
+	 *
+	 * @param listener
+	 *            the new EvictionListener
+	 */
+	public void addEvictionListener(EvictionListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes an EvictionListener
+	 *
+	 * @param listener
+	 *            the EvictionListener to be removed
+	 * @return true if the listener was removed, otherwise false
+	 */
+	public boolean removeEvictionListener(EvictionListener listener) {
+		return listeners.remove(listener);
+	}
+
+	/**
+	 *
+	 * @return the number of Sessions evicted because they made no progress for
+	 *         longer than the time-to-live
+	 */
+	public long getExpiredCount() {
+		return expiredCount.get();
+	}
+
+	/**
+	 *
+	 * @return the number of Sessions evicted because there were more active
+	 *         Sessions than the capacity
+	 */
+	public long getOverflowCount() {
+		return overflowCount.get();
+	}
+
+	/**
+	 *
+	 * @return the total number of Sessions evicted
+	 */
+	public long getEvictedCount() {
+		return expiredCount.get() + overflowCount.get();
+	}
+
+	/**
+	 *
+	 * @return the time in milliseconds a Session can remain idle before it is
+	 *         evicted
+	 */
+	public long getTtl() {
+		return ttl;
+	}
+
+	/**
+	 *
+	 * @return the maximum number of active Sessions
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	private void notifyListeners(List<Session> evicted) {
+		for (Session s : evicted) {
+			for (EvictionListener listener : listeners) {
+				listener.sessionEvicted(s);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Set of single-threaded executors, each one handling the messages of a fixed
+ * part of the Sessions. The tasks of a Session are always assigned to the same
+ * shard, based on the hash of its id, so they run one after the other and in
+ * the order they were submitted, while different Sessions are handled in
+ * parallel by different shards
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class SessionShards {
+
+	/**
+	 * The default number of shards, i.e. one for each available processor
+	 */
+	public static final int DEFAULT_SHARDS = Runtime.getRuntime()
+			.availableProcessors();
+
+	private final List<ExecutorService> shards;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param nShards
+	 *            the number of single-threaded shards
+	 * @param queueCapacity
+	 *            the maximum number of tasks waiting in the queue of each
+	 *            shard. Submitting a task to a full shard blocks until there
+	 *            is room for it
+	 */
+	public SessionShards(int nShards, int queueCapacity) {
+		if (nShards <= 0) {
+			throw new IllegalArgumentException(
+					"The number of shards must be positive");
+		}
+		shards = new ArrayList<ExecutorService>(nShards);
+		for (int i = 0; i < nShards; i++) {
+			shards.add(new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(queueCapacity),
+					new BlockWhenFull()));
+		}
+	}
+
+	/**
+	 * Runs a task in the shard owning a Session
+	 *
+	 * @param sessionId
+	 *            the id of the Session the task refers to
+	 * @param task
+	 *            the task to be run
+	 */
+	public void execute(UUID sessionId, Runnable task) {
+		shards.get(shardOf(sessionId)).execute(task);
+	}
+
+	/**
+	 *
+	 * @param sessionId
+	 *            the id of a Session
+	 * @return the index of the shard owning the Session
+	 */
+	public int shardOf(UUID sessionId) {
+		int hash = (sessionId == null) ? 0 : sessionId.hashCode();
+		// spread the bits of the hash, since session ids might only differ in
+		// a few of them
+		hash ^= (hash >>> 16);
+		return (hash & Integer.MAX_VALUE) % shards.size();
+	}
+
+	/**
+	 *
+	 * @return the number of shards
+	 */
+	public int getNumberOfShards() {
+		return shards.size();
+	}
+
+	/**
+	 * Stops all the shards once the tasks already submitted are complete
+	 */
+	public void shutdown() {
+		for (ExecutorService shard : shards) {
+			shard.shutdown();
+		}
+	}
+
+	/**
+	 * Rejection policy of the shards, blocking the caller until a shard can
+	 * accept the task
+	 */
+	private static class BlockWhenFull implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				return;
+			}
+			try {
+				executor.getQueue().put(r);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
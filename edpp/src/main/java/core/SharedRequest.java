@@ -0,0 +1,92 @@
+package core;
+
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import domain.Session;
+
+/**
+ * A sampling request in flight, whose outcome is shared by all the callers
+ * that asked for the same SamplingParameters while it was running. Each caller
+ * gets a future of its own, so a caller cancelling its future does not affect
+ * the rest. The request itself is cancelled only once every caller has
+ * cancelled
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class SharedRequest {
+
+	private final ListenableFuture<Session> request;
+	private int subscribers;
+	private boolean abandoned;
+
+	/**
+	 * Class constructor
+	 *
+	 * @param request
+	 *            the future of the sampling request to be shared
+	 */
+	public SharedRequest(ListenableFuture<Session> request) {
+		this.request = request;
+		this.subscribers = 0;
+		this.abandoned = false;
+	}
+
+	/**
+	 * Adds a caller to the request
+	 *
+	 * @return a future of the caller, completed with the outcome of the
+	 *         request, or null if the request has already been abandoned by
+	 *         all its previous callers and a new one should be made instead
+	 */
+	public synchronized ListenableFuture<Session> subscribe() {
+		if (abandoned) {
+			return null;
+		}
+		subscribers++;
+		final SettableFuture<Session> result = SettableFuture.create();
+		request.addListener(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					result.set(request.get());
+				} catch (ExecutionException e) {
+					result.setException(e.getCause());
+				} catch (Exception e) {
+					result.cancel(false);
+				}
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		result.addListener(new Runnable() {
+			@Override
+			public void run() {
+				if (result.isCancelled()) {
+					unsubscribe();
+				}
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return result;
+	}
+
+	/**
+	 *
+	 * @return the future of the shared sampling request
+	 */
+	public ListenableFuture<Session> getRequest() {
+		return request;
+	}
+
+	private synchronized void unsubscribe() {
+		subscribers--;
+		if (subscribers == 0 && !request.isDone()) {
+			// nobody is interested in the outcome anymore
+			abandoned = true;
+			request.cancel(false);
+		}
+	}
+
+}
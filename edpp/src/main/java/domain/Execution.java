@@ -1,6 +1,7 @@
 package domain;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Queue;
@@ -10,12 +11,12 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import org.jblas.DoubleMatrix;
 
 import algorithms.Algorithms;
+import algorithms.Algorithms.KungsRealizationAlgorithm;
 
 import com.google.common.util.concurrent.AtomicDoubleArray;
 
@@ -37,8 +38,44 @@ public class Execution implements Serializable {
 
 	private static final long serialVersionUID = 6505271319331510315L;
 
+	/**
+	 * The duration of the INIT phase in milliseconds, unless it is adapted to
+	 * the in-neighbor arrivals observed by the local node
+	 */
+	public static final long INIT_TIMEOUT = 10 * ProtocolController.TIMEOUT;
+	/**
+	 * The maximum duration in milliseconds of an INIT phase extended because
+	 * new in-neighbors kept appearing
+	 */
+	public static final long MAX_INIT_TIMEOUT = 3 * INIT_TIMEOUT;
+	/**
+	 * The number of most recent changes of the impulse response examined for
+	 * convergence
+	 */
+	public static final int CONVERGENCE_WINDOW = 4;
+	/**
+	 * The ratio to the largest impulse response below which a change of the
+	 * impulse response is considered numerical noise
+	 */
+	public static final double CONVERGENCE_TOLERANCE = 0.05;
+	/**
+	 * The ratio to the largest singular value of the Hankel matrix below which
+	 * a singular value does not count towards the order of the realization
+	 */
+	public static final double ORDER_TOLERANCE = 0.01;
+	/**
+	 * The number of consecutive rounds the order of the realization must
+	 * remain the same before the Execution is considered converged
+	 */
+	public static final int STABLE_ROUNDS = 3;
+
 	private final int executionNumber;
 	private final int numOfRounds;
+	private volatile int lastRound;
+	private transient int realizationOrder;
+	private transient int stableRounds;
+	private transient double[] rankedResponses;
+	private transient int rankedOrder;
 	private transient AtomicInteger round;
 	private transient final Node localNode;
 	private transient PlainNeighborsTable outNeighbors;
@@ -46,15 +83,16 @@ public class Execution implements Serializable {
 	private transient Phase phase;
 	private AtomicDoubleArray impulseResponse;
 	private transient Map<Integer, Double> roundVals;
-	private transient AtomicLong initTimeout;
-	private transient AtomicLong snapshot;
+	private transient long initStart;
+	private transient long lastArrival;
+	private transient InitArrivalModel initArrivals;
 	private DoubleMatrix matrixA;
 	private boolean hasComputedMatrix, computedMedian;
 	private double[] eigenvalues;
 	private double[] medianEigenvalues;
 	private transient GossipData gossip;
-	private Map<String, double[]> pendingGossip;
-	private Map<Integer, Queue<String>> pendingData;
+	private Map<Id, double[]> pendingGossip;
+	private Map<Integer, Queue<Id>> pendingData;
 
 	private transient Logger logger;
 
@@ -70,13 +108,59 @@ public class Execution implements Serializable {
 	 */
 	public Execution(final int executionNumber, final int numOfRounds,
 			final Node localNode) {
+		this(executionNumber, numOfRounds, localNode, null);
+	}
+
+	/**
+	 * Class constructor
+	 * 
+	 * @param executionNumber
+	 *            the id of the current execution
+	 * @param numOfRounds
+	 *            the total number of rounds for the execution
+	 * @param localNode
+	 *            the local underlying network node
+	 * @param initArrivals
+	 *            the history of the in-neighbor arrivals of the local node,
+	 *            used for ending the INIT phase once no new in-neighbors are
+	 *            expected. If null, the INIT phase always lasts INIT_TIMEOUT
+	 */
+	public Execution(final int executionNumber, final int numOfRounds,
+			final Node localNode, final InitArrivalModel initArrivals) {
+		this(executionNumber, numOfRounds, localNode, initArrivals, null);
+	}
+
+	/**
+	 * Class constructor
+	 * 
+	 * @param executionNumber
+	 *            the id of the current execution
+	 * @param numOfRounds
+	 *            the total number of rounds for the execution
+	 * @param localNode
+	 *            the local underlying network node
+	 * @param initArrivals
+	 *            the history of the in-neighbor arrivals of the local node,
+	 *            used for ending the INIT phase once no new in-neighbors are
+	 *            expected. If null, the INIT phase always lasts INIT_TIMEOUT
+	 * @param rtt
+	 *            the response time estimations of the remote nodes, used for
+	 *            arming the timer of each in-neighbor. If null, all the timers
+	 *            are armed with DEFAULT_TIMER
+	 */
+	public Execution(final int executionNumber, final int numOfRounds,
+			final Node localNode, final InitArrivalModel initArrivals,
+			final RttEstimator rtt) {
 		logger = Logger.getLogger(Execution.class.getName());
 
 		this.executionNumber = executionNumber;
 		this.numOfRounds = numOfRounds;
+		this.lastRound = numOfRounds;
+		this.realizationOrder = -1;
 		this.localNode = localNode;
 		createOutTable();
-		inNeighbors = new TimedNeighborsTableSet();
+		inNeighbors = (rtt == null) ? new TimedNeighborsTableSet()
+				: new TimedNeighborsTableSet(rtt);
 		setPhase(Phase.INIT);
 		impulseResponse = new AtomicDoubleArray(numOfRounds);
 		roundVals = new ConcurrentHashMap<Integer, Double>();
@@ -86,13 +170,14 @@ public class Execution implements Serializable {
 		roundVals.put(1, initialValue);
 		impulseResponse.set(0, roundVals.get(1));
 		round = new AtomicInteger(1);
-		snapshot = new AtomicLong(System.nanoTime());
-		initTimeout = new AtomicLong(10 * ProtocolController.TIMEOUT);
+		initStart = System.nanoTime();
+		lastArrival = initStart;
+		this.initArrivals = initArrivals;
 		this.hasComputedMatrix = false;
 		gossip = new GossipData();
 		computedMedian = false;
-		pendingGossip = new ConcurrentHashMap<String, double[]>();
-		pendingData = new ConcurrentHashMap<Integer, Queue<String>>();
+		pendingGossip = new ConcurrentHashMap<Id, double[]>();
+		pendingData = new ConcurrentHashMap<Integer, Queue<Id>>();
 	}
 
 	/**
@@ -127,11 +212,13 @@ public class Execution implements Serializable {
 		} else {
 			this.setCurrentValue(d);
 		}
-		Queue<String> nodes = pendingData.get(round);
+		Queue<Id> nodes = pendingData.get(round);
 		if (nodes != null) {
-			String nodeId;
+			// these values arrived before the timers of the round were armed,
+			// so the time since then says nothing about the response times
+			Id nodeId;
 			while ((nodeId = nodes.poll()) != null) {
-				inNeighbors.setTimerToInf(nodeId);
+				inNeighbors.setTimerToInf(nodeId, false);
 			}
 		}
 	}
@@ -142,9 +229,9 @@ public class Execution implements Serializable {
 	 */
 	public void setProperTimersToInf() {
 		int currRound = this.getCurrentRound();
-		Queue<String> nodes = pendingData.get(currRound);
+		Queue<Id> nodes = pendingData.get(currRound);
 		if (nodes != null) {
-			String nodeId;
+			Id nodeId;
 			while ((nodeId = nodes.poll()) != null) {
 				inNeighbors.setTimerToInf(nodeId);
 			}
@@ -172,18 +259,35 @@ public class Execution implements Serializable {
 	/**
 	 * Adds a received value to a specific round
 	 * 
+	 * @param nodeId
+	 *            the string representation of the id of the in-neighbor that
+	 *            sent the value
 	 * @param val
 	 *            the value to be added
 	 * @param round
 	 *            the round to which the value corresponds
 	 */
-	public synchronized void addValToNextRound(String nodeId, double val,
+	public void addValToNextRound(String nodeId, double val, int round) {
+		addValToNextRound(new Id(nodeId), val, round);
+	}
+
+	/**
+	 * Adds a received value to a specific round
+	 * 
+	 * @param nodeId
+	 *            the Id of the in-neighbor that sent the value
+	 * @param val
+	 *            the value to be added
+	 * @param round
+	 *            the round to which the value corresponds
+	 */
+	public synchronized void addValToNextRound(Id nodeId, double val,
 			int round) {
 		boolean gotValue = true;
 
-		Queue<String> nodes = pendingData.get(round);
+		Queue<Id> nodes = pendingData.get(round);
 		if (nodes == null) {
-			nodes = new ConcurrentLinkedQueue<String>();
+			nodes = new ConcurrentLinkedQueue<Id>();
 			nodes.offer(nodeId);
 			pendingData.put(round, nodes);
 			gotValue = false;
@@ -230,6 +334,21 @@ public class Execution implements Serializable {
 	 *            in-neighbor
 	 */
 	public void addPendingGossipMessage(String nodeId, double[] eigenvalues) {
+		addPendingGossipMessage(new Id(nodeId), eigenvalues);
+	}
+
+	/**
+	 * This method adds a received message of type GOSSIP to a list of received
+	 * gossip messages for use when the Execution enters the Gossip Round
+	 * 
+	 * @param nodeId
+	 *            the Id of the in-neighbor that sent the eigenvalue
+	 *            estimations
+	 * @param eigenvalues
+	 *            a double array containing the eigenvalues proposed by the
+	 *            in-neighbor
+	 */
+	public void addPendingGossipMessage(Id nodeId, double[] eigenvalues) {
 		pendingGossip.put(nodeId, eigenvalues);
 	}
 
@@ -240,27 +359,33 @@ public class Execution implements Serializable {
 	 * in-neighbors who sent these estimations to INF
 	 */
 	public void transferPendingGossipMessages() {
-		for (Iterator<Map.Entry<String, double[]>> it = pendingGossip
+		for (Iterator<Map.Entry<Id, double[]>> it = pendingGossip
 				.entrySet().iterator(); it.hasNext();) {
-			Map.Entry<String, double[]> entry = it.next();
+			Map.Entry<Id, double[]> entry = it.next();
 			this.addGossipEigenvalues(entry.getKey(), entry.getValue());
 			this.setTimerToInf(entry.getKey());
 		}
 	}
 
 	/**
-	 * Computes the remaining time in the current execution's timer, by
-	 * subtractiong the time since the last sampling
+	 * Computes the remaining time of the INIT phase. The phase lasts
+	 * INIT_TIMEOUT, but if enough in-neighbor arrivals have been observed by
+	 * the local node, it ends once no new in-neighbor has appeared for the
+	 * quiet period learned from them. Every new in-neighbor extends the phase,
+	 * even past INIT_TIMEOUT, but never past MAX_INIT_TIMEOUT. The quiet
+	 * period only measures the intervals between arrivals, so it is not
+	 * applied before the first in-neighbor has arrived
 	 * 
-	 * @return the remaining time of the execution's timer
+	 * @return the remaining time of the INIT phase in milliseconds
 	 */
 	public synchronized long remainingInitTime() {
-		long interval = System.nanoTime() - snapshot.get();
-		// set the time for the next sampling
-		snapshot = new AtomicLong(System.nanoTime());
-		long remTime = TimeUnit.MILLISECONDS.convert(interval,
-				TimeUnit.NANOSECONDS);
-		return initTimeout.addAndGet(-remTime);
+		long now = System.nanoTime();
+		long elapsed = toMillis(now - initStart);
+		if (initArrivals == null || inNeighbors.getSize() == 0) {
+			return INIT_TIMEOUT - elapsed;
+		}
+		return initArrivals.getRemainingTime(elapsed,
+				toMillis(now - lastArrival), INIT_TIMEOUT, MAX_INIT_TIMEOUT);
 	}
 
 	/**
@@ -274,14 +399,16 @@ public class Execution implements Serializable {
 		if (this.hasAnotherRound() || hasComputedMatrix) {
 			return null;
 		}
-		double[] responses = new double[impulseResponse.length()];
-		for (int i = 0; i < impulseResponse.length(); i++) {
+		// only the responses up to the final round are used, if the
+		// Execution ended early
+		double[] responses = new double[lastRound];
+		for (int i = 0; i < lastRound; i++) {
 			responses[i] = impulseResponse.get(i);
 		}
 
 		this.matrixA = Algorithms.computeSystemMatrixA(responses);
 		eigenvalues = Algorithms.computeEigenvaluesModulus(matrixA);
-		gossip.setNewProposal(localNode.getLocalId().toString(), eigenvalues);
+		gossip.setNewProposal(localNode.getLocalId(), eigenvalues);
 		hasComputedMatrix = true;
 		return matrixA;
 	}
@@ -325,7 +452,7 @@ public class Execution implements Serializable {
 	public boolean setMatrixAEigenvalues(double[] newValues) {
 		if (hasComputedMatrix && this.getPhase() == Phase.GOSSIP) {
 			eigenvalues = newValues;
-			gossip.setNewProposal(localNode.getLocalId().toString(), newValues);
+			gossip.setNewProposal(localNode.getLocalId(), newValues);
 			return true;
 		}
 		return false;
@@ -336,11 +463,25 @@ public class Execution implements Serializable {
 	 * some values, they will be overwritten
 	 * 
 	 * @param nodeId
-	 *            the {@link Id} of the node that proposed the eigenvalues
+	 *            the string representation of the id of the node that
+	 *            proposed the eigenvalues
 	 * @param array
 	 *            an array containing the proposed eigenvalues
 	 */
 	public void addGossipEigenvalues(String nodeId, double[] array) {
+		addGossipEigenvalues(new Id(nodeId), array);
+	}
+
+	/**
+	 * adds an array of eigenvalues for a node. If the node has already proposed
+	 * some values, they will be overwritten
+	 * 
+	 * @param nodeId
+	 *            the {@link Id} of the node that proposed the eigenvalues
+	 * @param array
+	 *            an array containing the proposed eigenvalues
+	 */
+	public void addGossipEigenvalues(Id nodeId, double[] array) {
 		gossip.setNewProposal(nodeId, array);
 	}
 
@@ -495,7 +636,7 @@ public class Execution implements Serializable {
 	 * @return true if the execution has terminated, false otherwise
 	 */
 	public boolean hasTerminated() {
-		return round.get() == this.numOfRounds + 1;
+		return round.get() == this.lastRound + 1;
 	}
 
 	/**
@@ -504,7 +645,89 @@ public class Execution implements Serializable {
 	 * @return true if this is not the last round of execution
 	 */
 	public boolean hasAnotherRound() {
-		return round.get() < this.numOfRounds;
+		return round.get() < this.lastRound;
+	}
+
+	/**
+	 * Checks whether the impulse response of the Execution has converged, so
+	 * that the remaining rounds would not change its realization. This is the
+	 * case once the recent impulse responses have settled and the order of the
+	 * realization, i.e. the rank of the Hankel matrix of the responses, has
+	 * remained the same and below the dimension of the matrix for STABLE_ROUNDS
+	 * rounds. The rank is computed only once the responses have settled and
+	 * is kept until the responses it was computed from change. It should be
+	 * called once at the end of each round, as long as the Execution is in
+	 * the DATA_EXCHANGE phase
+	 * 
+	 * @return true if the Execution can end after the current round, false
+	 *         otherwise
+	 */
+	public synchronized boolean hasConverged() {
+		int current = Math.min(round.get(), numOfRounds);
+		double[] responses = new double[current];
+		for (int i = 0; i < current - 1; i++) {
+			responses[i] = impulseResponse.get(i);
+		}
+		// the response of the current round is recorded only once the round
+		// changes
+		responses[current - 1] = getValsOfRound(current);
+		if (!Algorithms.hasSettled(responses, CONVERGENCE_WINDOW,
+				CONVERGENCE_TOLERANCE)) {
+			realizationOrder = -1;
+			stableRounds = 0;
+			return false;
+		}
+		int order = rankOf(responses);
+		if (order == realizationOrder
+				&& order < KungsRealizationAlgorithm.hankelDimension(responses)) {
+			stableRounds++;
+		} else {
+			stableRounds = 0;
+		}
+		realizationOrder = order;
+		return stableRounds >= STABLE_ROUNDS;
+	}
+
+	private int rankOf(double[] responses) {
+		// the Hankel matrix only holds the first 2 * dimension - 1 responses,
+		// so every other round it is the matrix of the previous round
+		int used = 2 * KungsRealizationAlgorithm.hankelDimension(responses) - 1;
+		double[] ranked = Arrays.copyOf(responses, used);
+		if (!Arrays.equals(ranked, rankedResponses)) {
+			rankedOrder = Algorithms.computeRealizationOrder(ranked,
+					ORDER_TOLERANCE);
+			rankedResponses = ranked;
+		}
+		return rankedOrder;
+	}
+
+	/**
+	 * Makes a round the final round of the Execution, so that no more rounds
+	 * are exchanged after it and the realization is computed from the impulse
+	 * responses up to it. The final round can only be moved earlier
+	 * 
+	 * @param round
+	 *            the new final round
+	 */
+	public synchronized void endAtRound(int round) {
+		lastRound = Math.max(1, Math.min(round, lastRound));
+	}
+
+	/**
+	 * 
+	 * @return the final round of the Execution
+	 */
+	public int getLastRound() {
+		return lastRound;
+	}
+
+	/**
+	 * 
+	 * @return true if the Execution ends before its total number of rounds,
+	 *         false otherwise
+	 */
+	public boolean hasEndedEarly() {
+		return lastRound < numOfRounds;
 	}
 
 	/**
@@ -517,7 +740,11 @@ public class Execution implements Serializable {
 	 */
 	public boolean addInNeighbor(TimedNeighbor tn) {
 		if (inNeighbors.getNeighbor(tn.getId()) == null) {
-			return inNeighbors.addNeighbor(tn);
+			boolean added = inNeighbors.addNeighbor(tn);
+			if (added) {
+				recordArrival();
+			}
+			return added;
 		}
 
 		return false;
@@ -551,6 +778,18 @@ public class Execution implements Serializable {
 		return inNeighbors.setTimerToInf(nodeId);
 	}
 
+	/**
+	 * Sets the timer of a node to INF, denoting, that the value expected from
+	 * that node has been received
+	 * 
+	 * @param nodeId
+	 *            the Id of the remote node
+	 * @return true if the remote node's timer is set to INF, false otherwise
+	 */
+	public boolean setTimerToInf(Id nodeId) {
+		return inNeighbors.setTimerToInf(nodeId);
+	}
+
 	/**
 	 * Resets the timer of all the in-neighbors
 	 */
@@ -604,6 +843,24 @@ public class Execution implements Serializable {
 		return initVal;
 	}
 
+	private synchronized void recordArrival() {
+		if (phase != Phase.INIT) {
+			return;
+		}
+		long now = System.nanoTime();
+		// the first in-neighbor of an Execution created by a remote INIT
+		// arrives along with it, so only the intervals between consecutive
+		// arrivals are recorded
+		if (initArrivals != null && inNeighbors.getSize() > 1) {
+			initArrivals.recordInterval(toMillis(now - lastArrival));
+		}
+		lastArrival = now;
+	}
+
+	private static long toMillis(long nanos) {
+		return TimeUnit.MILLISECONDS.convert(nanos, TimeUnit.NANOSECONDS);
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (obj == this)
@@ -21,14 +21,14 @@ public class GossipData implements Serializable {
 	 */
 	private static final long serialVersionUID = -1496225759246739361L;
 
-	Map<String, double[]> collectedEigenvalues;
+	Map<Id, double[]> collectedEigenvalues;
 
 	/**
 	 * Constructor class. Creates a GossipData structure without any estimations
 	 * stored
 	 */
 	public GossipData() {
-		collectedEigenvalues = new ConcurrentHashMap<String, double[]>();
+		collectedEigenvalues = new ConcurrentHashMap<Id, double[]>();
 	}
 
 	/**
@@ -37,12 +37,12 @@ public class GossipData implements Serializable {
 	 * replace the previous
 	 * 
 	 * @param nodeId
-	 *            the string representation of the proposing node's id
+	 *            the Id of the proposing node
 	 * @param fs
 	 *            a double array containing the eigenvalue estimations of the
 	 *            remote node
 	 */
-	public void setNewProposal(String nodeId, double[] fs) {
+	public void setNewProposal(Id nodeId, double[] fs) {
 		collectedEigenvalues.put(nodeId, fs);
 	}
 
@@ -50,11 +50,11 @@ public class GossipData implements Serializable {
 	 * This method retrieves the proposals of the remote node with id nodeId
 	 * 
 	 * @param nodeId
-	 *            the string representation of the proposing node's id
+	 *            the Id of the proposing node
 	 * @return a double array containing the eigenvalues proposed by the node
 	 *         with id nodeId
 	 */
-	public double[] getProposal(String nodeId) {
+	public double[] getProposal(Id nodeId) {
 		return collectedEigenvalues.get(nodeId);
 	}
 
@@ -70,6 +70,11 @@ public class Id {
 
 	}
 
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(id);
+	}
+
 	/**
 	 * Converts a base64 string to a byte array representation of the Id
 	 * 
@@ -0,0 +1,129 @@
+package domain;
+
+import java.util.Arrays;
+
+/**
+ * History of the intervals between the arrivals of in-neighbors during the
+ * INIT phase of the Executions of the local node. It is shared by all the
+ * Executions of the node and is used for ending an INIT phase once no new
+ * in-neighbor has appeared for a period much longer than the intervals
+ * usually observed, instead of always waiting for the full INIT timeout. For
+ * the same reason, an INIT phase in which new in-neighbors keep appearing is
+ * extended past the timeout, up to a hard upper bound
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class InitArrivalModel {
+
+	/**
+	 * The number of recent intervals kept
+	 */
+	public static final int HISTORY_SIZE = 128;
+	/**
+	 * The minimum number of intervals observed before the INIT phase can be
+	 * ended early
+	 */
+	public static final int MIN_SAMPLES = 16;
+	/**
+	 * The quantile of the observed intervals used as the basis of the quiet
+	 * period
+	 */
+	public static final double QUANTILE = 0.95;
+	/**
+	 * The factor by which the quantile is multiplied, as a safety margin for
+	 * in-neighbors slower than the ones observed
+	 */
+	public static final double SAFETY_FACTOR = 2;
+	/**
+	 * The minimum quiet period in milliseconds
+	 */
+	public static final long MIN_QUIET_PERIOD = 200;
+
+	private final long[] intervals;
+	private int next;
+	private int count;
+
+	/**
+	 * Class constructor
+	 */
+	public InitArrivalModel() {
+		this.intervals = new long[HISTORY_SIZE];
+		this.next = 0;
+		this.count = 0;
+	}
+
+	/**
+	 * Records the time elapsed between the arrivals of two consecutive
+	 * in-neighbors. The arrival of the first in-neighbor of an Execution is not
+	 * an interval, so it is never recorded
+	 *
+	 * @param interval
+	 *            the interval in milliseconds
+	 */
+	public synchronized void recordInterval(long interval) {
+		intervals[next] = Math.max(0, interval);
+		next = (next + 1) % intervals.length;
+		if (count < intervals.length) {
+			count++;
+		}
+	}
+
+	/**
+	 *
+	 * @return the number of intervals currently kept
+	 */
+	public synchronized int getNumberOfSamples() {
+		return count;
+	}
+
+	/**
+	 * Computes the time for which no new in-neighbor should appear before the
+	 * INIT phase is considered complete
+	 *
+	 * @param maxPeriod
+	 *            the maximum quiet period in milliseconds, returned when there
+	 *            are not enough observations yet
+	 * @return the quiet period in milliseconds
+	 */
+	public synchronized long getQuietPeriod(long maxPeriod) {
+		if (count < MIN_SAMPLES) {
+			return maxPeriod;
+		}
+		long[] sorted = Arrays.copyOf(intervals, count);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(QUANTILE * count) - 1;
+		long quantile = sorted[Math.max(0, Math.min(index, count - 1))];
+		long period = (long) (SAFETY_FACTOR * quantile);
+		return Math.min(Math.max(period, MIN_QUIET_PERIOD), maxPeriod);
+	}
+
+	/**
+	 * Computes the remaining time of an INIT phase in which at least one
+	 * in-neighbor has arrived. Without enough observations the phase lasts
+	 * exactly the timeout. Otherwise it ends once the quiet period has passed
+	 * since the last arrival, which may be before the timeout or, if new
+	 * in-neighbors keep appearing, after it, but never after the maximum
+	 * timeout
+	 *
+	 * @param elapsed
+	 *            the time in milliseconds since the beginning of the phase
+	 * @param sinceLastArrival
+	 *            the time in milliseconds since the last in-neighbor arrived
+	 * @param timeout
+	 *            the duration of the phase in milliseconds without enough
+	 *            observations, which is also the maximum quiet period
+	 * @param maxTimeout
+	 *            the maximum duration of the phase in milliseconds
+	 * @return the remaining time of the phase in milliseconds
+	 */
+	public synchronized long getRemainingTime(long elapsed,
+			long sinceLastArrival, long timeout, long maxTimeout) {
+		if (count < MIN_SAMPLES) {
+			return timeout - elapsed;
+		}
+		return Math.min(getQuietPeriod(timeout) - sinceLastArrival, maxTimeout
+				- elapsed);
+	}
+
+}
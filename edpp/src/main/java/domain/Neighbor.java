@@ -98,7 +98,7 @@ public class Neighbor {
 
 	@Override
 	public int hashCode() {
-		return this.id.toString().hashCode();
+		return this.id.hashCode();
 	}
 
 }
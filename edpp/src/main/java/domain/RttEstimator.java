@@ -0,0 +1,148 @@
+package domain;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import domain.structure.TimerWheel;
+
+/**
+ * Keeps a smoothed estimation of the response time of each remote node and of
+ * its variation, following the algorithm of Jacobson and Karels used for the
+ * retransmission timers of TCP. The estimations are shared by all the
+ * Executions of the local node and are used for arming the timer of each
+ * in-neighbor according to its own link, instead of a worst-case constant.
+ * Only the time an in-neighbor takes to send its value is sampled. The replies
+ * to liveness checks only take the network into account and not the time the
+ * in-neighbor spends in its own round, so they are not used
+ *
+ * @author Xenofon Foukas
+ *
+ */
+public class RttEstimator {
+
+	/**
+	 * The gain of a new sample in the smoothed response time
+	 */
+	public static final double ALPHA = 1.0 / 8;
+	/**
+	 * The gain of a new sample in the variation of the response time
+	 */
+	public static final double BETA = 1.0 / 4;
+	/**
+	 * The number of variations added to the smoothed response time
+	 */
+	public static final int K = 4;
+	/**
+	 * The minimum timeout in milliseconds
+	 */
+	public static final long MIN_TIMEOUT = 1000;
+	/**
+	 * The maximum timeout in milliseconds
+	 */
+	public static final long MAX_TIMEOUT = 4 * TimedNeighbor.DEFAULT_TIMER;
+
+	private final ConcurrentMap<Id, Estimation> estimations;
+
+	/**
+	 * Class constructor
+	 */
+	public RttEstimator() {
+		this.estimations = new ConcurrentHashMap<Id, Estimation>();
+	}
+
+	/**
+	 * Updates the estimation of a remote node with a new sample
+	 *
+	 * @param nodeId
+	 *            the Id of the remote node
+	 * @param sample
+	 *            the time in milliseconds the remote node took to send its
+	 *            value
+	 */
+	public void recordSample(Id nodeId, long sample) {
+		Estimation estimation = estimations.get(nodeId);
+		if (estimation == null) {
+			Estimation created = new Estimation();
+			estimation = estimations.putIfAbsent(nodeId, created);
+			if (estimation == null) {
+				estimation = created;
+			}
+		}
+		estimation.update(Math.max(0, sample));
+	}
+
+	/**
+	 *
+	 * @param nodeId
+	 *            the Id of a remote node
+	 * @param defaultTimeout
+	 *            the timeout returned if no samples of the node have been
+	 *            recorded
+	 * @return the timeout in milliseconds after which the remote node should
+	 *         be suspected of failure
+	 */
+	public long getTimeout(Id nodeId, long defaultTimeout) {
+		Estimation estimation = estimations.get(nodeId);
+		if (estimation == null) {
+			return defaultTimeout;
+		}
+		return estimation.timeout();
+	}
+
+	/**
+	 *
+	 * @param nodeId
+	 *            the Id of a remote node
+	 * @return the smoothed response time of the node in milliseconds, or -1 if
+	 *         no samples of the node have been recorded
+	 */
+	public double getSmoothedRtt(Id nodeId) {
+		Estimation estimation = estimations.get(nodeId);
+		if (estimation == null) {
+			return -1;
+		}
+		return estimation.getSrtt();
+	}
+
+	/**
+	 * Removes the estimation of a remote node, e.g. once it is known to have
+	 * failed
+	 *
+	 * @param nodeId
+	 *            the Id of the remote node
+	 */
+	public void forget(Id nodeId) {
+		estimations.remove(nodeId);
+	}
+
+	private static class Estimation {
+
+		private double srtt;
+		private double rttvar;
+		private boolean initialized;
+
+		synchronized void update(long sample) {
+			if (!initialized) {
+				srtt = sample;
+				rttvar = sample / 2.0;
+				initialized = true;
+				return;
+			}
+			rttvar = (1 - BETA) * rttvar + BETA * Math.abs(srtt - sample);
+			srtt = (1 - ALPHA) * srtt + ALPHA * sample;
+		}
+
+		synchronized double getSrtt() {
+			return srtt;
+		}
+
+		synchronized long timeout() {
+			// the timers are only checked once per tick, so a smaller variation
+			// would not make any difference
+			double variation = Math.max(TimerWheel.DEFAULT_TICK, K * rttvar);
+			long timeout = (long) Math.ceil(srtt + variation);
+			return Math.min(Math.max(timeout, MIN_TIMEOUT), MAX_TIMEOUT);
+		}
+	}
+
+}
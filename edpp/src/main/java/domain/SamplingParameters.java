@@ -65,4 +65,23 @@ public class SamplingParameters {
 		this.numberOfRounds = numberOfRounds;
 	}
 
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this)
+			return true;
+		if (obj == null)
+			return false;
+		if (!(obj instanceof SamplingParameters))
+			return false;
+		SamplingParameters sp = (SamplingParameters) obj;
+
+		return this.numberOfExecutions == sp.getNumberOfExecutions()
+				&& this.numberOfRounds == sp.getNumberOfRounds();
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * numberOfExecutions + numberOfRounds;
+	}
+
 }
@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -40,6 +41,11 @@ public class Session implements Serializable {
 	private AtomicInteger completedExecutions;
 	private AtomicBoolean completedSession;
 	private double[] computedEigenvalues;
+	private transient InitArrivalModel initArrivals;
+	private transient RttEstimator rtt;
+	private transient volatile boolean earlyTermination;
+	// the System.nanoTime() value of the last progress made by the Session
+	private transient volatile long lastActivity = System.nanoTime();
 
 	/**
 	 * Constructor class. The id of this Session will be randomly generated
@@ -122,18 +128,29 @@ public class Session implements Serializable {
 	 */
 	public Session(final Node localNode, final String sessionId,
 			final int numberOfExecutions, final int numberOfRounds) {
-		this.sessionId = UUID.fromString(sessionId);
-		this.initiator = false;
-		numberOfNextExecution = new AtomicInteger(1);
-		this.numberOfExecutions = numberOfExecutions;
-		completedExecutions = new AtomicInteger(0);
-		this.numberOfRounds = numberOfRounds;
-		this.localNode = localNode;
-		executions = new ConcurrentHashMap<Integer, Execution>();
-		initExecution = null;
-		roundOffset = numberOfRounds / numberOfExecutions;
-		completedSession = new AtomicBoolean(false);
+		this(localNode, UUID.fromString(sessionId), numberOfExecutions,
+				numberOfRounds);
+	}
 
+	/**
+	 * Constructor class. This Session will also have the initiator flag set to
+	 * false. Should be used only when the sampling request was made in another
+	 * node
+	 * 
+	 * @param localNode
+	 *            the local underlying network node
+	 * @param sessionId
+	 *            the UUID that the newly created Session should have
+	 * @param numberOfExecutions
+	 *            the number of Executions that should be executed in the
+	 *            context of this Session
+	 * @param numberOfRounds
+	 *            the total number of rounds each Execution in the context of
+	 *            this Session should have
+	 */
+	public Session(final Node localNode, final UUID sessionId,
+			final int numberOfExecutions, final int numberOfRounds) {
+		this(localNode, sessionId, numberOfExecutions, numberOfRounds, false);
 	}
 
 	/**
@@ -157,7 +174,32 @@ public class Session implements Serializable {
 	public Session(final Node localNode, final String sessionId,
 			final int numberOfExecutions, final int numberOfRounds,
 			final boolean initiator) {
-		this.sessionId = UUID.fromString(sessionId);
+		this(localNode, UUID.fromString(sessionId), numberOfExecutions,
+				numberOfRounds, initiator);
+	}
+
+	/**
+	 * Constructor class
+	 * 
+	 * @param localNode
+	 *            the local underlying network node
+	 * @param sessionId
+	 *            the UUID that the newly created Session should have
+	 * @param numberOfExecutions
+	 *            the number of Executions that should be executed in the
+	 *            context of this Session
+	 * @param numberOfRounds
+	 *            the total number of rounds each Execution in the context of
+	 *            this Session should have
+	 * @param initiator
+	 *            flag that should be set to true if the sampling request was
+	 *            made to local node. If the request is initiated through an
+	 *            INIT message it should be set to false
+	 */
+	public Session(final Node localNode, final UUID sessionId,
+			final int numberOfExecutions, final int numberOfRounds,
+			final boolean initiator) {
+		this.sessionId = sessionId;
 		this.initiator = initiator;
 		numberOfNextExecution = new AtomicInteger(1);
 		this.numberOfExecutions = numberOfExecutions;
@@ -179,6 +221,14 @@ public class Session implements Serializable {
 		return sessionId.toString();
 	}
 
+	/**
+	 * 
+	 * @return the UUID of this Session
+	 */
+	public UUID getSessionUuid() {
+		return sessionId;
+	}
+
 	/**
 	 * 
 	 * @return the total number of rounds each Execution of this Session has
@@ -213,6 +263,55 @@ public class Session implements Serializable {
 		return initExecution;
 	}
 
+	/**
+	 * Sets the history of the in-neighbor arrivals of the local node, which is
+	 * used by the Executions created from then on for ending their INIT phase
+	 * early
+	 * 
+	 * @param initArrivals
+	 *            the InitArrivalModel of the local node, or null if the
+	 *            Executions should always wait for the full INIT timeout
+	 */
+	public void setInitArrivalModel(InitArrivalModel initArrivals) {
+		this.initArrivals = initArrivals;
+	}
+
+	/**
+	 * Sets the response time estimations of the remote nodes, which are used
+	 * by the Executions created from then on for arming the timers of their
+	 * in-neighbors
+	 * 
+	 * @param rtt
+	 *            the RttEstimator of the local node, or null if the timers
+	 *            should always be armed with the default value
+	 */
+	public void setRttEstimator(RttEstimator rtt) {
+		this.rtt = rtt;
+	}
+
+	/**
+	 * Enables or disables the early termination of the Executions of the
+	 * Session. If enabled, an Execution whose impulse response has converged
+	 * ends before its total number of rounds and signals its out-neighbors to
+	 * do the same
+	 * 
+	 * @param earlyTermination
+	 *            true if the Executions should end once they converge, false
+	 *            if they should always run all their rounds
+	 */
+	public void setEarlyTermination(boolean earlyTermination) {
+		this.earlyTermination = earlyTermination;
+	}
+
+	/**
+	 * 
+	 * @return true if the Executions of the Session end once they converge,
+	 *         false otherwise
+	 */
+	public boolean isEarlyTerminationEnabled() {
+		return earlyTermination;
+	}
+
 	/**
 	 * This method creates a new Execution in the context of this Session, which
 	 * has its execution number e incremented by one compared to the currently
@@ -243,7 +342,7 @@ public class Session implements Serializable {
 		if (numberOfNextExecution.get() > numberOfExecutions)
 			return null;
 		Execution execution = new Execution(executionNumber, numberOfRounds,
-				localNode);
+				localNode, initArrivals, rtt);
 		executions.put(numberOfNextExecution.get(), execution);
 		// if this is the initial Execution of the Session keep it stored
 		// separately. It will be required for checking whether a new Execution
@@ -297,6 +396,23 @@ public class Session implements Serializable {
 		return null;
 	}
 
+	/**
+	 * Records that the Session has just made some progress, e.g. a message
+	 * for it was received or one of its rounds was closed
+	 */
+	public void touch() {
+		lastActivity = System.nanoTime();
+	}
+
+	/**
+	 * 
+	 * @return the time in milliseconds elapsed since the last progress of the
+	 *         Session
+	 */
+	public long getIdleTime() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivity);
+	}
+
 	/**
 	 * 
 	 * @return true if the Session has terminated, otherwise false
@@ -352,7 +468,7 @@ public class Session implements Serializable {
 			return false;
 		Session s = (Session) obj;
 
-		return this.sessionId.equals(s.getSessionId());
+		return this.sessionId.equals(s.getSessionUuid());
 	}
 
 	@Override
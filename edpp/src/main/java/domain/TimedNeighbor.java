@@ -1,17 +1,22 @@
 package domain;
 
 import java.net.InetAddress;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Class representing in-neighbors of a node
+ * Class representing in-neighbors of a node. The timer of the liveness check
+ * of an in-neighbor is kept as an absolute deadline, so it does not need to be
+ * decreased as time goes by
  * 
  * @author Xenofon Foukas
  * 
  */
 public class TimedNeighbor extends Neighbor {
 
-	private volatile AtomicLong remainingTime;
+	// the System.nanoTime() value at which the liveness check is due, or INF
+	private volatile long deadline;
+	// the System.nanoTime() value at which the timer was last armed
+	private volatile long armedAt;
 
 	/**
 	 * The INF value set when an in-neighbor has sent a message is actually the
@@ -34,7 +39,7 @@ public class TimedNeighbor extends Neighbor {
 	 */
 	public TimedNeighbor(byte[] id, InetAddress address) {
 		super(id, address);
-		this.remainingTime = new AtomicLong(DEFAULT_TIMER);
+		this.deadline = deadlineAfter(DEFAULT_TIMER);
 	}
 
 	/**
@@ -48,7 +53,7 @@ public class TimedNeighbor extends Neighbor {
 	 */
 	public TimedNeighbor(Id id, InetAddress address) {
 		super(id, address);
-		this.remainingTime = new AtomicLong(DEFAULT_TIMER);
+		this.deadline = deadlineAfter(DEFAULT_TIMER);
 	}
 
 	/**
@@ -62,7 +67,7 @@ public class TimedNeighbor extends Neighbor {
 	 */
 	public TimedNeighbor(String stringId, InetAddress address) {
 		super(stringId, address);
-		this.remainingTime = new AtomicLong(DEFAULT_TIMER);
+		this.deadline = deadlineAfter(DEFAULT_TIMER);
 	}
 
 	/**
@@ -77,7 +82,7 @@ public class TimedNeighbor extends Neighbor {
 	 */
 	public TimedNeighbor(byte[] id, InetAddress address, long remainingTime) {
 		super(id, address);
-		this.remainingTime = new AtomicLong(remainingTime);
+		this.deadline = deadlineAfter(remainingTime);
 	}
 
 	/**
@@ -92,7 +97,7 @@ public class TimedNeighbor extends Neighbor {
 	 */
 	public TimedNeighbor(Id id, InetAddress address, long remainingTime) {
 		super(id, address);
-		this.remainingTime = new AtomicLong(remainingTime);
+		this.deadline = deadlineAfter(remainingTime);
 	}
 
 	/**
@@ -108,7 +113,7 @@ public class TimedNeighbor extends Neighbor {
 	public TimedNeighbor(String stringId, InetAddress address,
 			long remainingTime) {
 		super(stringId, address);
-		this.remainingTime = new AtomicLong(DEFAULT_TIMER);
+		this.deadline = deadlineAfter(DEFAULT_TIMER);
 	}
 
 	/**
@@ -116,7 +121,15 @@ public class TimedNeighbor extends Neighbor {
 	 * @return The time remaining until the node needs to be probed for liveness
 	 */
 	public long getTimeToProbe() {
-		return remainingTime.get();
+		long d = deadline;
+		if (d == INF)
+			return INF;
+		long remaining = d - System.nanoTime();
+		if (remaining <= 0)
+			return 0;
+		// round up, so that a timer that was just set reports its full value
+		return TimeUnit.NANOSECONDS.toMillis(remaining
+				+ TimeUnit.MILLISECONDS.toNanos(1) - 1);
 	}
 
 	/**
@@ -126,7 +139,32 @@ public class TimedNeighbor extends Neighbor {
 	 *            The new remaining time before a liveness check
 	 */
 	public void setRemainingTime(long time) {
-		this.remainingTime.set(time);
+		this.deadline = deadlineAfter(time);
+	}
+
+	/**
+	 * Arms the timer of the in-neighbor, e.g. at the beginning of a round.
+	 * The time elapsed since then is the time the in-neighbor takes to send
+	 * its value
+	 * 
+	 * @param time
+	 *            The new remaining time before a liveness check
+	 */
+	public void arm(long time) {
+		this.armedAt = System.nanoTime();
+		setRemainingTime(time);
+	}
+
+	/**
+	 * 
+	 * @return the time in milliseconds elapsed since the timer was last armed,
+	 *         or -1 if it was never armed
+	 */
+	public long getTimeSinceArmed() {
+		long armed = armedAt;
+		if (armed == 0)
+			return -1;
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - armed);
 	}
 
 	/**
@@ -136,11 +174,8 @@ public class TimedNeighbor extends Neighbor {
 	 *            Decrease remaining time by a time parameter. The remaining
 	 *            time is never negative
 	 */
-	public void decreaseTime(long time) {
-		if (remainingTime.get() - time < 0)
-			remainingTime.set(0);
-		else
-			remainingTime.addAndGet(-time);
+	public synchronized void decreaseTime(long time) {
+		setRemainingTime(Math.max(0, getTimeToProbe() - time));
 	}
 
 	/**
@@ -149,8 +184,18 @@ public class TimedNeighbor extends Neighbor {
 	 * @param time
 	 *            Increase remaining time by time
 	 */
-	public void increaseTime(long time) {
-		remainingTime.addAndGet(time);
+	public synchronized void increaseTime(long time) {
+		long remaining = getTimeToProbe();
+		if (remaining != INF)
+			setRemainingTime(remaining + time);
+	}
+
+	private static long deadlineAfter(long time) {
+		// times this long are never reached, so they are kept as INF
+		if (time >= TimeUnit.NANOSECONDS.toMillis(Long.MAX_VALUE / 2))
+			return INF;
+		return System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(Math.max(0, time));
 	}
 
 	@Override
@@ -1,5 +1,9 @@
 package domain.structure;
 
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Map;
+
 import domain.Id;
 import domain.Neighbor;
 import domain.PlainNeighbor;
@@ -73,4 +77,14 @@ public interface PlainNeighborsTable extends NeighborsTable<PlainNeighbor> {
 	 *         false if the Neighbor did not exist
 	 */
 	public boolean setWeight(String nodeId, double weight);
+
+	/**
+	 * Groups the addresses of the out-neighbors by their transition
+	 * probability, so that a message carrying the same weighted value can be
+	 * built once for all the out-neighbors of a group
+	 * 
+	 * @return a Map with the transition probabilities as keys and the
+	 *         InetAddresses of the out-neighbors having each of them as values
+	 */
+	public Map<Double, List<InetAddress>> getAddressesByWeight();
 }
@@ -1,8 +1,13 @@
 package domain.structure;
 
+import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import domain.Id;
@@ -179,4 +184,20 @@ public class PlainNeighborsTableSet implements PlainNeighborsTable {
 		return false;
 	}
 
+	@Override
+	public Map<Double, List<InetAddress>> getAddressesByWeight() {
+		Map<Double, List<InetAddress>> groups = new LinkedHashMap<Double, List<InetAddress>>();
+		synchronized (neighborsList) {
+			for (PlainNeighbor n : neighborsList) {
+				List<InetAddress> addresses = groups.get(n.getWeight());
+				if (addresses == null) {
+					addresses = new ArrayList<InetAddress>();
+					groups.put(n.getWeight(), addresses);
+				}
+				addresses.add(n.getAddress());
+			}
+		}
+		return groups;
+	}
+
 }
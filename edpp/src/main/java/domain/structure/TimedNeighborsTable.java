@@ -79,7 +79,9 @@ public interface TimedNeighborsTable extends NeighborsTable<TimedNeighbor> {
 	public void setDefaultTimeValue(long time);
 
 	/**
-	 * Renews the timers of all the TimedNeighbor objects in the table
+	 * Renews the timers of all the TimedNeighbor objects in the table. Each
+	 * timer is armed with the timeout of its own TimedNeighbor, if the table
+	 * keeps response time estimations, or with the default value otherwise
 	 */
 	public void renewTimers();
 
@@ -93,4 +95,37 @@ public interface TimedNeighborsTable extends NeighborsTable<TimedNeighbor> {
 	 *         in the table
 	 */
 	public boolean setTimerToInf(String nodeId);
+
+	/**
+	 * Sets the timers of a TimedNeighbor object of the table to INF
+	 * 
+	 * @param nodeId
+	 *            the Id of the TimedNeighbor whose timer will be set to INF
+	 * @return true if the timer was set to INF, false if the node was not found
+	 *         in the table
+	 */
+	public boolean setTimerToInf(Id nodeId);
+
+	/**
+	 * Sets the timers of a TimedNeighbor object of the table to INF
+	 * 
+	 * @param nodeId
+	 *            the Id of the TimedNeighbor whose timer will be set to INF
+	 * @param recordSample
+	 *            false if the time elapsed since the timer was armed is not
+	 *            the time the TimedNeighbor took to send its value, e.g.
+	 *            because the value arrived before the timer was armed
+	 * @return true if the timer was set to INF, false if the node was not found
+	 *         in the table
+	 */
+	public boolean setTimerToInf(Id nodeId, boolean recordSample);
+
+	/**
+	 * Discards the response times recorded for a TimedNeighbor, e.g. once it
+	 * has failed
+	 * 
+	 * @param nodeId
+	 *            the Id of the TimedNeighbor
+	 */
+	public void forgetResponseTimes(Id nodeId);
 }
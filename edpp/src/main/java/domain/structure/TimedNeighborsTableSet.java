@@ -7,6 +7,7 @@ import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 import domain.Id;
+import domain.RttEstimator;
 import domain.TimedNeighbor;
 
 /**
@@ -21,6 +22,7 @@ public class TimedNeighborsTableSet implements TimedNeighborsTable {
 
 	private Set<TimedNeighbor> neighborsList;
 	private AtomicLong defaultTimerValue;
+	private RttEstimator rtt;
 
 	/**
 	 * Constructor class. Creates an empty table of size 0. The default timer
@@ -32,6 +34,21 @@ public class TimedNeighborsTableSet implements TimedNeighborsTable {
 		this.defaultTimerValue = new AtomicLong(TimedNeighbor.DEFAULT_TIMER);
 	}
 
+	/**
+	 * Constructor class. Creates an empty table of size 0, whose timers are
+	 * armed with the timeout estimated for each TimedNeighbor. The default
+	 * timer value is used for the TimedNeighbors with no estimation yet
+	 * 
+	 * @param rtt
+	 *            the RttEstimator keeping the response times of the remote
+	 *            nodes. It is updated with the time each TimedNeighbor takes
+	 *            to send its value
+	 */
+	public TimedNeighborsTableSet(RttEstimator rtt) {
+		this();
+		this.rtt = rtt;
+	}
+
 	/**
 	 * Constructor class. Creates an empty table of size 0
 	 * 
@@ -175,7 +192,7 @@ public class TimedNeighborsTableSet implements TimedNeighborsTable {
 			for (TimedNeighbor n : neighborsList) {
 				if (n.equals(node)) {
 					if (n.getTimeToProbe() != TimedNeighbor.INF) {
-						n.setRemainingTime(defaultTimerValue.get());
+						n.arm(timeoutOf(n));
 						return true;
 					}
 				}
@@ -190,7 +207,7 @@ public class TimedNeighborsTableSet implements TimedNeighborsTable {
 			for (TimedNeighbor n : neighborsList) {
 				if (n.getId().equals(nodeId)) {
 					if (n.getTimeToProbe() != TimedNeighbor.INF) {
-						n.setRemainingTime(defaultTimerValue.get());
+						n.arm(timeoutOf(n));
 						return true;
 					}
 				}
@@ -204,7 +221,7 @@ public class TimedNeighborsTableSet implements TimedNeighborsTable {
 		synchronized (neighborsList) {
 			for (TimedNeighbor n : neighborsList) {
 				if (n.getId().toString().equals(nodeId)) {
-					n.setRemainingTime(defaultTimerValue.get());
+					n.arm(timeoutOf(n));
 					return true;
 				}
 			}
@@ -226,16 +243,33 @@ public class TimedNeighborsTableSet implements TimedNeighborsTable {
 	public void renewTimers() {
 		synchronized (neighborsList) {
 			for (TimedNeighbor tn : neighborsList) {
-				tn.setRemainingTime(defaultTimerValue.get());
+				tn.arm(timeoutOf(tn));
 			}
 		}
 	}
 
 	@Override
 	public boolean setTimerToInf(String nodeId) {
+		return setTimerToInf(new Id(nodeId));
+	}
+
+	@Override
+	public boolean setTimerToInf(Id nodeId) {
+		return setTimerToInf(nodeId, true);
+	}
+
+	@Override
+	public boolean setTimerToInf(Id nodeId, boolean recordSample) {
 		synchronized (neighborsList) {
 			for (TimedNeighbor n : neighborsList) {
-				if (n.getId().toString().equals(nodeId)) {
+				if (n.getId().equals(nodeId)) {
+					// the value of the in-neighbor arrived, so the time since
+					// its timer was armed is a sample of its response time
+					long elapsed = n.getTimeSinceArmed();
+					if (rtt != null && recordSample && elapsed >= 0
+							&& n.getTimeToProbe() != TimedNeighbor.INF) {
+						rtt.recordSample(nodeId, elapsed);
+					}
 					n.setRemainingTime(TimedNeighbor.INF);
 					return true;
 				}
@@ -244,4 +278,18 @@ public class TimedNeighborsTableSet implements TimedNeighborsTable {
 		return false;
 	}
 
+	@Override
+	public void forgetResponseTimes(Id nodeId) {
+		if (rtt != null) {
+			rtt.forget(nodeId);
+		}
+	}
+
+	private long timeoutOf(TimedNeighbor n) {
+		if (rtt == null) {
+			return defaultTimerValue.get();
+		}
+		return rtt.getTimeout(n.getId(), defaultTimerValue.get());
+	}
+
 }
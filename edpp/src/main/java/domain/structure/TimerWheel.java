@@ -0,0 +1,154 @@
+package domain.structure;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel holding items until their deadline expires. Time is split
+ * into ticks and every item is placed in the slot of the tick its deadline
+ * falls in, so that collecting the expired items only visits the slots of the
+ * ticks that have passed, instead of every scheduled item. Deadlines further
+ * than a full turn of the wheel remain in their slot until the wheel reaches
+ * them. The wheel has no thread of its own and is advanced by its owner
+ * through expire()
+ *
+ * @author Xenofon Foukas
+ *
+ * @param <T>
+ *            the type of the items kept in the wheel
+ */
+public class TimerWheel<T> {
+
+	/**
+	 * The default duration of a tick in milliseconds
+	 */
+	public static final long DEFAULT_TICK = 100;
+	/**
+	 * The default number of slots of the wheel
+	 */
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	private final long tickDuration;
+	private final List<LinkedList<Entry<T>>> slots;
+	// all the slots of the ticks before this one have been emptied
+	private long currentTick;
+	private int size;
+
+	/**
+	 * Class constructor. The wheel has DEFAULT_WHEEL_SIZE slots of
+	 * DEFAULT_TICK milliseconds each
+	 */
+	public TimerWheel() {
+		this(DEFAULT_TICK, DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * Class constructor
+	 *
+	 * @param tickDuration
+	 *            the duration of a tick in milliseconds
+	 * @param wheelSize
+	 *            the number of slots of the wheel
+	 */
+	public TimerWheel(long tickDuration, int wheelSize) {
+		if (tickDuration <= 0 || wheelSize <= 0) {
+			throw new IllegalArgumentException(
+					"The tick duration and the wheel size must be positive");
+		}
+		this.tickDuration = tickDuration;
+		this.slots = new ArrayList<LinkedList<Entry<T>>>(wheelSize);
+		for (int i = 0; i < wheelSize; i++) {
+			slots.add(new LinkedList<Entry<T>>());
+		}
+		this.currentTick = currentTime() / tickDuration;
+		this.size = 0;
+	}
+
+	/**
+	 * Schedules an item to expire after some delay
+	 *
+	 * @param item
+	 *            the item to be scheduled
+	 * @param delay
+	 *            the time in milliseconds after which the item expires. A
+	 *            non-positive delay makes the item expire on the next call of
+	 *            expire()
+	 */
+	public synchronized void schedule(T item, long delay) {
+		long deadline = currentTime() + Math.max(0, delay);
+		// deadlines in slots that have already been passed are placed in the
+		// current one
+		long tick = Math.max(deadline / tickDuration, currentTick);
+		slots.get(slotOf(tick)).add(new Entry<T>(item, deadline));
+		size++;
+	}
+
+	/**
+	 * Removes from the wheel all the items whose deadline has expired
+	 *
+	 * @return a list of the expired items, which is empty if no deadline has
+	 *         expired
+	 */
+	public synchronized List<T> expire() {
+		List<T> expired = new ArrayList<T>();
+		long now = currentTime();
+		long nowTick = now / tickDuration;
+		// every slot needs to be visited at most once, however long the wheel
+		// was left idle
+		long lastTick = Math.min(nowTick, currentTick + slots.size() - 1);
+		for (long tick = currentTick; tick <= lastTick; tick++) {
+			Iterator<Entry<T>> iter = slots.get(slotOf(tick)).iterator();
+			while (iter.hasNext()) {
+				Entry<T> entry = iter.next();
+				if (entry.deadline <= now) {
+					iter.remove();
+					expired.add(entry.item);
+					size--;
+				}
+			}
+		}
+		currentTick = nowTick;
+		return expired;
+	}
+
+	/**
+	 *
+	 * @return the number of items in the wheel
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @return true if the wheel holds no items, false otherwise
+	 */
+	public synchronized boolean isEmpty() {
+		return size == 0;
+	}
+
+	private int slotOf(long tick) {
+		// the clock the ticks are derived from might be negative
+		int n = slots.size();
+		return (int) (((tick % n) + n) % n);
+	}
+
+	private static long currentTime() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	private static class Entry<T> {
+
+		private final T item;
+		private final long deadline;
+
+		Entry(T item, long deadline) {
+			this.item = item;
+			this.deadline = deadline;
+		}
+	}
+
+}
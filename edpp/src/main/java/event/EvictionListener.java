@@ -0,0 +1,22 @@
+package event;
+
+import domain.Session;
+
+/**
+ * Interface for informing about the Sessions evicted because they will
+ * probably never terminate. Any object waiting for a Session to complete
+ * should use this interface, so that it does not wait forever
+ * 
+ * @author Xenofon Foukas
+ * 
+ */
+public interface EvictionListener {
+
+	/**
+	 * Event called when a Session is evicted
+	 * 
+	 * @param s
+	 *            the evicted Session
+	 */
+	public void sessionEvicted(Session s);
+}
@@ -1,11 +1,9 @@
 package storage;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import jdbm.PrimaryTreeMap;
 import jdbm.RecordManager;
@@ -42,8 +40,8 @@ public class KeyValueDatabase implements Database {
 	 *            not exist, it will be created
 	 */
 	public KeyValueDatabase(String dbName, String tableName) {
-		sessionListeners = Collections
-				.synchronizedList(new ArrayList<SessionListener>());
+		// listeners might remove themselves while being notified
+		sessionListeners = new CopyOnWriteArrayList<SessionListener>();
 		lock = new Object();
 		try {
 			recMan = RecordManagerFactory.createRecordManager(dbName);
@@ -69,11 +67,8 @@ public class KeyValueDatabase implements Database {
 			db.put(new Integer(size), rs);
 		}
 		// Notify all listeners that a new record was inserted
-		synchronized (sessionListeners) {
-			Iterator<SessionListener> iter = sessionListeners.iterator();
-			while (iter.hasNext()) {
-				iter.next().sessionStored(rs);
-			}
+		for (SessionListener listener : sessionListeners) {
+			listener.sessionStored(rs);
 		}
 	}
 
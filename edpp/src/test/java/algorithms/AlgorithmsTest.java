@@ -2,6 +2,8 @@ package algorithms;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+
 import org.junit.Test;
 
 public class AlgorithmsTest {
@@ -44,6 +46,18 @@ public class AlgorithmsTest {
 	}
 
 	
+	@Test
+	public void impulseResponsesSettleOnlyOnceTheirChangesAreNegligible() {
+		//The responses still change considerably after the first rounds
+		double [] firstRounds = Arrays.copyOf(impulseResponses, 12);
+		assertFalse(Algorithms.hasSettled(firstRounds, 4, 0.05));
+		//Only numerical noise is left in the last rounds
+		assertTrue(Algorithms.hasSettled(impulseResponses, 4, 0.05));
+		assertFalse(Algorithms.hasSettled(impulseResponses, 4, 0.01));
+		//There must be enough responses to examine
+		assertFalse(Algorithms.hasSettled(new double[] { 0.1, 0.1 }, 4, 0.05));
+	}
+	
 	@Test
 	public void computeMatrixUsingZeroImpulseResponses() {
 		double [][] results;
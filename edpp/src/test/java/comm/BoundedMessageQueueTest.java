@@ -0,0 +1,118 @@
+package comm;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import comm.BoundedMessageQueue.OverflowPolicy;
+import comm.ProtocolMessage.Message;
+
+public class BoundedMessageQueueTest {
+
+	static InetAddress address;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		address = InetAddress.getLoopbackAddress();
+	}
+
+	@Test
+	public void oldestBestEffortNextValueIsDroppedWhenFull() {
+		BoundedMessageQueue queue = new BoundedMessageQueue(2,
+				OverflowPolicy.DROP_OLDEST);
+		TransferableMessage init = new TransferableMessage(
+				MessageBuilder.buildInitMessage("testNode", "testSession", 1,
+						1, 2, 1.0), address, true);
+		TransferableMessage oldNext = next(1);
+		TransferableMessage newNext = next(2);
+
+		assertTrue(queue.add(init));
+		assertTrue(queue.add(oldNext));
+		assertTrue(queue.add(newNext));
+
+		//The INIT message must be kept and the older value dropped
+		assertEquals(2, queue.getDepth());
+		assertEquals(1, queue.getDroppedCount());
+		assertSame(init, queue.poll());
+		assertSame(newNext, queue.poll());
+	}
+
+	@Test
+	public void initMessageBlocksInsteadOfBeingDropped() throws Exception {
+		final BoundedMessageQueue queue = new BoundedMessageQueue(1,
+				OverflowPolicy.DROP_OLDEST);
+		final TransferableMessage init = new TransferableMessage(
+				MessageBuilder.buildInitMessage("testNode", "testSession", 1,
+						1, 2, 1.0), address, true);
+		queue.add(next(1));
+
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					queue.put(init);
+				} catch (InterruptedException e) {
+					
+				}
+			}
+		});
+		producer.start();
+		producer.join(500);
+		//The producer must wait until there is room for the INIT message
+		assertTrue(producer.isAlive());
+		assertEquals(1, queue.getBlockedCount());
+
+		queue.take();
+		assertSame(init, queue.poll(1, TimeUnit.SECONDS));
+		producer.join();
+		assertEquals(0, queue.getDroppedCount());
+	}
+
+	@Test
+	public void fullQueueKeepsTheContractOfAddAndOffer() {
+		BoundedMessageQueue queue = new BoundedMessageQueue(1,
+				OverflowPolicy.DROP_OLDEST);
+		TransferableMessage init = new TransferableMessage(
+				MessageBuilder.buildInitMessage("testNode", "testSession", 1,
+						1, 2, 1.0), address, true);
+		assertTrue(queue.offer(init));
+		
+		//Nothing can be dropped for a NEXT value, so neither call waits
+		assertFalse(queue.offer(next(1)));
+		try {
+			queue.add(next(2));
+			fail("A full queue must reject the message");
+		} catch (IllegalStateException e) {
+			
+		}
+		assertSame(init, queue.peek());
+		assertEquals(1, queue.getDepth());
+	}
+	
+	@Test
+	public void onlyTheHeadOfTheQueueIsScannedForValuesToDrop() {
+		int capacity = BoundedMessageQueue.DROP_SCAN_LIMIT + 1;
+		BoundedMessageQueue queue = new BoundedMessageQueue(capacity,
+				OverflowPolicy.DROP_OLDEST);
+		for (int i = 0; i < capacity - 1; i++) {
+			queue.offer(new TransferableMessage(MessageBuilder.buildInitMessage(
+					"testNode", "testSession", i, 1, 2, 1.0), address, true));
+		}
+		queue.offer(next(1));
+		
+		//The only value that could be dropped is beyond the scanned messages
+		assertFalse(queue.offer(next(2)));
+		assertEquals(capacity, queue.getDepth());
+	}
+	
+	private TransferableMessage next(int round) {
+		Message m = MessageBuilder.buildNextMessage("testNode", "testSession",
+				1, round, 1.0);
+		return new TransferableMessage(m, address, false);
+	}
+
+}
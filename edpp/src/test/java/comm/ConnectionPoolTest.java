@@ -0,0 +1,65 @@
+package comm;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ConnectionPoolTest {
+
+	@Test
+	public void callerIsNotifiedOnceTheConnectionIsReady() throws Exception {
+		InetAddress local = InetAddress.getByName("127.0.0.1");
+		ServerSocket ss = new ServerSocket(0, 50, local);
+		ConnectionPool pool = new ConnectionPool(ss.getLocalPort());
+		try {
+			CountDownLatch ready = new CountDownLatch(1);
+			if (!pool.connect(local, countDown(ready))) {
+				//The caller is resumed by the pool instead of polling
+				assertTrue(ready.await(5, TimeUnit.SECONDS));
+				assertTrue(pool.connect(local, countDown(ready)));
+			}
+			assertEquals(1, pool.getSize());
+		} finally {
+			pool.closeAll();
+			ss.close();
+		}
+	}
+
+	@Test
+	public void callerIsNotifiedOnceTheConnectionFails() throws Exception {
+		InetAddress local = InetAddress.getByName("127.0.0.1");
+		ServerSocket ss = new ServerSocket(0, 50, local);
+		int port = ss.getLocalPort();
+		//Nobody listens on the port any more
+		ss.close();
+		ConnectionPool pool = new ConnectionPool(port);
+		try {
+			CountDownLatch failed = new CountDownLatch(1);
+			if (!pool.connect(local, countDown(failed))) {
+				assertTrue(failed.await(5, TimeUnit.SECONDS));
+				pool.connect(local, countDown(failed));
+			}
+			fail("The refused connection was reported as ready");
+		} catch (IOException e) {
+			assertEquals(0, pool.getSize());
+		} finally {
+			pool.closeAll();
+		}
+	}
+
+	private static Runnable countDown(final CountDownLatch latch) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		};
+	}
+
+}
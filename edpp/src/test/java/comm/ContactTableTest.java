@@ -0,0 +1,83 @@
+package comm;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Test;
+
+public class ContactTableTest {
+
+	@Test
+	public void nodeIsRecentlyHeardOnlyWithinTheWindow() throws Exception {
+		ContactTable contacts = new ContactTable(200);
+		InetAddress address = InetAddress.getByName("10.0.0.1");
+
+		assertFalse(contacts.isRecentlyHeard(address));
+		contacts.heardFrom(address);
+		assertTrue(contacts.isRecentlyHeard(address));
+
+		//Once the window has passed the node must be checked again
+		Thread.sleep(300);
+		assertFalse(contacts.isRecentlyHeard(address));
+
+		contacts.heardFrom(address);
+		contacts.forget(address);
+		assertFalse(contacts.isRecentlyHeard(address));
+	}
+
+	@Test
+	public void silentNodeIsIncreasinglySuspected() throws Exception {
+		ContactTable contacts = new ContactTable(200);
+		InetAddress address = InetAddress.getByName("10.0.0.1");
+
+		assertEquals(Double.POSITIVE_INFINITY, contacts.getPhi(address), 0);
+		for (int i = 0; i < 5; i++) {
+			contacts.heardFrom(address);
+			Thread.sleep(20);
+		}
+		double phi = contacts.getPhi(address);
+		assertTrue(phi < 1);
+
+		//Once the usual interval and the window have passed, the suspicion
+		//grows with the silence of the node
+		Thread.sleep(1000);
+		double suspected = contacts.getPhi(address);
+		assertTrue(suspected > phi);
+		assertTrue(suspected > FailureDetector.DEFAULT_THRESHOLD);
+	}
+
+	@Test
+	public void transportRecordsEveryReceivedMessage() throws Exception {
+		LoopbackNetwork network = new LoopbackNetwork();
+		LoopbackTransport first = new LoopbackTransport(network);
+		LoopbackTransport second = new LoopbackTransport(network);
+		ContactTable contacts = new ContactTable();
+		first.start(new LinkedBlockingQueue<TransferableMessage>(), null);
+		second.start(new LinkedBlockingQueue<TransferableMessage>(), contacts);
+
+		assertFalse(contacts.isRecentlyHeard(first.getAddress()));
+		first.sendBestEffort(MessageBuilder.buildNextMessage("testNode",
+				"testSession", 1, 2, 1.0), second.getAddress());
+		assertTrue(contacts.isRecentlyHeard(first.getAddress()));
+
+		network.shutdown();
+	}
+
+	@Test
+	public void silentNodesArePruned() throws Exception {
+		ContactTable contacts = new ContactTable(200);
+		InetAddress silent = InetAddress.getByName("10.0.0.1");
+		InetAddress active = InetAddress.getByName("10.0.0.2");
+		contacts.heardFrom(silent);
+		Thread.sleep(100);
+		contacts.heardFrom(active);
+
+		assertEquals(1, contacts.prune(50));
+		//The pruned node is treated as never heard from
+		assertEquals(Double.POSITIVE_INFINITY, contacts.getPhi(silent), 0.0);
+		assertTrue(contacts.isRecentlyHeard(active));
+	}
+
+}
@@ -0,0 +1,95 @@
+package comm;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class FailureDetectorTest {
+
+	@Test
+	public void suspectedNodeIsCheckedOnceForAllTheWaitingCallbacks()
+			throws Exception {
+		LoopbackNetwork network = new LoopbackNetwork();
+		LoopbackTransport transport = new LoopbackTransport(network);
+		ContactTable contacts = new ContactTable();
+		transport.start(new LinkedBlockingQueue<TransferableMessage>(),
+				contacts);
+		FailureDetector detector = new FailureDetector(contacts, transport);
+		//No transport uses this address
+		InetAddress address = network.nextAddress();
+		assertFalse(detector.isAvailable(address));
+
+		CountingCallback callback = new CountingCallback(3);
+		assertTrue(detector.probe(address, callback));
+		assertTrue(detector.isProbing(address));
+		//The other checks are attached to the pending one
+		assertFalse(detector.probe(address, callback));
+		assertFalse(detector.probe(address, callback));
+		assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+		assertEquals(3, callback.unreachable.get());
+		assertFalse(detector.isProbing(address));
+
+		//The failure holds for everyone until the node is heard from again
+		assertTrue(detector.hasFailed(address));
+		assertFalse(detector.isAvailable(address));
+		Thread.sleep(1);
+		contacts.heardFrom(address);
+		assertFalse(detector.hasFailed(address));
+		assertTrue(detector.isAvailable(address));
+
+		network.shutdown();
+	}
+
+	@Test
+	public void failedNodesAreForgottenOncePruned() throws Exception {
+		LoopbackNetwork network = new LoopbackNetwork();
+		LoopbackTransport transport = new LoopbackTransport(network);
+		ContactTable contacts = new ContactTable();
+		transport.start(new LinkedBlockingQueue<TransferableMessage>(),
+				contacts);
+		FailureDetector detector = new FailureDetector(contacts, transport);
+		InetAddress address = network.nextAddress();
+		CountingCallback callback = new CountingCallback(1);
+		detector.probe(address, callback);
+		assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+
+		//A recent failure is kept
+		detector.prune(10000);
+		assertTrue(detector.hasFailed(address));
+		Thread.sleep(50);
+		detector.prune(20);
+		assertFalse(detector.hasFailed(address));
+		//Having never been heard from, the node is still suspected
+		assertFalse(detector.isAvailable(address));
+
+		network.shutdown();
+	}
+
+	private static class CountingCallback implements LivenessCallback {
+
+		final CountDownLatch latch;
+		final AtomicInteger unreachable = new AtomicInteger();
+
+		CountingCallback(int expectedCalls) {
+			latch = new CountDownLatch(expectedCalls);
+		}
+
+		@Override
+		public void nodeAlive(InetAddress address) {
+			latch.countDown();
+		}
+
+		@Override
+		public void nodeUnreachable(InetAddress address) {
+			unreachable.incrementAndGet();
+			latch.countDown();
+		}
+	}
+
+}
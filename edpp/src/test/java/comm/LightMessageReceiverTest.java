@@ -8,11 +8,15 @@ import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -39,7 +43,7 @@ public class LightMessageReceiverTest {
 				return t;
 			}
 		});
-		mr = new LightMessageReceiver(queue);
+		mr = new LightMessageReceiver(queue, null, 4);
 		executor.execute(mr);
 	}
 
@@ -57,16 +61,152 @@ public class LightMessageReceiverTest {
 		byte[] buf = output.toByteArray();
 		DatagramPacket packet = new DatagramPacket(buf, buf.length,
 				InetAddress.getLocalHost(), ProtocolController.PROTOCOL_PORT);
-		socket.send(packet);
+		// the receiver might not be bound yet, so resend until it gets the
+		// datagram
+		TransferableMessage receivedMessage = null;
+		for (int i = 0; i < 50 && receivedMessage == null; i++) {
+			socket.send(packet);
+			receivedMessage = queue.poll(100, TimeUnit.MILLISECONDS);
+		}
 		socket.close();
-		TransferableMessage receivedMessage = queue.take();
 		assertEquals(testMessage, receivedMessage.getMessage());
-		mr.stopService();
+	}
+	
+	@Test
+	public void datagramsAreDeliveredByAllReceiverThreads() throws IOException, InterruptedException {
+		// a queue that records the threads placing messages in it and keeps
+		// each of them busy for a while, so that the next datagrams are
+		// received by the other threads
+		final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+		BlockingQueue<TransferableMessage> slow = new LinkedBlockingQueue<TransferableMessage>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean offer(TransferableMessage m) {
+				record();
+				return super.offer(m);
+			}
+
+			@Override
+			public void put(TransferableMessage m) throws InterruptedException {
+				record();
+				super.put(m);
+			}
+
+			private void record() {
+				threads.add(Thread.currentThread().getName());
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		int port = ProtocolController.PROTOCOL_PORT + 7;
+		LightMessageReceiver receiver = new LightMessageReceiver(slow, null, 4, port);
+		executor.execute(receiver);
+		DatagramSocket socket = new DatagramSocket();
+		// make sure the receiver is bound before sending the datagrams
+		byte[] probe = datagram(Message.newBuilder().setType(MessageType.NEW).build());
+		TransferableMessage receivedMessage = null;
+		for (int i = 0; i < 50 && receivedMessage == null; i++) {
+			socket.send(new DatagramPacket(probe, probe.length,
+					InetAddress.getLocalHost(), port));
+			receivedMessage = slow.poll(100, TimeUnit.MILLISECONDS);
+		}
+		Thread.sleep(200);
+		slow.clear();
+		threads.clear();
+		
+		Set<Integer> rounds = new HashSet<Integer>();
+		for (int i = 0; i < 20; i++) {
+			byte[] buf = datagram(MessageBuilder.buildNextMessage("testNode", "testSession", 1, i, i));
+			socket.send(new DatagramPacket(buf, buf.length,
+					InetAddress.getLocalHost(), port));
+			rounds.add(i);
+		}
+		for (int i = 0; i < 20; i++) {
+			TransferableMessage tm = slow.poll(5, TimeUnit.SECONDS);
+			assertNotNull(tm);
+			assertTrue(rounds.remove(tm.getMessage().getRound()));
+		}
+		socket.close();
+		receiver.stopService();
+		assertTrue(rounds.isEmpty());
+		assertTrue(threads.size() > 1);
+	}
+	
+	@Test
+	public void datagramThatCannotBeHandledDoesNotStopTheReceiver() throws IOException, InterruptedException {
+		// a queue that rejects the messages of round 13
+		BlockingQueue<TransferableMessage> picky = new LinkedBlockingQueue<TransferableMessage>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean offer(TransferableMessage m) {
+				reject(m);
+				return super.offer(m);
+			}
+
+			@Override
+			public void put(TransferableMessage m) throws InterruptedException {
+				reject(m);
+				super.put(m);
+			}
+
+			private void reject(TransferableMessage m) {
+				if (m.getMessage().getRound() == 13) {
+					throw new IllegalStateException("Rejected");
+				}
+			}
+		};
+		int port = ProtocolController.PROTOCOL_PORT + 8;
+		// a single thread, which must survive the failure
+		LightMessageReceiver receiver = new LightMessageReceiver(picky, null, 1, port);
+		executor.execute(receiver);
+		DatagramSocket socket = new DatagramSocket();
+		byte[] probe = datagram(Message.newBuilder().setType(MessageType.NEW).build());
+		TransferableMessage receivedMessage = null;
+		for (int i = 0; i < 50 && receivedMessage == null; i++) {
+			socket.send(new DatagramPacket(probe, probe.length,
+					InetAddress.getLocalHost(), port));
+			receivedMessage = picky.poll(100, TimeUnit.MILLISECONDS);
+		}
+		Thread.sleep(200);
+		picky.clear();
+		
+		byte[] rejected = datagram(MessageBuilder.buildNextMessage("testNode", "testSession", 1, 13, 1.0));
+		socket.send(new DatagramPacket(rejected, rejected.length,
+				InetAddress.getLocalHost(), port));
+		byte[] accepted = datagram(MessageBuilder.buildNextMessage("testNode", "testSession", 1, 14, 1.0));
+		socket.send(new DatagramPacket(accepted, accepted.length,
+				InetAddress.getLocalHost(), port));
+		TransferableMessage tm = picky.poll(5, TimeUnit.SECONDS);
+		socket.close();
+		receiver.stopService();
+		assertNotNull(tm);
+		assertEquals(14, tm.getMessage().getRound());
+	}
+	
+	@Test
+	public void malformedDatagramIsDropped() throws IOException, InterruptedException {
+		DatagramSocket socket = new DatagramSocket();
+		byte[] buf = {(byte) 0x7f, 1, 2, 3};
+		socket.send(new DatagramPacket(buf, buf.length,
+				InetAddress.getLocalHost(), ProtocolController.PROTOCOL_PORT));
+		socket.close();
+		assertNull(queue.poll(500, TimeUnit.MILLISECONDS));
+	}
+	
+	private static byte[] datagram(Message m) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		m.writeDelimitedTo(output);
+		return output.toByteArray();
 	}
 	
 	@AfterClass
 	public static void setUpAfterClass() throws Exception {
-//		mr.stopService();
+		mr.stopService();
 		executor.shutdown();
 	}
 
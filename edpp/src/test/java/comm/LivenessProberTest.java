@@ -0,0 +1,116 @@
+package comm;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class LivenessProberTest {
+
+	static BlockingQueue<TransferableMessage> queue;
+	static ExecutorService executor;
+	static MessageSender sender;
+	static LivenessProber prober;
+	static LightMessageReceiver mr;
+	
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		queue = new LinkedBlockingQueue<TransferableMessage>();
+		executor = Executors.newFixedThreadPool(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		sender = new MessageSender(queue);
+		prober = new LivenessProber(sender, 500, 4);
+		mr = new LightMessageReceiver(queue, prober);
+		executor.execute(mr);
+	}
+
+	@Test
+	public void aliveNodeIsReported() throws Exception {
+		RecordingCallback callback = new RecordingCallback(1);
+		InetAddress address = InetAddress.getLocalHost();
+		
+		//The local receiver replies to the check and forwards the reply to the prober
+		assertTrue(prober.probe(address, callback));
+		assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+		assertTrue(callback.alive.get());
+		assertFalse(prober.isProbing(address));
+		//Replies must never reach the ProtocolController
+		assertEquals(0, queue.size());
+	}
+	
+	@Test
+	public void unreachableNodeIsReported() throws Exception {
+		LivenessProber fastProber = new LivenessProber(sender, 100, 2);
+		RecordingCallback callback = new RecordingCallback(1);
+		//No node listens to this address
+		InetAddress address = InetAddress.getByName("192.0.2.1");
+		
+		assertTrue(fastProber.probe(address, callback));
+		assertTrue(fastProber.isProbing(address));
+		assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+		assertFalse(callback.alive.get());
+		assertFalse(fastProber.isProbing(address));
+		fastProber.stopService();
+	}
+	
+	@Test
+	public void concurrentChecksOfTheSameNodeShareAProbe() throws Exception {
+		LivenessProber fastProber = new LivenessProber(sender, 100, 2);
+		RecordingCallback callback = new RecordingCallback(2);
+		InetAddress address = InetAddress.getByName("192.0.2.1");
+		
+		assertTrue(fastProber.probe(address, callback));
+		//The second check is attached to the pending probe
+		assertFalse(fastProber.probe(address, callback));
+		//Both callbacks must be notified
+		assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+		assertFalse(callback.alive.get());
+		fastProber.stopService();
+	}
+	
+	@AfterClass
+	public static void setUpAfterClass() throws Exception {
+		mr.stopService();
+		prober.stopService();
+		sender.stopService();
+		executor.shutdown();
+	}
+	
+	private static class RecordingCallback implements LivenessCallback {
+		
+		final CountDownLatch latch;
+		final AtomicBoolean alive = new AtomicBoolean();
+		
+		RecordingCallback(int expectedCalls) {
+			latch = new CountDownLatch(expectedCalls);
+		}
+
+		@Override
+		public void nodeAlive(InetAddress address) {
+			alive.set(true);
+			latch.countDown();
+		}
+
+		@Override
+		public void nodeUnreachable(InetAddress address) {
+			latch.countDown();
+		}
+	}
+
+}
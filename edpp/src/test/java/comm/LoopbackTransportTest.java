@@ -0,0 +1,162 @@
+package comm;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import comm.ProtocolMessage.Message;
+
+public class LoopbackTransportTest {
+
+	@Test
+	public void messageIsDeliveredWithTheAddressOfTheSender() throws InterruptedException {
+		LoopbackNetwork network = new LoopbackNetwork();
+		LoopbackTransport first = new LoopbackTransport(network);
+		LoopbackTransport second = new LoopbackTransport(network);
+		BlockingQueue<TransferableMessage> queue = new LinkedBlockingQueue<TransferableMessage>();
+		first.start(new LinkedBlockingQueue<TransferableMessage>(), null);
+		second.start(queue, null);
+		
+		assertNotEquals(first.getAddress(), second.getAddress());
+		Message m = MessageBuilder.buildNextMessage("testNode", "testSession", 1, 2, 1.0);
+		first.sendReliably(m, second.getAddress());
+		
+		TransferableMessage tm = queue.poll(1, TimeUnit.SECONDS);
+		assertEquals(m, tm.getMessage());
+		assertEquals(first.getAddress(), tm.getAddress());
+		assertTrue(tm.getSendReliably());
+		network.shutdown();
+	}
+	
+	@Test
+	public void onlyBestEffortMessagesAreLost() throws InterruptedException {
+		//Every best-effort message is lost in this network
+		LoopbackNetwork network = new LoopbackNetwork(0, 1.0);
+		LoopbackTransport first = new LoopbackTransport(network);
+		LoopbackTransport second = new LoopbackTransport(network);
+		BlockingQueue<TransferableMessage> queue = new LinkedBlockingQueue<TransferableMessage>();
+		first.start(new LinkedBlockingQueue<TransferableMessage>(), null);
+		second.start(queue, null);
+		
+		Message lost = MessageBuilder.buildNextMessage("testNode", "testSession", 1, 2, 1.0);
+		Message delivered = MessageBuilder.buildNextMessage("testNode", "testSession", 1, 3, 1.0);
+		first.sendBestEffort(lost, second.getAddress());
+		first.sendReliably(delivered, second.getAddress());
+		
+		assertEquals(delivered, queue.poll(1, TimeUnit.SECONDS).getMessage());
+		assertNull(queue.poll(100, TimeUnit.MILLISECONDS));
+		network.shutdown();
+	}
+	
+	@Test
+	public void messageIsDelayedByTheLatencyOfTheNetwork() throws InterruptedException {
+		LoopbackNetwork network = new LoopbackNetwork(300, 0);
+		LoopbackTransport first = new LoopbackTransport(network);
+		LoopbackTransport second = new LoopbackTransport(network);
+		BlockingQueue<TransferableMessage> queue = new LinkedBlockingQueue<TransferableMessage>();
+		first.start(new LinkedBlockingQueue<TransferableMessage>(), null);
+		second.start(queue, null);
+		
+		Message m = MessageBuilder.buildNextMessage("testNode", "testSession", 1, 2, 1.0);
+		first.sendBestEffort(m, second.getAddress());
+		
+		assertNull(queue.poll(100, TimeUnit.MILLISECONDS));
+		assertEquals(m, queue.poll(2, TimeUnit.SECONDS).getMessage());
+		network.shutdown();
+	}
+	
+	@Test
+	public void livenessOfNodesIsReported() throws InterruptedException {
+		LoopbackNetwork network = new LoopbackNetwork();
+		LoopbackTransport first = new LoopbackTransport(network);
+		LoopbackTransport second = new LoopbackTransport(network);
+		first.start(new LinkedBlockingQueue<TransferableMessage>(), null);
+		second.start(new LinkedBlockingQueue<TransferableMessage>(), null);
+		
+		RecordingCallback alive = new RecordingCallback();
+		first.probeLiveness(second.getAddress(), alive);
+		assertTrue(alive.latch.await(1, TimeUnit.SECONDS));
+		assertTrue(alive.alive.get());
+		
+		//A stopped transport no longer replies
+		second.stop();
+		RecordingCallback unreachable = new RecordingCallback();
+		first.probeLiveness(second.getAddress(), unreachable);
+		assertTrue(unreachable.latch.await(1, TimeUnit.SECONDS));
+		assertFalse(unreachable.alive.get());
+		network.shutdown();
+	}
+	
+	private static class RecordingCallback implements LivenessCallback {
+		
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicBoolean alive = new AtomicBoolean();
+
+		@Override
+		public void nodeAlive(InetAddress address) {
+			alive.set(true);
+			latch.countDown();
+		}
+
+		@Override
+		public void nodeUnreachable(InetAddress address) {
+			latch.countDown();
+		}
+	}
+
+	@Test
+	public void fullQueueOfTheReceiverNeverBlocksTheSender() throws InterruptedException {
+		LoopbackNetwork network = new LoopbackNetwork();
+		LoopbackTransport first = new LoopbackTransport(network);
+		LoopbackTransport second = new LoopbackTransport(network);
+		BlockingQueue<TransferableMessage> full = new BoundedMessageQueue(1,
+				BoundedMessageQueue.OverflowPolicy.BLOCK);
+		first.start(new LinkedBlockingQueue<TransferableMessage>(), null);
+		second.start(full, null);
+		
+		Message m = MessageBuilder.buildInitMessage("testNode", "testSession", 1, 1, 2, 1.0);
+		first.sendReliably(m, second.getAddress());
+		// the message is delivered by the thread of the sender, since there is no latency
+		first.sendReliably(m, second.getAddress());
+		assertEquals(1, full.size());
+		network.shutdown();
+	}
+
+	@Test
+	public void reliableMessagesWaitForRoomInTheQueueOfTheReceiver() throws InterruptedException {
+		LoopbackNetwork network = new LoopbackNetwork();
+		LoopbackTransport first = new LoopbackTransport(network);
+		LoopbackTransport second = new LoopbackTransport(network);
+		BlockingQueue<TransferableMessage> full = new BoundedMessageQueue(1,
+				BoundedMessageQueue.OverflowPolicy.BLOCK);
+		first.start(new LinkedBlockingQueue<TransferableMessage>(), null);
+		second.start(full, null);
+		
+		for (int i = 1; i <= 3; i++) {
+			first.sendReliably(MessageBuilder.buildInitMessage("testNode", "testSession", i, 3, 2, 1.0),
+					second.getAddress());
+		}
+		// a best-effort message cannot overtake the parked ones, so it is dropped
+		first.sendBestEffort(MessageBuilder.buildNextMessage("testNode", "testSession", 1, 2, 1.0),
+				second.getAddress());
+		assertEquals(2, second.getDeferredCount());
+		assertEquals(1, second.getDroppedCount());
+		
+		// the parked messages are delivered in order once there is room
+		for (int i = 1; i <= 3; i++) {
+			TransferableMessage tm = full.poll(1, TimeUnit.SECONDS);
+			assertNotNull(tm);
+			assertEquals(i, tm.getMessage().getExecution());
+		}
+		assertNull(full.poll(100, TimeUnit.MILLISECONDS));
+		network.shutdown();
+	}
+
+}
@@ -2,6 +2,7 @@ package comm;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -9,6 +10,8 @@ import java.util.Set;
 import org.apache.commons.lang.ArrayUtils;
 import org.junit.Test;
 
+import com.google.protobuf.ByteString;
+
 import comm.ProtocolMessage.Message;
 import comm.ProtocolMessage.Message.MessageType;
 import comm.ProtocolMessage.SessionEvent.EventType;
@@ -93,6 +96,86 @@ public class MessageBuilderTest {
 		assertEquals(0.0, m.getVal(), 0.0);
 	}
 	
+	@Test
+	public void batchMessageIsBuiltAndUnpackedProperly() {
+		List<Message> next = new ArrayList<Message>();
+		next.add(MessageBuilder.buildNextMessage("testNode", "sessionOne", 1, 4, 10.0));
+		next.add(MessageBuilder.buildNextMessage("testNode", "sessionTwo", 2, 5, 11.0));
+		Message m = MessageBuilder.buildBatchMessage("testNode", next);
+		
+		assertEquals(MessageType.BATCH, m.getType());
+		assertEquals("testNode", m.getNodeId());
+		assertEquals(2, m.getBatchedValuesCount());
+		
+		//Unpacking must give back the original NEXT messages
+		assertEquals(next, MessageBuilder.unpackBatchMessage(m));
+	}
+	
+	@Test
+	public void binaryIdsAreSmallerAndDecodedProperly() throws Exception {
+		FakeNode fn = new FakeNode();
+		Session s = new Session(fn, 2, 3);
+		Message text = MessageBuilder.buildNextMessage(fn.getLocalId().toString(),
+				s.getSessionId(), 1, 4, 10.0);
+		Message binary = MessageBuilder.buildNextMessage(fn.getLocalId(),
+				s.getSessionUuid(), 1, 4, 10.0);
+		
+		assertTrue(binary.getSerializedSize() < text.getSerializedSize());
+		
+		//Both forms must give back the same ids
+		assertEquals(fn.getLocalId(), MessageBuilder.getNodeId(binary));
+		assertEquals(fn.getLocalId(), MessageBuilder.getNodeId(text));
+		assertEquals(s.getSessionId(), MessageBuilder.getSessionId(binary));
+		assertEquals(s.getSessionId(), MessageBuilder.getSessionId(text));
+		assertEquals(s.getSessionUuid(), MessageBuilder.getSessionUuid(binary));
+		assertEquals(s.getSessionUuid(), MessageBuilder.getSessionUuid(text));
+		
+		//Batching must preserve the binary form of the ids
+		List<Message> next = new ArrayList<Message>();
+		next.add(binary);
+		next.add(binary);
+		Message batch = MessageBuilder.buildBatchMessage(next);
+		assertEquals(next, MessageBuilder.unpackBatchMessage(batch));
+	}
+	
+	@Test
+	public void messagesWithMalformedIdsAreDetected() throws Exception {
+		FakeNode fn = new FakeNode();
+		Session s = new Session(fn, 2, 3);
+		Message m = MessageBuilder.buildNextMessage(fn.getLocalId(),
+				s.getSessionUuid(), 1, 4, 10.0);
+		assertTrue(MessageBuilder.hasWellFormedIds(m));
+		
+		//A session id shorter than a UUID cannot be decoded
+		Message shortSession = m.toBuilder()
+				.setRawSession(ByteString.copyFrom(new byte[] { 1, 2, 3 })).build();
+		assertFalse(MessageBuilder.hasWellFormedIds(shortSession));
+		try {
+			MessageBuilder.getSessionId(shortSession);
+			fail("A short session id must not be decoded");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+		
+		//So is a session id in its string form that is not a UUID
+		assertFalse(MessageBuilder.hasWellFormedIds(MessageBuilder
+				.buildNextMessage("testNode", "testSession", 1, 4, 10.0)));
+		
+		//Empty and oversized node ids are rejected as well
+		assertFalse(MessageBuilder.hasWellFormedIds(m.toBuilder()
+				.setRawNodeId(ByteString.EMPTY).build()));
+		assertFalse(MessageBuilder.hasWellFormedIds(m.toBuilder()
+				.setRawNodeId(ByteString.copyFrom(
+						new byte[MessageBuilder.MAX_NODE_ID_LENGTH + 1])).build()));
+		
+		//The values of a BATCH message are checked one by one
+		List<Message> next = new ArrayList<Message>();
+		next.add(m);
+		next.add(shortSession);
+		assertFalse(MessageBuilder.hasWellFormedIds(MessageBuilder
+				.buildBatchMessage(next)));
+	}
+	
 	@Test
 	public void initialSessionEventIsConstructedProperly() throws Exception {
 		FakeNode fn = new FakeNode();
@@ -11,6 +11,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -39,6 +40,15 @@ public class MessageReceiverTest {
 		});
 		mr = new MessageReceiver(queue);
 		executor.execute(mr);
+		// wait until the receiver starts accepting connections
+		for (int i = 0; i < 50; i++) {
+			try {
+				new Socket(InetAddress.getLocalHost(), ProtocolController.PROTOCOL_PORT).close();
+				break;
+			} catch (IOException e) {
+				Thread.sleep(100);
+			}
+		}
 	}
 
 	@Test
@@ -49,12 +59,140 @@ public class MessageReceiverTest {
 				.setRound(200)
 				.build();
 		Socket s = new Socket(InetAddress.getLocalHost(), ProtocolController.PROTOCOL_PORT);
-		testMessage.writeTo(s.getOutputStream());
+		testMessage.writeDelimitedTo(s.getOutputStream());
 		s.close();
 		TransferableMessage receivedMessage = queue.take();
 		assertEquals(testMessage, receivedMessage.getMessage());
 	}
 	
+	@Test
+	public void severalMessagesAreDeliveredOverOneConnection() throws UnknownHostException, IOException, InterruptedException {
+		Socket s = new Socket(InetAddress.getLocalHost(), ProtocolController.PROTOCOL_PORT);
+		for (int i = 0; i < 3; i++) {
+			Message testMessage = Message.newBuilder()
+					.setType(MessageType.NEXT)
+					.setExecution(1)
+					.setRound(i)
+					.build();
+			testMessage.writeDelimitedTo(s.getOutputStream());
+		}
+		s.getOutputStream().flush();
+		for (int i = 0; i < 3; i++) {
+			TransferableMessage receivedMessage = queue.take();
+			assertEquals(i, receivedMessage.getMessage().getRound());
+		}
+		s.close();
+	}
+	
+	@Test
+	public void stalledConnectionDoesNotBlockOtherConnections() throws UnknownHostException, IOException, InterruptedException {
+		// open a connection and only send the length prefix of a message
+		Socket stalled = new Socket(InetAddress.getLocalHost(), ProtocolController.PROTOCOL_PORT);
+		stalled.getOutputStream().write(20);
+		stalled.getOutputStream().flush();
+		
+		Message testMessage = Message.newBuilder()
+				.setType(MessageType.NEW)
+				.setExecution(7)
+				.setRound(8)
+				.build();
+		Socket s = new Socket(InetAddress.getLocalHost(), ProtocolController.PROTOCOL_PORT);
+		testMessage.writeDelimitedTo(s.getOutputStream());
+		TransferableMessage receivedMessage = queue.poll(5, TimeUnit.SECONDS);
+		assertNotNull(receivedMessage);
+		assertEquals(testMessage, receivedMessage.getMessage());
+		s.close();
+		stalled.close();
+	}
+	
+	@Test
+	public void fullQueuePausesTheConnectionInsteadOfDroppingMessages() throws Exception {
+		BlockingQueue<TransferableMessage> small = new BoundedMessageQueue(1,
+				BoundedMessageQueue.OverflowPolicy.BLOCK);
+		int port = ProtocolController.PROTOCOL_PORT + 8;
+		MessageReceiver receiver = new MessageReceiver(small,
+				MessageReceiver.DEFAULT_BACKLOG, port);
+		executor.execute(receiver);
+		Socket s = null;
+		for (int i = 0; i < 50 && s == null; i++) {
+			try {
+				s = new Socket(InetAddress.getLocalHost(), port);
+			} catch (IOException e) {
+				Thread.sleep(100);
+			}
+		}
+		assertNotNull(s);
+		for (int i = 0; i < 5; i++) {
+			Message.newBuilder().setType(MessageType.INIT).setExecution(1)
+					.setRound(i).build().writeDelimitedTo(s.getOutputStream());
+		}
+		s.getOutputStream().flush();
+		// every message is delivered in order, although only one fits at a time
+		for (int i = 0; i < 5; i++) {
+			TransferableMessage receivedMessage = small.poll(5, TimeUnit.SECONDS);
+			assertNotNull(receivedMessage);
+			assertEquals(i, receivedMessage.getMessage().getRound());
+		}
+		assertTrue(receiver.getStalledCount() > 0);
+		s.close();
+		receiver.stopService();
+	}
+	
+	@Test
+	public void failureOfOneConnectionDoesNotAffectTheOthers() throws Exception {
+		// a queue that rejects the messages of round 13
+		BlockingQueue<TransferableMessage> picky = new LinkedBlockingQueue<TransferableMessage>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean offer(TransferableMessage m) {
+				if (m.getMessage().getRound() == 13) {
+					throw new IllegalStateException("Rejected");
+				}
+				return super.offer(m);
+			}
+		};
+		int port = ProtocolController.PROTOCOL_PORT + 7;
+		MessageReceiver receiver = new MessageReceiver(picky,
+				MessageReceiver.DEFAULT_BACKLOG, port);
+		executor.execute(receiver);
+		Socket open = null;
+		for (int i = 0; i < 50 && open == null; i++) {
+			try {
+				open = new Socket(InetAddress.getLocalHost(), port);
+			} catch (IOException e) {
+				Thread.sleep(100);
+			}
+		}
+		assertNotNull(open);
+		Message.newBuilder().setType(MessageType.NEXT).setExecution(1)
+				.setRound(1).build().writeDelimitedTo(open.getOutputStream());
+		assertEquals(1, picky.poll(5, TimeUnit.SECONDS).getMessage().getRound());
+
+		Socket failing = new Socket(InetAddress.getLocalHost(), port);
+		Message.newBuilder().setType(MessageType.NEXT).setExecution(1)
+				.setRound(13).build().writeDelimitedTo(failing.getOutputStream());
+		// only the failed connection is closed
+		failing.setSoTimeout(5000);
+		assertEquals(-1, failing.getInputStream().read());
+
+		Message.newBuilder().setType(MessageType.NEXT).setExecution(1)
+				.setRound(2).build().writeDelimitedTo(open.getOutputStream());
+		TransferableMessage received = picky.poll(5, TimeUnit.SECONDS);
+		assertNotNull(received);
+		assertEquals(2, received.getMessage().getRound());
+		Socket later = new Socket(InetAddress.getLocalHost(), port);
+		Message.newBuilder().setType(MessageType.NEXT).setExecution(1)
+				.setRound(3).build().writeDelimitedTo(later.getOutputStream());
+		received = picky.poll(5, TimeUnit.SECONDS);
+		assertNotNull(received);
+		assertEquals(3, received.getMessage().getRound());
+		open.close();
+		failing.close();
+		later.close();
+		receiver.stopService();
+	}
+	
 	@AfterClass
 	public static void setUpAfterClass() throws Exception {
 		mr.stopService();
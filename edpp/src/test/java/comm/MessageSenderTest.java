@@ -2,16 +2,26 @@ package comm;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 //import java.io.PrintWriter;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -20,6 +30,10 @@ import org.junit.Test;
 import comm.ProtocolMessage.Message;
 import comm.ProtocolMessage.Message.MessageType;
 import core.ProtocolController;
+import core.RoundAdvancer;
+import domain.Neighbor;
+import domain.Session;
+import domain.network.FakeNode;
 
 public class MessageSenderTest {
 
@@ -55,12 +69,23 @@ public class MessageSenderTest {
 		queue.put(m);
 		
 		incomingSocket = ss.accept();
-		Message pm = Message.parseFrom(
+		Message pm = Message.parseDelimitedFrom(
+				incomingSocket.getInputStream());
+		
+		// A second message should reuse the same connection
+		Message secondMessage = Message.newBuilder()
+				.setType(MessageType.NEW)
+				.setExecution(101)
+				.setRound(201)
+				.build();
+		queue.put(new TransferableMessage(secondMessage, InetAddress.getLocalHost(),true));
+		Message second = Message.parseDelimitedFrom(
 				incomingSocket.getInputStream());
 		incomingSocket.close();
 		ss.close();
 		
 		assertEquals(testMessage, pm);
+		assertEquals(secondMessage, second);
 	}
 	
 	
@@ -97,6 +122,236 @@ public class MessageSenderTest {
 		assertTrue(MessageSender.makeLivenessCheck(new TransferableMessage(m, InetAddress.getLocalHost())));
 	}*/
 	
+	@Test
+	public void datagramsAreSentThroughTheSameChannel() throws IOException, InterruptedException {
+		DatagramSocket ds = new DatagramSocket(ProtocolController.PROTOCOL_PORT);
+		ds.setSoTimeout(5000);
+		// GOSSIP messages are never coalesced, so each one is sent in its own datagram
+		Message testMessage = Message.newBuilder()
+				.setType(MessageType.GOSSIP)
+				.setExecution(1)
+				.setRound(2)
+				.build();
+		queue.put(new TransferableMessage(testMessage, InetAddress.getLocalHost(), false));
+		queue.put(new TransferableMessage(testMessage, InetAddress.getLocalHost(), false));
+		
+		DatagramPacket first = new DatagramPacket(new byte[2048], 2048);
+		ds.receive(first);
+		DatagramPacket second = new DatagramPacket(new byte[2048], 2048);
+		ds.receive(second);
+		ds.close();
+		
+		Message received = Message.parseDelimitedFrom(new ByteArrayInputStream(first.getData()));
+		assertEquals(testMessage, received);
+		// both datagrams should come from the port the channel is bound to
+		assertEquals(first.getPort(), second.getPort());
+	}
+	
+	@Test
+	public void multiDestinationMessageIsSentToEveryNode() throws IOException {
+		DatagramSocket ds = new DatagramSocket(ProtocolController.PROTOCOL_PORT);
+		ds.setSoTimeout(5000);
+		Message testMessage = MessageBuilder.buildGossipMessage("testNode", "testSession", 1, new double[] {1.0});
+		List<InetAddress> addresses = new ArrayList<InetAddress>();
+		addresses.add(InetAddress.getByName("127.0.0.1"));
+		addresses.add(InetAddress.getByName("127.0.0.2"));
+		queue.add(new TransferableMessage(testMessage, addresses, false));
+		
+		DatagramPacket first = new DatagramPacket(new byte[2048], 2048);
+		ds.receive(first);
+		DatagramPacket second = new DatagramPacket(new byte[2048], 2048);
+		ds.receive(second);
+		ds.close();
+		
+		assertEquals(testMessage, Message.parseDelimitedFrom(new ByteArrayInputStream(first.getData())));
+		assertEquals(testMessage, Message.parseDelimitedFrom(new ByteArrayInputStream(second.getData())));
+	}
+	
+	@Test
+	public void nextMessagesToTheSameNodeAreCoalesced() throws IOException {
+		InetAddress first = InetAddress.getByName("192.168.0.1");
+		InetAddress second = InetAddress.getByName("192.168.0.2");
+		List<TransferableMessage> pending = new ArrayList<TransferableMessage>();
+		for (int i = 0; i < MessageSender.MAX_BATCH_SIZE + 1; i++) {
+			Message next = MessageBuilder.buildNextMessage("testNode", "testSession", 1, i, i);
+			pending.add(new TransferableMessage(next, first, false));
+		}
+		pending.add(new TransferableMessage(MessageBuilder.buildNextMessage("testNode", "testSession", 1, 2, 1.0), second, false));
+		Message reliable = MessageBuilder.buildNextMessage("testNode", "testSession", 1, 3, 1.0);
+		pending.add(new TransferableMessage(reliable, first, true));
+		
+		List<TransferableMessage> toSend = MessageSender.coalesceNextMessages(pending);
+		
+		//The reliable message is left untouched, the values for the first node
+		//need two batches and the single value for the second node is sent as is
+		assertEquals(4, toSend.size());
+		assertEquals(reliable, toSend.get(0).getMessage());
+		assertEquals(MessageType.BATCH, toSend.get(1).getMessage().getType());
+		assertEquals(MessageSender.MAX_BATCH_SIZE, toSend.get(1).getMessage().getBatchedValuesCount());
+		assertEquals(first, toSend.get(1).getAddress());
+		assertEquals(MessageType.NEXT, toSend.get(2).getMessage().getType());
+		assertEquals(first, toSend.get(2).getAddress());
+		assertEquals(MessageType.NEXT, toSend.get(3).getMessage().getType());
+		assertEquals(second, toSend.get(3).getAddress());
+	}
+	
+	@Test
+	public void nextMessagesOfTheRoundAdvancerAreCoalesced() throws Exception {
+		FakeNode localNode = new FakeNode();
+		BlockingQueue<TransferableMessage> outgoing = new LinkedBlockingQueue<TransferableMessage>();
+		RoundAdvancer advancer = new RoundAdvancer(outgoing, localNode);
+		// two Executions of different Sessions send their values to the same out-neighbors
+		Session first = new Session(localNode, 1, 2);
+		Session second = new Session(localNode, 1, 2);
+		advancer.sendOutNextMessage(first, first.createNewExecution());
+		advancer.sendOutNextMessage(second, second.createNewExecution());
+		List<TransferableMessage> pending = new ArrayList<TransferableMessage>();
+		outgoing.drainTo(pending);
+		
+		List<TransferableMessage> toSend = MessageSender.coalesceNextMessages(pending);
+		
+		//Every out-neighbor gets a single batch with the values of both Executions
+		Set<InetAddress> addresses = new HashSet<InetAddress>();
+		for (Neighbor n : localNode.getOutNeighbors()) {
+			addresses.add(n.getAddress());
+		}
+		assertEquals(addresses.size(), toSend.size());
+		for (TransferableMessage tm : toSend) {
+			assertFalse(tm.hasMultipleDestinations());
+			assertTrue(addresses.remove(tm.getAddress()));
+			assertEquals(MessageType.BATCH, tm.getMessage().getType());
+			assertEquals(2, tm.getMessage().getBatchedValuesCount());
+		}
+	}
+	
+	@Test
+	public void nextMessagesQueuedOneAtATimeAreCoalesced() throws Exception {
+		final InetAddress local = InetAddress.getByName("127.0.0.1");
+		DatagramSocket ds = new DatagramSocket(0, local);
+		ds.setSoTimeout(5000);
+		final BlockingQueue<TransferableMessage> outgoing = new LinkedBlockingQueue<TransferableMessage>();
+		MessageSender sender = new MessageSender(outgoing, ds.getLocalPort(), 2, 3, 10000, 200);
+		executor.execute(sender);
+		// the values of a tick are queued by another thread with small gaps between them
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < 5; i++) {
+						Message next = MessageBuilder.buildNextMessage("testNode", "testSession", i, 2, i);
+						outgoing.put(new TransferableMessage(next, local, false));
+						Thread.sleep(10);
+					}
+				} catch (InterruptedException e) {
+					
+				}
+			}
+		});
+		producer.start();
+		
+		DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
+		ds.receive(packet);
+		ds.close();
+		sender.stopService();
+		
+		Message received = Message.parseDelimitedFrom(new ByteArrayInputStream(packet.getData()));
+		assertEquals(MessageType.BATCH, received.getType());
+		assertEquals(5, received.getBatchedValuesCount());
+	}
+	
+	@Test
+	public void datagramIsSentWithoutQueueing() throws IOException {
+		DatagramSocket ds = new DatagramSocket(ProtocolController.PROTOCOL_PORT);
+		ds.setSoTimeout(5000);
+		Message m = MessageBuilder.buildLivenessMessage(7);
+		MessageSender sender = new MessageSender(new LinkedBlockingQueue<TransferableMessage>());
+		sender.sendDatagram(new TransferableMessage(m, InetAddress.getLocalHost(), false));
+		
+		DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
+		ds.receive(packet);
+		sender.stopService();
+		ds.close();
+		
+		Message received = Message.parseDelimitedFrom(new ByteArrayInputStream(packet.getData()));
+		assertEquals(m, received);
+	}
+	
+	@Test
+	public void undeliverableMessageIsAbandoned() throws IOException, InterruptedException {
+		// find a port no node listens to
+		ServerSocket ss = new ServerSocket(0);
+		int port = ss.getLocalPort();
+		ss.close();
+		MessageSender sender = new MessageSender(new LinkedBlockingQueue<TransferableMessage>(), port, 2, 3, 10000);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicInteger attempts = new AtomicInteger();
+		sender.addDeadLetterListener(new DeadLetterListener() {
+			@Override
+			public void messageAbandoned(TransferableMessage tm, int a) {
+				attempts.set(a);
+				latch.countDown();
+			}
+		});
+		
+		Message m = MessageBuilder.buildNextMessage("testNode", "testSession", 1, 2, 1.0);
+		sender.submit(new TransferableMessage(m, InetAddress.getByName("127.0.0.1"), true));
+		
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(3, attempts.get());
+		assertEquals(0, sender.getPendingMessages());
+		sender.stopService();
+	}
+	
+	@Test
+	public void unreachableNodeDoesNotDelayOtherNodes() throws IOException {
+		InetAddress local = InetAddress.getByName("127.0.0.1");
+		ServerSocket ss = new ServerSocket(0, 50, local);
+		ss.setSoTimeout(3000);
+		MessageSender sender = new MessageSender(new LinkedBlockingQueue<TransferableMessage>(),
+				ss.getLocalPort(), 2, 3, 10000);
+		
+		Message m = MessageBuilder.buildNextMessage("testNode", "testSession", 1, 2, 1.0);
+		// no node can be reached at this address
+		sender.submit(new TransferableMessage(m, InetAddress.getByName("192.0.2.1"), true));
+		sender.submit(new TransferableMessage(m, local, true));
+		
+		Socket incomingSocket = ss.accept();
+		Message received = Message.parseDelimitedFrom(incomingSocket.getInputStream());
+		assertEquals(m, received);
+		incomingSocket.close();
+		ss.close();
+		sender.stopService();
+	}
+	
+	@Test
+	public void unreachableNodesDoNotHoldTheWorkers() throws IOException {
+		InetAddress local = InetAddress.getByName("127.0.0.1");
+		ServerSocket ss = new ServerSocket(0, 50, local);
+		ss.setSoTimeout(3000);
+		DatagramSocket ds = new DatagramSocket(ss.getLocalPort(), local);
+		ds.setSoTimeout(3000);
+		MessageSender sender = new MessageSender(new LinkedBlockingQueue<TransferableMessage>(),
+				ss.getLocalPort(), 2, 3, 10000);
+		
+		Message m = MessageBuilder.buildNextMessage("testNode", "testSession", 1, 2, 1.0);
+		// more unreachable nodes than workers
+		for (int i = 1; i <= 4; i++) {
+			sender.submit(new TransferableMessage(m, InetAddress.getByName("192.0.2." + i), true));
+		}
+		sender.submit(new TransferableMessage(m, local, false));
+		sender.submit(new TransferableMessage(m, local, true));
+		
+		DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
+		ds.receive(packet);
+		assertEquals(m, Message.parseDelimitedFrom(new ByteArrayInputStream(packet.getData())));
+		Socket incomingSocket = ss.accept();
+		assertEquals(m, Message.parseDelimitedFrom(incomingSocket.getInputStream()));
+		incomingSocket.close();
+		ds.close();
+		ss.close();
+		sender.stopService();
+	}
+	
 	@AfterClass
 	public static void setUpAfterClass() throws Exception {
 		executor.shutdown();
@@ -2,8 +2,12 @@ package comm;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -20,5 +24,41 @@ public class TransferableMessageTest {
 		assertEquals(m, tm.getMessage());
 		assertEquals(address, tm.getAddress());
 	}
+	
+	@Test
+	public void copiesForEachDestinationShareTheSerializedMessage() throws IOException {
+		Message m = MessageBuilder.buildGossipMessage("testNode", "testSession", 1, new double[] {1.0, 2.0});
+		List<InetAddress> addresses = Arrays.asList(InetAddress.getByName("192.168.0.1"),
+				InetAddress.getByName("192.168.0.2"));
+		TransferableMessage tm = new TransferableMessage(m, addresses, false);
+		
+		assertTrue(tm.hasMultipleDestinations());
+		assertEquals(addresses, tm.getAddresses());
+		
+		List<TransferableMessage> copies = tm.split();
+		assertEquals(2, copies.size());
+		for (int i = 0; i < copies.size(); i++) {
+			TransferableMessage copy = copies.get(i);
+			assertFalse(copy.hasMultipleDestinations());
+			assertEquals(addresses.get(i), copy.getAddress());
+			assertFalse(copy.getSendReliably());
+			//The message must only be serialized once for all the copies
+			assertSame(tm.getEncodedMessage(), copy.getEncodedMessage());
+		}
+		
+		Message decoded = Message.parseDelimitedFrom(new ByteArrayInputStream(tm.getEncodedMessage()));
+		assertEquals(m, decoded);
+	}
+
+	@Test
+	public void messageForASingleAddressHasASingleDestination() throws UnknownHostException {
+		Message m = MessageBuilder.buildNextMessage("testNode", "testSession", 1, 2, 1.0);
+		InetAddress address = InetAddress.getByName("192.168.0.1");
+		TransferableMessage tm = new TransferableMessage(m, Arrays.asList(address), false);
+		
+		assertFalse(tm.hasMultipleDestinations());
+		assertEquals(address, tm.getAddress());
+		assertEquals(Arrays.asList(address), tm.getAddresses());
+	}
 
 }
@@ -13,6 +13,7 @@ import org.junit.Test;
 import domain.Execution;
 import domain.Id;
 import domain.Phase;
+import domain.RttEstimator;
 import domain.TimedNeighbor;
 import domain.network.FakeNode;
 
@@ -329,8 +330,8 @@ public class ExecutionTest {
 
 		execution.computeRealizationMatrix();
 		execution.setPhase(Phase.GOSSIP);
-		execution.addGossipEigenvalues(id1.toString(), newEigenvalues);
-		execution.addGossipEigenvalues(id2.toString(), newEigenvalues);
+		execution.addGossipEigenvalues(id1, newEigenvalues);
+		execution.addGossipEigenvalues(id2, newEigenvalues);
 
 		// The eigenvalues should be the new ones, since we have 2 times these
 		// and only one time the expected
@@ -339,7 +340,7 @@ public class ExecutionTest {
 
 		// Now the second remote nodes has the expected eigenvalues,
 		// thus the median should be the expected one
-		execution.addGossipEigenvalues(id2.toString(), expectedEigenvals);
+		execution.addGossipEigenvalues(id2, expectedEigenvals);
 		median = execution.computeMedianEigenvalues();
 		assertArrayEquals(expectedEigenvals, median, 0.05);
 	}
@@ -368,4 +369,32 @@ public class ExecutionTest {
 		assertTrue(execution.roundIsOver());
 	}
 
+	@Test
+	public void valuesArrivedBeforeTheRoundAreNotResponseTimeSamples()
+			throws Exception {
+		RttEstimator rtt = new RttEstimator();
+		execution = new Execution(1, NUM_OF_ROUNDS, localNode, null, rtt);
+		byte[] early = { 1, 2, 3, 4, 6, 7, 8, 9, 0 };
+		byte[] late = { 0, 9, 8, 7, 6, 5, 4, 3, 2, 1 };
+		InetAddress address = InetAddress.getLocalHost();
+		TimedNeighbor tn1 = new TimedNeighbor(early, address);
+		TimedNeighbor tn2 = new TimedNeighbor(late, address);
+		execution.addInNeighbor(tn1);
+		execution.addInNeighbor(tn2);
+		execution.setRound(2);
+
+		//The value for round 3 arrives while the local node is in round 2
+		execution.addValToNextRound(tn1.getId(), 1.0, 3);
+		Thread.sleep(20);
+		execution.resetTimers();
+		execution.setRound(3);
+		Thread.sleep(20);
+		execution.addValToNextRound(tn2.getId(), 1.0, 3);
+		execution.setProperTimersToInf();
+
+		assertTrue(execution.roundIsOver());
+		assertEquals(-1, rtt.getSmoothedRtt(tn1.getId()), 0.0);
+		assertTrue(rtt.getSmoothedRtt(tn2.getId()) >= 20);
+	}
+
 }
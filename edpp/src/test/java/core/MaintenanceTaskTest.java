@@ -2,10 +2,21 @@ package core;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.After;
 import org.junit.Before;
@@ -14,7 +25,13 @@ import org.junit.Test;
 
 import storage.Database;
 import storage.FakeDatabase;
+import comm.ContactTable;
+import comm.LoopbackNetwork;
+import comm.LoopbackTransport;
+import comm.MessageBuilder;
 import comm.TransferableMessage;
+import comm.ProtocolMessage.Message;
+import comm.ProtocolMessage.Message.MessageType;
 import domain.Execution;
 import domain.Phase;
 import domain.Session;
@@ -24,8 +41,10 @@ public class MaintenanceTaskTest {
 
 	static BlockingQueue<TransferableMessage> outQueue;
 	FakeNode localNode;
-	Map<String, Session> sessions;
+	Map<UUID, Session> sessions;
 	Database db;
+	LoopbackNetwork network;
+	LoopbackTransport transport;
 	
 	@BeforeClass
 	public static void setUpBeforeClass() throws Exception {
@@ -36,11 +55,14 @@ public class MaintenanceTaskTest {
 	public void setUp() throws Exception {
 		db = new FakeDatabase();
 		localNode = new FakeNode();
-		sessions = new HashMap<String, Session>();
+		sessions = new HashMap<UUID, Session>();
+		network = new LoopbackNetwork();
+		transport = new LoopbackTransport(network);
 	}
 	
 	@After
 	public void tearDown() throws Exception {
+		network.shutdown();
 		outQueue.clear();
 	}
 
@@ -48,15 +70,15 @@ public class MaintenanceTaskTest {
 	public void initPhasePassesWhenNoRemainingTimeIsLeft() throws InterruptedException {
 		Session s = new Session(localNode, 1, 2);
 		Execution e = s.createNewExecution();
-		sessions.put(s.getSessionId(), s);
-		MaintenanceTask mt = new MaintenanceTask(sessions, outQueue, localNode, db);
+		sessions.put(s.getSessionUuid(), s);
+		MaintenanceTask mt = new MaintenanceTask(sessions, outQueue, localNode, db, transport);
 		assertTrue(e.remainingInitTime() > 0);
 		assertEquals(Phase.INIT, e.getPhase());
 		mt.run();
 		Thread.sleep(10000);
 		while(e.remainingInitTime()>0) {
 			System.out.println(e.remainingInitTime());
-			mt = new MaintenanceTask(sessions, outQueue, localNode, db);
+			mt = new MaintenanceTask(sessions, outQueue, localNode, db, transport);
 			mt.run();
 		}
 		// When the remaining INIT time is negative, the INIT phase is over
@@ -64,5 +86,61 @@ public class MaintenanceTaskTest {
 		mt.run();
 		assertNotEquals(Phase.INIT, e.getPhase());
 	}
-	
+
+	@Test
+	public void sessionsAreMaintainedInParallelInThePool() {
+		// a queue recording which thread sent the values of each Execution.
+		// Sending is slowed down, so that the tasks of the pool overlap
+		final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+		final Map<UUID, List<Integer>> order = new ConcurrentHashMap<UUID, List<Integer>>();
+		final AtomicBoolean outsideThePool = new AtomicBoolean();
+		BlockingQueue<TransferableMessage> recording = new LinkedBlockingQueue<TransferableMessage>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void put(TransferableMessage tm) throws InterruptedException {
+				Message m = tm.getMessage();
+				if (m.getType() == MessageType.NEXT) {
+					if (!(Thread.currentThread() instanceof ForkJoinWorkerThread)) {
+						outsideThePool.set(true);
+					}
+					threads.add(Thread.currentThread().getName());
+					order.get(MessageBuilder.getSessionUuid(m)).add(m.getExecution());
+					Thread.sleep(50);
+				}
+				super.put(tm);
+			}
+		};
+		Map<UUID, Session> concurrentSessions = new ConcurrentHashMap<UUID, Session>();
+		List<Execution> executions = new ArrayList<Execution>();
+		for (int i = 0; i < 4; i++) {
+			Session s = new Session(localNode, 3, 10);
+			for (int j = 0; j < 3; j++) {
+				Execution e = s.createNewExecution();
+				e.setPhase(Phase.DATA_EXCHANGE);
+				e.setRound(2);
+				executions.add(e);
+			}
+			concurrentSessions.put(s.getSessionUuid(), s);
+			order.put(s.getSessionUuid(), Collections.synchronizedList(new ArrayList<Integer>()));
+		}
+		ForkJoinPool pool = new ForkJoinPool(2);
+		MaintenanceTask mt = new MaintenanceTask(concurrentSessions, recording,
+				localNode, db, transport, new ContactTable(), pool);
+		mt.run();
+		// With no in-neighbors to wait for, the round of every Session must
+		// be over once the run returns
+		for (Execution e : executions) {
+			assertEquals(3, e.getCurrentRound());
+		}
+		pool.shutdown();
+		// The Sessions were maintained by different threads of the pool
+		assertFalse(outsideThePool.get());
+		assertTrue(threads.size() > 1);
+		// while the Executions of each Session were maintained in order
+		for (List<Integer> sent : order.values()) {
+			assertEquals(Arrays.asList(1, 2, 3), sent);
+		}
+	}
+
 }
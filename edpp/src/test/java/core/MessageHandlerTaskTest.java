@@ -4,8 +4,11 @@ import static org.junit.Assert.*;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -18,10 +21,12 @@ import storage.Database;
 import storage.FakeDatabase;
 import comm.MessageBuilder;
 import comm.ProtocolMessage.Message;
+import comm.ProtocolMessage.Message.MessageType;
 import comm.TransferableMessage;
 import domain.Execution;
 import domain.Phase;
 import domain.Session;
+import domain.TimedNeighbor;
 import domain.network.FakeNode;
 import domain.structure.TimedNeighborsTable;
 
@@ -29,7 +34,7 @@ public class MessageHandlerTaskTest {
 
 	static BlockingQueue<TransferableMessage> outQueue;
 	FakeNode localNode;
-	Map<String, Session> sessions;
+	Map<UUID, Session> sessions;
 	Database db;
 	
 	@BeforeClass
@@ -41,7 +46,7 @@ public class MessageHandlerTaskTest {
 	public void setUp() throws Exception {
 		db = new FakeDatabase();
 		localNode = new FakeNode();
-		sessions = new HashMap<String, Session>();
+		sessions = new HashMap<UUID, Session>();
 	}
 	
 	@After
@@ -63,7 +68,27 @@ public class MessageHandlerTaskTest {
 		Session s = createdSessions[0];
 		assertTrue(s.isInitiator());
 		assertEquals(1, s.getCurrentNumberOfExecutions());
-		assertEquals(localNode.getOutNeighbors().size(), outQueue.size());
+		//Every out-neighbor must be a destination of some INIT message
+		int destinations = 0;
+		for (TransferableMessage out : outQueue) {
+			destinations += out.getAddresses().size();
+		}
+		assertEquals(localNode.getOutNeighbors().size(), destinations);
+	}
+	
+	@Test
+	public void newSessionTakesTheIdChosenByTheRequester() throws UnknownHostException {
+		UUID id = UUID.randomUUID();
+		Message m = MessageBuilder.buildNewMessage(id, 1, 10);
+		InetAddress address = InetAddress.getByName("192.168.0.1");
+		TransferableMessage tm = new TransferableMessage(m, address);
+		
+		MessageHandlerTask mht = new MessageHandlerTask(tm, sessions, localNode, outQueue);
+		mht.run();
+		Session s = sessions.get(id);
+		assertNotNull(s);
+		assertTrue(s.isInitiator());
+		assertEquals(id, s.getSessionUuid());
 	}
 	
 	@Test
@@ -85,11 +110,30 @@ public class MessageHandlerTaskTest {
 		assertEquals(s.getSessionId(), testSession.getSessionId());
 	}
 	
+	@Test
+	public void lateInitMessageOfAnEvictedSessionIsDropped() throws UnknownHostException {
+		Session s =  new Session(localNode, 1, 2);
+		sessions.put(s.getSessionUuid(), s);
+		SessionEvictor evictor = new SessionEvictor(0, 10);
+		assertEquals(1, evictor.evict(sessions).size());
+		Message m = MessageBuilder.buildInitMessage("remoteNode", s.getSessionId(), 1, 1, 2, 1);
+		InetAddress address = InetAddress.getByName("192.168.0.1");
+		TransferableMessage tm = new TransferableMessage(m, address);
+		
+		MessageHandlerTask mht = new MessageHandlerTask(tm, new HandlerContext(
+				sessions, localNode, outQueue).setEvictor(evictor));
+		mht.run();
+		
+		//The Session is not created again
+		assertEquals(0, sessions.size());
+		assertTrue(outQueue.isEmpty());
+	}
+	
 	@Test
 	public void newExecutionIsCreatedInKnownSession() throws UnknownHostException {
 		Session s =  new Session(localNode, 2, 2);
 		s.createNewExecution();
-		sessions.put(s.getSessionId(), s);
+		sessions.put(s.getSessionUuid(), s);
 		Message m = MessageBuilder.buildInitMessage("remoteNode", s.getSessionId(), 2, 2, 2, 1);
 		
 		InetAddress address = InetAddress.getByName("192.168.0.1");
@@ -120,7 +164,7 @@ public class MessageHandlerTaskTest {
 		//We are interested in the value of the second round that will come with the INIT message
 		double initVal = initExecution.getValsOfRound(2);
 		System.out.println(initVal);
-		sessions.put(s.getSessionId(), s);
+		sessions.put(s.getSessionUuid(), s);
 		Message m = MessageBuilder.buildInitMessage("remoteNode", s.getSessionId(), 1, 1, 2, 1);
 		
 		InetAddress address = InetAddress.getByName("192.168.0.1");
@@ -136,7 +180,7 @@ public class MessageHandlerTaskTest {
 	
 	@Test
 	public void receivedDataExchangeMessageForUnknownSession() throws UnknownHostException {
-		Message m = MessageBuilder.buildNextMessage("remoteNode", "unknownSession", 1, 2, 1);
+		Message m = MessageBuilder.buildNextMessage("remoteNode", UUID.randomUUID().toString(), 1, 2, 1);
 		
 		InetAddress address = InetAddress.getByName("192.168.0.1");
 		TransferableMessage tm = new TransferableMessage(m, address);
@@ -175,6 +219,132 @@ public class MessageHandlerTaskTest {
 		assertEquals(1, e.getCurrentRound());
 	}
 	
+	@Test
+	public void batchedValuesAreAddedToTheirRounds() throws UnknownHostException {
+		Session s = new Session(localNode, 2, 4);
+		Execution first = s.createNewExecution();
+		Execution second = s.createNewExecution();
+		sessions.put(s.getSessionUuid(), s);
+		
+		List<Message> next = new ArrayList<Message>();
+		next.add(MessageBuilder.buildNextMessage("remoteNode", s.getSessionId(), 1, 3, 1.5));
+		next.add(MessageBuilder.buildNextMessage("remoteNode", s.getSessionId(), 2, 3, 2.5));
+		next.add(MessageBuilder.buildNextMessage("remoteNode", UUID.randomUUID().toString(), 1, 3, 3.5));
+		Message m = MessageBuilder.buildBatchMessage("remoteNode", next);
+		InetAddress address = InetAddress.getByName("192.168.0.1");
+		TransferableMessage tm = new TransferableMessage(m, address);
+		
+		MessageHandlerTask mht = new MessageHandlerTask(tm, sessions, localNode, outQueue);
+		mht.run();
+		
+		//Each value must have been added as if it came in its own NEXT message
+		assertEquals(1.5, first.getValsOfRound(3), 0.0);
+		assertEquals(2.5, second.getValsOfRound(3), 0.0);
+		assertEquals(1, sessions.size());
+	}
+	
+	@Test
+	public void roundIsClosedOnceTheLastValueArrives() throws UnknownHostException {
+		Session s = new Session(localNode, 1, 4);
+		Execution e = s.createNewExecution();
+		sessions.put(s.getSessionUuid(), s);
+		InetAddress first = InetAddress.getByName("192.168.0.1");
+		InetAddress second = InetAddress.getByName("192.168.0.2");
+		e.addInNeighbor(new TimedNeighbor("cmVtb3RlTm9kZU9uZQ==", first));
+		e.addInNeighbor(new TimedNeighbor("cmVtb3RlTm9kZVR3bw==", second));
+		e.setPhase(Phase.DATA_EXCHANGE);
+		e.setRound(3);
+		
+		Message m = MessageBuilder.buildNextMessage("cmVtb3RlTm9kZU9uZQ==", s.getSessionId(), 1, 3, 1.0);
+		MessageHandlerTask mht = new MessageHandlerTask(new TransferableMessage(m, first), sessions, localNode, outQueue);
+		mht.run();
+		//The round must remain open until the second value arrives
+		assertEquals(3, e.getCurrentRound());
+		assertEquals(0, outQueue.size());
+		
+		m = MessageBuilder.buildNextMessage("cmVtb3RlTm9kZVR3bw==", s.getSessionId(), 1, 3, 2.0);
+		mht = new MessageHandlerTask(new TransferableMessage(m, second), sessions, localNode, outQueue);
+		mht.run();
+		//The round must be closed without waiting for the maintenance task
+		assertEquals(4, e.getCurrentRound());
+		assertEquals(3.0, e.getValsOfRound(3), 0.0);
+		TransferableMessage out = outQueue.poll();
+		assertNotNull(out);
+		assertEquals(4, out.getMessage().getRound());
+	}
+	
+	@Test
+	public void requestForARoundAfterAnEarlyEndIsAnsweredWithTerminate() throws UnknownHostException {
+		Session s = new Session(localNode, 1, 10);
+		Execution e = s.createNewExecution();
+		sessions.put(s.getSessionUuid(), s);
+		InetAddress address = InetAddress.getByName("192.168.0.1");
+		e.setPhase(Phase.DATA_EXCHANGE);
+		e.setRound(5);
+		e.endAtRound(4);
+		e.setPhase(Phase.GOSSIP);
+		assertTrue(e.hasEndedEarly());
+		assertFalse(e.hasAnotherRound());
+		
+		Message m = MessageBuilder.requestPreviousValMessage("remoteNode", s.getSessionId(), 1, 6);
+		MessageHandlerTask mht = new MessageHandlerTask(new TransferableMessage(m, address), sessions, localNode, outQueue);
+		mht.run();
+		//The value of round 6 will never be sent, so the node is told to end as well
+		TransferableMessage out = outQueue.poll();
+		assertNotNull(out);
+		assertEquals(MessageType.TERMINATE, out.getMessage().getType());
+		assertEquals(4, out.getMessage().getRound());
+		assertTrue(out.getSendReliably());
+		
+		//Values of the rounds before the end are still resent
+		m = MessageBuilder.requestPreviousValMessage("remoteNode", s.getSessionId(), 1, 3);
+		mht = new MessageHandlerTask(new TransferableMessage(m, address), sessions, localNode, outQueue);
+		mht.run();
+		out = outQueue.poll();
+		assertNotNull(out);
+		assertEquals(MessageType.NEXT, out.getMessage().getType());
+	}
+	
+	@Test
+	public void lateTerminateEndsAnExecutionAlreadyPastItsRound() throws UnknownHostException {
+		Session s = new Session(localNode, 1, 10);
+		Execution e = s.createNewExecution();
+		sessions.put(s.getSessionUuid(), s);
+		InetAddress address = InetAddress.getByName("192.168.0.1");
+		e.setPhase(Phase.DATA_EXCHANGE);
+		e.setRound(6);
+		
+		Message m = MessageBuilder.buildTerminateMessage("cmVtb3RlTm9kZU9uZQ==", s.getSessionId(), 1, 3);
+		MessageHandlerTask mht = new MessageHandlerTask(new TransferableMessage(m, address), sessions, localNode, outQueue);
+		mht.run();
+		//The Execution ends at the signalled round, although it had gone past it
+		assertEquals(3, e.getLastRound());
+		assertEquals(4, e.getCurrentRound());
+		assertTrue(e.hasTerminated());
+		assertEquals(Phase.GOSSIP, e.getPhase());
+	}
+	
+	@Test
+	public void earlyEndOfTheInitialExecutionCreatesTheRemainingOnes() throws UnknownHostException {
+		Session s = new Session(localNode, 3, 9, true);
+		Execution e = s.createNewExecution();
+		sessions.put(s.getSessionUuid(), s);
+		InetAddress address = InetAddress.getByName("192.168.0.1");
+		e.setPhase(Phase.DATA_EXCHANGE);
+		e.setRound(2);
+		assertEquals(1, s.getCurrentNumberOfExecutions());
+		
+		Message m = MessageBuilder.buildTerminateMessage("cmVtb3RlTm9kZU9uZQ==", s.getSessionId(), 1, 2);
+		MessageHandlerTask mht = new MessageHandlerTask(new TransferableMessage(m, address), sessions, localNode, outQueue);
+		mht.run();
+		//The Executions that would have been created in the skipped rounds
+		//must exist, otherwise the Session could never complete
+		assertTrue(e.hasTerminated());
+		assertEquals(3, s.getCurrentNumberOfExecutions());
+		assertNotNull(s.getExecution(2));
+		assertNotNull(s.getExecution(3));
+	}
+	
 	@Test
 	public void malformedMessageIsReceived() throws UnknownHostException {
 		Message m = MessageBuilder.buildLivenessMessage();
@@ -0,0 +1,172 @@
+package core;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import storage.FakeDatabase;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import comm.LoopbackNetwork;
+import comm.LoopbackTransport;
+import comm.ProtocolMessage.SessionEvent;
+import domain.RecordedSession;
+import domain.SamplingParameters;
+import domain.Session;
+import domain.network.FakeNode;
+import event.SessionListener;
+
+public class ProtocolEngineTest {
+
+	private FakeNode localNode;
+	private FakeDatabase db;
+	private LoopbackNetwork network;
+	private ProtocolEngine engine;
+	private AtomicInteger initiated;
+	private SessionListener listener;
+
+	@Before
+	public void setUp() throws Exception {
+		localNode = new FakeNode();
+		db = new FakeDatabase();
+		network = new LoopbackNetwork();
+		initiated = new AtomicInteger();
+		listener = new SessionListener() {
+			@Override
+			public void sessionInitiated(SessionEvent e) {
+				initiated.incrementAndGet();
+			}
+
+			@Override
+			public void sessionCompleted(SessionEvent e) {
+			}
+
+			@Override
+			public void sessionStored(RecordedSession rs) {
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		if (engine != null) {
+			engine.removeSessionListener(listener);
+			engine.terminate();
+		}
+		network.shutdown();
+	}
+
+	@Test
+	public void concurrentRequestsInitiateASingleSession() throws Exception {
+		startEngine();
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(2);
+		final AtomicReferenceArray<ListenableFuture<Session>> futures = new AtomicReferenceArray<ListenableFuture<Session>>(
+				2);
+		for (int i = 0; i < 2; i++) {
+			final int index = i;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						futures.set(index, engine
+								.requestSessionDataAsync(new SamplingParameters(
+										1, 10)));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+		start.countDown();
+		assertTrue(done.await(1, TimeUnit.SECONDS));
+
+		//Both requests wait for the same Session
+		assertEquals(1, awaitInitiatedSessions());
+		assertFalse(futures.get(0).isDone());
+		assertFalse(futures.get(1).isDone());
+	}
+
+	@Test
+	public void freshEstimationsAreServedWithoutANewSampling() throws Exception {
+		Session stored = new Session(localNode, 1, 10);
+		db.addSession(new RecordedSession(stored));
+		startEngine();
+
+		ListenableFuture<Session> future = engine.requestStaleSessionData(
+				new SamplingParameters(1, 10), 10000);
+		assertTrue(future.isDone());
+		assertSame(stored, future.get());
+		assertEquals(0, awaitInitiatedSessions());
+	}
+
+	@Test
+	public void staleEstimationsAreServedWhileASingleSamplingRefreshesThem()
+			throws Exception {
+		Session stored = new Session(localNode, 1, 10);
+		db.addSession(new RecordedSession(stored));
+		startEngine();
+		//Wait for the estimations to become older than the threshold
+		Thread.sleep(ProtocolRun.MIN_TIME_THRESHOLD + 50);
+
+		ListenableFuture<Session> first = engine.requestStaleSessionData(
+				new SamplingParameters(1, 10), 10000);
+		ListenableFuture<Session> second = engine.requestStaleSessionData(
+				new SamplingParameters(1, 10), 10000);
+		assertSame(stored, first.get(0, TimeUnit.MILLISECONDS));
+		assertSame(stored, second.get(0, TimeUnit.MILLISECONDS));
+		assertEquals(1, awaitInitiatedSessions());
+	}
+
+	@Test
+	public void tooStaleEstimationsAreNotServed() throws Exception {
+		db.addSession(new RecordedSession(new Session(localNode, 1, 10)));
+		startEngine();
+		Thread.sleep(ProtocolRun.MIN_TIME_THRESHOLD + 50);
+
+		ListenableFuture<Session> future = engine.requestStaleSessionData(
+				new SamplingParameters(1, 10), 50);
+		//The caller has to wait for the new sampling
+		assertFalse(future.isDone());
+		assertEquals(1, awaitInitiatedSessions());
+	}
+
+	@Test
+	public void estimationsOfOtherParametersAreNotServed() throws Exception {
+		db.addSession(new RecordedSession(new Session(localNode, 1, 4)));
+		startEngine();
+
+		ListenableFuture<Session> future = engine.requestStaleSessionData(
+				new SamplingParameters(1, 10), 10000);
+		assertFalse(future.isDone());
+		assertEquals(1, awaitInitiatedSessions());
+	}
+
+	private void startEngine() {
+		engine = new ProtocolEngine(localNode, db, new LoopbackTransport(
+				network));
+		engine.addSessionListener(listener);
+	}
+
+	private int awaitInitiatedSessions() throws InterruptedException {
+		//Wait for any NEW message to be handled
+		long deadline = System.currentTimeMillis() + 1000;
+		while (initiated.get() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(200);
+		return initiated.get();
+	}
+
+}
@@ -2,77 +2,120 @@ package core;
 
 import static org.junit.Assert.*;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
 import org.junit.Test;
 
+import storage.FakeDatabase;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import comm.LoopbackNetwork;
+import comm.LoopbackTransport;
+import comm.MessageBuilder;
+import comm.ProtocolMessage.Message;
+import comm.ProtocolMessage.Message.MessageType;
+import domain.RecordedSession;
+import domain.SamplingParameters;
+import domain.Session;
+import domain.network.FakeNode;
+
 public class ProtocolRunTest {
 
-	double [] previousEigenvalues = {
-			0.8, 0.6, 0.4, 0.2
-	};
-	
-	double [] newEigenvaluesV1 = {
-			0.842, 0.623, 0.4, 0.234
-	};
-	
-	double [] newEigenvaluesV2 = {
-			0.9, 0.8, 0.4, 0.33
-	};
-	
 	@Test
-	public void thresholdIsAdjustedProperly() {
-		long initThreshold = ProtocolRun.CURRENT_THRESHOLD;
-		double initIncreaseRate = ProtocolRun.CURRENT_INCREASE_RATE;
-		double initDecreaseRate = ProtocolRun.CURRENT_DECREASE_RATE;
-		
-		ProtocolRun.adjustThreshold(previousEigenvalues, previousEigenvalues);
-		long expectedThresholdIncrease = initThreshold + (long)(initThreshold*initIncreaseRate);
-		double expectedIncreaseRate = initDecreaseRate+0.05;
-		assertEquals(expectedThresholdIncrease, ProtocolRun.CURRENT_THRESHOLD);
-		assertEquals(expectedIncreaseRate, ProtocolRun.CURRENT_INCREASE_RATE, 0.0);
-		assertEquals(ProtocolRun.MIN_RATE, ProtocolRun.CURRENT_DECREASE_RATE, 0.0);
-		
-		ProtocolRun.adjustThreshold(previousEigenvalues, newEigenvaluesV1);
-		expectedThresholdIncrease = expectedThresholdIncrease + (long)(expectedThresholdIncrease*expectedIncreaseRate);
-		expectedIncreaseRate = expectedIncreaseRate + 0.05;
-		assertEquals(expectedThresholdIncrease, ProtocolRun.CURRENT_THRESHOLD);
-		assertEquals(expectedIncreaseRate, ProtocolRun.CURRENT_INCREASE_RATE, 0.0);
-		assertEquals(ProtocolRun.MIN_RATE, ProtocolRun.CURRENT_DECREASE_RATE, 0.0);
-		
-		ProtocolRun.adjustThreshold(previousEigenvalues, newEigenvaluesV2);
-		expectedThresholdIncrease = expectedThresholdIncrease - (long)(expectedThresholdIncrease*initDecreaseRate);
-		expectedIncreaseRate = ProtocolRun.MIN_RATE;
-		double expectedDecreaseRate = initDecreaseRate + 0.05;
-		assertEquals(expectedThresholdIncrease, ProtocolRun.CURRENT_THRESHOLD);
-		assertEquals(expectedIncreaseRate, ProtocolRun.CURRENT_INCREASE_RATE, 0.0);
-		assertEquals(expectedDecreaseRate, ProtocolRun.CURRENT_DECREASE_RATE, 0.0);
-	}
-	
-	@Test
-	public void thresholdDoesNotDecreaseUnderTheMinimumValue() {
-		ProtocolRun.CURRENT_THRESHOLD = ProtocolRun.MIN_TIME_THRESHOLD;
-		ProtocolRun.adjustThreshold(previousEigenvalues, newEigenvaluesV2);
-		assertEquals(ProtocolRun.MIN_TIME_THRESHOLD, ProtocolRun.CURRENT_THRESHOLD);
+	public void requestIsCompletedOnlyOnceTheSessionIsStored() throws Exception {
+		FakeNode localNode = new FakeNode();
+		LoopbackNetwork network = new LoopbackNetwork();
+		ProtocolController pc = new ProtocolController(localNode,
+				new FakeDatabase(), new ProtocolConfig()
+						.setTransport(new LoopbackTransport(network)));
+		ProtocolRun run = new ProtocolRun(new FakeDatabase(), pc,
+				new SamplingParameters(1, 2));
+
+		ListenableFuture<Session> future = run.start();
+		//No thread waits for the data, the request is just pending
+		assertFalse(future.isDone());
+		Message m = pc.getIncomingQueue().poll().getMessage();
+		assertEquals(MessageType.NEW, m.getType());
+		//The NEW message chooses the id of the Session
+		assertEquals(run.getSessionId(), MessageBuilder.getSessionId(m));
+
+		Session s = new Session(localNode, run.getSessionId(), 1, 2, true);
+		run.sessionStored(new RecordedSession(s));
+		assertTrue(future.isDone());
+		assertSame(s, future.get());
+		network.shutdown();
 	}
-	
+
 	@Test
-	public void thresholdDoesNotIncreaseOverTheMaximumValue() {
-		ProtocolRun.CURRENT_THRESHOLD = ProtocolRun.MAX_TIME_THRESHOLD;
-		ProtocolRun.adjustThreshold(previousEigenvalues, newEigenvaluesV1);
-		assertEquals(ProtocolRun.MAX_TIME_THRESHOLD, ProtocolRun.CURRENT_THRESHOLD);
+	public void requestIsNotCompletedBySessionsItDidNotInitiate() throws Exception {
+		FakeNode localNode = new FakeNode();
+		LoopbackNetwork network = new LoopbackNetwork();
+		ProtocolController pc = new ProtocolController(localNode,
+				new FakeDatabase(), new ProtocolConfig()
+						.setTransport(new LoopbackTransport(network)));
+		ProtocolRun run = new ProtocolRun(new FakeDatabase(), pc,
+				new SamplingParameters(1, 2));
+
+		ListenableFuture<Session> future = run.start();
+		//A Session with the same parameters, requested by someone else
+		run.sessionStored(new RecordedSession(new Session(localNode, 1, 2,
+				true)));
+		//A Session initiated by a remote node
+		run.sessionStored(new RecordedSession(new Session(localNode, 1, 2)));
+		assertFalse(future.isDone());
+
+		Session s = new Session(localNode, run.getSessionId(), 1, 2, true);
+		run.sessionStored(new RecordedSession(s));
+		assertSame(s, future.get());
+		network.shutdown();
 	}
-	
+
 	@Test
-	public void increaseRateDoesNotIncreaseOverTheMaximumValue() {
-		ProtocolRun.CURRENT_INCREASE_RATE = ProtocolRun.MAX_RATE;
-		ProtocolRun.adjustThreshold(previousEigenvalues, newEigenvaluesV1);
-		assertEquals(ProtocolRun.MAX_RATE, ProtocolRun.CURRENT_INCREASE_RATE, 0.0);
+	public void recentSessionOfOtherParametersIsNotUsed() throws Exception {
+		FakeNode localNode = new FakeNode();
+		LoopbackNetwork network = new LoopbackNetwork();
+		ProtocolController pc = new ProtocolController(localNode,
+				new FakeDatabase(), new ProtocolConfig()
+						.setTransport(new LoopbackTransport(network)));
+		FakeDatabase db = new FakeDatabase();
+		db.addSession(new RecordedSession(new Session(localNode, 1, 4)));
+		ProtocolRun run = new ProtocolRun(db, pc, new SamplingParameters(1, 2));
+
+		ListenableFuture<Session> future = run.start();
+		//A new sampling is made with the parameters of the request
+		assertFalse(future.isDone());
+		Message m = pc.getIncomingQueue().poll().getMessage();
+		assertEquals(MessageType.NEW, m.getType());
+		assertEquals(2, m.getRound());
+		network.shutdown();
 	}
-	
+
 	@Test
-	public void decreaseRateDoesNotIncreaseOverTheMaximumValue() {
-		ProtocolRun.CURRENT_DECREASE_RATE = ProtocolRun.MAX_RATE;
-		ProtocolRun.adjustThreshold(previousEigenvalues, newEigenvaluesV2);
-		assertEquals(ProtocolRun.MAX_RATE, ProtocolRun.CURRENT_DECREASE_RATE, 0.0);
+	public void requestFailsOnceItsSessionIsEvicted() throws Exception {
+		FakeNode localNode = new FakeNode();
+		LoopbackNetwork network = new LoopbackNetwork();
+		ProtocolController pc = new ProtocolController(localNode,
+				new FakeDatabase(), new ProtocolConfig()
+						.setTransport(new LoopbackTransport(network)));
+		ProtocolRun run = new ProtocolRun(new FakeDatabase(), pc,
+				new SamplingParameters(1, 2));
+		ListenableFuture<Session> future = run.start();
+
+		//The eviction of other Sessions does not concern the request
+		run.sessionEvicted(new Session(localNode, 1, 2, true));
+		assertFalse(future.isDone());
+
+		run.sessionEvicted(new Session(localNode, run.getSessionId(), 1, 2,
+				true));
+		try {
+			future.get();
+			fail("The request should have failed");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		network.shutdown();
 	}
 
 }
@@ -0,0 +1,77 @@
+package core;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Test;
+
+import comm.TransferableMessage;
+import domain.Execution;
+import domain.Session;
+import domain.network.FakeNode;
+
+public class RoundAdvancerTest {
+
+	@Test
+	public void messagesBuiltUnderTheLockOfAnExecutionWaitForTheFlush() throws Exception {
+		FakeNode localNode = new FakeNode();
+		BlockingQueue<TransferableMessage> outgoing = new LinkedBlockingQueue<TransferableMessage>();
+		RoundAdvancer advancer = new RoundAdvancer(outgoing, localNode);
+		Session s = new Session(localNode, 1, 2);
+		Execution e = s.createNewExecution();
+
+		synchronized (e) {
+			advancer.sendOutNextMessage(s, e);
+			//Nothing is placed in the queue while the Execution is locked
+			assertTrue(outgoing.isEmpty());
+		}
+		advancer.flush();
+
+		assertFalse(outgoing.isEmpty());
+		int sent = outgoing.size();
+		//The messages are placed only once
+		advancer.flush();
+		assertEquals(sent, outgoing.size());
+	}
+
+	@Test
+	public void messagesBuiltWithoutALockAreSentRightAway() throws Exception {
+		FakeNode localNode = new FakeNode();
+		BlockingQueue<TransferableMessage> outgoing = new LinkedBlockingQueue<TransferableMessage>();
+		RoundAdvancer advancer = new RoundAdvancer(outgoing, localNode);
+		Session s = new Session(localNode, 1, 2);
+		Execution e = s.createNewExecution();
+
+		advancer.sendOutNextMessage(s, e);
+
+		assertFalse(outgoing.isEmpty());
+	}
+
+	@Test
+	public void messagesOfOtherThreadsAreNotFlushed() throws Exception {
+		FakeNode localNode = new FakeNode();
+		BlockingQueue<TransferableMessage> outgoing = new LinkedBlockingQueue<TransferableMessage>();
+		final RoundAdvancer advancer = new RoundAdvancer(outgoing, localNode);
+		Session s = new Session(localNode, 1, 2);
+		Execution e = s.createNewExecution();
+
+		synchronized (e) {
+			advancer.sendOutNextMessage(s, e);
+		}
+		Thread other = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				advancer.flush();
+			}
+		});
+		other.start();
+		other.join();
+
+		assertTrue(outgoing.isEmpty());
+		advancer.flush();
+		assertFalse(outgoing.isEmpty());
+	}
+
+}
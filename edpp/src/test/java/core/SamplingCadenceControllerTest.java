@@ -0,0 +1,67 @@
+package core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import domain.SamplingParameters;
+
+public class SamplingCadenceControllerTest {
+
+	double[] stable = { 0.8, 0.6, 0.4, 0.2 };
+
+	double[] noisy = { 0.81, 0.59, 0.41, 0.2 };
+
+	double[] changed = { 0.9, 0.8, 0.4, 0.33 };
+
+	@Test
+	public void thresholdGrowsWhileEstimationsAreStable() {
+		SamplingCadenceController controller = new SamplingCadenceController(
+				100, 60000);
+		SamplingParameters sp = new SamplingParameters(2, 10);
+		SamplingCadence cadence = controller.getCadence(sp);
+
+		long previous = controller.getThreshold(sp);
+		cadence.record(stable);
+		for (int i = 0; i < 10; i++) {
+			assertFalse(cadence.record((i % 2 == 0) ? noisy : stable));
+			assertTrue(controller.getThreshold(sp) > previous);
+			previous = controller.getThreshold(sp);
+		}
+		// The increase accelerates, so the threshold is far above linear
+		assertTrue(previous > 1000);
+	}
+
+	@Test
+	public void thresholdDropsOnceTheNetworkChanges() {
+		SamplingCadenceController controller = new SamplingCadenceController(
+				100, 60000);
+		SamplingParameters sp = new SamplingParameters(2, 10);
+		SamplingCadence cadence = controller.getCadence(sp);
+		for (int i = 0; i < 10; i++) {
+			cadence.record(stable);
+		}
+		long stableThreshold = cadence.getThreshold();
+
+		assertTrue(cadence.record(changed));
+		assertTrue(cadence.getThreshold() < stableThreshold);
+		// The estimations before the change are no longer taken into account
+		assertEquals(1, cadence.getHistorySize());
+	}
+
+	@Test
+	public void eachSetOfParametersHasItsOwnCadence() {
+		SamplingCadenceController controller = new SamplingCadenceController(
+				100, 60000);
+		SamplingParameters sp = new SamplingParameters(2, 10);
+		SamplingCadence cadence = controller.getCadence(sp);
+		cadence.record(stable);
+		cadence.record(stable);
+
+		assertSame(cadence,
+				controller.getCadence(new SamplingParameters(2, 10)));
+		assertEquals(100,
+				controller.getThreshold(new SamplingParameters(3, 10)));
+	}
+
+}
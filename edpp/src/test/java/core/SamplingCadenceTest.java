@@ -0,0 +1,140 @@
+package core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SamplingCadenceTest {
+
+	double[] stable = { 0.8, 0.6, 0.4, 0.2 };
+
+	double[] changed = { 0.9, 0.8, 0.4, 0.33 };
+
+	@Test
+	public void changesAreDetectedBeyondThreeDeviationsOfTheRecentEstimations() {
+		//The recent estimations vary by 0.04, so their mean is 0.82 and three
+		//deviations come to about 0.066
+		SamplingCadence cadence = noisyCadence();
+		assertFalse(cadence.record(new double[] { 0.88 }));
+
+		cadence = noisyCadence();
+		assertTrue(cadence.record(new double[] { 0.9 }));
+	}
+
+	@Test
+	public void smallDifferencesAreNeverChangesEvenWithoutVariability() {
+		SamplingCadence cadence = steadyCadence();
+		assertFalse(cadence.record(new double[] { 0.84 }));
+
+		cadence = steadyCadence();
+		assertTrue(cadence.record(new double[] { 0.86 }));
+	}
+
+	@Test
+	public void estimationsWithADifferentNumberOfEigenvaluesAreChanges() {
+		SamplingCadence cadence = new SamplingCadence(100, 60000);
+		cadence.record(stable);
+		assertTrue(cadence.record(new double[] { 0.8, 0.6, 0.4 }));
+	}
+
+	@Test
+	public void thresholdGrowsFasterWhileEstimationsAreStable() {
+		SamplingCadence cadence = new SamplingCadence(100, 60000);
+		assertFalse(cadence.record(stable));
+		assertEquals(100, cadence.getThreshold());
+
+		long previous = cadence.getThreshold();
+		long previousIncrease = 0;
+		for (int i = 0; i < 10; i++) {
+			assertFalse(cadence.record(stable));
+			long increase = cadence.getThreshold() - previous;
+			assertTrue(increase > previousIncrease);
+			previous = cadence.getThreshold();
+			previousIncrease = increase;
+		}
+	}
+
+	@Test
+	public void thresholdAtMostDoublesOnceTheRateReachesItsMaximum() {
+		SamplingCadence cadence = new SamplingCadence(100, Long.MAX_VALUE / 4);
+		cadence.record(stable);
+		long previous = cadence.getThreshold();
+		for (int i = 0; i < 40; i++) {
+			cadence.record(stable);
+			assertTrue(cadence.getThreshold() <= 2 * previous);
+			previous = cadence.getThreshold();
+		}
+	}
+
+	@Test
+	public void thresholdDoesNotIncreaseOverTheMaximumValue() {
+		SamplingCadence cadence = new SamplingCadence(100, 500);
+		for (int i = 0; i < 20; i++) {
+			cadence.record(stable);
+		}
+		assertEquals(500, cadence.getThreshold());
+	}
+
+	@Test
+	public void thresholdDoesNotDecreaseUnderTheMinimumValue() {
+		SamplingCadence cadence = new SamplingCadence(100, 60000);
+		cadence.record(stable);
+		for (int i = 0; i < 10; i++) {
+			assertTrue(cadence.record((i % 2 == 0) ? changed : stable));
+			assertEquals(100, cadence.getThreshold());
+		}
+	}
+
+	@Test
+	public void historyIsResetOnceTheNetworkChanges() {
+		SamplingCadence cadence = new SamplingCadence(100, 60000);
+		for (int i = 0; i < 5; i++) {
+			cadence.record(stable);
+		}
+		assertEquals(5, cadence.getHistorySize());
+		long stableThreshold = cadence.getThreshold();
+
+		assertTrue(cadence.record(changed));
+		assertEquals(1, cadence.getHistorySize());
+		assertTrue(cadence.getThreshold() < stableThreshold);
+		//The new estimation is compared only with the ones after the change
+		assertFalse(cadence.record(changed));
+		assertTrue(cadence.record(stable));
+	}
+
+	@Test
+	public void historyKeepsOnlyTheMostRecentEstimations() {
+		SamplingCadence cadence = new SamplingCadence(100, 60000);
+		for (int i = 0; i < 2 * SamplingCadence.HISTORY_SIZE; i++) {
+			cadence.record(stable);
+		}
+		assertEquals(SamplingCadence.HISTORY_SIZE, cadence.getHistorySize());
+	}
+
+	@Test
+	public void seedIsIgnoredOnceEstimationsHaveBeenRecorded() {
+		SamplingCadence cadence = new SamplingCadence(100, 60000);
+		cadence.seed(stable);
+		cadence.seed(changed);
+		assertEquals(1, cadence.getHistorySize());
+		//Only the first seed is taken into account
+		assertFalse(cadence.record(stable));
+	}
+
+	private static SamplingCadence noisyCadence() {
+		SamplingCadence cadence = new SamplingCadence(100, 60000);
+		for (int i = 0; i < 6; i++) {
+			assertFalse(cadence.record(new double[] { (i % 2 == 0) ? 0.8 : 0.84 }));
+		}
+		return cadence;
+	}
+
+	private static SamplingCadence steadyCadence() {
+		SamplingCadence cadence = new SamplingCadence(100, 60000);
+		for (int i = 0; i < 3; i++) {
+			cadence.record(new double[] { 0.8 });
+		}
+		return cadence;
+	}
+
+}
@@ -0,0 +1,60 @@
+package core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import storage.FakeDatabase;
+import domain.RecordedSession;
+import domain.SamplingParameters;
+import domain.Session;
+import domain.network.FakeNode;
+
+public class SessionCacheTest {
+
+	@Test
+	public void cacheKeepsTheLatestStoredSession() throws Exception {
+		FakeNode localNode = new FakeNode();
+		FakeDatabase db = new FakeDatabase();
+		RecordedSession stored = new RecordedSession(new Session(localNode, 1,
+				2));
+		db.addSession(stored);
+
+		SessionCache cache = new SessionCache(db);
+		//The cache starts with whatever was already stored
+		assertSame(stored, cache.getLatest());
+
+		Thread.sleep(5);
+		RecordedSession newer = new RecordedSession(new Session(localNode, 1,
+				2));
+		cache.sessionStored(newer);
+		assertSame(newer, cache.getLatest());
+
+		//An older record reported late must not replace the newer one
+		cache.sessionStored(stored);
+		assertSame(newer, cache.getLatest());
+		assertTrue(SessionCache.ageOf(newer) < SessionCache.ageOf(stored));
+		assertEquals(Long.MAX_VALUE, SessionCache.ageOf(null));
+	}
+
+	@Test
+	public void cacheKeepsTheLatestSessionOfEachParameters() throws Exception {
+		FakeNode localNode = new FakeNode();
+		SessionCache cache = new SessionCache(new FakeDatabase());
+		assertNull(cache.getLatest(new SamplingParameters(1, 2)));
+
+		RecordedSession first = new RecordedSession(new Session(localNode, 1,
+				2));
+		cache.sessionStored(first);
+		Thread.sleep(5);
+		RecordedSession other = new RecordedSession(new Session(localNode, 1,
+				4));
+		cache.sessionStored(other);
+
+		assertSame(other, cache.getLatest());
+		//The Session of other parameters does not replace the first one
+		assertSame(first, cache.getLatest(new SamplingParameters(1, 2)));
+		assertSame(other, cache.getLatest(new SamplingParameters(1, 4)));
+	}
+
+}
@@ -0,0 +1,93 @@
+package core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import domain.Session;
+import domain.network.FakeNode;
+import event.EvictionListener;
+
+public class SessionEvictorTest {
+
+	@Test
+	public void idleSessionsAreEvicted() throws Exception {
+		FakeNode localNode = new FakeNode();
+		Map<UUID, Session> sessions = new HashMap<UUID, Session>();
+		Session stalled = new Session(localNode, 1, 2);
+		Session active = new Session(localNode, 1, 2);
+		sessions.put(stalled.getSessionUuid(), stalled);
+		sessions.put(active.getSessionUuid(), active);
+		SessionEvictor evictor = new SessionEvictor(100, 10);
+
+		Thread.sleep(150);
+		//Only the Session that made progress in the meantime is kept
+		active.touch();
+		List<Session> evicted = evictor.evict(sessions);
+		assertEquals(1, evicted.size());
+		assertSame(stalled, evicted.get(0));
+		assertEquals(1, sessions.size());
+		assertTrue(sessions.containsKey(active.getSessionUuid()));
+		assertEquals(1, evictor.getExpiredCount());
+		assertEquals(0, evictor.getOverflowCount());
+	}
+
+	@Test
+	public void sessionsIdleForLongestAreEvictedBeyondCapacity()
+			throws Exception {
+		FakeNode localNode = new FakeNode();
+		Map<UUID, Session> sessions = new HashMap<UUID, Session>();
+		Session[] created = new Session[4];
+		for (int i = 0; i < created.length; i++) {
+			created[i] = new Session(localNode, 1, 2);
+			sessions.put(created[i].getSessionUuid(), created[i]);
+			Thread.sleep(5);
+		}
+		SessionEvictor evictor = new SessionEvictor(SessionEvictor.DEFAULT_TTL,
+				2);
+
+		//The two oldest Sessions must make room for the rest
+		List<Session> evicted = evictor.evict(sessions);
+		assertEquals(2, evicted.size());
+		assertFalse(sessions.containsKey(created[0].getSessionUuid()));
+		assertFalse(sessions.containsKey(created[1].getSessionUuid()));
+		assertTrue(sessions.containsKey(created[2].getSessionUuid()));
+		assertTrue(sessions.containsKey(created[3].getSessionUuid()));
+		assertEquals(2, evictor.getOverflowCount());
+		assertEquals(2, evictor.getEvictedCount());
+	}
+
+	@Test
+	public void evictedSessionsAreRememberedAndReported() throws Exception {
+		FakeNode localNode = new FakeNode();
+		Map<UUID, Session> sessions = new HashMap<UUID, Session>();
+		Session[] created = new Session[3];
+		for (int i = 0; i < created.length; i++) {
+			created[i] = new Session(localNode, 1, 2);
+			sessions.put(created[i].getSessionUuid(), created[i]);
+		}
+		final List<Session> reported = new ArrayList<Session>();
+		SessionEvictor evictor = new SessionEvictor(0, 10, 2);
+		evictor.addEvictionListener(new EvictionListener() {
+			@Override
+			public void sessionEvicted(Session s) {
+				reported.add(s);
+			}
+		});
+
+		List<Session> evicted = evictor.evict(sessions);
+		assertEquals(3, evicted.size());
+		assertEquals(evicted, reported);
+		//Only the ids of the most recently evicted Sessions are remembered
+		assertFalse(evictor.isEvicted(evicted.get(0).getSessionUuid()));
+		assertTrue(evictor.isEvicted(evicted.get(1).getSessionUuid()));
+		assertTrue(evictor.isEvicted(evicted.get(2).getSessionUuid()));
+	}
+
+}
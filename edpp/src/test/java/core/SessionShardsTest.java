@@ -0,0 +1,62 @@
+package core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SessionShardsTest {
+
+	@Test
+	public void tasksOfASessionRunInOrderOnTheSameThread() throws Exception {
+		SessionShards shards = new SessionShards(4, 100);
+		UUID sessionId = UUID.randomUUID();
+		final List<Integer> order = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		final List<Thread> threads = Collections
+				.synchronizedList(new ArrayList<Thread>());
+		final CountDownLatch done = new CountDownLatch(50);
+
+		for (int i = 0; i < 50; i++) {
+			final int n = i;
+			shards.execute(sessionId, new Runnable() {
+				@Override
+				public void run() {
+					order.add(n);
+					threads.add(Thread.currentThread());
+					done.countDown();
+				}
+			});
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 50; i++) {
+			assertEquals(i, (int) order.get(i));
+			assertSame(threads.get(0), threads.get(i));
+		}
+		shards.shutdown();
+	}
+
+	@Test
+	public void sessionsAreSpreadOverAllShards() {
+		SessionShards shards = new SessionShards(4, 100);
+		boolean[] used = new boolean[shards.getNumberOfShards()];
+		for (int i = 0; i < 200; i++) {
+			UUID sessionId = UUID.randomUUID();
+			int shard = shards.shardOf(sessionId);
+			// The same Session must always be assigned to the same shard
+			assertEquals(shard, shards.shardOf(sessionId));
+			used[shard] = true;
+		}
+		for (boolean u : used) {
+			assertTrue(u);
+		}
+		shards.shutdown();
+	}
+
+}
@@ -126,6 +126,15 @@ public class SessionTest {
 		assertFalse(session.newExecutionExpected());
 	}
 
+	@Test
+	public void sessionsWithTheSameIdAreEqual() {
+		session = new Session(localNode, 4, 100);
+		Session copy = new Session(localNode, session.getSessionUuid(), 4, 100);
+		assertEquals(session, copy);
+		assertEquals(session.hashCode(), copy.hashCode());
+		assertFalse(session.equals(new Session(localNode, 4, 100)));
+	}
+
 	@Test
 	public void createNewUnnumberedExecution() {
 		session = new Session(localNode, 4, 100);
@@ -0,0 +1,46 @@
+package core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import domain.Session;
+import domain.network.FakeNode;
+
+public class SharedRequestTest {
+
+	@Test
+	public void allCallersReceiveTheOutcomeOfTheRequest() throws Exception {
+		SettableFuture<Session> request = SettableFuture.create();
+		SharedRequest shared = new SharedRequest(request);
+		ListenableFuture<Session> first = shared.subscribe();
+		ListenableFuture<Session> second = shared.subscribe();
+
+		Session s = new Session(new FakeNode(), 1, 2);
+		request.set(s);
+		assertSame(s, first.get());
+		assertSame(s, second.get());
+	}
+
+	@Test
+	public void requestIsCancelledOnlyWhenAllCallersCancel() {
+		SettableFuture<Session> request = SettableFuture.create();
+		SharedRequest shared = new SharedRequest(request);
+		ListenableFuture<Session> first = shared.subscribe();
+		ListenableFuture<Session> second = shared.subscribe();
+
+		first.cancel(false);
+		//The other caller is still waiting for the data
+		assertFalse(request.isCancelled());
+		assertFalse(second.isDone());
+
+		second.cancel(false);
+		assertTrue(request.isCancelled());
+		//An abandoned request cannot be joined anymore
+		assertNull(shared.subscribe());
+	}
+
+}
@@ -24,12 +24,16 @@ public class GossipDataTest {
 		0.6, 0.4, 0.2
 	};
 
+	Id node1 = new Id(new byte[] {1});
+	Id node2 = new Id(new byte[] {2});
+	Id node3 = new Id(new byte[] {3});
+
 	@Test
 	public void medianValuesAreComputedProperly() {
 		GossipData gd = new GossipData();
-		gd.setNewProposal("node1", proposer1);
-		gd.setNewProposal("node2", proposer2);
-		gd.setNewProposal("node3", proposer3);
+		gd.setNewProposal(node1, proposer1);
+		gd.setNewProposal(node2, proposer2);
+		gd.setNewProposal(node3, proposer3);
 		
 		assertArrayEquals(expectedMedianEigenvalues, gd.computeMedianOfProposedValues(), 0.0);
 	}
@@ -37,10 +41,10 @@ public class GossipDataTest {
 	@Test
 	public void proposalsAreProperlyRetrieved() {
 		GossipData gd = new GossipData();
-		gd.setNewProposal("node1", proposer1);
-		gd.setNewProposal("node2", proposer2);
-		gd.setNewProposal("node3", proposer3);
+		gd.setNewProposal(node1, proposer1);
+		gd.setNewProposal(node2, proposer2);
+		gd.setNewProposal(node3, proposer3);
 		
-		assertArrayEquals(proposer2, gd.getProposal("node2"), 0.0);
+		assertArrayEquals(proposer2, gd.getProposal(node2), 0.0);
 	}
 }
@@ -0,0 +1,84 @@
+package domain;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+import domain.network.FakeNode;
+
+public class InitArrivalModelTest {
+
+	@Test
+	public void quietPeriodIsLearnedFromTheObservedIntervals() {
+		InitArrivalModel model = new InitArrivalModel();
+		//Without enough observations the full period must be waited for
+		assertEquals(10000, model.getQuietPeriod(10000));
+
+		for (int i = 1; i <= 20; i++) {
+			model.recordInterval(100 * i);
+		}
+		//The 95th percentile of the intervals is 1900ms
+		assertEquals(3800, model.getQuietPeriod(10000));
+		assertEquals(3000, model.getQuietPeriod(3000));
+	}
+
+	@Test
+	public void initPhaseEndsEarlyOnceNoNewInNeighborsAppear()
+			throws Exception {
+		InitArrivalModel model = new InitArrivalModel();
+		for (int i = 0; i < InitArrivalModel.MIN_SAMPLES; i++) {
+			model.recordInterval(10);
+		}
+		Execution e = new Execution(1, 10, new FakeNode(), model);
+		e.addInNeighbor(new TimedNeighbor("bm9kZU9uZQ==", InetAddress
+				.getByName("10.0.0.1")));
+		assertTrue(e.remainingInitTime() <= InitArrivalModel.MIN_QUIET_PERIOD);
+
+		Thread.sleep(InitArrivalModel.MIN_QUIET_PERIOD / 2);
+		//A new in-neighbor extends the INIT phase
+		e.addInNeighbor(new TimedNeighbor("bm9kZVR3bw==", InetAddress
+				.getByName("10.0.0.2")));
+		assertTrue(e.remainingInitTime() > InitArrivalModel.MIN_QUIET_PERIOD / 2);
+
+		Thread.sleep(InitArrivalModel.MIN_QUIET_PERIOD + 50);
+		assertTrue(e.remainingInitTime() <= 0);
+	}
+
+	@Test
+	public void initPhaseWaitsForTheFirstInNeighbor() throws Exception {
+		InitArrivalModel model = new InitArrivalModel();
+		for (int i = 0; i < InitArrivalModel.MIN_SAMPLES; i++) {
+			model.recordInterval(10);
+		}
+		Execution e = new Execution(1, 10, new FakeNode(), model);
+		Thread.sleep(InitArrivalModel.MIN_QUIET_PERIOD + 50);
+		//No in-neighbor has arrived yet, so the quiet period does not apply
+		assertTrue(e.remainingInitTime() > 0);
+
+		e.addInNeighbor(new TimedNeighbor("bm9kZU9uZQ==", InetAddress
+				.getByName("10.0.0.1")));
+		assertTrue(e.remainingInitTime() <= InitArrivalModel.MIN_QUIET_PERIOD);
+		assertTrue(e.remainingInitTime() > 0);
+	}
+
+	@Test
+	public void initPhaseIsExtendedWhileNewInNeighborsKeepAppearing() {
+		InitArrivalModel model = new InitArrivalModel();
+		//Without enough observations the phase lasts exactly the timeout
+		assertEquals(5000, model.getRemainingTime(5000, 10, 10000, 30000));
+		assertEquals(-1000, model.getRemainingTime(11000, 10, 10000, 30000));
+
+		for (int i = 0; i < InitArrivalModel.MIN_SAMPLES; i++) {
+			model.recordInterval(10);
+		}
+		//A recent arrival keeps the phase open past the timeout
+		assertEquals(InitArrivalModel.MIN_QUIET_PERIOD - 10,
+				model.getRemainingTime(11000, 10, 10000, 30000));
+		//but never past the maximum timeout
+		assertEquals(50, model.getRemainingTime(29950, 10, 10000, 30000));
+		assertTrue(model.getRemainingTime(30000, 10, 10000, 30000) <= 0);
+	}
+
+}
@@ -0,0 +1,43 @@
+package domain;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class RttEstimatorTest {
+
+	Id slow = new Id("slowNode");
+	Id fast = new Id("fastNode");
+
+	@Test
+	public void timeoutTracksTheResponseTimesOfEachNode() {
+		RttEstimator rtt = new RttEstimator();
+		for (int i = 0; i < 50; i++) {
+			rtt.recordSample(slow, 3000);
+			rtt.recordSample(fast, 20);
+		}
+		//The estimation converges to the samples and the variation vanishes
+		assertEquals(3000, rtt.getSmoothedRtt(slow), 1);
+		long slowTimeout = rtt.getTimeout(slow, TimedNeighbor.DEFAULT_TIMER);
+		assertTrue(slowTimeout > 3000 && slowTimeout < 3200);
+		//Fast links are bounded by the minimum timeout
+		assertEquals(RttEstimator.MIN_TIMEOUT,
+				rtt.getTimeout(fast, TimedNeighbor.DEFAULT_TIMER));
+		assertEquals(TimedNeighbor.DEFAULT_TIMER,
+				rtt.getTimeout(new Id("unknownNode"), TimedNeighbor.DEFAULT_TIMER));
+	}
+
+	@Test
+	public void varyingResponseTimesWidenTheTimeout() {
+		RttEstimator rtt = new RttEstimator();
+		RttEstimator steady = new RttEstimator();
+		for (int i = 0; i < 50; i++) {
+			rtt.recordSample(slow, (i % 2 == 0) ? 1000 : 3000);
+			steady.recordSample(slow, 2000);
+		}
+		assertTrue(rtt.getTimeout(slow, 0) > steady.getTimeout(slow, 0) + 1000);
+		rtt.forget(slow);
+		assertEquals(-1, rtt.getSmoothedRtt(slow), 0.0);
+	}
+
+}
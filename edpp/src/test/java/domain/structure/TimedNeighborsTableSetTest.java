@@ -8,6 +8,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import domain.Id;
+import domain.RttEstimator;
 import domain.TimedNeighbor;
 import domain.structure.TimedNeighborsTable;
 import domain.structure.TimedNeighborsTableSet;
@@ -216,4 +217,53 @@ public class TimedNeighborsTableSetTest {
 		assertFalse(table.setTimerToInf(i.toString()));
 	}
 
+	@Test
+	public void timersAreArmedWithTheTimeoutOfEachNeighbor() throws Exception {
+		byte [] id1 = {1,2,3,4,5,6,7,8,9,0};
+		byte [] id2 = {0,9,8,7,6,5,4,3,2,1};
+		Id fast = new Id(id1);
+		Id unknown = new Id(id2);
+		RttEstimator rtt = new RttEstimator();
+		TimedNeighborsTable estimated = new TimedNeighborsTableSet(rtt);
+		estimated.addNeighbor(new TimedNeighbor(fast, a1));
+		estimated.addNeighbor(new TimedNeighbor(unknown, a2));
+
+		estimated.renewTimers();
+		//The arrival of the value is a sample of the response time
+		Thread.sleep(20);
+		estimated.setTimerToInf(fast);
+		assertTrue(rtt.getSmoothedRtt(fast) >= 20);
+
+		estimated.renewTimers();
+		assertArmedWith(RttEstimator.MIN_TIMEOUT, estimated.getNeighbor(fast));
+		assertArmedWith(TimedNeighbor.DEFAULT_TIMER, estimated.getNeighbor(unknown));
+	}
+
+	private static void assertArmedWith(long timeout, TimedNeighbor tn) {
+		//The timer starts running as soon as it is armed
+		long remaining = tn.getTimeToProbe();
+		assertTrue(remaining <= timeout);
+		assertTrue(remaining > timeout - 100);
+	}
+
+	@Test
+	public void onlyValuesReceivedAfterArmingTheTimersAreSamples() throws Exception {
+		byte [] id1 = {1,2,3,4,5,6,7,8,9,0};
+		Id node = new Id(id1);
+		RttEstimator rtt = new RttEstimator();
+		TimedNeighborsTable estimated = new TimedNeighborsTableSet(rtt);
+		estimated.addNeighbor(new TimedNeighbor(node, a1));
+
+		//A value that arrived before the timer was armed is no sample
+		estimated.setTimerToInf(node, false);
+		assertEquals(-1, rtt.getSmoothedRtt(node), 0.0);
+		estimated.renewTimers();
+		estimated.setTimerToInf(node);
+		assertTrue(rtt.getSmoothedRtt(node) >= 0);
+
+		//The estimations of a failed node are discarded
+		estimated.forgetResponseTimes(node);
+		assertEquals(-1, rtt.getSmoothedRtt(node), 0.0);
+	}
+
 }
@@ -0,0 +1,44 @@
+package domain.structure;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class TimerWheelTest {
+
+	@Test
+	public void itemsExpireOnlyOnceTheirDeadlinePasses() throws Exception {
+		TimerWheel<String> wheel = new TimerWheel<String>(10, 8);
+		wheel.schedule("now", 0);
+		wheel.schedule("soon", 100);
+		wheel.schedule("later", 5000);
+		assertEquals(3, wheel.size());
+
+		List<String> expired = wheel.expire();
+		assertEquals(1, expired.size());
+		assertEquals("now", expired.get(0));
+
+		// The deadline of "soon" is more than a full turn of the wheel away,
+		// so it must survive the slots it is hashed to until then
+		Thread.sleep(150);
+		expired = wheel.expire();
+		assertEquals(1, expired.size());
+		assertEquals("soon", expired.get(0));
+		assertEquals(1, wheel.size());
+		assertTrue(wheel.expire().isEmpty());
+	}
+
+	@Test
+	public void idleWheelCollectsEveryExpiredItem() throws Exception {
+		TimerWheel<Integer> wheel = new TimerWheel<Integer>(1, 4);
+		for (int i = 0; i < 20; i++) {
+			wheel.schedule(i, i);
+		}
+		Thread.sleep(50);
+		assertEquals(20, wheel.expire().size());
+		assertTrue(wheel.isEmpty());
+	}
+
+}